@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Functions that are registered with the simulated Excel and called by {@link DispatchBenchmark}. They do as little work as
+ * possible so that the benchmarks measure the cost of dispatch and type conversion.
+ */
+@XLNamespace("Bench.")
+public final class BenchmarkFunctions {
+
+  /**
+   * Restricted constructor.
+   */
+  private BenchmarkFunctions() {
+  }
+
+  /**
+   * Adds two numbers.
+   *
+   * @param a
+   *          the first number
+   * @param b
+   *          the second number
+   * @return the sum
+   */
+  @XLFunction(name = "Add")
+  public static double add(@XLParameter(name = "a") final double a, @XLParameter(name = "b") final double b) {
+    return a + b;
+  }
+
+  /**
+   * Adds any number of numbers.
+   *
+   * @param values
+   *          the numbers
+   * @return the sum
+   */
+  @XLFunction(name = "Sum")
+  public static double sum(@XLParameter(name = "values") final double... values) {
+    double sum = 0;
+    for (final double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  /**
+   * Returns its argument without any type conversion.
+   *
+   * @param value
+   *          the value
+   * @return the value
+   */
+  @XLFunction(name = "Identity", typeConversionMode = TypeConversionMode.PASSTHROUGH)
+  public static XLValue identity(@XLParameter(name = "value") final XLValue value) {
+    return value;
+  }
+
+  /**
+   * Creates an object that is returned to Excel as a handle.
+   *
+   * @param value
+   *          the value
+   * @return the object
+   */
+  @XLFunction(name = "Box", typeConversionMode = TypeConversionMode.OBJECT_RESULT)
+  public static StringBuilder box(@XLParameter(name = "value") final String value) {
+    return new StringBuilder(value);
+  }
+
+  /**
+   * Gets the length of an object created by {@link #box(String)}.
+   *
+   * @param value
+   *          the object
+   * @return the length
+   */
+  @XLFunction(name = "Length")
+  public static int length(@XLParameter(name = "value") final StringBuilder value) {
+    return value.length();
+  }
+
+  /**
+   * Sums the columns of a matrix.
+   *
+   * @param matrix
+   *          the matrix
+   * @return the column sums
+   */
+  @XLFunction(name = "ColumnSums")
+  public static double[] columnSums(@XLParameter(name = "matrix") final double[][] matrix) {
+    final double[] sums = new double[matrix.length == 0 ? 0 : matrix[0].length];
+    for (final double[] row : matrix) {
+      for (int j = 0; j < sums.length; j++) {
+        sums[j] += row[j];
+      }
+    }
+    return sums;
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.simulator.SimulatedExcel;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Utilities for setting up the benchmarks.
+ */
+final class BenchmarkUtils {
+
+  /**
+   * Restricted constructor.
+   */
+  private BenchmarkUtils() {
+  }
+
+  /**
+   * Creates a simulated Excel and registers all of the functions that are found on the classpath.
+   *
+   * @return the simulated Excel
+   */
+  static Excel createExcel() {
+    final Excel excel = new SimulatedExcel();
+    excel.getFunctionRegistry().registerFunctions(excel.getExcelCallback());
+    return excel;
+  }
+
+  /**
+   * Gets the export number of a registered function.
+   *
+   * @param excel
+   *          the Excel instance
+   * @param name
+   *          the function name, including the namespace
+   * @return the export number
+   */
+  static int getExportNumber(final Excel excel, final String name) {
+    for (final FunctionDefinition definition : excel.getFunctionRegistry().getFunctionDefinitions()) {
+      if (name.equals(definition.getFunctionMetadata().getName())) {
+        return definition.getExportNumber();
+      }
+    }
+    throw new XL4JRuntimeException("Could not find function called " + name);
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate and the bytes allocated per operation
+ * (<code>gc.alloc.rate.norm</code>) are reported alongside the throughput. Takes the same arguments as the JMH runner,
+ * e.g. <code>java -jar xll-benchmarks/target/benchmarks.jar Dispatch -rf json</code>.
+ */
+public final class Benchmarks {
+
+  /**
+   * Restricted constructor.
+   */
+  private Benchmarks() {
+  }
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args
+   *          JMH command line options
+   * @throws CommandLineOptionException
+   *           if the options cannot be parsed
+   * @throws RunnerException
+   *           if a benchmark fails
+   * @throws IOException
+   *           if the benchmark list cannot be read
+   */
+  public static void main(final String[] args) throws CommandLineOptionException, RunnerException, IOException {
+    final CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+      Main.main(args);
+      return;
+    }
+    final Options options = new OptionsBuilder()
+        .parent(commandLine)
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.simulator.MockDLLExports;
+
+/**
+ * Measures the cost of calling functions through the simulated DLL exports, from the export number to the result that would be
+ * returned to Excel. The invoker can be switched between the reflective and method handle invokers by setting
+ * <code>xl4j.invoker</code>, e.g. <code>-jvmArgsAppend -Dxl4j.invoker=methodhandle</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class DispatchBenchmark {
+  private MockDLLExports _exports;
+  private int _add;
+  private int _sum;
+  private int _identity;
+  private int _length;
+  private XLValue[] _scalarArgs;
+  private XLValue[] _identityArgs;
+  private XLValue[] _objectArgs;
+
+  /**
+   * Registers the functions and creates the arguments.
+   */
+  @Setup
+  public void setUp() {
+    final Excel excel = BenchmarkUtils.createExcel();
+    _exports = new MockDLLExports(excel.getExcelCallHandler());
+    _add = BenchmarkUtils.getExportNumber(excel, "Bench.Add");
+    _sum = BenchmarkUtils.getExportNumber(excel, "Bench.Sum");
+    _identity = BenchmarkUtils.getExportNumber(excel, "Bench.Identity");
+    _length = BenchmarkUtils.getExportNumber(excel, "Bench.Length");
+    _scalarArgs = new XLValue[] {XLNumber.of(1), XLNumber.of(2)};
+    _identityArgs = new XLValue[] {XLString.of("value")};
+    // the object stays on the heap because the heap is never collected
+    final XLValue handle = _exports.UDF(BenchmarkUtils.getExportNumber(excel, "Bench.Box"), XLString.of("value"));
+    _objectArgs = new XLValue[] {handle};
+  }
+
+  /**
+   * Calls a function with two numeric arguments.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue scalar() {
+    return _exports.UDF(_add, _scalarArgs);
+  }
+
+  /**
+   * Calls a varargs function.
+   *
+   * @param state
+   *          the arguments
+   * @return the result
+   */
+  @Benchmark
+  public XLValue varArgs(final VarArgs state) {
+    return _exports.UDF(_sum, state._args);
+  }
+
+  /**
+   * Calls a function that does no type conversion.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue passthrough() {
+    return _exports.UDF(_identity, _identityArgs);
+  }
+
+  /**
+   * Calls a function with an object argument that is looked up on the heap.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue objectArgument() {
+    return _exports.UDF(_length, _objectArgs);
+  }
+
+  /**
+   * The arguments for the varargs function.
+   */
+  @State(Scope.Benchmark)
+  public static class VarArgs {
+    /** The number of arguments passed to the varargs function */
+    @Param({"1", "10", "100" })
+    private int _nVarArgs;
+    private XLValue[] _args;
+
+    /**
+     * Creates the arguments.
+     */
+    @Setup
+    public void setUp() {
+      _args = new XLValue[_nVarArgs];
+      for (int i = 0; i < _nVarArgs; i++) {
+        _args[i] = XLNumber.of(i);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reflections.Reflections;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelCallback;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback;
+import com.mcleodmoores.xl4j.v1.core.ReflectiveFunctionRegistry;
+import com.mcleodmoores.xl4j.v1.simulator.MockExcelFunctionEntryAccumulator;
+import com.mcleodmoores.xl4j.v1.simulator.SimulatedExcel;
+import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
+
+/**
+ * Measures the time taken to start an add-in: scanning for functions, creating their invokers and registering them with Excel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class FunctionRegistryBenchmark {
+  private Excel _excel;
+  private Reflections _reflections;
+
+  /**
+   * Loads the scanned classes.
+   */
+  @Setup
+  public void setUp() {
+    _excel = new SimulatedExcel();
+    _reflections = ReflectionsUtils.getReflections();
+  }
+
+  /**
+   * Creates a registry and registers all of the functions.
+   *
+   * @return the registry
+   */
+  @Benchmark
+  public FunctionRegistry startup() {
+    final FunctionRegistry registry = new ReflectiveFunctionRegistry(_reflections, _excel.getInvokerFactory());
+    final ExcelCallback callback = new DefaultExcelCallback(new MockExcelFunctionEntryAccumulator());
+    registry.registerFunctions(callback);
+    return registry;
+  }
+
+  /**
+   * Loads the scanned classes and then creates a registry and registers all of the functions.
+   *
+   * @return the registry
+   */
+  @Benchmark
+  public FunctionRegistry startupWithScan() {
+    final FunctionRegistry registry = new ReflectiveFunctionRegistry(ReflectionsUtils.getReflections(), _excel.getInvokerFactory());
+    final ExcelCallback callback = new DefaultExcelCallback(new MockExcelFunctionEntryAccumulator());
+    registry.registerFunctions(callback);
+    return registry;
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.core.ConcurrentHeap;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+
+/**
+ * Measures handle allocation, object lookup and garbage collection cycles for the heap implementations at different heap sizes.
+ * All of the objects are reported as live in each collection cycle, so the heap stays the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class HeapBenchmark {
+  /** The heap implementation */
+  @Param({"concurrent", "sharded" })
+  private String _heapType;
+  /** The number of objects on the heap */
+  @Param({"1000", "100000", "1000000" })
+  private int _size;
+  private Heap _heap;
+  private Object[] _objects;
+  private long[] _handles;
+  private int _index;
+
+  /**
+   * Fills the heap.
+   */
+  @Setup
+  public void setUp() {
+    _heap = "sharded".equals(_heapType) ? new ShardedHeap(false) : new ConcurrentHeap();
+    _objects = new Object[_size];
+    _handles = new long[_size];
+    for (int i = 0; i < _size; i++) {
+      _objects[i] = new Object();
+      _handles[i] = _heap.getHandle(_objects[i]);
+    }
+  }
+
+  private int next() {
+    final int index = _index;
+    _index = index + 1 == _size ? 0 : index + 1;
+    return index;
+  }
+
+  /**
+   * Gets the handle for an object that is already on the heap.
+   *
+   * @return the handle
+   */
+  @Benchmark
+  public long getHandle() {
+    return _heap.getHandle(_objects[next()]);
+  }
+
+  /**
+   * Gets an object from its handle.
+   *
+   * @return the object
+   */
+  @Benchmark
+  public Object getObject() {
+    return _heap.getObject(_handles[next()]);
+  }
+
+  /**
+   * Runs a collection cycle in which every object is live.
+   *
+   * @return the number of unrecognised handles
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public long cycleGC() {
+    return _heap.cycleGC(_handles);
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.MethodHandleInvokerFactory;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.simulator.SimulatedExcel;
+
+/**
+ * Compares the invokers created by {@link ReflectiveInvokerFactory} and {@link MethodHandleInvokerFactory}, without the
+ * dispatch through the function registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class InvokerBenchmark {
+  /** The invoker factory */
+  @Param({"reflective", "methodhandle" })
+  private String _invoker;
+  private MethodInvoker _add;
+  private MethodInvoker _sum;
+  private MethodInvoker _identity;
+  private XLValue[] _scalarArgs;
+  private XLValue[] _varArgs;
+  private XLValue[] _identityArgs;
+
+  /**
+   * Creates the invokers.
+   *
+   * @throws Exception
+   *           if the methods cannot be found
+   */
+  @Setup
+  public void setUp() throws Exception {
+    final Excel excel = new SimulatedExcel();
+    final InvokerFactory factory = "methodhandle".equals(_invoker)
+        ? new MethodHandleInvokerFactory(excel, excel.getTypeConverterRegistry())
+        : new ReflectiveInvokerFactory(excel, excel.getTypeConverterRegistry());
+    final Method add = BenchmarkFunctions.class.getMethod("add", Double.TYPE, Double.TYPE);
+    final Method sum = BenchmarkFunctions.class.getMethod("sum", double[].class);
+    final Method identity = BenchmarkFunctions.class.getMethod("identity", XLValue.class);
+    _add = factory.getMethodTypeConverter(add, TypeConversionMode.SIMPLEST_RESULT);
+    _sum = factory.getMethodTypeConverter(sum, TypeConversionMode.SIMPLEST_RESULT);
+    _identity = factory.getMethodTypeConverter(identity, TypeConversionMode.PASSTHROUGH);
+    _scalarArgs = new XLValue[] {XLNumber.of(1), XLNumber.of(2)};
+    _varArgs = new XLValue[] {XLNumber.of(1), XLNumber.of(2), XLNumber.of(3), XLNumber.of(4)};
+    _identityArgs = new XLValue[] {XLString.of("value")};
+  }
+
+  /**
+   * Calls a method with two numeric arguments.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue scalar() {
+    return _add.invoke(null, _scalarArgs);
+  }
+
+  /**
+   * Calls a varargs method.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue varArgs() {
+    return _sum.invoke(null, _varArgs);
+  }
+
+  /**
+   * Calls a method that does no type conversion.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public XLValue passthrough() {
+    return _identity.invoke(null, _identityArgs);
+  }
+}
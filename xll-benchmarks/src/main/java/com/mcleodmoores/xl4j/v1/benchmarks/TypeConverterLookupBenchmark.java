@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.ExcelToJavaTypeMapping;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.simulator.SimulatedExcel;
+import com.mcleodmoores.xl4j.v1.typeconvert.CachingTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.typeconvert.ScanningTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
+
+/**
+ * Measures type converter lookups through {@link CachingTypeConverterRegistry} once the cache is warm, and lookups that go
+ * straight to the underlying {@link ScanningTypeConverterRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class TypeConverterLookupBenchmark {
+  private static final ExcelToJavaTypeMapping[] MAPPINGS = new ExcelToJavaTypeMapping[] {
+      ExcelToJavaTypeMapping.of(XLNumber.class, Double.TYPE),
+      ExcelToJavaTypeMapping.of(XLNumber.class, Integer.class),
+      ExcelToJavaTypeMapping.of(XLString.class, String.class),
+      ExcelToJavaTypeMapping.of(XLArray.class, double[].class),
+      ExcelToJavaTypeMapping.of(XLArray.class, double[][].class),
+      ExcelToJavaTypeMapping.of(XLArray.class, Object[].class),
+      ExcelToJavaTypeMapping.of(XLString.class, Object.class),
+      ExcelToJavaTypeMapping.of(XLNumber.class, Number.class) };
+  private static final Class<?>[] JAVA_CLASSES = new Class<?>[] {
+      Double.class, Integer.TYPE, String.class, double[].class, double[][].class, Object[].class, StringBuilder.class, Number.class };
+  private TypeConverterRegistry _caching;
+  private TypeConverterRegistry _scanning;
+  private int _index;
+
+  /**
+   * Creates the registries and warms the cache.
+   */
+  @Setup
+  public void setUp() {
+    final Excel excel = new SimulatedExcel();
+    _scanning = new ScanningTypeConverterRegistry(excel, ReflectionsUtils.getReflections());
+    _caching = new CachingTypeConverterRegistry(_scanning);
+    for (int i = 0; i < MAPPINGS.length; i++) {
+      _caching.findConverter(MAPPINGS[i]);
+      _caching.findConverter(JAVA_CLASSES[i]);
+    }
+  }
+
+  private int next() {
+    final int index = _index;
+    _index = index + 1 == MAPPINGS.length ? 0 : index + 1;
+    return index;
+  }
+
+  /**
+   * Finds an Excel to Java converter in the cache.
+   *
+   * @return the converter
+   */
+  @Benchmark
+  public TypeConverter cachedExcelToJava() {
+    return _caching.findConverter(MAPPINGS[next()]);
+  }
+
+  /**
+   * Finds a Java to Excel converter in the cache.
+   *
+   * @return the converter
+   */
+  @Benchmark
+  public TypeConverter cachedJavaToExcel() {
+    return _caching.findConverter(JAVA_CLASSES[next()]);
+  }
+
+  /**
+   * Finds an Excel to Java converter without the cache.
+   *
+   * @return the converter
+   */
+  @Benchmark
+  public TypeConverter uncachedExcelToJava() {
+    return _scanning.findConverter(MAPPINGS[next()]);
+  }
+
+  /**
+   * Finds a Java to Excel converter without the cache.
+   *
+   * @return the converter
+   */
+  @Benchmark
+  public TypeConverter uncachedJavaToExcel() {
+    return _scanning.findConverter(JAVA_CLASSES[next()]);
+  }
+}
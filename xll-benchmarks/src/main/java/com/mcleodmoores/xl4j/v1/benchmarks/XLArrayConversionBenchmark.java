@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.simulator.SimulatedExcel;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.ObjectArray2DXLArrayTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleArray2DXLArrayTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleArrayXLArrayTypeConverter;
+
+/**
+ * Measures conversions of large arrays in both directions. Arrays from Excel are created from {@link XLValue}s, as they are
+ * when they are passed in through JNI, and arrays returned to Excel have {@link XLArray#getArray()} called on them, as the
+ * JNI layer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=com/mcleodmoores/xl4j/v1/warn-logback.xml")
+public class XLArrayConversionBenchmark {
+  /** The number of columns in a matrix */
+  private static final int COLUMNS = 10;
+  /** The number of rows */
+  @Param({"1000", "100000" })
+  private int _rows;
+  private TypeConverter _vectorConverter;
+  private TypeConverter _matrixConverter;
+  private TypeConverter _objectMatrixConverter;
+  private double[] _vector;
+  private double[][] _matrix;
+  private Object[][] _objectMatrix;
+  private XLArray _xlVector;
+  private XLArray _xlMatrix;
+
+  /**
+   * Creates the converters and data.
+   */
+  @Setup
+  public void setUp() {
+    _vectorConverter = new PrimitiveDoubleArrayXLArrayTypeConverter();
+    _matrixConverter = new PrimitiveDoubleArray2DXLArrayTypeConverter();
+    _objectMatrixConverter = new ObjectArray2DXLArrayTypeConverter(new SimulatedExcel());
+    _vector = new double[_rows];
+    _matrix = new double[_rows][COLUMNS];
+    _objectMatrix = new Object[_rows][COLUMNS];
+    final XLValue[][] xlVector = new XLValue[_rows][1];
+    final XLValue[][] xlMatrix = new XLValue[_rows][COLUMNS];
+    for (int i = 0; i < _rows; i++) {
+      _vector[i] = i;
+      xlVector[i][0] = XLNumber.of(i);
+      for (int j = 0; j < COLUMNS; j++) {
+        _matrix[i][j] = i * COLUMNS + j;
+        _objectMatrix[i][j] = Double.valueOf(_matrix[i][j]);
+        xlMatrix[i][j] = XLNumber.of(_matrix[i][j]);
+      }
+    }
+    _xlVector = XLArray.of(xlVector);
+    _xlMatrix = XLArray.of(xlMatrix);
+  }
+
+  /**
+   * Converts a column from Excel to a double[].
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object vectorToJava() {
+    return _vectorConverter.toJavaObject(double[].class, _xlVector);
+  }
+
+  /**
+   * Converts a double[] to a row that is returned to Excel.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object vectorToExcel() {
+    return ((XLArray) _vectorConverter.toXLValue(_vector)).getArray();
+  }
+
+  /**
+   * Converts an area from Excel to a double[][].
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object matrixToJava() {
+    return _matrixConverter.toJavaObject(double[][].class, _xlMatrix);
+  }
+
+  /**
+   * Converts a double[][] to an area that is returned to Excel.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object matrixToExcel() {
+    return ((XLArray) _matrixConverter.toXLValue(_matrix)).getArray();
+  }
+
+  /**
+   * Converts an area from Excel to an Object[][], looking up the converter for each element.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object objectMatrixToJava() {
+    return _objectMatrixConverter.toJavaObject(Object[][].class, _xlMatrix);
+  }
+
+  /**
+   * Converts an Object[][] to an area that is returned to Excel, looking up the converter for each element.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public Object objectMatrixToExcel() {
+    return ((XLArray) _objectMatrixConverter.toXLValue(_objectMatrix)).getArray();
+  }
+}
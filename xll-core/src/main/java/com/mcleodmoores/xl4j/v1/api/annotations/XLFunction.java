@@ -125,4 +125,19 @@ public @interface XLFunction {
    * @return true if the function should be passed caller information.
    */
   boolean isCallerRequired() default false;
+
+  /**
+   * Indicates that the result only depends on the arguments, so can be cached and returned for later calls with the same
+   * arguments. Object arguments are compared by handle. This is ignored for volatile functions.
+   * @return true if the result can be cached, defaults to false
+   */
+  boolean isCacheable() default false;
+
+  /**
+   * Indicates that concurrent calls with the same arguments should be collapsed into one call, with the result returned to every
+   * caller. This is useful for slow functions that are called with the same arguments from many cells, e.g. network requests.
+   * Object arguments are compared by handle.
+   * @return true if concurrent identical calls are collapsed, defaults to false
+   */
+  boolean isSingleFlight() default false;
 }
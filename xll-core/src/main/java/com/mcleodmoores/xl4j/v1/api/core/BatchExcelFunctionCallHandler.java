@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * A call handler that can invoke a function for many cells at once. Callers should invoke each row of arguments separately
+ * with {@link #invoke(int, XLValue...)} if a handler does not implement this interface.
+ */
+public interface BatchExcelFunctionCallHandler extends ExcelFunctionCallHandler {
+
+  /**
+   * Invocation of a method for many cells at once, e.g. when a column of cells calls the same function with a different row of
+   * arguments in each cell.
+   *
+   * @param exportNumber
+   *          the number of the export that is called for every row of arguments
+   * @param args
+   *          the arguments for each call, one row per cell, with each row passed to the method as if it had been passed to
+   *          {@link #invoke(int, XLValue...)}
+   * @return the values to pass back to Excel, in the same order as the rows of arguments
+   */
+  XLValue[] invokeBatch(int exportNumber, XLValue[][] args);
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+import com.mcleodmoores.xl4j.v1.util.ClassResolver;
+
+/**
+ * An {@link Excel} that can resolve the short class names entered in worksheets. Functions that look up classes by name should
+ * use {@link Class#forName(String)} if the instance does not implement this interface.
+ */
+public interface ClassResolvingExcel extends Excel {
+
+  /**
+   * @return the resolver used to look up classes named in worksheets
+   */
+  ClassResolver getClassResolver();
+
+}
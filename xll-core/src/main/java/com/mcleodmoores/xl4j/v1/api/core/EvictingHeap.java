@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+/**
+ * A heap that can remove objects before they are collected if it is holding too much memory. Only objects that can be rebuilt
+ * by calling the function that produced them again are removed.
+ */
+public interface EvictingHeap extends Heap {
+
+  /**
+   * Marks an object as one that can be removed to free memory, because it was returned by a function that always gives the
+   * same result for the same arguments. A cell that refers to a removed object gets <code>#REF!</code> until the object is
+   * recalculated.
+   *
+   * @param handle
+   *          the handle of the object, ignored if the object is not on the heap
+   */
+  void markRecomputable(long handle);
+
+}
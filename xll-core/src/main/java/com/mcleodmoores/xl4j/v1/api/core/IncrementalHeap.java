@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+import java.util.concurrent.Future;
+
+/**
+ * A heap that can be garbage collected incrementally. A collection cycle is started with {@link #startGC()}, the live
+ * handles are reported in as many chunks as is convenient with {@link #markLive(long[], int, int)} and the cycle is
+ * finished with {@link #endGC()}, which removes the dead objects on a background thread. Handles can be allocated and
+ * resolved throughout the cycle, and objects that are allocated after the cycle has started are never collected by it.
+ */
+public interface IncrementalHeap extends Heap {
+
+  /**
+   * Starts a collection cycle, waiting for the previous cycle to finish if necessary.
+   */
+  void startGC();
+
+  /**
+   * Reports a chunk of handles that are live in the current cycle.
+   *
+   * @param activeHandles
+   *          an array containing the handles
+   * @param offset
+   *          the index of the first handle in the chunk
+   * @param length
+   *          the number of handles in the chunk
+   */
+  void markLive(long[] activeHandles, int offset, int length);
+
+  /**
+   * Ends the current collection cycle. The objects that are no longer live are removed in the background.
+   *
+   * @return the number of reported handles that were not recognised, available when the objects have been removed
+   */
+  Future<Long> endGC();
+
+}
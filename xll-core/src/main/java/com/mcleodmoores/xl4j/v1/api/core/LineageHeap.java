@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+/**
+ * A heap that records which objects were produced from which, so that the objects produced from an object can be found, e.g.
+ * to invalidate the cached results that depend on it. Listeners are told when an object that other objects were produced from
+ * is removed.
+ */
+public interface LineageHeap extends Heap {
+
+  /**
+   * Records that an object was returned by a function that was passed other objects. Handles that are not on the heap are
+   * ignored.
+   *
+   * @param consumer
+   *          the handle of the object that was returned
+   * @param producers
+   *          an array containing the handles of the objects that were passed to the function
+   * @param offset
+   *          the index of the first producer
+   * @param length
+   *          the number of producers
+   */
+  void addLineage(long consumer, long[] producers, int offset, int length);
+
+  /**
+   * Gets the objects that were produced from an object, directly or indirectly.
+   *
+   * @param handle
+   *          the handle of the object
+   * @return the handles of the objects produced from it, empty if there are none
+   */
+  long[] getDescendants(long handle);
+
+  /**
+   * Adds a listener that is told when objects that other objects were produced from are removed.
+   *
+   * @param listener
+   *          the listener, not null
+   */
+  void addLineageListener(LineageListener listener);
+
+}
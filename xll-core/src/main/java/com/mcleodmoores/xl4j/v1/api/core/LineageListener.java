@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.core;
+
+/**
+ * Told when a {@link LineageHeap} removes objects that other objects were produced from, e.g. so that the cached results that
+ * depend on them can be invalidated.
+ */
+public interface LineageListener {
+
+  /**
+   * Called after a collection has removed objects that other objects were produced from. This is called on the thread that
+   * collected the objects, so should return quickly.
+   *
+   * @param handles
+   *          the handles of the removed objects and of the objects produced from them, directly or indirectly
+   */
+  void lineageRemoved(long[] handles);
+
+}
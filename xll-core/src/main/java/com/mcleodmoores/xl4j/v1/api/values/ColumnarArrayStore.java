@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.api.values;
+
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Primitive storage for the cells of an {@link XLArray}. Numbers, booleans and strings are held in dense primitive
+ * columns, and any other values are held as {@link XLValue}s. If the cells are not all of the same type, a tag records the
+ * type of each cell. The position of cell (row, column) in the columns is <code>offset + row * rowStride + column * columnStride</code>,
+ * so rows and columns of an array can be views onto the same storage.
+ */
+final class ColumnarArrayStore {
+  /** A cell holding a number */
+  static final byte NUMBER = 0;
+  /** A cell holding a boolean */
+  static final byte BOOLEAN = 1;
+  /** A cell holding a string */
+  static final byte STRING = 2;
+  /** A cell holding any other value */
+  static final byte VALUE = 3;
+  private final int _rows;
+  private final int _columns;
+  private final int _offset;
+  private final int _rowStride;
+  private final int _columnStride;
+  /** The type of each cell, or null if all cells are of the uniform type */
+  private final byte[] _types;
+  private final byte _uniformType;
+  private final double[] _numbers;
+  private final boolean[] _booleans;
+  private final String[] _strings;
+  private final XLValue[] _values;
+
+  private ColumnarArrayStore(final int rows, final int columns, final int offset, final int rowStride, final int columnStride,
+      final byte[] types, final byte uniformType, final double[] numbers, final boolean[] booleans, final String[] strings,
+      final XLValue[] values) {
+    _rows = rows;
+    _columns = columns;
+    _offset = offset;
+    _rowStride = rowStride;
+    _columnStride = columnStride;
+    _types = types;
+    _uniformType = uniformType;
+    _numbers = numbers;
+    _booleans = booleans;
+    _strings = strings;
+    _values = values;
+  }
+
+  /**
+   * Creates a store of numbers, laid out row by row.
+   *
+   * @param numbers
+   *          the numbers, not copied
+   * @param rows
+   *          the number of rows
+   * @param columns
+   *          the number of columns
+   * @return the store
+   */
+  static ColumnarArrayStore ofNumbers(final double[] numbers, final int rows, final int columns) {
+    return new ColumnarArrayStore(rows, columns, 0, columns, 1, null, NUMBER, numbers, null, null, null);
+  }
+
+  /**
+   * Creates a store of booleans, laid out row by row.
+   *
+   * @param booleans
+   *          the booleans, not copied
+   * @param rows
+   *          the number of rows
+   * @param columns
+   *          the number of columns
+   * @return the store
+   */
+  static ColumnarArrayStore ofBooleans(final boolean[] booleans, final int rows, final int columns) {
+    return new ColumnarArrayStore(rows, columns, 0, columns, 1, null, BOOLEAN, null, booleans, null, null);
+  }
+
+  /**
+   * Creates a store of strings, laid out row by row.
+   *
+   * @param strings
+   *          the strings, not copied
+   * @param rows
+   *          the number of rows
+   * @param columns
+   *          the number of columns
+   * @return the store
+   */
+  static ColumnarArrayStore ofStrings(final String[] strings, final int rows, final int columns) {
+    return new ColumnarArrayStore(rows, columns, 0, columns, 1, null, STRING, null, null, strings, null);
+  }
+
+  /**
+   * Creates a store of mixed cells, laid out row by row. Only the columns for types that appear in the tags need to be
+   * supplied.
+   *
+   * @param types
+   *          the type of each cell
+   * @param numbers
+   *          the numbers, can be null
+   * @param booleans
+   *          the booleans, can be null
+   * @param strings
+   *          the strings, can be null
+   * @param values
+   *          the other values, can be null
+   * @param rows
+   *          the number of rows
+   * @param columns
+   *          the number of columns
+   * @return the store
+   */
+  static ColumnarArrayStore ofMixed(final byte[] types, final double[] numbers, final boolean[] booleans, final String[] strings,
+      final XLValue[] values, final int rows, final int columns) {
+    return new ColumnarArrayStore(rows, columns, 0, columns, 1, types, VALUE, numbers, booleans, strings, values);
+  }
+
+  int getRows() {
+    return _rows;
+  }
+
+  int getColumns() {
+    return _columns;
+  }
+
+  private int index(final int row, final int column) {
+    if (row < 0 || row >= _rows || column < 0 || column >= _columns) {
+      throw new XL4JRuntimeException("Cell (" + row + ", " + column + ") is outside array of size " + _rows + " x " + _columns);
+    }
+    return _offset + row * _rowStride + column * _columnStride;
+  }
+
+  private byte type(final int index) {
+    return _types == null ? _uniformType : _types[index];
+  }
+
+  /**
+   * @return true if every cell is a number
+   */
+  boolean isNumeric() {
+    if (_types == null) {
+      return _uniformType == NUMBER;
+    }
+    for (int i = 0; i < _rows; i++) {
+      for (int j = 0; j < _columns; j++) {
+        if (_types[_offset + i * _rowStride + j * _columnStride] != NUMBER) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets a number from a cell without creating an {@link XLNumber}.
+   *
+   * @param row
+   *          the row
+   * @param column
+   *          the column
+   * @return the number
+   */
+  double getNumber(final int row, final int column) {
+    final int index = index(row, column);
+    if (type(index) != NUMBER) {
+      throw new XL4JRuntimeException("Cell (" + row + ", " + column + ") is not a number");
+    }
+    return _numbers[index];
+  }
+
+  /**
+   * Gets the numbers in this store. If the store is a single row or column that covers the whole of the underlying array,
+   * the underlying array is returned, otherwise the numbers are copied row by row.
+   *
+   * @return the numbers
+   */
+  double[] getNumbers() {
+    if (!isNumeric()) {
+      throw new XL4JRuntimeException("Array does not only contain numbers");
+    }
+    final int size = _rows * _columns;
+    final boolean contiguous = _rows == 1 && _columnStride == 1 || _columns == 1 && _rowStride == 1 || _rowStride == _columns && _columnStride == 1;
+    if (contiguous && _offset == 0 && size == _numbers.length) {
+      return _numbers;
+    }
+    final double[] numbers = new double[size];
+    int k = 0;
+    for (int i = 0; i < _rows; i++) {
+      for (int j = 0; j < _columns; j++) {
+        numbers[k++] = _numbers[_offset + i * _rowStride + j * _columnStride];
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * Gets a copy of the numbers in this store, row by row. The numbers are only copied once.
+   *
+   * @return the numbers, which can be changed
+   */
+  double[] copyNumbers() {
+    final double[] numbers = getNumbers();
+    return numbers == _numbers ? numbers.clone() : numbers;
+  }
+
+  /**
+   * Calculates the hash code of a store for which {@link #isNumeric()} is true without creating any values. The hash code is
+   * the same as that of the two dimensional array of {@link XLNumber}s that the store represents.
+   *
+   * @return the hash code
+   */
+  int numbersHashCode() {
+    int result = 1;
+    for (int i = 0; i < _rows; i++) {
+      int rowResult = 1;
+      for (int j = 0; j < _columns; j++) {
+        final long bits = Double.doubleToLongBits(_numbers[_offset + i * _rowStride + j * _columnStride]);
+        // XLNumber.hashCode()
+        rowResult = 31 * rowResult + 31 + (int) (bits ^ bits >>> 32);
+      }
+      result = 31 * result + rowResult;
+    }
+    return result;
+  }
+
+  /**
+   * Compares the numbers in two stores for which {@link #isNumeric()} is true without creating any values. Numbers are
+   * compared in the same way as {@link XLNumber#equals(Object)}.
+   *
+   * @param other
+   *          the other store
+   * @return true if the stores are the same size and hold the same numbers
+   */
+  boolean numbersEqual(final ColumnarArrayStore other) {
+    if (_rows != other._rows || _columns != other._columns) {
+      return false;
+    }
+    for (int i = 0; i < _rows; i++) {
+      for (int j = 0; j < _columns; j++) {
+        final double number = _numbers[_offset + i * _rowStride + j * _columnStride];
+        final double otherNumber = other._numbers[other._offset + i * other._rowStride + j * other._columnStride];
+        if (Double.doubleToLongBits(number) != Double.doubleToLongBits(otherNumber)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates the value for a cell.
+   *
+   * @param row
+   *          the row
+   * @param column
+   *          the column
+   * @return the value
+   */
+  XLValue getValue(final int row, final int column) {
+    final int index = index(row, column);
+    switch (type(index)) {
+      case NUMBER:
+        return XLNumber.of(_numbers[index]);
+      case BOOLEAN:
+        return XLBoolean.from(_booleans[index]);
+      case STRING:
+        return XLString.of(_strings[index]);
+      default:
+        return _values[index];
+    }
+  }
+
+  /**
+   * @param row
+   *          the row
+   * @return a view of a row
+   */
+  ColumnarArrayStore getRow(final int row) {
+    return new ColumnarArrayStore(1, _columns, index(row, 0), _rowStride, _columnStride, _types, _uniformType, _numbers, _booleans,
+        _strings, _values);
+  }
+
+  /**
+   * @param column
+   *          the column
+   * @return a view of a column
+   */
+  ColumnarArrayStore getColumn(final int column) {
+    return new ColumnarArrayStore(_rows, 1, index(0, column), _rowStride, _columnStride, _types, _uniformType, _numbers, _booleans,
+        _strings, _values);
+  }
+
+  /**
+   * Creates the values for every cell.
+   *
+   * @return the values
+   */
+  XLValue[][] toValues() {
+    final XLValue[][] values = new XLValue[_rows][_columns];
+    for (int i = 0; i < _rows; i++) {
+      for (int j = 0; j < _columns; j++) {
+        values[i][j] = getValue(i, j);
+      }
+    }
+    return values;
+  }
+}
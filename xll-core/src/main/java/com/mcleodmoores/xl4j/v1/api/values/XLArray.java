@@ -6,19 +6,29 @@ package com.mcleodmoores.xl4j.v1.api.values;
 import java.util.Arrays;
 
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * Java representation of the xloper type xltypeMulti It can take the form of a two dimensional array of mixed types of xlopers.
+ * <p>
+ * As well as wrapping a two dimensional array of values, an array can be backed by primitive columns of numbers, booleans and
+ * strings. In this case, the {@link XLValue}s for each cell are only created if {@link #getArray()} or {@link #getValue(int, int)}
+ * are called, and rows and columns of the array share the same storage. Numeric arrays created by {@link #ofRow(double[])} and
+ * {@link #ofColumn(double[])} do not copy their input, so the array should not be changed after the {@link XLArray} is created.
  */
 public final class XLArray implements XLReference {
-  /** The underlying array */
-  private final XLValue[][] _array;
+  /** The underlying array, or null if it has not been created from the store yet */
+  private volatile XLValue[][] _array;
+  /** The primitive store, or null if the array was created from values */
+  private final ColumnarArrayStore _store;
   /** True if the array is a row */
   private final boolean _isRow;
   /** True if the array is a column */
   private final boolean _isColumn;
   /** True if the array is an area */
   private final boolean _isArea;
+  /** The hash code, or zero if it has not been calculated. Racy, as every thread calculates the same value */
+  private int _hashCode;
 
   /**
    * @param valueRange
@@ -26,6 +36,7 @@ public final class XLArray implements XLReference {
    */
   private XLArray(final XLValue[][] valueRange) {
     _array = valueRange;
+    _store = null;
     boolean isRow;
     boolean isColumn;
     boolean isArea;
@@ -49,6 +60,18 @@ public final class XLArray implements XLReference {
     _isArea = isArea;
   }
 
+  /**
+   * @param store
+   *          the primitive store
+   */
+  private XLArray(final ColumnarArrayStore store) {
+    _array = null;
+    _store = store;
+    _isRow = store.getRows() == 1;
+    _isColumn = !_isRow && store.getColumns() <= 1;
+    _isArea = !_isRow && !_isColumn;
+  }
+
   /**
    * Static factory method to create an instance of XLArray.
    *
@@ -61,11 +84,158 @@ public final class XLArray implements XLReference {
     return new XLArray(array);
   }
 
+  /**
+   * Creates a single row array backed by an array of numbers. The numbers are not copied.
+   *
+   * @param numbers
+   *          the numbers, not null
+   * @return an instance
+   */
+  public static XLArray ofRow(final double[] numbers) {
+    ArgumentChecker.notNull(numbers, "numbers");
+    return new XLArray(ColumnarArrayStore.ofNumbers(numbers, 1, numbers.length));
+  }
+
+  /**
+   * Creates a single column array backed by an array of numbers. The numbers are not copied.
+   *
+   * @param numbers
+   *          the numbers, not null or empty
+   * @return an instance
+   */
+  public static XLArray ofColumn(final double[] numbers) {
+    ArgumentChecker.notNull(numbers, "numbers");
+    ArgumentChecker.isTrue(numbers.length > 0, "numbers cannot be empty");
+    return new XLArray(ColumnarArrayStore.ofNumbers(numbers, numbers.length, 1));
+  }
+
+  /**
+   * Creates an array backed by numbers laid out row by row. The numbers are not copied.
+   *
+   * @param numbers
+   *          the numbers, not null
+   * @param rows
+   *          the number of rows, greater than zero
+   * @param columns
+   *          the number of columns
+   * @return an instance
+   */
+  public static XLArray ofNumbers(final double[] numbers, final int rows, final int columns) {
+    ArgumentChecker.notNull(numbers, "numbers");
+    if (rows <= 0 || columns < 0 || numbers.length != rows * columns) {
+      throw new XL4JRuntimeException("Cannot create a " + rows + " x " + columns + " array from " + numbers.length + " numbers");
+    }
+    return new XLArray(ColumnarArrayStore.ofNumbers(numbers, rows, columns));
+  }
+
+  /**
+   * Creates an array of numbers. The numbers are copied row by row into a single array.
+   *
+   * @param numbers
+   *          the numbers, not null or empty. All rows must be the same length
+   * @return an instance
+   */
+  public static XLArray ofNumbers(final double[][] numbers) {
+    ArgumentChecker.notNullOrEmpty(numbers, "numbers");
+    final int columns = numbers[0].length;
+    final double[] store = new double[numbers.length * columns];
+    for (int i = 0; i < numbers.length; i++) {
+      if (numbers[i].length != columns) {
+        throw new XL4JRuntimeException("All rows must have " + columns + " columns");
+      }
+      System.arraycopy(numbers[i], 0, store, i * columns, columns);
+    }
+    return new XLArray(ColumnarArrayStore.ofNumbers(store, numbers.length, columns));
+  }
+
+  /**
+   * Creates a single row array backed by an array of booleans. The booleans are not copied.
+   *
+   * @param booleans
+   *          the booleans, not null
+   * @return an instance
+   */
+  public static XLArray ofRow(final boolean[] booleans) {
+    ArgumentChecker.notNull(booleans, "booleans");
+    return new XLArray(ColumnarArrayStore.ofBooleans(booleans, 1, booleans.length));
+  }
+
+  /**
+   * Creates a single row array backed by an array of strings. The strings are not copied.
+   *
+   * @param strings
+   *          the strings, not null and cannot contain nulls
+   * @return an instance
+   */
+  public static XLArray ofRow(final String[] strings) {
+    ArgumentChecker.notNullArray(strings, "strings");
+    return new XLArray(ColumnarArrayStore.ofStrings(strings, 1, strings.length));
+  }
+
+  /**
+   * Creates an array that holds the numbers, booleans and strings in a two dimensional array of values in primitive columns,
+   * with a type for each cell. Any other values are stored as they are. The array must be rectangular.
+   *
+   * @param array
+   *          a two dimensional array containing XLValues
+   * @return an instance
+   */
+  public static XLArray ofPacked(final XLValue[][] array) {
+    ArgumentChecker.notNullOrEmpty(array, "array");
+    final int rows = array.length;
+    final int columns = array[0].length;
+    final int size = rows * columns;
+    final byte[] types = new byte[size];
+    double[] numbers = null;
+    boolean[] booleans = null;
+    String[] strings = null;
+    XLValue[] values = null;
+    for (int i = 0, k = 0; i < rows; i++) {
+      if (array[i].length != columns) {
+        throw new XL4JRuntimeException("All rows must have " + columns + " columns");
+      }
+      for (int j = 0; j < columns; j++, k++) {
+        final XLValue value = array[i][j];
+        if (value instanceof XLNumber) {
+          if (numbers == null) {
+            numbers = new double[size];
+          }
+          numbers[k] = ((XLNumber) value).getValue();
+          types[k] = ColumnarArrayStore.NUMBER;
+        } else if (value instanceof XLBoolean) {
+          if (booleans == null) {
+            booleans = new boolean[size];
+          }
+          booleans[k] = ((XLBoolean) value).getValue();
+          types[k] = ColumnarArrayStore.BOOLEAN;
+        } else if (value instanceof XLString) {
+          if (strings == null) {
+            strings = new String[size];
+          }
+          strings[k] = ((XLString) value).getValue();
+          types[k] = ColumnarArrayStore.STRING;
+        } else {
+          if (values == null) {
+            values = new XLValue[size];
+          }
+          values[k] = value;
+          types[k] = ColumnarArrayStore.VALUE;
+        }
+      }
+    }
+    return new XLArray(ColumnarArrayStore.ofMixed(types, numbers, booleans, strings, values, rows, columns));
+  }
+
   /**
    * @return a two dimensional array of values, not null
    */
   public XLValue[][] getArray() {
-    return _array;
+    XLValue[][] array = _array;
+    if (array == null) {
+      array = _store.toValues();
+      _array = array;
+    }
+    return array;
   }
 
   /**
@@ -95,6 +265,115 @@ public final class XLArray implements XLReference {
     return _isArea;
   }
 
+  /**
+   * Gets the number of rows in the array.
+   *
+   * @return the number of rows
+   */
+  public int getRows() {
+    return _store == null ? _array.length : _store.getRows();
+  }
+
+  /**
+   * Gets the number of columns in the first row of the array.
+   *
+   * @return the number of columns
+   */
+  public int getColumns() {
+    return _store == null ? _array[0].length : _store.getColumns();
+  }
+
+  /**
+   * Gets the value of a single cell. If the array is backed by primitives, only this value is created.
+   *
+   * @param row
+   *          the row
+   * @param column
+   *          the column
+   * @return the value
+   */
+  public XLValue getValue(final int row, final int column) {
+    return _store == null ? _array[row][column] : _store.getValue(row, column);
+  }
+
+  /**
+   * Gets a row of this array. If the array is backed by primitives, the row is a view of the same storage.
+   *
+   * @param row
+   *          the row
+   * @return the row
+   */
+  public XLArray getRow(final int row) {
+    if (_store == null) {
+      return new XLArray(new XLValue[][] {_array[row]});
+    }
+    return new XLArray(_store.getRow(row));
+  }
+
+  /**
+   * Gets a column of this array. If the array is backed by primitives, the column is a view of the same storage.
+   *
+   * @param column
+   *          the column
+   * @return the column
+   */
+  public XLArray getColumn(final int column) {
+    if (_store == null) {
+      final XLValue[][] values = new XLValue[_array.length][];
+      for (int i = 0; i < _array.length; i++) {
+        values[i] = new XLValue[] {_array[i][column]};
+      }
+      return new XLArray(values);
+    }
+    return new XLArray(_store.getColumn(column));
+  }
+
+  /**
+   * Returns true if every cell of this array is held as a primitive number, in which case {@link #getNumber(int, int)} and
+   * {@link #getNumbers()} do not create any {@link XLNumber}s.
+   *
+   * @return true if the array is backed by numbers
+   */
+  public boolean isNumeric() {
+    return _store != null && _store.isNumeric();
+  }
+
+  /**
+   * Gets the number in a cell of an array for which {@link #isNumeric()} is true.
+   *
+   * @param row
+   *          the row
+   * @param column
+   *          the column
+   * @return the number
+   */
+  public double getNumber(final int row, final int column) {
+    ArgumentChecker.isTrue(_store != null, "Array is not backed by numbers");
+    return _store.getNumber(row, column);
+  }
+
+  /**
+   * Gets the numbers in an array for which {@link #isNumeric()} is true, row by row. If the array is a row or column that
+   * covers all of the underlying storage, the underlying array is returned without copying and should not be changed.
+   *
+   * @return the numbers
+   */
+  public double[] getNumbers() {
+    ArgumentChecker.isTrue(_store != null, "Array is not backed by numbers");
+    return _store.getNumbers();
+  }
+
+  /**
+   * Gets a copy of the numbers in an array for which {@link #isNumeric()} is true, row by row. Unlike {@link #getNumbers()},
+   * the result never shares the underlying storage, and the numbers are only copied once.
+   *
+   * @return the numbers, which can be changed
+   */
+  public double[] copyNumbers() {
+    ArgumentChecker.isTrue(_store != null, "Array is not backed by numbers");
+    return _store.copyNumbers();
+  }
+
   @Override
   public <E> E accept(final XLValueVisitor<E> visitor) {
     return visitor.visitXLArray(this);
@@ -102,9 +381,18 @@ public final class XLArray implements XLReference {
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + Arrays.deepHashCode(_array); // Arrays.hashCode() had issues.
+    int result = _hashCode;
+    if (result == 0) {
+      final int prime = 31;
+      result = 1;
+      if (isNumeric()) {
+        // the same hash code as the values, without creating them
+        result = prime * result + _store.numbersHashCode();
+      } else {
+        result = prime * result + Arrays.deepHashCode(getArray()); // Arrays.hashCode() had issues.
+      }
+      _hashCode = result;
+    }
     return result;
   }
 
@@ -120,7 +408,10 @@ public final class XLArray implements XLReference {
       return false;
     }
     final XLArray other = (XLArray) obj;
-    if (!Arrays.deepEquals(_array, other._array)) {
+    if (isNumeric() && other.isNumeric()) {
+      return _store.numbersEqual(other._store);
+    }
+    if (!Arrays.deepEquals(getArray(), other.getArray())) {
       return false;
     }
     return true;
@@ -128,7 +419,7 @@ public final class XLArray implements XLReference {
 
   @Override
   public String toString() {
-    return "XLArray[" + Arrays.deepToString(_array) + "]";
+    return "XLArray[" + Arrays.deepToString(getArray()) + "]";
   }
 
 }
@@ -346,7 +346,14 @@ public abstract class AbstractFunctionRegistry implements FunctionRegistry {
     return FunctionDefinition.of(functionMetadata, constructorInvoker, allocatedExportNumber);
   }
 
-  private static XLParameter[] getXLParameterAnnotations(final Annotation[][] allParameterAnnotations) {
+  /**
+   * Gets the {@link XLParameter} annotation for each parameter.
+   *
+   * @param allParameterAnnotations
+   *          the annotations for each parameter
+   * @return the parameter annotations, with null for any parameter that is not annotated
+   */
+  static XLParameter[] getXLParameterAnnotations(final Annotation[][] allParameterAnnotations) {
     final XLParameter[] xlParameterAnnotations = new XLParameter[allParameterAnnotations.length];
     // we rely here on the array being initialized to null
     for (int i = 0; i < allParameterAnnotations.length; i++) {
@@ -0,0 +1,339 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * Runs calls to functions marked as <code>isLongRunning</code> or <code>isManualAsynchronous</code> off the calling thread, so that
+ * slow functions do not hold up Excel's calculation threads.
+ * <p>
+ * This is used by the simulator: the native layer runs asynchronous functions through its own asynchronous call path and does not
+ * use this class.
+ * <p>
+ * Each call is keyed by its caller (e.g. the cell reference). Submitting a call for a caller that still has a call running cancels
+ * the earlier call, as happens when Excel recalculates the cell, so only the latest result for a caller is ever reported. Results
+ * are put on a completion queue that the simulator drains.
+ * <p>
+ * The calls are run on any {@link ExecutorService}. By default, this is a bounded pool of daemon threads: the number of threads
+ * can be set with the system property <code>xl4j.async.threads</code> (default the number of processors) and the number of
+ * queued calls with <code>xl4j.async.queueSize</code> (default 1000). When the queue is full, calls are rejected and complete with
+ * an error rather than being run on the calling thread.
+ */
+public class AsyncExecutor {
+  /** The system property used to set the number of threads */
+  public static final String THREADS_PROPERTY_NAME = "xl4j.async.threads";
+  /** The system property used to set the maximum number of queued calls */
+  public static final String QUEUE_SIZE_PROPERTY_NAME = "xl4j.async.queueSize";
+  /** The default maximum number of queued calls */
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  /** The logger */
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncExecutor.class);
+  /** The function registry */
+  private final FunctionRegistry _functionRegistry;
+  /** The call handler */
+  private final ExcelFunctionCallHandler _callHandler;
+  /** The executor */
+  private final ExecutorService _executor;
+  /** The calls that have not completed, keyed by caller */
+  private final Map<Object, AsyncCall> _pending = new ConcurrentHashMap<>();
+  /** The results that have not been drained */
+  private final BlockingQueue<Completion> _completions = new LinkedBlockingQueue<>();
+  /** The asynchronous flag for each function, indexed by export number */
+  private volatile Boolean[] _asynchronous = new Boolean[0];
+
+  /**
+   * Creates an executor that uses a bounded thread pool configured by the system properties.
+   *
+   * @param functionRegistry
+   *          the function registry, not null
+   * @param callHandler
+   *          the call handler, not null
+   */
+  public AsyncExecutor(final FunctionRegistry functionRegistry, final ExcelFunctionCallHandler callHandler) {
+    this(functionRegistry, callHandler, createDefaultExecutor());
+  }
+
+  /**
+   * @param functionRegistry
+   *          the function registry, not null
+   * @param callHandler
+   *          the call handler, not null
+   * @param executor
+   *          the executor used to run the calls, not null
+   */
+  public AsyncExecutor(final FunctionRegistry functionRegistry, final ExcelFunctionCallHandler callHandler, final ExecutorService executor) {
+    _functionRegistry = ArgumentChecker.notNull(functionRegistry, "functionRegistry");
+    _callHandler = ArgumentChecker.notNull(callHandler, "callHandler");
+    _executor = ArgumentChecker.notNull(executor, "executor");
+  }
+
+  /**
+   * Tests whether a function should be run asynchronously, i.e. it is marked as long-running or manually asynchronous.
+   *
+   * @param exportNumber
+   *          the export number
+   * @return true if the function should be run asynchronously, false if it should be run on the calling thread or is unknown
+   */
+  public boolean isAsynchronous(final int exportNumber) {
+    final Boolean[] asynchronous = _asynchronous;
+    if (exportNumber >= 0 && exportNumber < asynchronous.length && asynchronous[exportNumber] != null) {
+      return asynchronous[exportNumber];
+    }
+    final FunctionDefinition functionDefinition = _functionRegistry.getFunctionDefinition(exportNumber);
+    if (functionDefinition == null) {
+      return false;
+    }
+    final boolean result = isAsynchronous(functionDefinition.getFunctionMetadata());
+    if (exportNumber >= 0) {
+      synchronized (this) {
+        final Boolean[] newAsynchronous = Arrays.copyOf(_asynchronous, Math.max(_asynchronous.length, exportNumber + 1));
+        newAsynchronous[exportNumber] = result;
+        _asynchronous = newAsynchronous;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isAsynchronous(final FunctionMetadata functionMetadata) {
+    final XLFunction functionSpec = functionMetadata.getFunctionSpec();
+    if (functionSpec != null) {
+      return functionSpec.isLongRunning() || functionSpec.isManualAsynchronous();
+    }
+    final XLFunctions functionsSpec = functionMetadata.getFunctionsSpec();
+    if (functionsSpec != null) {
+      return functionsSpec.isLongRunning() || functionsSpec.isManualAsynchronous();
+    }
+    return false;
+  }
+
+  /**
+   * Submits a call. Any call for the same caller that has not completed is cancelled and its result is not reported. If the
+   * executor rejects the call, it completes with an error.
+   *
+   * @param caller
+   *          the caller, not null
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the arguments, not null
+   * @return the result of the call
+   */
+  public Future<XLValue> submit(final Object caller, final int exportNumber, final XLValue... args) {
+    ArgumentChecker.notNull(caller, "caller");
+    ArgumentChecker.notNull(args, "args");
+    final AsyncCall call = new AsyncCall(caller, exportNumber, args);
+    final AsyncCall previous = _pending.put(caller, call);
+    if (previous != null && previous.cancel(true)) {
+      LOGGER.debug("Cancelled call to {} for {}", exportNumber, caller);
+    }
+    try {
+      _executor.execute(call);
+    } catch (final RejectedExecutionException e) {
+      LOGGER.warn("Rejected call to {} for {}, returning XLError", exportNumber, caller);
+      call.reject();
+    }
+    return call;
+  }
+
+  /**
+   * Cancels the call for a caller if it has not completed.
+   *
+   * @param caller
+   *          the caller, not null
+   * @return true if a call was cancelled
+   */
+  public boolean cancel(final Object caller) {
+    ArgumentChecker.notNull(caller, "caller");
+    final AsyncCall call = _pending.remove(caller);
+    return call != null && call.cancel(true);
+  }
+
+  /**
+   * Cancels all calls that have not completed.
+   *
+   * @return the number of calls that were cancelled
+   */
+  public int cancelAll() {
+    int cancelled = 0;
+    for (final Object caller : _pending.keySet()) {
+      if (cancel(caller)) {
+        cancelled++;
+      }
+    }
+    return cancelled;
+  }
+
+  /**
+   * @return the number of calls that have not completed
+   */
+  public int getPendingCount() {
+    return _pending.size();
+  }
+
+  /**
+   * Removes the next completed call from the queue, waiting if necessary.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the units of the timeout, not null
+   * @return the completed call, or null if nothing completed in time
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public Completion poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    ArgumentChecker.notNull(unit, "unit");
+    return _completions.poll(timeout, unit);
+  }
+
+  /**
+   * Removes all completed calls from the queue without waiting.
+   *
+   * @param completions
+   *          the collection to add the completed calls to, not null
+   * @return the number of completed calls added
+   */
+  public int drainTo(final Collection<? super Completion> completions) {
+    ArgumentChecker.notNull(completions, "completions");
+    return _completions.drainTo(completions);
+  }
+
+  /**
+   * Cancels all calls and shuts down the executor.
+   */
+  public void shutdown() {
+    cancelAll();
+    _executor.shutdownNow();
+  }
+
+  private static ExecutorService createDefaultExecutor() {
+    final int threads = Integer.getInteger(THREADS_PROPERTY_NAME, Runtime.getRuntime().availableProcessors());
+    final int queueSize = Integer.getInteger(QUEUE_SIZE_PROPERTY_NAME, DEFAULT_QUEUE_SIZE);
+    ArgumentChecker.isTrue(threads > 0, THREADS_PROPERTY_NAME + " must be greater than zero");
+    ArgumentChecker.isTrue(queueSize > 0, QUEUE_SIZE_PROPERTY_NAME + " must be greater than zero");
+    final AtomicInteger count = new AtomicInteger();
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+          @Override
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "xl4j-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * A call that puts its result on the completion queue if it is still the latest call for its caller.
+   */
+  private final class AsyncCall extends FutureTask<XLValue> {
+    private final Object _caller;
+    private final int _exportNumber;
+
+    AsyncCall(final Object caller, final int exportNumber, final XLValue[] args) {
+      super(new Callable<XLValue>() {
+        @Override
+        public XLValue call() {
+          return _callHandler.invoke(exportNumber, args);
+        }
+      });
+      _caller = caller;
+      _exportNumber = exportNumber;
+    }
+
+    void reject() {
+      set(XLError.NA);
+    }
+
+    @Override
+    protected void done() {
+      if (isCancelled() || !_pending.remove(_caller, this)) {
+        return;
+      }
+      XLValue result;
+      try {
+        result = get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        result = XLError.Null;
+      } catch (final ExecutionException e) {
+        LOGGER.info("Exception occurred while invoking method asynchronously, returning XLError", e.getCause());
+        result = XLError.Null;
+      }
+      _completions.add(new Completion(_caller, _exportNumber, result));
+    }
+  }
+
+  /**
+   * The result of a call that has completed.
+   */
+  public static final class Completion {
+    private final Object _caller;
+    private final int _exportNumber;
+    private final XLValue _result;
+
+    Completion(final Object caller, final int exportNumber, final XLValue result) {
+      _caller = caller;
+      _exportNumber = exportNumber;
+      _result = result;
+    }
+
+    /**
+     * @return the caller
+     */
+    public Object getCaller() {
+      return _caller;
+    }
+
+    /**
+     * @return the export number
+     */
+    public int getExportNumber() {
+      return _exportNumber;
+    }
+
+    /**
+     * @return the result
+     */
+    public XLValue getResult() {
+      return _result;
+    }
+
+    @Override
+    public String toString() {
+      return "Completion[caller=" + _caller + ", exportNumber=" + _exportNumber + ", result=" + _result + "]";
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Looks up the result in the cache before calling the function.
+ */
+final class CachingCallPlan extends CallPlan {
+  private final CallPlan _callPlan;
+  private final ResultCache _resultCache;
+  private final int _exportNumber;
+
+  CachingCallPlan(final CallPlan callPlan, final ResultCache resultCache, final int exportNumber) {
+    _callPlan = callPlan;
+    _resultCache = resultCache;
+    _exportNumber = exportNumber;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    // the call plan can replace strings with object handles in the arguments, so the key needs a copy
+    final XLValue[] key = args.clone();
+    final XLValue cached = _resultCache.get(heap, _exportNumber, key);
+    if (cached != null) {
+      return cached;
+    }
+    final XLValue result = _callPlan.call(heap, args);
+    _resultCache.put(heap, _exportNumber, key, result);
+    return result;
+  }
+}
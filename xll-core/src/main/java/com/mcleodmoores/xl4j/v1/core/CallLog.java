@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBigData;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLInteger;
+import com.mcleodmoores.xl4j.v1.api.values.XLLocalReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLMultiReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLRange;
+import com.mcleodmoores.xl4j.v1.api.values.XLSheetId;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Reads the calls in a log written by {@link CallRecorder}, in the order that they were recorded. A log that ends part way
+ * through a call, e.g. because Excel was killed, is read up to the last complete call.
+ */
+public class CallLog implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallLog.class);
+  private final File _file;
+  private final DataInputStream _in;
+  private final long _startTime;
+  /** The version of the log */
+  private final int _version;
+  /** The worksheet names of the functions, by export number */
+  private final Map<Integer, String> _functionNames = new HashMap<>();
+
+  /**
+   * Opens a log.
+   *
+   * @param file
+   *          the file, not null
+   * @throws IOException
+   *           if the file cannot be read
+   * @throws XL4JRuntimeException
+   *           if the file is not a call log or was written by a later version
+   */
+  public CallLog(final File file) throws IOException {
+    _file = ArgumentChecker.notNull(file, "file");
+    _in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (_in.readLong() != CallRecorder.MAGIC) {
+        throw new XL4JRuntimeException(file + " is not a call log");
+      }
+      final int version = _in.readInt();
+      if (version > CallRecorder.VERSION) {
+        throw new XL4JRuntimeException("Cannot read version " + version + " call log " + file);
+      }
+      _version = version;
+      _startTime = _in.readLong();
+    } catch (final IOException | XL4JRuntimeException e) {
+      _in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the wall-clock time in milliseconds at which recording started
+   */
+  public long getStartTime() {
+    return _startTime;
+  }
+
+  /**
+   * Reads the next call.
+   *
+   * @return the call, or null if there are no more calls
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public RecordedCall next() throws IOException {
+    while (true) {
+      final int recordType = _in.read();
+      if (recordType < 0) {
+        return null;
+      }
+      try {
+        if (recordType == CallRecorder.FUNCTION_RECORD) {
+          final int exportNumber = _in.readInt();
+          _functionNames.put(exportNumber, readString());
+          continue;
+        }
+        if (recordType != CallRecorder.CALL_RECORD) {
+          throw new XL4JRuntimeException("Unknown record type " + recordType + " in call log " + _file);
+        }
+        final long offsetNanos = _in.readLong();
+        final int exportNumber = _in.readInt();
+        final long latencyNanos = _in.readLong();
+        final XLValue[] args = new XLValue[_in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = readValue();
+        }
+        final byte resultType = _in.readByte();
+        XLValue result = null;
+        if (resultType == CallRecorder.OBJECT) {
+          result = XLObject.of(readString(), _in.readLong());
+        } else if (resultType == CallRecorder.ERROR) {
+          result = readError();
+        }
+        final String functionName = _functionNames.get(exportNumber);
+        return new RecordedCall(offsetNanos, exportNumber, functionName == null ? "" : functionName, args,
+            CallRecorder.getValueClass(resultType), result, latencyNanos);
+      } catch (final EOFException e) {
+        LOGGER.warn("Call log {} ends part way through a record", _file);
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    _in.close();
+  }
+
+  private XLError readError() throws IOException {
+    final byte code = _in.readByte();
+    return _version == 1 ? XLError.values()[code] : CallRecorder.getError(code);
+  }
+
+  private XLValue readValue() throws IOException {
+    final byte type = _in.readByte();
+    switch (type) {
+      case CallRecorder.NIL:
+        return XLNil.INSTANCE;
+      case CallRecorder.MISSING:
+        return XLMissing.INSTANCE;
+      case CallRecorder.NUMBER:
+        return XLNumber.of(_in.readDouble());
+      case CallRecorder.STRING:
+        return XLString.of(readString());
+      case CallRecorder.BOOLEAN:
+        return XLBoolean.from(_in.readBoolean());
+      case CallRecorder.INTEGER:
+        return XLInteger.of(_in.readInt());
+      case CallRecorder.ERROR:
+        return readError();
+      case CallRecorder.OBJECT:
+        return XLObject.of(readString(), _in.readLong());
+      case CallRecorder.NUMERIC_ARRAY: {
+        final int rows = _in.readInt();
+        final int columns = _in.readInt();
+        final double[] numbers = new double[rows * columns];
+        for (int i = 0; i < numbers.length; i++) {
+          numbers[i] = _in.readDouble();
+        }
+        return XLArray.ofNumbers(numbers, rows, columns);
+      }
+      case CallRecorder.ARRAY: {
+        final XLValue[][] array = new XLValue[_in.readInt()][_in.readInt()];
+        for (final XLValue[] row : array) {
+          for (int j = 0; j < row.length; j++) {
+            row[j] = readValue();
+          }
+        }
+        return XLArray.of(array);
+      }
+      case CallRecorder.BIG_DATA: {
+        final byte[] buffer = new byte[_in.readInt()];
+        _in.readFully(buffer);
+        return XLBigData.of(buffer);
+      }
+      case CallRecorder.LOCAL_REFERENCE:
+        return XLLocalReference.of(readRange());
+      case CallRecorder.MULTI_REFERENCE: {
+        final XLSheetId sheetId = XLSheetId.of(_in.readInt());
+        final XLRange[] ranges = new XLRange[_in.readInt()];
+        for (int i = 0; i < ranges.length; i++) {
+          ranges[i] = readRange();
+        }
+        return XLMultiReference.of(sheetId, ranges);
+      }
+      case CallRecorder.UNKNOWN:
+        LOGGER.warn("Value of type {} was not recorded, replaying as nil", readString());
+        return XLNil.INSTANCE;
+      default:
+        throw new XL4JRuntimeException("Unknown value type " + type + " in call log " + _file);
+    }
+  }
+
+  private XLRange readRange() throws IOException {
+    final int rowFirst = _in.readInt();
+    final int rowLast = _in.readInt();
+    final int columnFirst = _in.readInt();
+    final int columnLast = _in.readInt();
+    return XLRange.of(rowFirst, rowLast, columnFirst, columnLast);
+  }
+
+  private String readString() throws IOException {
+    final byte[] bytes = new byte[_in.readInt()];
+    _in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A call read from a log.
+   */
+  public static final class RecordedCall {
+    private final long _offsetNanos;
+    private final int _exportNumber;
+    private final String _functionName;
+    private final XLValue[] _args;
+    private final Class<? extends XLValue> _resultType;
+    private final XLValue _result;
+    private final long _latencyNanos;
+
+    RecordedCall(final long offsetNanos, final int exportNumber, final String functionName, final XLValue[] args,
+        final Class<? extends XLValue> resultType, final XLValue result, final long latencyNanos) {
+      _offsetNanos = offsetNanos;
+      _exportNumber = exportNumber;
+      _functionName = functionName;
+      _args = args;
+      _resultType = resultType;
+      _result = result;
+      _latencyNanos = latencyNanos;
+    }
+
+    /**
+     * @return the time at which the call was made, in nanoseconds since recording started
+     */
+    public long getOffsetNanos() {
+      return _offsetNanos;
+    }
+
+    /**
+     * @return the export number of the function in the recorded build
+     */
+    public int getExportNumber() {
+      return _exportNumber;
+    }
+
+    /**
+     * @return the worksheet name of the function, or an empty string if it was not known
+     */
+    public String getFunctionName() {
+      return _functionName;
+    }
+
+    /**
+     * @return the arguments. The array is not copied
+     */
+    public XLValue[] getArgs() {
+      return _args;
+    }
+
+    /**
+     * @return the type of the result, which is {@link XLObject} for an object handle
+     */
+    public Class<? extends XLValue> getResultType() {
+      return _resultType;
+    }
+
+    /**
+     * @return the result if it was an object handle or an error, otherwise null
+     */
+    public XLValue getResult() {
+      return _result;
+    }
+
+    /**
+     * @return the time taken by the call in nanoseconds
+     */
+    public long getLatencyNanos() {
+      return _latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "RecordedCall[" + _functionName + Arrays.toString(_args) + " -> " + _resultType.getSimpleName() + " in "
+          + _latencyNanos + "ns]";
+    }
+  }
+}
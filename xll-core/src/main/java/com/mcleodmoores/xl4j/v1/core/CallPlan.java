@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.OffsetMethodInvoker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * A function call that has been resolved from its definition by {@link DefaultExcelFunctionCallHandler}. The plan for the call
+ * target is created by {@link #of(FunctionDefinition)} and can be wrapped in plans that cache results, collapse identical calls,
+ * mark results as recomputable or record their lineage.
+ */
+abstract class CallPlan {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallPlan.class);
+
+  /**
+   * Creates the call plan for a function.
+   *
+   * @param functionDefinition
+   *          the function definition
+   * @return the call plan
+   */
+  static CallPlan of(final FunctionDefinition functionDefinition) {
+    switch (functionDefinition.getCallTargetForFunction()) {
+      case METHOD: {
+        final MethodInvoker methodInvoker = functionDefinition.getMethodInvoker();
+        return methodInvoker.isStatic() ? new StaticMethodCallPlan(methodInvoker) : new InstanceMethodCallPlan(methodInvoker);
+      }
+      case CONSTRUCTOR:
+        return new ConstructorCallPlan(functionDefinition.getConstructorInvoker());
+      case FIELD: {
+        final FieldGetter fieldGetter = functionDefinition.getFieldInvoker();
+        return fieldGetter.isStatic() ? new StaticFieldCallPlan(fieldGetter) : new InstanceFieldCallPlan(fieldGetter);
+      }
+      default:
+        throw new XL4JRuntimeException("Unhandled type " + functionDefinition.getCallTargetForFunction());
+    }
+  }
+
+  /**
+   * Calls the function.
+   *
+   * @param heap
+   *          the heap
+   * @param args
+   *          the arguments from Excel
+   * @return the result
+   */
+  abstract XLValue call(Heap heap, XLValue[] args);
+
+  /**
+   * Replaces any arguments that are object handles passed as strings with the object handle.
+   *
+   * @param args
+   *          the arguments
+   */
+  static void resolveObjects(final XLValue[] args) {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] instanceof XLString) {
+        final XLString xlString = (XLString) args[i];
+        if (xlString.isXLObject()) {
+          args[i] = xlString.toXLObject();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the object that is the target of the call from the heap.
+   *
+   * @param heap
+   *          the heap
+   * @param reference
+   *          the object reference
+   * @return the object, or null if the handle is invalid
+   */
+  static Object getObject(final Heap heap, final XLValue reference) {
+    if (!(reference instanceof XLObject)) {
+      LOGGER.error("Function's first argument wasn't an object reference.  Perhaps your function should be static?");
+      throw new XL4JRuntimeException("Function's first argument was not an object reference: " + reference);
+    }
+    return heap.getObject(((XLObject) reference).getHandle());
+  }
+
+  /**
+   * Calls an instance method with the arguments that follow the object reference. The arguments are only copied if the invoker
+   * cannot start at an offset.
+   *
+   * @param methodInvoker
+   *          the method invoker
+   * @param object
+   *          the object on which to call the method
+   * @param args
+   *          the arguments, with the object reference first
+   * @return the result
+   */
+  static XLValue invokeOnObject(final MethodInvoker methodInvoker, final Object object, final XLValue[] args) {
+    if (methodInvoker instanceof OffsetMethodInvoker) {
+      return ((OffsetMethodInvoker) methodInvoker).invoke(object, args, 1);
+    }
+    return methodInvoker.invoke(object, Arrays.copyOfRange(args, 1, args.length));
+  }
+}
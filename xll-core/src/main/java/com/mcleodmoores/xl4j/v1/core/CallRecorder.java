@@ -0,0 +1,659 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBigData;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLInteger;
+import com.mcleodmoores.xl4j.v1.api.values.XLLocalReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLMultiReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLRange;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Writes the calls made through a {@link DefaultExcelFunctionCallHandler} to a compact binary log, so that a real workload can be
+ * replayed later against another build of the add-in. The log is read with {@link CallLog}.
+ * <p>
+ * The file starts with a header holding the format version and the wall-clock time at which recording started. Before the first
+ * call to a function, a record with its export number and worksheet name is written. Each call is then written as the time
+ * since recording started, the export number, the time taken, the arguments and the type of the result. Object results also
+ * record their handle, so that later calls that are passed the object can be given the handle created by the replay.
+ * <p>
+ * Recording is switched on by setting the system property <code>xl4j.record</code> to the name of the file in the add-in's JVM
+ * options, or by calling {@link DefaultExcelFunctionCallHandler#setCallRecorder(CallRecorder)}. The calling thread only puts the
+ * call on a bounded queue, which a single background thread drains and writes to the file, so recording does not make the
+ * calculation threads wait for each other or for the disk. The size of the queue can be set with the system property
+ * <code>xl4j.record.queueSize</code> (default 10000). If the queue is full, the call is not recorded and is counted in
+ * {@link #getDropped()}. If the file cannot be written, the error is logged once and recording stops.
+ */
+public class CallRecorder implements Closeable {
+  /** The system property that names the file that calls are recorded to. If it is not set, calls are not recorded */
+  public static final String RECORD_PROPERTY_NAME = "xl4j.record";
+  /** The system property used to set the maximum number of calls waiting to be written */
+  public static final String QUEUE_SIZE_PROPERTY_NAME = "xl4j.record.queueSize";
+  /** The default maximum number of calls waiting to be written */
+  public static final int DEFAULT_QUEUE_SIZE = 10000;
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallRecorder.class);
+  static final long MAGIC = 0x584C344A43414C4CL; // XL4JCALL
+  /** Version 1 wrote errors as their ordinal */
+  static final int VERSION = 2;
+  static final byte FUNCTION_RECORD = 1;
+  static final byte CALL_RECORD = 2;
+  static final byte NIL = 0;
+  static final byte MISSING = 1;
+  static final byte NUMBER = 2;
+  static final byte STRING = 3;
+  static final byte BOOLEAN = 4;
+  static final byte INTEGER = 5;
+  static final byte ERROR = 6;
+  static final byte OBJECT = 7;
+  static final byte ARRAY = 8;
+  static final byte NUMERIC_ARRAY = 9;
+  static final byte BIG_DATA = 10;
+  static final byte LOCAL_REFERENCE = 11;
+  static final byte MULTI_REFERENCE = 12;
+  static final byte UNKNOWN = 13;
+  private final File _file;
+  /** Only used by the writer thread after construction */
+  private final DataOutputStream _out;
+  private final long _start;
+  /** The calls, and requests to flush or close, waiting to be written */
+  private final BlockingQueue<Object> _queue;
+  private final Thread _writer;
+  private final AtomicLong _dropped = new AtomicLong();
+  /** The worksheet names of the functions, indexed by export number, copied on write */
+  private volatile String[] _names = new String[0];
+  /** The export numbers of the functions whose names have been written, only used by the writer thread */
+  private final BitSet _written = new BitSet();
+  /** The number of calls written, only changed by the writer thread */
+  private volatile long _calls;
+  /** True once the file has failed, only changed by the writer thread */
+  private volatile boolean _failed;
+  /** Only changed while holding the lock on this */
+  private volatile boolean _closed;
+
+  /**
+   * Gets the recorder for the file named by the system property {@link #RECORD_PROPERTY_NAME}. The recorder is only created the
+   * first time that this is called, so every handler that uses it writes to the same log, and is closed when the JVM shuts down.
+   *
+   * @return the recorder, or null if the property is not set or the file cannot be opened
+   */
+  public static CallRecorder fromSystemProperty() {
+    return SystemPropertyHolder.RECORDER;
+  }
+
+  private static CallRecorder createFromSystemProperty() {
+    final String fileName = System.getProperty(RECORD_PROPERTY_NAME);
+    if (fileName == null || fileName.isEmpty()) {
+      return null;
+    }
+    try {
+      final CallRecorder recorder = new CallRecorder(new File(fileName));
+      Runtime.getRuntime().addShutdownHook(new Thread("xl4j-call-recorder-shutdown") {
+        @Override
+        public void run() {
+          recorder.close();
+        }
+      });
+      return recorder;
+    } catch (final IOException e) {
+      LOGGER.error("Could not open call log " + fileName + ", calls will not be recorded", e);
+      return null;
+    }
+  }
+
+  /**
+   * Creates a recorder, replacing the file if it exists, with a queue of the size set by the system property
+   * {@link #QUEUE_SIZE_PROPERTY_NAME}.
+   *
+   * @param file
+   *          the file, not null
+   * @throws IOException
+   *           if the file cannot be created
+   */
+  public CallRecorder(final File file) throws IOException {
+    this(file, Integer.getInteger(QUEUE_SIZE_PROPERTY_NAME, DEFAULT_QUEUE_SIZE));
+  }
+
+  /**
+   * Creates a recorder, replacing the file if it exists.
+   *
+   * @param file
+   *          the file, not null
+   * @param queueSize
+   *          the maximum number of calls waiting to be written, greater than zero
+   * @throws IOException
+   *           if the file cannot be created
+   */
+  public CallRecorder(final File file, final int queueSize) throws IOException {
+    _file = ArgumentChecker.notNull(file, "file");
+    ArgumentChecker.isTrue(queueSize > 0, "queueSize must be greater than zero");
+    _queue = new ArrayBlockingQueue<>(queueSize);
+    _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    _out.writeLong(MAGIC);
+    _out.writeInt(VERSION);
+    _out.writeLong(System.currentTimeMillis());
+    _start = System.nanoTime();
+    _writer = new Thread("xl4j-call-recorder") {
+      @Override
+      public void run() {
+        write();
+      }
+    };
+    _writer.setDaemon(true);
+    _writer.start();
+    LOGGER.info("Recording calls to {}", file);
+  }
+
+  /**
+   * @return the file that calls are recorded to
+   */
+  public File getFile() {
+    return _file;
+  }
+
+  /**
+   * @return the number of calls written, which does not include calls that are still waiting to be written
+   */
+  public long getCalls() {
+    return _calls;
+  }
+
+  /**
+   * @return the number of calls that were not recorded because the queue was full
+   */
+  public long getDropped() {
+    return _dropped.get();
+  }
+
+  /**
+   * Tests whether the name of a function has been given.
+   *
+   * @param exportNumber
+   *          the export number
+   * @return true if the name has been given, or the export number cannot be recorded
+   */
+  public boolean isDefined(final int exportNumber) {
+    final String[] names = _names;
+    return exportNumber < 0 || exportNumber < names.length && names[exportNumber] != null;
+  }
+
+  /**
+   * Gives the name of a function, if it has not already been given. The name is written before the first call to the function.
+   *
+   * @param exportNumber
+   *          the export number
+   * @param functionName
+   *          the worksheet name of the function, not null
+   */
+  public synchronized void define(final int exportNumber, final String functionName) {
+    ArgumentChecker.notNull(functionName, "functionName");
+    if (isDefined(exportNumber)) {
+      return;
+    }
+    final String[] names = Arrays.copyOf(_names, Math.max(_names.length, exportNumber + 1));
+    names[exportNumber] = functionName;
+    _names = names;
+  }
+
+  /**
+   * Queues a call to be written. If the queue is full, the call is dropped.
+   *
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the arguments, not null
+   * @param result
+   *          the result, not null
+   * @param nanos
+   *          the time taken by the call in nanoseconds
+   */
+  public void record(final int exportNumber, final XLValue[] args, final XLValue result, final long nanos) {
+    if (_closed || _failed) {
+      return;
+    }
+    final long offset = System.nanoTime() - _start - nanos;
+    // the values are immutable, but the caller could reuse the array
+    if (!_queue.offer(new Call(exportNumber, args.clone(), result, offset, nanos)) && _dropped.getAndIncrement() == 0) {
+      LOGGER.warn("Call log queue is full, calls will be dropped until it drains");
+    }
+  }
+
+  /**
+   * Writes the calls that were queued before this method was called to the file, waiting until they have been written.
+   */
+  public synchronized void flush() {
+    if (_closed) {
+      return;
+    }
+    await(new Request(false));
+  }
+
+  /**
+   * Writes the calls that were queued before this method was called, closes the file and stops the writer thread.
+   */
+  @Override
+  public synchronized void close() {
+    if (_closed) {
+      return;
+    }
+    _closed = true;
+    await(new Request(true));
+    LOGGER.info("Recorded {} calls to {}, dropped {}", _calls, _file, _dropped.get());
+  }
+
+  private void await(final Request request) {
+    try {
+      // the writer thread stops early if it is interrupted
+      while (!_queue.offer(request, 100, TimeUnit.MILLISECONDS)) {
+        if (!_writer.isAlive()) {
+          return;
+        }
+      }
+      while (!request._done.await(100, TimeUnit.MILLISECONDS)) {
+        if (!_writer.isAlive()) {
+          return;
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while waiting for calls to be written to {}", _file);
+    }
+  }
+
+  /**
+   * Writes the queue to the file until the recorder is closed. Runs on the writer thread.
+   */
+  private void write() {
+    while (true) {
+      final Object entry;
+      try {
+        entry = _queue.take();
+      } catch (final InterruptedException e) {
+        LOGGER.warn("Call recorder interrupted, no more calls will be recorded to {}", _file);
+        fail(null);
+        return;
+      }
+      if (entry instanceof Call) {
+        write((Call) entry);
+        continue;
+      }
+      final Request request = (Request) entry;
+      try {
+        if (request._close) {
+          if (!_failed) {
+            try {
+              _out.close();
+            } catch (final IOException e) {
+              LOGGER.error("Could not close call log " + _file, e);
+            }
+          }
+          return;
+        }
+        if (!_failed) {
+          try {
+            _out.flush();
+          } catch (final IOException e) {
+            fail(e);
+          }
+        }
+      } finally {
+        request._done.countDown();
+      }
+    }
+  }
+
+  private void write(final Call call) {
+    if (_failed) {
+      return;
+    }
+    final int exportNumber = call._exportNumber;
+    try {
+      if (exportNumber >= 0 && !_written.get(exportNumber)) {
+        final String[] names = _names;
+        if (exportNumber < names.length && names[exportNumber] != null) {
+          _out.writeByte(FUNCTION_RECORD);
+          _out.writeInt(exportNumber);
+          writeString(names[exportNumber]);
+          _written.set(exportNumber);
+        }
+      }
+      _out.writeByte(CALL_RECORD);
+      _out.writeLong(call._offset);
+      _out.writeInt(exportNumber);
+      _out.writeLong(call._nanos);
+      _out.writeInt(call._args.length);
+      for (final XLValue arg : call._args) {
+        writeValue(arg);
+      }
+      writeResult(call._result);
+      _calls++;
+    } catch (final IOException e) {
+      fail(e);
+    }
+  }
+
+  private void fail(final IOException e) {
+    if (e != null) {
+      LOGGER.error("Could not write to call log " + _file + ", no more calls will be recorded", e);
+    }
+    _failed = true;
+    try {
+      _out.close();
+    } catch (final IOException ioe) {
+      // already reported
+    }
+  }
+
+  private void writeResult(final XLValue result) throws IOException {
+    final byte type = getType(result);
+    _out.writeByte(type);
+    if (type == OBJECT) {
+      final XLObject object = result instanceof XLObject ? (XLObject) result : ((XLString) result).toXLObject();
+      writeString(object.getClazz());
+      _out.writeLong(object.getHandle());
+    } else if (type == ERROR) {
+      _out.writeByte(getErrorCode((XLError) result));
+    }
+  }
+
+  private void writeValue(final XLValue value) throws IOException {
+    final byte type = getType(value);
+    if (type == OBJECT && value instanceof XLString) {
+      // handles passed as strings are kept as strings, so that they are passed in the same way when replayed
+      _out.writeByte(STRING);
+      writeString(((XLString) value).getValue());
+      return;
+    }
+    _out.writeByte(type);
+    switch (type) {
+      case NUMBER:
+        _out.writeDouble(((XLNumber) value).getValue());
+        return;
+      case STRING:
+        writeString(((XLString) value).getValue());
+        return;
+      case BOOLEAN:
+        _out.writeBoolean(((XLBoolean) value).getValue());
+        return;
+      case INTEGER:
+        _out.writeInt(((XLInteger) value).getValue());
+        return;
+      case ERROR:
+        _out.writeByte(getErrorCode((XLError) value));
+        return;
+      case OBJECT:
+        writeString(((XLObject) value).getClazz());
+        _out.writeLong(((XLObject) value).getHandle());
+        return;
+      case NUMERIC_ARRAY:
+        final XLArray numbers = (XLArray) value;
+        _out.writeInt(numbers.getRows());
+        _out.writeInt(numbers.getColumns());
+        for (final double number : numbers.getNumbers()) {
+          _out.writeDouble(number);
+        }
+        return;
+      case ARRAY:
+        final XLArray array = (XLArray) value;
+        _out.writeInt(array.getRows());
+        _out.writeInt(array.getColumns());
+        for (final XLValue[] row : array.getArray()) {
+          for (final XLValue element : row) {
+            writeValue(element);
+          }
+        }
+        return;
+      case BIG_DATA:
+        final byte[] buffer = ((XLBigData) value).getBuffer();
+        _out.writeInt(buffer.length);
+        _out.write(buffer);
+        return;
+      case LOCAL_REFERENCE:
+        writeRange(((XLLocalReference) value).getRange());
+        return;
+      case MULTI_REFERENCE:
+        final XLMultiReference reference = (XLMultiReference) value;
+        _out.writeInt(reference.getSheetId().getSheetId());
+        final List<XLRange> ranges = reference.getRanges();
+        _out.writeInt(ranges.size());
+        for (final XLRange range : ranges) {
+          writeRange(range);
+        }
+        return;
+      case UNKNOWN:
+        writeString(value.getClass().getName());
+        return;
+      default:
+        return;
+    }
+  }
+
+  private void writeRange(final XLRange range) throws IOException {
+    _out.writeInt(range.getRowFirst());
+    _out.writeInt(range.getRowLast());
+    _out.writeInt(range.getColumnFirst());
+    _out.writeInt(range.getColumnLast());
+  }
+
+  private void writeString(final String value) throws IOException {
+    // not writeUTF(), which is limited to 64K bytes
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    _out.writeInt(bytes.length);
+    _out.write(bytes);
+  }
+
+  /**
+   * Gets the type that is written for a value.
+   *
+   * @param value
+   *          the value
+   * @return the type
+   */
+  static byte getType(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return NUMBER;
+    }
+    if (value instanceof XLString) {
+      return ((XLString) value).isXLObject() ? OBJECT : STRING;
+    }
+    if (value instanceof XLObject) {
+      return OBJECT;
+    }
+    if (value instanceof XLArray) {
+      return ((XLArray) value).isNumeric() ? NUMERIC_ARRAY : ARRAY;
+    }
+    if (value instanceof XLBoolean) {
+      return BOOLEAN;
+    }
+    if (value instanceof XLError) {
+      return ERROR;
+    }
+    if (value instanceof XLNil || value == null) {
+      return NIL;
+    }
+    if (value instanceof XLMissing) {
+      return MISSING;
+    }
+    if (value instanceof XLInteger) {
+      return INTEGER;
+    }
+    if (value instanceof XLBigData) {
+      return BIG_DATA;
+    }
+    if (value instanceof XLLocalReference) {
+      return LOCAL_REFERENCE;
+    }
+    if (value instanceof XLMultiReference) {
+      return MULTI_REFERENCE;
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Gets the class of values of a type.
+   *
+   * @param type
+   *          the type
+   * @return the class
+   */
+  static Class<? extends XLValue> getValueClass(final byte type) {
+    switch (type) {
+      case NIL:
+        return XLNil.class;
+      case MISSING:
+        return XLMissing.class;
+      case NUMBER:
+        return XLNumber.class;
+      case STRING:
+        return XLString.class;
+      case BOOLEAN:
+        return XLBoolean.class;
+      case INTEGER:
+        return XLInteger.class;
+      case ERROR:
+        return XLError.class;
+      case OBJECT:
+        return XLObject.class;
+      case ARRAY:
+      case NUMERIC_ARRAY:
+        return XLArray.class;
+      case BIG_DATA:
+        return XLBigData.class;
+      case LOCAL_REFERENCE:
+        return XLLocalReference.class;
+      case MULTI_REFERENCE:
+        return XLMultiReference.class;
+      case UNKNOWN:
+        return XLValue.class;
+      default:
+        throw new XL4JRuntimeException("Unknown value type " + type);
+    }
+  }
+
+  /**
+   * A call waiting to be written.
+   */
+  /**
+   * Gets the code written for an error, which is the Excel error number (e.g. <code>xlerrDiv0</code>) so that logs do not depend
+   * on the order of {@link XLError}.
+   *
+   * @param error
+   *          the error
+   * @return the code
+   */
+  static byte getErrorCode(final XLError error) {
+    switch (error) {
+      case Null:
+        return 0;
+      case Div0:
+        return 7;
+      case Value:
+        return 15;
+      case Ref:
+        return 23;
+      case Name:
+        return 29;
+      case Num:
+        return 36;
+      case NA:
+        return 42;
+      default:
+        throw new XL4JRuntimeException("Unhandled error " + error);
+    }
+  }
+
+  /**
+   * Gets the error for a code written by {@link #getErrorCode(XLError)}.
+   *
+   * @param code
+   *          the code
+   * @return the error
+   * @throws XL4JRuntimeException
+   *           if the code is not an Excel error number
+   */
+  static XLError getError(final byte code) {
+    switch (code) {
+      case 0:
+        return XLError.Null;
+      case 7:
+        return XLError.Div0;
+      case 15:
+        return XLError.Value;
+      case 23:
+        return XLError.Ref;
+      case 29:
+        return XLError.Name;
+      case 36:
+        return XLError.Num;
+      case 42:
+        return XLError.NA;
+      default:
+        throw new XL4JRuntimeException("Unknown error code " + code);
+    }
+  }
+
+  /**
+   * Holds the recorder named by the system property, which is created when the holder is first used.
+   */
+  private static final class SystemPropertyHolder {
+    private static final CallRecorder RECORDER = createFromSystemProperty();
+  }
+
+  private static final class Call {
+    private final int _exportNumber;
+    private final XLValue[] _args;
+    private final XLValue _result;
+    private final long _offset;
+    private final long _nanos;
+
+    Call(final int exportNumber, final XLValue[] args, final XLValue result, final long offset, final long nanos) {
+      _exportNumber = exportNumber;
+      _args = args;
+      _result = result;
+      _offset = offset;
+      _nanos = nanos;
+    }
+  }
+
+  /**
+   * A request to flush or close the file once the calls queued before it have been written.
+   */
+  private static final class Request {
+    private final boolean _close;
+    private final CountDownLatch _done = new CountDownLatch(1);
+
+    Request(final boolean close) {
+      _close = close;
+    }
+  }
+}
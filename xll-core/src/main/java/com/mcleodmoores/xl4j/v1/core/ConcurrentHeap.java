@@ -22,7 +22,9 @@ import com.mcleodmoores.xl4j.v1.util.ConcurrentIdentityHashMap;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
- * Class to store objects and allocate handles for objects.
+ * Class to store objects and allocate handles for objects. Garbage collection scans the entire heap and is not
+ * check-pointed, so sheet operations should be frozen while it runs (#44); {@link ShardedHeap} can be collected
+ * incrementally.
  */
 public class ConcurrentHeap implements Heap {
   private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentHeap.class);
@@ -36,7 +38,6 @@ public class ConcurrentHeap implements Heap {
   private final AtomicLong _sequence;
   private long _snapHandle;
 
-  // TODO: Need some sort of check-pointing as current GC won't work without freezing sheet operations. #44
   /**
    * Construct a heap.
    */
@@ -44,8 +45,16 @@ public class ConcurrentHeap implements Heap {
     _handleToObj = new ConcurrentHashMap<>();
     _objToHandle = new ConcurrentIdentityHashMap<>();
     _handleToCollectCount = new ConcurrentHashMap<>();
-    // we try and create the handle counter by combining the local MAC, the time and the sheet id.
-    // this should minimize the possibility of stale handles in sheets being interpreted as valid.
+    _sequence = new AtomicLong(createBaseHandle());
+  }
+
+  /**
+   * Creates the first handle for a heap by combining the local MAC address and the time. This should minimize the
+   * possibility of stale handles in sheets being interpreted as valid.
+   *
+   * @return the first handle
+   */
+  static long createBaseHandle() {
     long baseHandle;
     Enumeration<NetworkInterface> networkInterfaces;
     try {
@@ -69,7 +78,7 @@ public class ConcurrentHeap implements Heap {
       baseHandle = new SecureRandom().nextLong();
     }
     baseHandle += System.currentTimeMillis() / MILLIS_PER_SECOND; // we only need seconds.
-    _sequence = new AtomicLong(baseHandle);
+    return baseHandle;
   }
 
   /* (non-Javadoc)
@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Calls a constructor.
+ */
+final class ConstructorCallPlan extends CallPlan {
+  private final ConstructorInvoker _constructorInvoker;
+
+  ConstructorCallPlan(final ConstructorInvoker constructorInvoker) {
+    _constructorInvoker = constructorInvoker;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    resolveObjects(args);
+    return _constructorInvoker.newInstance(args);
+  }
+}
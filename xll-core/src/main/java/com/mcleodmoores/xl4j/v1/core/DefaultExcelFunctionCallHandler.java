@@ -3,16 +3,28 @@
  */
 package com.mcleodmoores.xl4j.v1.core;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions;
+import com.mcleodmoores.xl4j.v1.api.core.BatchExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
-import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.api.core.EvictingHeap;
 import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
 import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
 import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
 import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.core.LineageHeap;
+import com.mcleodmoores.xl4j.v1.api.core.LineageListener;
 import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
 import com.mcleodmoores.xl4j.v1.api.values.XLError;
 import com.mcleodmoores.xl4j.v1.api.values.XLObject;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
@@ -22,14 +34,64 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * The default Excel call handler for functions.
+ * <p>
+ * The first time a function is called, its definition is resolved into a call plan that is specialised for the call target
+ * (static or instance method, constructor, static or instance field). Later calls go straight to the plan without logging or
+ * copying the arguments. In both cases, arguments that are object handles passed as strings are converted to object handles.
+ * <p>
+ * Per-call tracing is switched on by setting the system property <code>xl4j.trace</code> to <code>true</code> in the add-in's
+ * JVM options or by calling {@link #setTracing(boolean)}. When tracing, every call is logged at INFO level and the plans are
+ * not used.
+ * <p>
+ * The time taken, errors and number of cells converted are recorded for each call in {@link FunctionStatistics}. If there is
+ * a {@link CallRecorder}, which is set by {@link #setCallRecorder(CallRecorder)}, every call is also written to a log that can be
+ * replayed in the simulator. The Excel implementations set the recorder from {@link CallRecorder#fromSystemProperty()}, which is
+ * shared by every handler.
+ * <p>
+ * The results of non-volatile functions that are marked as cacheable are stored in a {@link ResultCache} and returned for later
+ * calls with the same arguments. Concurrent calls with the same arguments to functions that are marked as single-flight are
+ * collapsed into one call by {@link SingleFlight}. If the heap is an {@link EvictingHeap}, the objects returned by these cacheable
+ * functions are marked as recomputable, so the heap can remove them to free memory. Calls that fail because an object they
+ * refer to has been removed return <code>#REF!</code>.
+ * <p>
+ * If the heap is a {@link LineageHeap}, each object that is returned is recorded as produced from the objects in the arguments.
+ * The cached results that depend on an object and the objects produced from it can be found with
+ * {@link #getDependentResults(long)} and removed with {@link #invalidate(long)}. If the handler is added to the heap as a
+ * {@link LineageListener}, they are also removed when the heap collects the object.
+ * <p>
+ * A block of calls to the same function can be made with {@link #invokeBatch(int, XLValue[][])}, which resolves the call plan once
+ * for all rows. If the function is thread-safe and there are at least <code>xl4j.batch.parallelThreshold</code> rows (default 256),
+ * the rows are split between the threads of a fork-join pool.
  */
-public class DefaultExcelFunctionCallHandler implements ExcelFunctionCallHandler {
+public class DefaultExcelFunctionCallHandler implements BatchExcelFunctionCallHandler, LineageListener {
+  /** The system property used to switch on per-call tracing */
+  public static final String TRACE_PROPERTY_NAME = "xl4j.trace";
+  /** The system property used to set the number of rows in a batch above which thread-safe functions are called in parallel */
+  public static final String PARALLEL_THRESHOLD_PROPERTY_NAME = "xl4j.batch.parallelThreshold";
+  /** The default number of rows in a batch above which thread-safe functions are called in parallel */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+  /** The number of rows that a parallel batch task calls without splitting further */
+  private static final int BATCH_GRAIN = 64;
   /** The logger */
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultExcelFunctionCallHandler.class);
   /** The registry */
   private final FunctionRegistry _functionRegistry;
   /** The heap */
   private final Heap _heap;
+  /** The per-function statistics */
+  private final FunctionStatistics _functionStatistics;
+  /** The cache of results for cacheable functions */
+  private final ResultCache _resultCache;
+  /** Collapses concurrent identical calls to single-flight functions */
+  private final SingleFlight _singleFlight = new SingleFlight();
+  /** The call plans, indexed by export number */
+  private volatile CallPlan[] _callPlans = new CallPlan[0];
+  /** True if every call is traced */
+  private volatile boolean _tracing = Boolean.getBoolean(TRACE_PROPERTY_NAME);
+  /** Writes every call to a log, or null if calls are not recorded */
+  private volatile CallRecorder _callRecorder;
+  /** The number of rows in a batch above which thread-safe functions are called in parallel, or zero to never call in parallel */
+  private volatile int _parallelThreshold = Math.max(0, Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY_NAME, DEFAULT_PARALLEL_THRESHOLD));
 
   /**
    * Create a default call handler.
@@ -40,13 +102,500 @@ public class DefaultExcelFunctionCallHandler implements ExcelFunctionCallHandler
    *          the heap, not null
    */
   public DefaultExcelFunctionCallHandler(final FunctionRegistry functionRegistry, final Heap heap) {
+    this(functionRegistry, heap, new ResultCache());
+  }
+
+  /**
+   * Create a call handler with a result cache.
+   *
+   * @param functionRegistry
+   *          the function registry, not null
+   * @param heap
+   *          the heap, not null
+   * @param resultCache
+   *          the cache used for the results of cacheable functions, not null
+   */
+  public DefaultExcelFunctionCallHandler(final FunctionRegistry functionRegistry, final Heap heap, final ResultCache resultCache) {
     _functionRegistry = ArgumentChecker.notNull(functionRegistry, "functionRegistry");
     _heap = ArgumentChecker.notNull(heap, "heap");
+    _resultCache = ArgumentChecker.notNull(resultCache, "resultCache");
+    _functionStatistics = new FunctionStatistics(functionRegistry);
+  }
+
+  /**
+   * @return the statistics for the functions called through this handler
+   */
+  public FunctionStatistics getFunctionStatistics() {
+    return _functionStatistics;
+  }
+
+  /**
+   * @return the cache of results for cacheable functions
+   */
+  public ResultCache getResultCache() {
+    return _resultCache;
+  }
+
+  /**
+   * @return the single-flight layer for functions whose concurrent identical calls are collapsed
+   */
+  public SingleFlight getSingleFlight() {
+    return _singleFlight;
+  }
+
+  /**
+   * Counts the cached results that depend on an object, either directly or through objects that were produced from it.
+   *
+   * @param handle
+   *          the handle of the object
+   * @return the number of cached results
+   */
+  public long getDependentResults(final long handle) {
+    return _resultCache.countDependents(getLineage(handle));
+  }
+
+  /**
+   * Removes the cached results that depend on an object, either directly or through objects that were produced from it, so that
+   * they are recalculated the next time they are called.
+   *
+   * @param handle
+   *          the handle of the object
+   * @return the number of cached results removed
+   */
+  public long invalidate(final long handle) {
+    final long invalidated = _resultCache.invalidate(getLineage(handle));
+    LOGGER.debug("Invalidated {} cached results that depend on {}", invalidated, handle);
+    return invalidated;
+  }
+
+  /**
+   * Removes the cached results that depend on objects that have been removed from the heap or on the objects produced from
+   * them.
+   *
+   * @param handles
+   *          the handles of the removed objects and their descendants
+   */
+  @Override
+  public void lineageRemoved(final long[] handles) {
+    final Set<Long> lineage = new HashSet<>();
+    for (final long handle : handles) {
+      lineage.add(handle);
+    }
+    final long invalidated = _resultCache.invalidate(lineage);
+    LOGGER.debug("Invalidated {} cached results that depend on {} removed objects", invalidated, lineage.size());
+  }
+
+  /**
+   * Gets an object and the objects produced from it.
+   *
+   * @param handle
+   *          the handle of the object
+   * @return the handles
+   */
+  private Set<Long> getLineage(final long handle) {
+    final Set<Long> handles = new HashSet<>();
+    handles.add(handle);
+    if (_heap instanceof LineageHeap) {
+      for (final long descendant : ((LineageHeap) _heap).getDescendants(handle)) {
+        handles.add(descendant);
+      }
+    }
+    return handles;
+  }
+
+  /**
+   * Switches per-call tracing on or off.
+   *
+   * @param tracing
+   *          true to log every call
+   */
+  public void setTracing(final boolean tracing) {
+    _tracing = tracing;
+  }
+
+  /**
+   * @return true if every call is logged
+   */
+  public boolean isTracing() {
+    return _tracing;
+  }
+
+  /**
+   * Sets the recorder that every call is written to.
+   *
+   * @param callRecorder
+   *          the recorder, or null to stop recording. The previous recorder is not closed
+   */
+  public void setCallRecorder(final CallRecorder callRecorder) {
+    _callRecorder = callRecorder;
+  }
+
+  /**
+   * @return the recorder that every call is written to, or null if calls are not recorded
+   */
+  public CallRecorder getCallRecorder() {
+    return _callRecorder;
+  }
+
+  /**
+   * Sets the number of rows in a batch above which thread-safe functions are called in parallel.
+   *
+   * @param parallelThreshold
+   *          the number of rows, or zero to always call the rows on the calling thread
+   */
+  public void setParallelThreshold(final int parallelThreshold) {
+    ArgumentChecker.notNegative(parallelThreshold, "parallelThreshold");
+    _parallelThreshold = parallelThreshold;
+  }
+
+  /**
+   * @return the number of rows in a batch above which thread-safe functions are called in parallel, or zero if they never are
+   */
+  public int getParallelThreshold() {
+    return _parallelThreshold;
   }
 
   @Override
   public XLValue invoke(final int exportNumber, final XLValue... args) {
     ArgumentChecker.notNull(args, "args");
+    final boolean statistics = _functionStatistics.isEnabled();
+    final CallRecorder callRecorder = _callRecorder;
+    if (!statistics && callRecorder == null) {
+      return doInvoke(exportNumber, args);
+    }
+    // handles passed as strings are replaced in the arguments during the call, so record them as they were passed
+    final XLValue[] recordedArgs = callRecorder == null ? null : args.clone();
+    final long start = System.nanoTime();
+    final XLValue result = doInvoke(exportNumber, args);
+    final long nanos = System.nanoTime() - start;
+    if (statistics) {
+      _functionStatistics.record(exportNumber, nanos, result instanceof XLError, getCells(args) + getCells(result));
+    }
+    if (callRecorder != null) {
+      record(callRecorder, exportNumber, recordedArgs, result, nanos);
+    }
+    return result;
+  }
+
+  @Override
+  public XLValue[] invokeBatch(final int exportNumber, final XLValue[][] args) {
+    ArgumentChecker.notNull(args, "args");
+    final XLValue[] results = new XLValue[args.length];
+    if (_tracing) {
+      for (int i = 0; i < args.length; i++) {
+        results[i] = invoke(exportNumber, args[i]);
+      }
+      return results;
+    }
+    final CallPlan callPlan;
+    try {
+      callPlan = getCallPlan(exportNumber);
+    } catch (final Exception e) {
+      LOGGER.info("Exception occurred while resolving function, returning XLError", e);
+      Arrays.fill(results, XLError.Null);
+      return results;
+    }
+    if (callPlan == null) {
+      LOGGER.error("Could not get function definition with export number {}", exportNumber);
+      Arrays.fill(results, XLError.Null);
+      return results;
+    }
+    final int parallelThreshold = _parallelThreshold;
+    if (parallelThreshold > 0 && args.length >= parallelThreshold
+        && isMultiThreadSafe(_functionRegistry.getFunctionDefinition(exportNumber))) {
+      BatchPool.INSTANCE.invoke(new BatchTask(callPlan, exportNumber, args, results, 0, args.length));
+    } else {
+      invokeRows(callPlan, exportNumber, args, results, 0, args.length);
+    }
+    return results;
+  }
+
+  /**
+   * Calls a function for a range of rows of arguments.
+   *
+   * @param callPlan
+   *          the call plan
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the rows of arguments
+   * @param results
+   *          the results, one per row
+   * @param from
+   *          the first row, inclusive
+   * @param to
+   *          the last row, exclusive
+   */
+  private void invokeRows(final CallPlan callPlan, final int exportNumber, final XLValue[][] args, final XLValue[] results,
+      final int from, final int to) {
+    final boolean statistics = _functionStatistics.isEnabled();
+    final CallRecorder callRecorder = _callRecorder;
+    for (int i = from; i < to; i++) {
+      final XLValue[] row = args[i];
+      if (row == null) {
+        results[i] = XLError.Null;
+        continue;
+      }
+      if (!statistics && callRecorder == null) {
+        results[i] = call(callPlan, row);
+        continue;
+      }
+      final XLValue[] recordedArgs = callRecorder == null ? null : row.clone();
+      final long start = System.nanoTime();
+      final XLValue result = call(callPlan, row);
+      final long nanos = System.nanoTime() - start;
+      if (statistics) {
+        _functionStatistics.record(exportNumber, nanos, result instanceof XLError, getCells(row) + getCells(result));
+      }
+      if (callRecorder != null) {
+        record(callRecorder, exportNumber, recordedArgs, result, nanos);
+      }
+      results[i] = result;
+    }
+  }
+
+  /**
+   * Writes a call to the recorder, writing the name of the function first if this is the first time it has been called.
+   *
+   * @param callRecorder
+   *          the recorder
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the arguments
+   * @param result
+   *          the result
+   * @param nanos
+   *          the time taken by the call in nanoseconds
+   */
+  private void record(final CallRecorder callRecorder, final int exportNumber, final XLValue[] args, final XLValue result,
+      final long nanos) {
+    if (!callRecorder.isDefined(exportNumber)) {
+      String functionName = "";
+      try {
+        final FunctionDefinition functionDefinition = _functionRegistry.getFunctionDefinition(exportNumber);
+        if (functionDefinition != null) {
+          functionName = functionDefinition.getFunctionMetadata().getName();
+        }
+      } catch (final XL4JRuntimeException e) {
+        LOGGER.debug("Could not get function definition with export number {} to record", exportNumber);
+      }
+      callRecorder.define(exportNumber, functionName);
+    }
+    callRecorder.record(exportNumber, args, result, nanos);
+  }
+
+  /**
+   * Counts the cells in the arguments.
+   *
+   * @param args
+   *          the arguments
+   * @return the number of cells
+   */
+  private static long getCells(final XLValue[] args) {
+    long cells = 0;
+    for (final XLValue arg : args) {
+      cells += getCells(arg);
+    }
+    return cells;
+  }
+
+  /**
+   * Counts the cells in a value, where an array counts as its number of cells and anything else as one.
+   *
+   * @param value
+   *          the value
+   * @return the number of cells
+   */
+  private static long getCells(final XLValue value) {
+    if (value instanceof XLArray) {
+      final XLArray array = (XLArray) value;
+      return (long) array.getRows() * array.getColumns();
+    }
+    return 1;
+  }
+
+  /**
+   * Invokes a function.
+   *
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the arguments
+   * @return the result
+   */
+  private XLValue doInvoke(final int exportNumber, final XLValue[] args) {
+    if (_tracing) {
+      return traceInvoke(exportNumber, args);
+    }
+    try {
+      final CallPlan callPlan = getCallPlan(exportNumber);
+      if (callPlan == null) {
+        LOGGER.error("Could not get function definition with export number {}", exportNumber);
+        return XLError.Null;
+      }
+      return call(callPlan, args);
+    } catch (final Exception e) {
+      return toError(e);
+    }
+  }
+
+  /**
+   * Calls a function using its call plan.
+   *
+   * @param callPlan
+   *          the call plan
+   * @param args
+   *          the arguments
+   * @return the result, or an error if the call threw an exception
+   */
+  private XLValue call(final CallPlan callPlan, final XLValue[] args) {
+    try {
+      return callPlan.call(_heap, args);
+    } catch (final Exception e) {
+      return toError(e);
+    }
+  }
+
+  /**
+   * Converts an exception thrown by a call into an error.
+   *
+   * @param e
+   *          the exception
+   * @return <code>#REF!</code> if the call failed because an object has been evicted from the heap, <code>#NULL!</code> otherwise
+   */
+  private static XLValue toError(final Exception e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof EvictedObjectException) {
+        LOGGER.info("Object with handle {} was evicted, returning XLError.Ref", ((EvictedObjectException) cause).getHandle());
+        return XLError.Ref;
+      }
+    }
+    LOGGER.info("Exception occurred while invoking method, returning XLError", e);
+    return XLError.Null;
+  }
+
+  /**
+   * Gets the call plan for a function, creating it if this is the first call.
+   *
+   * @param exportNumber
+   *          the export number
+   * @return the call plan, or null if there is no function with this export number
+   */
+  private CallPlan getCallPlan(final int exportNumber) {
+    final CallPlan[] callPlans = _callPlans;
+    if (exportNumber >= 0 && exportNumber < callPlans.length) {
+      final CallPlan callPlan = callPlans[exportNumber];
+      if (callPlan != null) {
+        return callPlan;
+      }
+    }
+    final FunctionDefinition functionDefinition = _functionRegistry.getFunctionDefinition(exportNumber);
+    if (functionDefinition == null) {
+      return null;
+    }
+    CallPlan callPlan = CallPlan.of(functionDefinition);
+    final boolean cacheable = isCacheable(functionDefinition);
+    if (cacheable && _heap instanceof EvictingHeap) {
+      callPlan = new RecomputableCallPlan(callPlan);
+    }
+    if (isSingleFlight(functionDefinition)) {
+      callPlan = new SingleFlightCallPlan(callPlan, _singleFlight, exportNumber);
+    }
+    if (cacheable) {
+      callPlan = new CachingCallPlan(callPlan, _resultCache, exportNumber);
+    }
+    if (_heap instanceof LineageHeap) {
+      // outside the cache, so that results from the cache are recorded under the handle they are given
+      callPlan = new LineageCallPlan(callPlan);
+    }
+    if (exportNumber >= 0) {
+      synchronized (this) {
+        // copy on write, as plans are only added the first time each function is called
+        final CallPlan[] newCallPlans = Arrays.copyOf(_callPlans, Math.max(_callPlans.length, exportNumber + 1));
+        newCallPlans[exportNumber] = callPlan;
+        _callPlans = newCallPlans;
+      }
+    }
+    return callPlan;
+  }
+
+  /**
+   * Tests whether the results of a function can be cached. Volatile functions are never cached.
+   *
+   * @param functionDefinition
+   *          the function definition
+   * @return true if the results can be cached
+   */
+  private static boolean isCacheable(final FunctionDefinition functionDefinition) {
+    final FunctionMetadata functionMetadata = functionDefinition.getFunctionMetadata();
+    final XLFunction functionSpec = functionMetadata.getFunctionSpec();
+    if (functionSpec != null) {
+      if (functionSpec.isCacheable() && functionSpec.isVolatile()) {
+        LOGGER.warn("Function {} is volatile, so its results will not be cached", functionMetadata.getName());
+      }
+      return functionSpec.isCacheable() && !functionSpec.isVolatile();
+    }
+    final XLFunctions functionsSpec = functionMetadata.getFunctionsSpec();
+    if (functionsSpec != null) {
+      if (functionsSpec.isCacheable() && functionsSpec.isVolatile()) {
+        LOGGER.warn("Function {} is volatile, so its results will not be cached", functionMetadata.getName());
+      }
+      return functionsSpec.isCacheable() && !functionsSpec.isVolatile();
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether concurrent identical calls to a function should be collapsed into one call.
+   *
+   * @param functionDefinition
+   *          the function definition
+   * @return true if the function is single-flight
+   */
+  private static boolean isSingleFlight(final FunctionDefinition functionDefinition) {
+    final FunctionMetadata functionMetadata = functionDefinition.getFunctionMetadata();
+    final XLFunction functionSpec = functionMetadata.getFunctionSpec();
+    if (functionSpec != null) {
+      return functionSpec.isSingleFlight();
+    }
+    final XLFunctions functionsSpec = functionMetadata.getFunctionsSpec();
+    if (functionsSpec != null) {
+      return functionsSpec.isSingleFlight();
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether a function can be called from more than one thread at once.
+   *
+   * @param functionDefinition
+   *          the function definition
+   * @return true if the function is thread-safe
+   */
+  private static boolean isMultiThreadSafe(final FunctionDefinition functionDefinition) {
+    final FunctionMetadata functionMetadata = functionDefinition.getFunctionMetadata();
+    final XLFunction functionSpec = functionMetadata.getFunctionSpec();
+    if (functionSpec != null) {
+      return functionSpec.isMultiThreadSafe();
+    }
+    final XLFunctions functionsSpec = functionMetadata.getFunctionsSpec();
+    if (functionsSpec != null) {
+      return functionsSpec.isMultiThreadSafe();
+    }
+    return false;
+  }
+
+  /**
+   * Invokes a function, logging each step.
+   *
+   * @param exportNumber
+   *          the export number
+   * @param args
+   *          the arguments
+   * @return the result
+   */
+  private XLValue traceInvoke(final int exportNumber, final XLValue[] args) {
     LOGGER.info("invoke called with {}", exportNumber);
     for (int i = 0; i < args.length; i++) {
       LOGGER.info("arg = {}", args[i]);
@@ -76,7 +625,7 @@ public class DefaultExcelFunctionCallHandler implements ExcelFunctionCallHandler
           final XLObject object;
           try {
             object = (XLObject) args[0];
-          } catch (ClassCastException cce) {
+          } catch (final ClassCastException cce) {
             LOGGER.error("Function's first argument wasn't an object reference.  Perhaps your function should be static?");
             throw cce;
           }
@@ -85,10 +634,8 @@ public class DefaultExcelFunctionCallHandler implements ExcelFunctionCallHandler
             LOGGER.error("Object handle was invalid, returning XLError.Ref");
             return XLError.Ref;
           }
-          final XLValue[] newArgs = new XLValue[args.length - 1];
-          System.arraycopy(args, 1, newArgs, 0, args.length - 1);
-          final XLValue retVal = methodInvoker.invoke(obj, newArgs);
-          LOGGER.trace("Return value from Java to C++ layer is {}", retVal);
+          final XLValue retVal = CallPlan.invokeOnObject(methodInvoker, obj, args);
+          LOGGER.info("Return value from Java to C++ layer is {}", retVal);
           return retVal;
         }
         case CONSTRUCTOR: {
@@ -114,8 +661,49 @@ public class DefaultExcelFunctionCallHandler implements ExcelFunctionCallHandler
           throw new XL4JRuntimeException("Unhandled type " + functionDefinition.getCallTargetForFunction());
       }
     } catch (final Exception e) {
-      LOGGER.info("Exception occurred while invoking method, returning XLError", e);
-      return XLError.Null;
+      return toError(e);
+    }
+  }
+
+  /**
+   * Holds the pool used to call batches in parallel, so that it is only created if needed.
+   */
+  private static final class BatchPool {
+    /** The pool */
+    private static final ForkJoinPool INSTANCE = new ForkJoinPool();
+  }
+
+  /**
+   * Calls a range of rows in a batch, splitting the range between threads until it is small enough.
+   */
+  private final class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final CallPlan _callPlan;
+    private final int _exportNumber;
+    private final XLValue[][] _args;
+    private final XLValue[] _results;
+    private final int _from;
+    private final int _to;
+
+    BatchTask(final CallPlan callPlan, final int exportNumber, final XLValue[][] args, final XLValue[] results, final int from,
+        final int to) {
+      _callPlan = callPlan;
+      _exportNumber = exportNumber;
+      _args = args;
+      _results = results;
+      _from = from;
+      _to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (_to - _from <= BATCH_GRAIN) {
+        invokeRows(_callPlan, _exportNumber, _args, _results, _from, _to);
+        return;
+      }
+      final int mid = (_from + _to) >>> 1;
+      invokeAll(new BatchTask(_callPlan, _exportNumber, _args, _results, _from, mid),
+          new BatchTask(_callPlan, _exportNumber, _args, _results, mid, _to));
     }
   }
 }
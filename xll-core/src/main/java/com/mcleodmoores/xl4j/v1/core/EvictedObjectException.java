@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Thrown when an object is asked for that has been removed from the heap to free memory. Calls that fail because of this return
+ * <code>#REF!</code> rather than <code>#NULL!</code>, so that the cells that need to be recalculated can be seen.
+ */
+public class EvictedObjectException extends XL4JRuntimeException {
+  private static final long serialVersionUID = 1L;
+  private final long _handle;
+
+  /**
+   * @param handle
+   *          the handle of the object that was removed
+   */
+  public EvictedObjectException(final long handle) {
+    super("Object with handle " + handle + " was removed from the heap to free memory and must be recalculated");
+    _handle = handle;
+  }
+
+  /**
+   * @return the handle of the object that was removed
+   */
+  public long getHandle() {
+    return _handle;
+  }
+}
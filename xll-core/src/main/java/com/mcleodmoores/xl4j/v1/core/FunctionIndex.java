@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Reads and writes the function index that is generated at compile time by
+ * {@link com.mcleodmoores.xl4j.v1.processor.FunctionIndexProcessor} and read by {@link IndexedFunctionRegistry}.
+ * <p>
+ * The index is a UTF-8 text file with a header line and one function per line. The fields are separated by tabs, and tabs,
+ * line breaks and backslashes in values are escaped with a backslash. A null value is written as <code>\0</code>. The functions
+ * are in export number order, starting from zero for each index.
+ */
+public final class FunctionIndex {
+  /** The location of the index in a jar or classes directory */
+  public static final String RESOURCE_NAME = "META-INF/xl4j/functions.idx";
+  /** The first line of the index */
+  static final String HEADER = "#xl4j-function-index\t1";
+  /** The number of fields before the argument help */
+  private static final int FIXED_FIELDS = 13;
+  /** The string used for null values */
+  private static final String NULL = "\\0";
+
+  private FunctionIndex() {
+  }
+
+  /**
+   * Writes an index.
+   *
+   * @param writer
+   *          the writer, not null
+   * @param entries
+   *          the entries in export number order, not null
+   * @throws IOException
+   *          if the index cannot be written
+   */
+  public static void write(final Writer writer, final Collection<FunctionIndexEntry> entries) throws IOException {
+    ArgumentChecker.notNull(writer, "writer");
+    ArgumentChecker.notNull(entries, "entries");
+    writer.write(HEADER);
+    writer.write('\n');
+    for (final FunctionIndexEntry entry : entries) {
+      writer.write(toLine(entry));
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Reads an index.
+   *
+   * @param reader
+   *          the reader, not null
+   * @return the entries in export number order
+   * @throws IOException
+   *          if the index cannot be read
+   */
+  public static List<FunctionIndexEntry> read(final Reader reader) throws IOException {
+    ArgumentChecker.notNull(reader, "reader");
+    final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    final String header = lines.readLine();
+    if (!HEADER.equals(header)) {
+      throw new XL4JRuntimeException("Unrecognised function index header " + header);
+    }
+    final List<FunctionIndexEntry> entries = new ArrayList<>();
+    String line;
+    while ((line = lines.readLine()) != null) {
+      if (!line.isEmpty()) {
+        entries.add(fromLine(line));
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Writes an entry as a line, without the line break.
+   *
+   * @param entry
+   *          the entry
+   * @return the line
+   */
+  static String toLine(final FunctionIndexEntry entry) {
+    final StringBuilder line = new StringBuilder();
+    line.append(entry.getMemberType().name()).append('\t')
+      .append(entry.getSource().name()).append('\t')
+      .append(entry.getClassName()).append('\t')
+      .append(entry.getMemberName()).append('\t');
+    final String[] parameterTypes = entry.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        line.append(',');
+      }
+      line.append(parameterTypes[i]);
+    }
+    line.append('\t');
+    appendEscaped(line, entry.getFunctionName());
+    line.append('\t');
+    appendEscaped(line, entry.getSignature());
+    line.append('\t')
+      .append(entry.isVarArgs() ? '1' : '0')
+      .append(entry.isLongRunning() ? '1' : '0')
+      .append(entry.isAutoRTDAsynchronous() ? '1' : '0')
+      .append(entry.isManualAsynchronous() ? '1' : '0')
+      .append(entry.isCallerRequired() ? '1' : '0')
+      .append('\t')
+      .append(entry.getFunctionType());
+    for (final String value : Arrays.asList(entry.getArgumentNames(), entry.getCategory(), entry.getHelpTopic(), entry.getDescription())) {
+      line.append('\t');
+      appendEscaped(line, value);
+    }
+    for (final String help : entry.getArgsHelp()) {
+      line.append('\t');
+      appendEscaped(line, help);
+    }
+    return line.toString();
+  }
+
+  /**
+   * Reads an entry from a line.
+   *
+   * @param line
+   *          the line
+   * @return the entry
+   */
+  static FunctionIndexEntry fromLine(final String line) {
+    final String[] fields = line.split("\t", -1);
+    if (fields.length < FIXED_FIELDS) {
+      throw new XL4JRuntimeException("Function index line has " + fields.length + " fields, expected at least " + FIXED_FIELDS + ": " + line);
+    }
+    final String flags = fields[7];
+    final String[] argsHelp = new String[fields.length - FIXED_FIELDS];
+    for (int i = 0; i < argsHelp.length; i++) {
+      argsHelp[i] = unescape(fields[FIXED_FIELDS + i]);
+    }
+    return FunctionIndexEntry.builder()
+        .member(FunctionIndexEntry.MemberType.valueOf(fields[0]), FunctionIndexEntry.Source.valueOf(fields[1]), fields[2], fields[3],
+            fields[4].isEmpty() ? new String[0] : fields[4].split(","))
+        .function(unescape(fields[5]), unescape(fields[6]), Integer.parseInt(fields[8]))
+        .flags(flags.charAt(0) == '1', flags.charAt(1) == '1', flags.charAt(2) == '1', flags.charAt(3) == '1', flags.charAt(4) == '1')
+        .help(unescape(fields[9]), unescape(fields[10]), unescape(fields[11]), unescape(fields[12]), argsHelp)
+        .build();
+  }
+
+  private static void appendEscaped(final StringBuilder line, final String value) {
+    if (value == null) {
+      line.append(NULL);
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        default:
+          line.append(c);
+      }
+    }
+  }
+
+  private static String unescape(final String value) {
+    if (NULL.equals(value)) {
+      return null;
+    }
+    if (value.indexOf('\\') < 0) {
+      return value;
+    }
+    final StringBuilder result = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        final char next = value.charAt(++i);
+        switch (next) {
+          case 't':
+            result.append('\t');
+            break;
+          case 'n':
+            result.append('\n');
+            break;
+          case 'r':
+            result.append('\r');
+            break;
+          default:
+            result.append(next);
+        }
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+}
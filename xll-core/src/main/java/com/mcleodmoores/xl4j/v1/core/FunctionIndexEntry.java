@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLConstant;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * A function in a {@link FunctionIndex}. This contains everything that is needed to register the function with Excel, and the
+ * class and member that implement it so that the invoker can be created the first time that the function is called.
+ */
+public final class FunctionIndexEntry {
+
+  /**
+   * The kind of member that implements the function.
+   */
+  public enum MemberType {
+    /** A method */
+    METHOD,
+    /** A constructor */
+    CONSTRUCTOR,
+    /** A field */
+    FIELD
+  }
+
+  /**
+   * The annotation that the function was created from.
+   */
+  public enum Source {
+    /** A method or constructor annotated with {@link XLFunction} */
+    FUNCTION,
+    /** A method or constructor of a class annotated with {@link XLFunctions} */
+    FUNCTIONS,
+    /** A field annotated with {@link XLConstant} */
+    CONSTANT_FIELD,
+    /** A public field of a class annotated with {@link XLConstant} */
+    CONSTANT_TYPE
+  }
+
+  private final MemberType _memberType;
+  private final Source _source;
+  private final String _className;
+  private final String _memberName;
+  private final String[] _parameterTypes;
+  private final String _functionName;
+  private final String _signature;
+  private final boolean _isVarArgs;
+  private final boolean _isLongRunning;
+  private final boolean _isAutoRTDAsynchronous;
+  private final boolean _isManualAsynchronous;
+  private final boolean _isCallerRequired;
+  private final String _argumentNames;
+  private final int _functionType;
+  private final String _category;
+  private final String _helpTopic;
+  private final String _description;
+  private final String[] _argsHelp;
+
+  private FunctionIndexEntry(final Builder builder) {
+    _memberType = ArgumentChecker.notNull(builder._memberType, "memberType");
+    _source = ArgumentChecker.notNull(builder._source, "source");
+    _className = ArgumentChecker.notNull(builder._className, "className");
+    _memberName = ArgumentChecker.notNull(builder._memberName, "memberName");
+    _parameterTypes = builder._parameterTypes;
+    _functionName = ArgumentChecker.notNull(builder._functionName, "functionName");
+    _signature = ArgumentChecker.notNull(builder._signature, "signature");
+    _isVarArgs = builder._isVarArgs;
+    _isLongRunning = builder._isLongRunning;
+    _isAutoRTDAsynchronous = builder._isAutoRTDAsynchronous;
+    _isManualAsynchronous = builder._isManualAsynchronous;
+    _isCallerRequired = builder._isCallerRequired;
+    _argumentNames = builder._argumentNames;
+    _functionType = builder._functionType;
+    _category = builder._category;
+    _helpTopic = builder._helpTopic;
+    _description = builder._description;
+    _argsHelp = builder._argsHelp;
+  }
+
+  /**
+   * Gets a builder for an entry.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the kind of member that implements the function
+   */
+  public MemberType getMemberType() {
+    return _memberType;
+  }
+
+  /**
+   * @return the annotation that the function was created from
+   */
+  public Source getSource() {
+    return _source;
+  }
+
+  /**
+   * @return the binary name of the class that was annotated
+   */
+  public String getClassName() {
+    return _className;
+  }
+
+  /**
+   * @return the method or field name, or <code>&lt;init&gt;</code> for a constructor
+   */
+  public String getMemberName() {
+    return _memberName;
+  }
+
+  /**
+   * @return the erased parameter types of a method or constructor, in the form used by {@link Class#getName()}
+   */
+  public String[] getParameterTypes() {
+    return _parameterTypes.clone();
+  }
+
+  /**
+   * @return the worksheet name of the function
+   */
+  public String getFunctionName() {
+    return _functionName;
+  }
+
+  /**
+   * @return the Excel type signature
+   */
+  public String getSignature() {
+    return _signature;
+  }
+
+  /**
+   * @return true if the function takes a variable number of arguments
+   */
+  public boolean isVarArgs() {
+    return _isVarArgs;
+  }
+
+  /**
+   * @return true if the function is long-running
+   */
+  public boolean isLongRunning() {
+    return _isLongRunning;
+  }
+
+  /**
+   * @return true if the function is automatically asynchronous using RTD
+   */
+  public boolean isAutoRTDAsynchronous() {
+    return _isAutoRTDAsynchronous;
+  }
+
+  /**
+   * @return true if the function is manually asynchronous
+   */
+  public boolean isManualAsynchronous() {
+    return _isManualAsynchronous;
+  }
+
+  /**
+   * @return true if the function needs the caller
+   */
+  public boolean isCallerRequired() {
+    return _isCallerRequired;
+  }
+
+  /**
+   * @return the argument names, separated by commas
+   */
+  public String getArgumentNames() {
+    return _argumentNames;
+  }
+
+  /**
+   * @return the Excel function type
+   */
+  public int getFunctionType() {
+    return _functionType;
+  }
+
+  /**
+   * @return the category
+   */
+  public String getCategory() {
+    return _category;
+  }
+
+  /**
+   * @return the help topic, can be null
+   */
+  public String getHelpTopic() {
+    return _helpTopic;
+  }
+
+  /**
+   * @return the description, can be null
+   */
+  public String getDescription() {
+    return _description;
+  }
+
+  /**
+   * @return the help for each argument, elements can be null
+   */
+  public String[] getArgsHelp() {
+    return _argsHelp.clone();
+  }
+
+  @Override
+  public int hashCode() {
+    return _functionName.hashCode() * 31 + _className.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof FunctionIndexEntry)) {
+      return false;
+    }
+    return FunctionIndex.toLine(this).equals(FunctionIndex.toLine((FunctionIndexEntry) obj));
+  }
+
+  @Override
+  public String toString() {
+    return "FunctionIndexEntry[" + _functionName + ", " + _memberType + " " + _className + "." + _memberName + Arrays.toString(_parameterTypes)
+        + ", " + _signature + "]";
+  }
+
+  /**
+   * Builds entries.
+   */
+  public static final class Builder {
+    private MemberType _memberType;
+    private Source _source;
+    private String _className;
+    private String _memberName;
+    private String[] _parameterTypes = new String[0];
+    private String _functionName;
+    private String _signature;
+    private boolean _isVarArgs;
+    private boolean _isLongRunning;
+    private boolean _isAutoRTDAsynchronous;
+    private boolean _isManualAsynchronous;
+    private boolean _isCallerRequired;
+    private String _argumentNames = "";
+    private int _functionType;
+    private String _category;
+    private String _helpTopic;
+    private String _description;
+    private String[] _argsHelp = new String[0];
+
+    Builder() {
+    }
+
+    /**
+     * @param memberType
+     *          the kind of member
+     * @param source
+     *          the annotation that the function was created from
+     * @param className
+     *          the binary name of the annotated class
+     * @param memberName
+     *          the member name
+     * @param parameterTypes
+     *          the erased parameter types
+     * @return this builder
+     */
+    public Builder member(final MemberType memberType, final Source source, final String className, final String memberName,
+        final String... parameterTypes) {
+      _memberType = memberType;
+      _source = source;
+      _className = className;
+      _memberName = memberName;
+      _parameterTypes = parameterTypes.clone();
+      return this;
+    }
+
+    /**
+     * @param functionName
+     *          the worksheet name
+     * @param signature
+     *          the Excel type signature
+     * @param functionType
+     *          the Excel function type
+     * @return this builder
+     */
+    public Builder function(final String functionName, final String signature, final int functionType) {
+      _functionName = functionName;
+      _signature = signature;
+      _functionType = functionType;
+      return this;
+    }
+
+    /**
+     * @param isVarArgs
+     *          true if the function takes a variable number of arguments
+     * @param isLongRunning
+     *          true if the function is long-running
+     * @param isAutoRTDAsynchronous
+     *          true if the function is automatically asynchronous using RTD
+     * @param isManualAsynchronous
+     *          true if the function is manually asynchronous
+     * @param isCallerRequired
+     *          true if the function needs the caller
+     * @return this builder
+     */
+    public Builder flags(final boolean isVarArgs, final boolean isLongRunning, final boolean isAutoRTDAsynchronous,
+        final boolean isManualAsynchronous, final boolean isCallerRequired) {
+      _isVarArgs = isVarArgs;
+      _isLongRunning = isLongRunning;
+      _isAutoRTDAsynchronous = isAutoRTDAsynchronous;
+      _isManualAsynchronous = isManualAsynchronous;
+      _isCallerRequired = isCallerRequired;
+      return this;
+    }
+
+    /**
+     * @param argumentNames
+     *          the argument names, separated by commas
+     * @param category
+     *          the category
+     * @param helpTopic
+     *          the help topic, can be null
+     * @param description
+     *          the description, can be null
+     * @param argsHelp
+     *          the help for each argument, elements can be null
+     * @return this builder
+     */
+    public Builder help(final String argumentNames, final String category, final String helpTopic, final String description,
+        final String... argsHelp) {
+      _argumentNames = argumentNames;
+      _category = category;
+      _helpTopic = helpTopic;
+      _description = description;
+      _argsHelp = argsHelp.clone();
+      return this;
+    }
+
+    /**
+     * @return the entry
+     */
+    public FunctionIndexEntry build() {
+      return new FunctionIndexEntry(this);
+    }
+  }
+}
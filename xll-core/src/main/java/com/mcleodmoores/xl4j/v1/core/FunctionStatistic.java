@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * A snapshot of the calls made to a function, taken from {@link FunctionStatistics}. If more than one export is registered with
+ * the same name, the snapshot covers all of them.
+ */
+public final class FunctionStatistic {
+  private final String _name;
+  private final long _calls;
+  private final long _errors;
+  private final long _cells;
+  private final long _totalNanos;
+  private final long _maxNanos;
+  private final long[] _histogram;
+
+  /**
+   * @param name
+   *          the function name
+   * @param calls
+   *          the number of calls
+   * @param errors
+   *          the number of calls that returned an error
+   * @param cells
+   *          the number of cells passed in and returned
+   * @param totalNanos
+   *          the total time spent in the function
+   * @param maxNanos
+   *          the longest call
+   * @param histogram
+   *          the latency histogram, not copied
+   */
+  FunctionStatistic(final String name, final long calls, final long errors, final long cells, final long totalNanos, final long maxNanos,
+      final long[] histogram) {
+    _name = name;
+    _calls = calls;
+    _errors = errors;
+    _cells = cells;
+    _totalNanos = totalNanos;
+    _maxNanos = maxNanos;
+    _histogram = histogram;
+  }
+
+  /**
+   * Combines this snapshot with another for a function with the same name.
+   *
+   * @param other
+   *          the other snapshot
+   * @return the combined snapshot
+   */
+  FunctionStatistic merge(final FunctionStatistic other) {
+    final long[] histogram = Arrays.copyOf(_histogram, _histogram.length);
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] += other._histogram[i];
+    }
+    return new FunctionStatistic(_name, _calls + other._calls, _errors + other._errors, _cells + other._cells,
+        _totalNanos + other._totalNanos, Math.max(_maxNanos, other._maxNanos), histogram);
+  }
+
+  /**
+   * @return the function name
+   */
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * @return the number of calls
+   */
+  public long getCalls() {
+    return _calls;
+  }
+
+  /**
+   * @return the number of calls that returned an error
+   */
+  public long getErrors() {
+    return _errors;
+  }
+
+  /**
+   * @return the number of cells passed to and returned from the function
+   */
+  public long getCells() {
+    return _cells;
+  }
+
+  /**
+   * @return the total time spent in the function in nanoseconds
+   */
+  public long getTotalNanos() {
+    return _totalNanos;
+  }
+
+  /**
+   * @return the mean time per call in nanoseconds, or zero if there have been no calls
+   */
+  public double getMeanNanos() {
+    return _calls == 0 ? 0 : (double) _totalNanos / _calls;
+  }
+
+  /**
+   * @return the longest call in nanoseconds
+   */
+  public long getMaxNanos() {
+    return _maxNanos;
+  }
+
+  /**
+   * Gets a percentile of the call times. The value is the upper end of the histogram bucket that contains the percentile, so
+   * is accurate to within 12.5%.
+   *
+   * @param percentile
+   *          the percentile, between 0 and 100
+   * @return the percentile in nanoseconds, or zero if there have been no calls
+   */
+  public long getPercentileNanos(final double percentile) {
+    ArgumentChecker.isTrue(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100: {}", percentile);
+    long total = 0;
+    for (final long count : _histogram) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < _histogram.length; i++) {
+      seen += _histogram[i];
+      if (seen >= target) {
+        // the last bucket holds everything that is too large to record accurately
+        return i == _histogram.length - 1 ? _maxNanos : Math.min(LatencyHistogram.highestValue(i), _maxNanos);
+      }
+    }
+    return _maxNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "FunctionStatistic[" + _name + ", calls=" + _calls + ", errors=" + _errors + ", cells=" + _cells + ", totalNanos=" + _totalNanos
+        + ", maxNanos=" + _maxNanos + "]";
+  }
+}
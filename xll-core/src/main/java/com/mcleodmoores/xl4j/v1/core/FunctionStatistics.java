@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Records the number of calls, errors, cells converted and a latency histogram for each function called through
+ * {@link DefaultExcelFunctionCallHandler}. The counters are striped and lock-free so that recording is cheap enough to leave on,
+ * and the results are keyed by the function name from its {@link com.mcleodmoores.xl4j.v1.core.FunctionMetadata}.
+ * <p>
+ * Recording can be switched off by setting the system property <code>xl4j.stats</code> to <code>false</code> in the add-in's JVM
+ * options or by calling {@link #setEnabled(boolean)}.
+ */
+public class FunctionStatistics {
+  /** The system property used to switch off recording */
+  public static final String ENABLED_PROPERTY_NAME = "xl4j.stats";
+  /** Orders by total time, longest first */
+  private static final Comparator<FunctionStatistic> BY_TOTAL_TIME = new Comparator<FunctionStatistic>() {
+
+    @Override
+    public int compare(final FunctionStatistic o1, final FunctionStatistic o2) {
+      final int result = Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+      return result == 0 ? o1.getName().compareTo(o2.getName()) : result;
+    }
+  };
+  /** The function registry */
+  private final FunctionRegistry _functionRegistry;
+  /** The counters, indexed by export number */
+  private volatile FunctionCounters[] _counters = new FunctionCounters[0];
+  /** True if calls are recorded */
+  private volatile boolean _enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY_NAME, "true"));
+
+  /**
+   * @param functionRegistry
+   *          the function registry used to get the function names, not null
+   */
+  public FunctionStatistics(final FunctionRegistry functionRegistry) {
+    _functionRegistry = ArgumentChecker.notNull(functionRegistry, "functionRegistry");
+  }
+
+  /**
+   * Switches recording on or off.
+   *
+   * @param enabled
+   *          true to record calls
+   */
+  public void setEnabled(final boolean enabled) {
+    _enabled = enabled;
+  }
+
+  /**
+   * @return true if calls are recorded
+   */
+  public boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Records a call. Calls to unknown export numbers are ignored.
+   *
+   * @param exportNumber
+   *          the export number
+   * @param nanos
+   *          the time taken in nanoseconds
+   * @param error
+   *          true if the call returned an error
+   * @param cells
+   *          the number of cells passed to and returned from the function
+   */
+  public void record(final int exportNumber, final long nanos, final boolean error, final long cells) {
+    final FunctionCounters counters = getCounters(exportNumber);
+    if (counters == null) {
+      return;
+    }
+    counters._calls.increment();
+    if (error) {
+      counters._errors.increment();
+    }
+    counters._cells.add(cells);
+    counters._totalNanos.add(nanos);
+    counters._histogram.record(nanos);
+  }
+
+  /**
+   * Gets the counters for a function, creating them if this is the first call.
+   *
+   * @param exportNumber
+   *          the export number
+   * @return the counters, or null if there is no function with this export number
+   */
+  private FunctionCounters getCounters(final int exportNumber) {
+    if (exportNumber < 0) {
+      return null;
+    }
+    final FunctionCounters[] counters = _counters;
+    if (exportNumber < counters.length && counters[exportNumber] != null) {
+      return counters[exportNumber];
+    }
+    final FunctionDefinition functionDefinition;
+    try {
+      functionDefinition = _functionRegistry.getFunctionDefinition(exportNumber);
+    } catch (final XL4JRuntimeException e) {
+      return null;
+    }
+    if (functionDefinition == null) {
+      return null;
+    }
+    synchronized (this) {
+      // copy on write, as counters are only added the first time each function is called
+      if (exportNumber < _counters.length && _counters[exportNumber] != null) {
+        return _counters[exportNumber];
+      }
+      final FunctionCounters newCounters = new FunctionCounters(functionDefinition.getFunctionMetadata().getName());
+      final FunctionCounters[] newCountersArray = Arrays.copyOf(_counters, Math.max(_counters.length, exportNumber + 1));
+      newCountersArray[exportNumber] = newCounters;
+      _counters = newCountersArray;
+      return newCounters;
+    }
+  }
+
+  /**
+   * Clears all recorded calls.
+   */
+  public synchronized void reset() {
+    _counters = new FunctionCounters[0];
+  }
+
+  /**
+   * Gets a snapshot of the calls to each function that has been called, ordered by name.
+   *
+   * @return the snapshots
+   */
+  public List<FunctionStatistic> getStatistics() {
+    final Map<String, FunctionStatistic> byName = new TreeMap<>();
+    for (final FunctionCounters counters : _counters) {
+      if (counters != null) {
+        final FunctionStatistic statistic = counters.snapshot();
+        final FunctionStatistic existing = byName.get(statistic.getName());
+        byName.put(statistic.getName(), existing == null ? statistic : existing.merge(statistic));
+      }
+    }
+    return new ArrayList<>(byName.values());
+  }
+
+  /**
+   * Gets a snapshot of the calls to a function.
+   *
+   * @param name
+   *          the function name, not null
+   * @return the snapshot, or null if the function has not been called
+   */
+  public FunctionStatistic getStatistic(final String name) {
+    ArgumentChecker.notNull(name, "name");
+    FunctionStatistic result = null;
+    for (final FunctionCounters counters : _counters) {
+      if (counters != null && counters._name.equals(name)) {
+        final FunctionStatistic statistic = counters.snapshot();
+        result = result == null ? statistic : result.merge(statistic);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the functions that have taken the most time in total.
+   *
+   * @param n
+   *          the maximum number of functions to return, not negative
+   * @return the snapshots, longest first
+   */
+  public List<FunctionStatistic> getTopFunctions(final int n) {
+    ArgumentChecker.notNegative(n, "n");
+    final List<FunctionStatistic> statistics = getStatistics();
+    Collections.sort(statistics, BY_TOTAL_TIME);
+    return statistics.subList(0, Math.min(n, statistics.size()));
+  }
+
+  /**
+   * Writes the statistics for every function as comma-separated values, with times in microseconds.
+   *
+   * @param writer
+   *          the writer, not null
+   * @throws IOException
+   *          if the statistics cannot be written
+   */
+  public void writeTo(final Appendable writer) throws IOException {
+    ArgumentChecker.notNull(writer, "writer");
+    writer.append("Name,Calls,Errors,Cells,Total (us),Mean (us),50% (us),90% (us),99% (us),Max (us)\n");
+    for (final FunctionStatistic statistic : getStatistics()) {
+      writer.append(statistic.getName().contains(",") ? "\"" + statistic.getName() + "\"" : statistic.getName()).append(',')
+        .append(Long.toString(statistic.getCalls())).append(',')
+        .append(Long.toString(statistic.getErrors())).append(',')
+        .append(Long.toString(statistic.getCells())).append(',')
+        .append(Long.toString(toMicros(statistic.getTotalNanos()))).append(',')
+        .append(Double.toString(statistic.getMeanNanos() / 1000)).append(',')
+        .append(Long.toString(toMicros(statistic.getPercentileNanos(50)))).append(',')
+        .append(Long.toString(toMicros(statistic.getPercentileNanos(90)))).append(',')
+        .append(Long.toString(toMicros(statistic.getPercentileNanos(99)))).append(',')
+        .append(Long.toString(toMicros(statistic.getMaxNanos()))).append('\n');
+    }
+  }
+
+  /**
+   * Writes the statistics for every function to a file as comma-separated values.
+   *
+   * @param file
+   *          the file, not null
+   */
+  public void dump(final File file) {
+    ArgumentChecker.notNull(file, "file");
+    try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+      writeTo(writer);
+    } catch (final IOException e) {
+      throw new XL4JRuntimeException("Could not write function statistics to " + file, e);
+    }
+  }
+
+  private static long toMicros(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  /**
+   * The counters for one export.
+   */
+  private static final class FunctionCounters {
+    private final String _name;
+    private final StripedCounter _calls = new StripedCounter();
+    private final StripedCounter _errors = new StripedCounter();
+    private final StripedCounter _cells = new StripedCounter();
+    private final StripedCounter _totalNanos = new StripedCounter();
+    private final LatencyHistogram _histogram = new LatencyHistogram();
+
+    FunctionCounters(final String name) {
+      _name = name;
+    }
+
+    FunctionStatistic snapshot() {
+      return new FunctionStatistic(_name, _calls.sum(), _errors.sum(), _cells.sum(), _totalNanos.sum(), _histogram.getMax(),
+          _histogram.getCounts());
+    }
+  }
+}
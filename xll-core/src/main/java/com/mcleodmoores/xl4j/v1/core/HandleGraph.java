@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * The lineage of the objects on a heap: an edge from a producer handle to a consumer handle records that the consumer was
+ * returned by a function that was passed the producer. Only handles that have edges are in the graph.
+ * <p>
+ * The graph is an open-addressed table keyed on primitive handles. Each node holds the handles of its producers, which are
+ * kept exact, and of its consumers, which are not updated when a consumer is removed (as a producer such as a convention can
+ * have very many consumers) but are filtered when they are read and compacted once half of them have gone. Handles are never
+ * reused, so a removed consumer cannot come back.
+ */
+public class HandleGraph {
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int INITIAL_EDGES = 2;
+  private static final long LONG_MIX = 0x9E3779B97F4A7C15L;
+  private static final long[] EMPTY = new long[0];
+  private long[] _handles = new long[INITIAL_CAPACITY];
+  private Node[] _nodes = new Node[INITIAL_CAPACITY];
+  private int _size;
+  private long _edges;
+
+  /**
+   * Records that an object was produced from other objects. Edges that are already in the graph and edges from an object to
+   * itself are ignored.
+   *
+   * @param consumer
+   *          the handle of the object that was produced
+   * @param producers
+   *          the handles of the objects it was produced from, not null
+   * @param offset
+   *          the index of the first producer
+   * @param length
+   *          the number of producers
+   */
+  public synchronized void addEdges(final long consumer, final long[] producers, final int offset, final int length) {
+    ArgumentChecker.notNull(producers, "producers");
+    Node consumerNode = null;
+    for (int i = offset; i < offset + length; i++) {
+      final long producer = producers[i];
+      if (producer == consumer) {
+        continue;
+      }
+      if (consumerNode == null) {
+        consumerNode = getOrCreate(consumer);
+      }
+      if (consumerNode.addProducer(producer)) {
+        getOrCreate(producer).addConsumer(consumer);
+        _edges++;
+      }
+    }
+  }
+
+  /**
+   * Gets the objects that an object was produced from.
+   *
+   * @param handle
+   *          the handle
+   * @return the handles of the producers, empty if there are none
+   */
+  public synchronized long[] getProducers(final long handle) {
+    final Node node = get(handle);
+    return node == null ? EMPTY : Arrays.copyOf(node._producers, node._nProducers);
+  }
+
+  /**
+   * Gets the objects that were produced from an object.
+   *
+   * @param handle
+   *          the handle
+   * @return the handles of the consumers, empty if there are none
+   */
+  public synchronized long[] getConsumers(final long handle) {
+    final Node node = get(handle);
+    if (node == null) {
+      return EMPTY;
+    }
+    compact(node);
+    return Arrays.copyOf(node._consumers, node._nConsumers);
+  }
+
+  /**
+   * Tests whether any objects were produced from an object.
+   *
+   * @param handle
+   *          the handle
+   * @return true if the object has consumers
+   */
+  public synchronized boolean hasConsumers(final long handle) {
+    final Node node = get(handle);
+    if (node == null || node._nConsumers == 0) {
+      return false;
+    }
+    compact(node);
+    return node._nConsumers > 0;
+  }
+
+  /**
+   * Gets the objects that were produced from an object, directly or indirectly.
+   *
+   * @param handle
+   *          the handle
+   * @return the handles of the descendants, in breadth-first order, not including the handle
+   */
+  public synchronized long[] getDescendants(final long handle) {
+    return walk(handle, true);
+  }
+
+  /**
+   * Gets the objects that an object was produced from, directly or indirectly.
+   *
+   * @param handle
+   *          the handle
+   * @return the handles of the ancestors, in breadth-first order, not including the handle
+   */
+  public synchronized long[] getAncestors(final long handle) {
+    return walk(handle, false);
+  }
+
+  /**
+   * Removes an object and its edges.
+   *
+   * @param handle
+   *          the handle
+   */
+  public synchronized void remove(final long handle) {
+    final int index = find(handle);
+    if (index < 0) {
+      return;
+    }
+    final Node node = _nodes[index];
+    removeAt(index);
+    for (int i = 0; i < node._nProducers; i++) {
+      final Node producer = get(node._producers[i]);
+      if (producer != null) {
+        // the consumer list is cleaned up lazily
+        producer._removedConsumers++;
+        if (producer._removedConsumers > producer._nConsumers >> 1) {
+          compact(producer);
+        }
+        removeIfIsolated(producer, node._producers[i]);
+      }
+    }
+    _edges -= node._nProducers;
+    for (int i = 0; i < node._nConsumers; i++) {
+      final Node consumer = get(node._consumers[i]);
+      if (consumer != null && consumer.removeProducer(handle)) {
+        _edges--;
+        removeIfIsolated(consumer, node._consumers[i]);
+      }
+    }
+  }
+
+  /**
+   * @return the number of handles with edges
+   */
+  public synchronized int size() {
+    return _size;
+  }
+
+  /**
+   * @return the number of edges
+   */
+  public synchronized long getEdgeCount() {
+    return _edges;
+  }
+
+  private long[] walk(final long handle, final boolean down) {
+    if (find(handle) < 0) {
+      return EMPTY;
+    }
+    final HandleGraph visited = new HandleGraph();
+    visited.getOrCreate(handle);
+    long[] result = new long[INITIAL_CAPACITY];
+    int n = 0;
+    long next = handle;
+    int head = 0;
+    while (true) {
+      final Node node = get(next);
+      if (node != null) {
+        if (down) {
+          compact(node);
+        }
+        final long[] edges = down ? node._consumers : node._producers;
+        final int nEdges = down ? node._nConsumers : node._nProducers;
+        for (int i = 0; i < nEdges; i++) {
+          if (visited.find(edges[i]) < 0) {
+            visited.getOrCreate(edges[i]);
+            if (n == result.length) {
+              result = Arrays.copyOf(result, n << 1);
+            }
+            result[n++] = edges[i];
+          }
+        }
+      }
+      if (head == n) {
+        return Arrays.copyOf(result, n);
+      }
+      next = result[head++];
+    }
+  }
+
+  /**
+   * Removes the consumers of a node that are no longer in the graph.
+   */
+  private void compact(final Node node) {
+    if (node._removedConsumers == 0) {
+      return;
+    }
+    int n = 0;
+    for (int i = 0; i < node._nConsumers; i++) {
+      if (find(node._consumers[i]) >= 0) {
+        node._consumers[n++] = node._consumers[i];
+      }
+    }
+    node._nConsumers = n;
+    node._removedConsumers = 0;
+  }
+
+  private void removeIfIsolated(final Node node, final long handle) {
+    if (node._nProducers == 0) {
+      compact(node);
+      if (node._nConsumers == 0) {
+        removeAt(find(handle));
+      }
+    }
+  }
+
+  private Node get(final long handle) {
+    final int index = find(handle);
+    return index < 0 ? null : _nodes[index];
+  }
+
+  private Node getOrCreate(final long handle) {
+    final int index = find(handle);
+    if (index >= 0) {
+      return _nodes[index];
+    }
+    if (_size + 1 > _nodes.length >> 1) {
+      resize();
+    }
+    final Node node = new Node();
+    put(handle, node);
+    return node;
+  }
+
+  private int find(final long handle) {
+    final int mask = _nodes.length - 1;
+    int i = hash(handle) & mask;
+    while (_nodes[i] != null) {
+      if (_handles[i] == handle) {
+        return i;
+      }
+      i = i + 1 & mask;
+    }
+    return -1;
+  }
+
+  private void put(final long handle, final Node node) {
+    final int mask = _nodes.length - 1;
+    int i = hash(handle) & mask;
+    while (_nodes[i] != null) {
+      i = i + 1 & mask;
+    }
+    _handles[i] = handle;
+    _nodes[i] = node;
+    _size++;
+  }
+
+  private void removeAt(final int index) {
+    final int mask = _nodes.length - 1;
+    int i = index;
+    _nodes[i] = null;
+    _size--;
+    // shift back any entries that would no longer be found
+    int j = i;
+    while (true) {
+      j = j + 1 & mask;
+      if (_nodes[j] == null) {
+        return;
+      }
+      final int k = hash(_handles[j]) & mask;
+      if (j > i ? k <= i || k > j : k <= i && k > j) {
+        _handles[i] = _handles[j];
+        _nodes[i] = _nodes[j];
+        _nodes[j] = null;
+        i = j;
+      }
+    }
+  }
+
+  private void resize() {
+    final long[] handles = _handles;
+    final Node[] nodes = _nodes;
+    _handles = new long[handles.length << 1];
+    _nodes = new Node[nodes.length << 1];
+    _size = 0;
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i] != null) {
+        put(handles[i], nodes[i]);
+      }
+    }
+  }
+
+  private static int hash(final long handle) {
+    return (int) (handle * LONG_MIX >>> 32);
+  }
+
+  /**
+   * The producers and consumers of a handle.
+   */
+  private static final class Node {
+    private long[] _producers = EMPTY;
+    private int _nProducers;
+    private long[] _consumers = EMPTY;
+    private int _nConsumers;
+    /** The number of consumers that have been removed from the graph but are still in the array */
+    private int _removedConsumers;
+
+    boolean addProducer(final long producer) {
+      for (int i = 0; i < _nProducers; i++) {
+        if (_producers[i] == producer) {
+          return false;
+        }
+      }
+      if (_nProducers == _producers.length) {
+        _producers = Arrays.copyOf(_producers, Math.max(INITIAL_EDGES, _nProducers << 1));
+      }
+      _producers[_nProducers++] = producer;
+      return true;
+    }
+
+    boolean removeProducer(final long producer) {
+      for (int i = 0; i < _nProducers; i++) {
+        if (_producers[i] == producer) {
+          _producers[i] = _producers[--_nProducers];
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void addConsumer(final long consumer) {
+      if (_nConsumers == _consumers.length) {
+        _consumers = Arrays.copyOf(_consumers, Math.max(INITIAL_EDGES, _nConsumers << 1));
+      }
+      _consumers[_nConsumers++] = consumer;
+    }
+  }
+}
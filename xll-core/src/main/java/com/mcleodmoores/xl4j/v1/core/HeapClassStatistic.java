@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+/**
+ * A snapshot of the number of objects of a class on the heap and an estimate of the memory that they hold, taken from
+ * {@link ShardedHeap}.
+ */
+public final class HeapClassStatistic {
+  private final String _className;
+  private final long _objects;
+  private final long _bytes;
+
+  /**
+   * @param className
+   *          the class name
+   * @param objects
+   *          the number of objects
+   * @param bytes
+   *          the estimated number of bytes reachable from the objects
+   */
+  HeapClassStatistic(final String className, final long objects, final long bytes) {
+    _className = className;
+    _objects = objects;
+    _bytes = bytes;
+  }
+
+  /**
+   * @return the class name
+   */
+  public String getClassName() {
+    return _className;
+  }
+
+  /**
+   * @return the number of objects
+   */
+  public long getObjects() {
+    return _objects;
+  }
+
+  /**
+   * @return the estimated number of bytes reachable from the objects, which can count objects that they share more than once
+   */
+  public long getBytes() {
+    return _bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "HeapClassStatistic[" + _className + ", objects=" + _objects + ", bytes=" + _bytes + "]";
+  }
+}
@@ -0,0 +1,557 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * A memory-mapped, append-only file of the serializable objects in a {@link ShardedHeap}, so that the handles in a workbook
+ * are still valid when Excel is restarted.
+ * <p>
+ * Each record holds a handle, the name of the object's class and the serialized object. Records are written on a
+ * background thread when a handle is created, and a record with no payload is written when the object is removed from the
+ * heap. When the file is opened, the last record for each handle is indexed, but nothing is deserialized until the heap is
+ * asked for a handle that it does not hold. Records from a previous session that are not asked for, or reported as live,
+ * within {@link ShardedHeap#COLLECTION_CYCLES} collection cycles are dropped.
+ * <p>
+ * The header of the file holds the next handle that has not been used by any session. A heap that uses the snapshot starts
+ * allocating handles from there if its MAC and time based first handle is lower, so a handle created after a restart can
+ * never be mistaken for one in the file, and handles from an earlier session that are not in the file can be reported as
+ * stale rather than unknown.
+ * <p>
+ * The file is compacted in place on the background thread when a collection cycle finds that most of it is taken up by
+ * records for objects that have been removed. The file is not replaced, as a mapped file cannot be unmapped on demand and
+ * Windows does not allow it to be moved or deleted while it is mapped. A crash during compaction can lose the records that
+ * had not been moved, which just means that those objects are rebuilt by the sheet.
+ * <p>
+ * Objects are serialized some time after their handle is created, so only objects that do not change after they are put on
+ * the heap should be persisted. The file cannot grow beyond 2GB.
+ */
+public class HeapSnapshot implements Closeable {
+  /** The system property that names the snapshot file. If it is not set, the heap is not persisted */
+  public static final String SNAPSHOT_PROPERTY_NAME = "xl4j.heap.snapshot";
+  private static final Logger LOGGER = LoggerFactory.getLogger(HeapSnapshot.class);
+  private static final long MAGIC = 0x584C344A48454150L; // XL4JHEAP
+  private static final int VERSION = 1;
+  private static final int END_POSITION = 16;
+  private static final int NEXT_HANDLE_POSITION = 24;
+  private static final int HEADER_SIZE = 32;
+  /** The size of the length, handle, payload length and class name length fields of a record */
+  private static final int RECORD_HEADER_SIZE = 18;
+  private static final int TOMBSTONE = -1;
+  private static final int INITIAL_SIZE = 1 << 20;
+  /** The number of bytes taken by dead records before the file is compacted */
+  private static final int MIN_COMPACTION_SIZE = 1 << 20;
+  private final File _file;
+  private final FileChannel _channel;
+  /** The position of the last record for each handle in the file, only changed on the writer thread */
+  private final ConcurrentMap<Long, Integer> _index = new ConcurrentHashMap<>();
+  /** Handles from previous sessions that have not been restored, and the number of cycles since they were last reported */
+  private final ConcurrentMap<Long, Integer> _unclaimed = new ConcurrentHashMap<>();
+  /** The first handle that was not used by a previous session */
+  private final long _sessionHandle;
+  /** The next handle after all the handles that have been passed to the snapshot, whether or not they were saved */
+  private final AtomicLong _usedHandles;
+  private final ExecutorService _writer;
+  /** The mapped file, guarded by this */
+  private MappedByteBuffer _buffer;
+  /** The end of the last complete record, guarded by this */
+  private int _end;
+  /** The number of bytes used by the last record for each handle, guarded by this */
+  private long _liveBytes;
+  /** The next handle that has not been used, guarded by this */
+  private long _nextHandle;
+
+  /**
+   * Opens the snapshot file named by the system property <code>xl4j.heap.snapshot</code>.
+   *
+   * @return the snapshot, or null if the property is not set or the file cannot be opened
+   */
+  public static HeapSnapshot fromSystemProperty() {
+    final String fileName = System.getProperty(SNAPSHOT_PROPERTY_NAME);
+    if (fileName == null || fileName.isEmpty()) {
+      return null;
+    }
+    try {
+      return new HeapSnapshot(new File(fileName));
+    } catch (final IOException e) {
+      LOGGER.error("Could not open heap snapshot " + fileName + ", objects will not be persisted", e);
+      return null;
+    }
+  }
+
+  /**
+   * Opens a snapshot file, creating it if it does not exist.
+   *
+   * @param file
+   *          the file, not null
+   * @throws IOException
+   *           if the file cannot be opened
+   */
+  public HeapSnapshot(final File file) throws IOException {
+    _file = ArgumentChecker.notNull(file, "file");
+    _channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    final long size = _channel.size();
+    if (size > Integer.MAX_VALUE) {
+      _channel.close();
+      throw new IOException("Heap snapshot " + file + " is too large");
+    }
+    _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+    if (size < HEADER_SIZE || _buffer.getLong(0) != MAGIC || _buffer.getInt(8) != VERSION) {
+      if (size > 0) {
+        LOGGER.warn("Heap snapshot {} is not a valid snapshot, starting again", file);
+      }
+      _buffer.putLong(0, MAGIC);
+      _buffer.putInt(8, VERSION);
+      _buffer.putLong(NEXT_HANDLE_POSITION, Long.MIN_VALUE);
+      setEnd(HEADER_SIZE);
+    }
+    _nextHandle = _buffer.getLong(NEXT_HANDLE_POSITION);
+    load();
+    _sessionHandle = _nextHandle;
+    _usedHandles = new AtomicLong(_nextHandle);
+    for (final Long handle : _index.keySet()) {
+      _unclaimed.put(handle, 0);
+    }
+    LOGGER.info("Opened heap snapshot {} with {} objects", file, _index.size());
+    _writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "xl4j-heap-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Indexes the records in the file, ignoring any incomplete record at the end.
+   */
+  private void load() {
+    final int end = (int) Math.min(_buffer.getLong(END_POSITION), _buffer.capacity());
+    int position = HEADER_SIZE;
+    while (position + RECORD_HEADER_SIZE <= end) {
+      final int length = _buffer.getInt(position);
+      if (length < RECORD_HEADER_SIZE || length > end - position) {
+        LOGGER.warn("Heap snapshot {} has a corrupt record at {}, ignoring the rest of the file", _file, position);
+        break;
+      }
+      final long handle = _buffer.getLong(position + 4);
+      final Integer previous = _buffer.getInt(position + 12) == TOMBSTONE ? _index.remove(handle) : _index.put(handle, position);
+      if (previous != null) {
+        _liveBytes -= _buffer.getInt(previous);
+      }
+      if (_buffer.getInt(position + 12) != TOMBSTONE) {
+        _liveBytes += length;
+      }
+      if (handle >= _nextHandle) {
+        _nextHandle = handle + 1;
+      }
+      position += length;
+    }
+    setEnd(position);
+  }
+
+  /**
+   * @return the file
+   */
+  public File getFile() {
+    return _file;
+  }
+
+  /**
+   * Gets the first handle that was not used by a previous session. Handles allocated by a heap using this snapshot must be
+   * greater than or equal to this.
+   *
+   * @return the handle
+   */
+  public long getNextHandle() {
+    return _sessionHandle;
+  }
+
+  /**
+   * @return the number of objects in the snapshot, including ones that have not been written yet
+   */
+  public int size() {
+    return _index.size();
+  }
+
+  /**
+   * Tests whether there is an object for a handle in the snapshot.
+   *
+   * @param handle
+   *          the handle
+   * @return true if there is an object for the handle
+   */
+  public boolean contains(final long handle) {
+    return _index.containsKey(handle);
+  }
+
+  /**
+   * Tests whether a handle is from a previous session but the object was not saved (e.g. because it was not serializable)
+   * or has since been removed.
+   *
+   * @param handle
+   *          the handle
+   * @return true if the handle is stale
+   */
+  public boolean isStale(final long handle) {
+    return handle < _sessionHandle && !_index.containsKey(handle);
+  }
+
+  /**
+   * Waits for the objects that have been passed to the snapshot to be written.
+   */
+  public void flush() {
+    final Future<?> flushed = _writer.submit(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (HeapSnapshot.this) {
+          reserve(_usedHandles.get());
+          _buffer.force();
+        }
+      }
+    });
+    get(flushed);
+  }
+
+  /**
+   * Compacts the file on the writer thread.
+   *
+   * @return the number of bytes reclaimed, available when the compaction has finished
+   */
+  public Future<Integer> compact() {
+    return _writer.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return compactFile();
+      }
+    });
+  }
+
+  /**
+   * Writes the outstanding objects and closes the file.
+   */
+  @Override
+  public void close() {
+    flush();
+    _writer.shutdown();
+    try {
+      _channel.close();
+    } catch (final IOException e) {
+      LOGGER.error("Could not close heap snapshot " + _file, e);
+    }
+  }
+
+  /**
+   * Saves an object in the background if it is serializable.
+   *
+   * @param handle
+   *          the handle
+   * @param object
+   *          the object
+   */
+  void checkpoint(final long handle, final Object object) {
+    // the handle is reserved even if the object is not saved, so that a stale handle is not given to another object
+    long used = _usedHandles.get();
+    while (handle >= used && !_usedHandles.compareAndSet(used, handle + 1)) {
+      used = _usedHandles.get();
+    }
+    if (!(object instanceof Serializable)) {
+      return;
+    }
+    _writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        final byte[] payload;
+        try {
+          final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+          }
+          payload = bytes.toByteArray();
+        } catch (final IOException | RuntimeException e) {
+          LOGGER.debug("Could not serialize {} with handle {}: {}", object.getClass(), handle, e.getMessage());
+          return;
+        }
+        append(handle, object.getClass().getName().getBytes(StandardCharsets.UTF_8), payload);
+      }
+    });
+  }
+
+  /**
+   * Records in the background that the object for a handle has been removed from the heap.
+   *
+   * @param handle
+   *          the handle
+   */
+  void remove(final long handle) {
+    _writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        removeRecord(handle);
+      }
+    });
+  }
+
+  /**
+   * Reads an object from the file.
+   *
+   * @param handle
+   *          the handle
+   * @return the object, or null if there is no object for the handle or it cannot be read
+   */
+  Object restore(final long handle) {
+    final byte[] payload;
+    final String className;
+    synchronized (this) {
+      final Integer position = _index.get(handle);
+      if (position == null) {
+        return null;
+      }
+      final int length = _buffer.getInt(position);
+      final int classNameLength = _buffer.getShort(position + 16) & 0xFFFF;
+      final byte[] classNameBytes = new byte[classNameLength];
+      payload = new byte[length - RECORD_HEADER_SIZE - classNameLength];
+      final ByteBuffer buffer = _buffer.duplicate();
+      buffer.position(position + RECORD_HEADER_SIZE);
+      buffer.get(classNameBytes);
+      buffer.get(payload);
+      className = new String(classNameBytes, StandardCharsets.UTF_8);
+    }
+    try (ObjectInputStream in = new SnapshotObjectInputStream(new ByteArrayInputStream(payload))) {
+      final Object object = in.readObject();
+      LOGGER.debug("Restored {} with handle {}", className, handle);
+      return object;
+    } catch (final IOException | ClassNotFoundException | RuntimeException e) {
+      LOGGER.warn("Could not restore {} with handle {}: {}", className, handle, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Records that an object from a previous session has been put back on the heap, after which it is collected as normal.
+   *
+   * @param handle
+   *          the handle
+   */
+  void claim(final long handle) {
+    _unclaimed.remove(handle);
+  }
+
+  /**
+   * Called at the end of each collection cycle. Drops objects from previous sessions that have not been restored or
+   * reported for too long, and compacts the file if it is mostly dead records.
+   *
+   * @param reportedHandles
+   *          the sorted handles that were reported in the cycle but were not on the heap, can be null if there were none
+   * @param nReportedHandles
+   *          the number of reported handles
+   */
+  void endCycle(final long[] reportedHandles, final int nReportedHandles) {
+    final List<Long> expired = new ArrayList<>();
+    final Iterator<Map.Entry<Long, Integer>> iterator = _unclaimed.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<Long, Integer> entry = iterator.next();
+      if (nReportedHandles > 0 && Arrays.binarySearch(reportedHandles, 0, nReportedHandles, entry.getKey()) >= 0) {
+        entry.setValue(0);
+      } else if (entry.getValue() + 1 >= ShardedHeap.COLLECTION_CYCLES) {
+        iterator.remove();
+        expired.add(entry.getKey());
+      } else {
+        entry.setValue(entry.getValue() + 1);
+      }
+    }
+    _writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (final Long handle : expired) {
+          removeRecord(handle);
+        }
+        synchronized (HeapSnapshot.this) {
+          reserve(_usedHandles.get());
+          if (_end - HEADER_SIZE - _liveBytes < Math.max(_liveBytes, MIN_COMPACTION_SIZE)) {
+            return;
+          }
+        }
+        compactFile();
+      }
+    });
+  }
+
+  private void removeRecord(final long handle) {
+    if (_index.containsKey(handle)) {
+      append(handle, new byte[0], null);
+    }
+  }
+
+  /**
+   * Appends a record to the file. Only called on the writer thread.
+   *
+   * @param handle
+   *          the handle
+   * @param className
+   *          the encoded class name
+   * @param payload
+   *          the serialized object, or null if the object has been removed
+   */
+  private synchronized void append(final long handle, final byte[] className, final byte[] payload) {
+    final long length = RECORD_HEADER_SIZE + className.length + (payload == null ? 0 : payload.length);
+    if (className.length > 0xFFFF || !ensureCapacity(_end + length)) {
+      LOGGER.error("Could not save object with handle {} to heap snapshot {}", handle, _file);
+      return;
+    }
+    final ByteBuffer buffer = _buffer.duplicate();
+    buffer.position(_end);
+    buffer.putInt((int) length);
+    buffer.putLong(handle);
+    buffer.putInt(payload == null ? TOMBSTONE : payload.length);
+    buffer.putShort((short) className.length);
+    buffer.put(className);
+    final Integer previous;
+    if (payload == null) {
+      previous = _index.remove(handle);
+    } else {
+      buffer.put(payload);
+      previous = _index.put(handle, _end);
+      _liveBytes += length;
+    }
+    if (previous != null) {
+      _liveBytes -= _buffer.getInt(previous);
+    }
+    reserve(Math.max(handle + 1, _usedHandles.get()));
+    // the record is complete before the end is moved past it
+    setEnd((int) (_end + length));
+  }
+
+  /**
+   * Moves the records for live handles to the start of the file. Only called on the writer thread.
+   *
+   * @return the number of bytes reclaimed
+   */
+  private synchronized int compactFile() {
+    final long[] positions = new long[_index.size()];
+    int n = 0;
+    for (final Map.Entry<Long, Integer> entry : _index.entrySet()) {
+      positions[n++] = entry.getValue();
+    }
+    Arrays.sort(positions, 0, n);
+    final int oldEnd = _end;
+    int position = HEADER_SIZE;
+    for (int i = 0; i < n; i++) {
+      final int from = (int) positions[i];
+      final int length = _buffer.getInt(from);
+      if (from != position) {
+        // the record can overlap its new position, so copy it out first
+        final byte[] record = new byte[length];
+        final ByteBuffer buffer = _buffer.duplicate();
+        buffer.position(from);
+        buffer.get(record);
+        buffer.position(position);
+        buffer.put(record);
+        _index.put(_buffer.getLong(position + 4), position);
+      }
+      position += length;
+      // a crash leaves a valid file that has lost the records that have not been moved yet
+      setEnd(position);
+    }
+    setEnd(position);
+    _liveBytes = position - HEADER_SIZE;
+    LOGGER.info("Compacted heap snapshot {} from {} to {} bytes", _file, oldEnd, position);
+    return oldEnd - position;
+  }
+
+  private boolean ensureCapacity(final long required) {
+    if (required <= _buffer.capacity()) {
+      return true;
+    }
+    if (required > Integer.MAX_VALUE) {
+      return false;
+    }
+    try {
+      _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Math.max(required, 2L * _buffer.capacity()), Integer.MAX_VALUE));
+      return true;
+    } catch (final IOException e) {
+      LOGGER.error("Could not grow heap snapshot " + _file, e);
+      return false;
+    }
+  }
+
+  private void reserve(final long nextHandle) {
+    if (nextHandle > _nextHandle) {
+      _nextHandle = nextHandle;
+      _buffer.putLong(NEXT_HANDLE_POSITION, nextHandle);
+    }
+  }
+
+  private void setEnd(final int end) {
+    _end = end;
+    _buffer.putLong(END_POSITION, end);
+  }
+
+  private static <T> T get(final Future<T> future) {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new XL4JRuntimeException("Interrupted while waiting for heap snapshot", e);
+    } catch (final ExecutionException e) {
+      throw new XL4JRuntimeException("Error writing heap snapshot", e.getCause());
+    }
+  }
+
+  /**
+   * Resolves classes using the class loader that loaded xl4j rather than the caller's loader, which could be the system class
+   * loader when called from native code.
+   */
+  private static final class SnapshotObjectInputStream extends ObjectInputStream {
+
+    SnapshotObjectInputStream(final InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      try {
+        return Class.forName(desc.getName(), false, HeapSnapshot.class.getClassLoader());
+      } catch (final ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+  }
+}
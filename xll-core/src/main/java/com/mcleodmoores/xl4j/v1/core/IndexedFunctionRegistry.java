@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLConstant;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelCallback;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.ExportUtils;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+import com.mcleodmoores.xl4j.v1.xll.LowLevelExcelCallback;
+
+/**
+ * A function registry that reads the {@link FunctionIndex} files generated at compile time rather than scanning the classpath.
+ * Functions are registered with Excel directly from the index, so no function classes are loaded and no invokers are created
+ * when the add-in starts. The {@link FunctionDefinition} for a function, including its invoker, is created the first time
+ * that it is requested.
+ * <p>
+ * If there is more than one index on the classpath, the export numbers of each index follow on from the previous one. Functions
+ * with the same name as one that is already registered are ignored.
+ */
+public class IndexedFunctionRegistry implements FunctionRegistry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(IndexedFunctionRegistry.class);
+  private static final XLParameter[] EMPTY_PARAMETER_ARRAY = new XLParameter[0];
+  private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+  static {
+    for (final Class<?> primitive : new Class<?>[] {Boolean.TYPE, Byte.TYPE, Character.TYPE, Short.TYPE, Integer.TYPE, Long.TYPE,
+        Float.TYPE, Double.TYPE }) {
+      PRIMITIVES.put(primitive.getName(), primitive);
+    }
+  }
+  private final ClassLoader _classLoader;
+  private final InvokerFactory _invokerFactory;
+  /** The index entries, indexed by export number */
+  private final List<FunctionIndexEntry> _entries;
+  /** The definitions that have been created, indexed by export number */
+  private final AtomicReferenceArray<FunctionDefinition> _definitions;
+
+  /**
+   * Creates a registry from all of the indexes visible to a class loader.
+   *
+   * @param classLoader
+   *          the class loader used to find the indexes and load the function classes, not null
+   * @param invokerFactory
+   *          the invoker factory used to create invokers when functions are first called, not null
+   */
+  public IndexedFunctionRegistry(final ClassLoader classLoader, final InvokerFactory invokerFactory) {
+    _classLoader = ArgumentChecker.notNull(classLoader, "classLoader");
+    _invokerFactory = ArgumentChecker.notNull(invokerFactory, "invokerFactory");
+    _entries = Collections.unmodifiableList(readIndexes(classLoader));
+    _definitions = new AtomicReferenceArray<>(_entries.size());
+    LOGGER.info("Read {} functions from function indexes", _entries.size());
+  }
+
+  /**
+   * Tests whether there are any function indexes visible to a class loader.
+   *
+   * @param classLoader
+   *          the class loader, not null
+   * @return true if there is at least one index
+   */
+  public static boolean hasIndex(final ClassLoader classLoader) {
+    ArgumentChecker.notNull(classLoader, "classLoader");
+    try {
+      return classLoader.getResources(FunctionIndex.RESOURCE_NAME).hasMoreElements();
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  private static List<FunctionIndexEntry> readIndexes(final ClassLoader classLoader) {
+    final List<FunctionIndexEntry> entries = new ArrayList<>();
+    final Set<String> names = new HashSet<>();
+    try {
+      final Enumeration<URL> indexes = classLoader.getResources(FunctionIndex.RESOURCE_NAME);
+      while (indexes.hasMoreElements()) {
+        final URL index = indexes.nextElement();
+        try (Reader reader = new InputStreamReader(index.openStream(), StandardCharsets.UTF_8)) {
+          for (final FunctionIndexEntry entry : FunctionIndex.read(reader)) {
+            if (names.add(entry.getFunctionName().toUpperCase())) {
+              entries.add(entry);
+            } else {
+              LOGGER.warn("Have already registered a function called {}, ignoring entry in {}", entry.getFunctionName(), index);
+            }
+          }
+        }
+      }
+    } catch (final IOException e) {
+      throw new XL4JRuntimeException("Could not read function indexes", e);
+    }
+    return entries;
+  }
+
+  /**
+   * Registers every function in the index. This does not load any function classes.
+   *
+   * @param callback
+   *          the Excel callback interface
+   */
+  @Override
+  public void registerFunctions(final ExcelCallback callback) {
+    LOGGER.info("registerFunctions called with {}", callback);
+    final LowLevelExcelCallback rawCallback = callback.getLowLevelExcelCallback();
+    for (int exportNumber = 0; exportNumber < _entries.size(); exportNumber++) {
+      final FunctionIndexEntry entry = _entries.get(exportNumber);
+      try {
+        rawCallback.xlfRegister(exportNumber, ExportUtils.buildExportName(exportNumber), entry.isVarArgs(), entry.isLongRunning(), false,
+            entry.isAutoRTDAsynchronous(), entry.isManualAsynchronous(), entry.isCallerRequired(), entry.getSignature(),
+            entry.getFunctionName(), entry.getArgumentNames(), entry.getFunctionType(), entry.getCategory(), "", entry.getHelpTopic(),
+            entry.getDescription(), entry.getArgsHelp());
+      } catch (final XL4JRuntimeException xl4jre) {
+        LOGGER.error("Problem registering function, skipping", xl4jre);
+      }
+    }
+    LOGGER.info("finished registering functions");
+  }
+
+  /**
+   * Gets the definition of a function, creating it if this is the first request.
+   *
+   * @param exportNumber
+   *          the export number
+   * @return the function definition, not null
+   * @throws XL4JRuntimeException
+   *           if there is no function with this export number or the definition cannot be created
+   */
+  @Override
+  public FunctionDefinition getFunctionDefinition(final int exportNumber) {
+    if (exportNumber < 0 || exportNumber >= _entries.size()) {
+      throw new XL4JRuntimeException("Cannot find function definition with export number " + exportNumber);
+    }
+    final FunctionDefinition definition = _definitions.get(exportNumber);
+    if (definition != null) {
+      return definition;
+    }
+    final FunctionDefinition newDefinition = createDefinition(_entries.get(exportNumber), exportNumber);
+    // another thread might have got there first, in which case both definitions are equivalent
+    _definitions.compareAndSet(exportNumber, null, newDefinition);
+    return _definitions.get(exportNumber);
+  }
+
+  /**
+   * Gets the definitions of all functions in the index. This creates any definitions that have not been created.
+   *
+   * @return the function definitions
+   */
+  @Override
+  public Set<FunctionDefinition> getFunctionDefinitions() {
+    final Set<FunctionDefinition> definitions = new LinkedHashSet<>();
+    for (int exportNumber = 0; exportNumber < _entries.size(); exportNumber++) {
+      try {
+        definitions.add(getFunctionDefinition(exportNumber));
+      } catch (final XL4JRuntimeException e) {
+        LOGGER.error("Could not create function definition for {}", _entries.get(exportNumber).getFunctionName(), e);
+      }
+    }
+    return definitions;
+  }
+
+  private FunctionDefinition createDefinition(final FunctionIndexEntry entry, final int exportNumber) {
+    LOGGER.info("Creating definition for function {} with export number {}", entry.getFunctionName(), exportNumber);
+    try {
+      final Class<?> clazz = Class.forName(entry.getClassName(), true, _classLoader);
+      final XLNamespace namespace = clazz.getAnnotation(XLNamespace.class);
+      final String name = entry.getFunctionName();
+      switch (entry.getMemberType()) {
+        case METHOD: {
+          final Method method = getMethod(clazz, entry.getMemberName(), getParameterTypes(entry));
+          if (entry.getSource() == FunctionIndexEntry.Source.FUNCTIONS) {
+            final XLFunctions functions = clazz.getAnnotation(XLFunctions.class);
+            return FunctionDefinition.of(FunctionMetadata.of(namespace, functions, EMPTY_PARAMETER_ARRAY, name),
+                _invokerFactory.getMethodTypeConverter(method, functions.typeConversionMode()), exportNumber);
+          }
+          final XLFunction function = method.getAnnotation(XLFunction.class);
+          final XLParameter[] parameters = AbstractFunctionRegistry.getXLParameterAnnotations(method.getParameterAnnotations());
+          return FunctionDefinition.of(FunctionMetadata.of(namespace, function, parameters, name),
+              _invokerFactory.getMethodTypeConverter(method, function.typeConversionMode()), exportNumber);
+        }
+        case CONSTRUCTOR: {
+          final Constructor<?> constructor = clazz.getDeclaredConstructor(getParameterTypes(entry));
+          final FunctionMetadata metadata;
+          if (entry.getSource() == FunctionIndexEntry.Source.FUNCTIONS) {
+            metadata = FunctionMetadata.of(namespace, clazz.getAnnotation(XLFunctions.class), EMPTY_PARAMETER_ARRAY, name);
+          } else {
+            metadata = FunctionMetadata.of(namespace, constructor.getAnnotation(XLFunction.class),
+                AbstractFunctionRegistry.getXLParameterAnnotations(constructor.getParameterAnnotations()), name);
+          }
+          return FunctionDefinition.of(metadata, _invokerFactory.getConstructorTypeConverter(constructor), exportNumber);
+        }
+        case FIELD: {
+          final Field field;
+          final XLConstant constant;
+          if (entry.getSource() == FunctionIndexEntry.Source.CONSTANT_TYPE) {
+            field = clazz.getField(entry.getMemberName());
+            constant = clazz.getAnnotation(XLConstant.class);
+          } else {
+            field = clazz.getDeclaredField(entry.getMemberName());
+            constant = field.getAnnotation(XLConstant.class);
+          }
+          return FunctionDefinition.of(FunctionMetadata.of(namespace, constant, name),
+              _invokerFactory.getFieldTypeConverter(field, constant.typeConversionMode()), exportNumber);
+        }
+        default:
+          throw new XL4JRuntimeException("Unhandled member type " + entry.getMemberType());
+      }
+    } catch (final ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+      throw new XL4JRuntimeException("Could not find the implementation of " + entry, e);
+    }
+  }
+
+  private static Method getMethod(final Class<?> clazz, final String name, final Class<?>[] parameterTypes) throws NoSuchMethodException {
+    try {
+      return clazz.getDeclaredMethod(name, parameterTypes);
+    } catch (final NoSuchMethodException e) {
+      // inherited by a class annotated with XLFunctions
+      return clazz.getMethod(name, parameterTypes);
+    }
+  }
+
+  private Class<?>[] getParameterTypes(final FunctionIndexEntry entry) throws ClassNotFoundException {
+    final String[] names = entry.getParameterTypes();
+    final Class<?>[] parameterTypes = new Class<?>[names.length];
+    for (int i = 0; i < names.length; i++) {
+      final Class<?> primitive = PRIMITIVES.get(names[i]);
+      parameterTypes[i] = primitive != null ? primitive : Class.forName(names[i], false, _classLoader);
+    }
+    return parameterTypes;
+  }
+}
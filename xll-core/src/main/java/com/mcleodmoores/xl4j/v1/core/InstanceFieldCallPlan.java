@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Gets the value of a field of an object on the heap, where the object reference is the first argument.
+ */
+final class InstanceFieldCallPlan extends CallPlan {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InstanceFieldCallPlan.class);
+  private final FieldGetter _fieldGetter;
+
+  InstanceFieldCallPlan(final FieldGetter fieldGetter) {
+    _fieldGetter = fieldGetter;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    if (args.length == 0) {
+      throw new XL4JRuntimeException("No object reference supplied for " + _fieldGetter.getFieldName());
+    }
+    resolveObjects(args);
+    final Object obj = getObject(heap, args[0]);
+    if (obj == null) {
+      LOGGER.error("Object handle was invalid, returning XLError.Ref");
+      return XLError.Ref;
+    }
+    return _fieldGetter.get(obj);
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Calls a method on an object on the heap, where the object reference is the first argument.
+ */
+final class InstanceMethodCallPlan extends CallPlan {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InstanceMethodCallPlan.class);
+  private final MethodInvoker _methodInvoker;
+
+  InstanceMethodCallPlan(final MethodInvoker methodInvoker) {
+    _methodInvoker = methodInvoker;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    if (args.length == 0) {
+      throw new XL4JRuntimeException("No object reference supplied for " + _methodInvoker.getMethodName());
+    }
+    resolveObjects(args);
+    final Object obj = getObject(heap, args[0]);
+    if (obj == null) {
+      LOGGER.error("Object handle was invalid, returning XLError.Ref");
+      return XLError.Ref;
+    }
+    return invokeOnObject(_methodInvoker, obj, args);
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with log-linear buckets, in the style of an HDR histogram. Each power of two
+ * is split into {@link #SUB_BUCKETS} buckets, so recorded values are accurate to within 12.5%. Values above 2<sup>40</sup>ns
+ * (around 18 minutes) are recorded in the last bucket.
+ */
+final class LatencyHistogram {
+  /** The number of bits used for the buckets within each power of two */
+  private static final int SUB_BUCKET_BITS = 3;
+  /** The number of buckets within each power of two */
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** The largest power of two that is recorded */
+  private static final int MAX_MAGNITUDE = 40;
+  /** The number of buckets */
+  static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  /** The bucket counts */
+  private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+  /** The largest value recorded */
+  private final AtomicLong _max = new AtomicLong();
+
+  /**
+   * Records a value.
+   *
+   * @param nanos
+   *          the value in nanoseconds, negative values are recorded as zero
+   */
+  void record(final long nanos) {
+    final long value = Math.max(nanos, 0);
+    _counts.getAndIncrement(bucket(value));
+    long max = _max.get();
+    while (value > max) {
+      if (_max.compareAndSet(max, value)) {
+        return;
+      }
+      max = _max.get();
+    }
+  }
+
+  /**
+   * Copies the bucket counts.
+   *
+   * @return the counts
+   */
+  long[] getCounts() {
+    final long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = _counts.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * @return the largest value recorded
+   */
+  long getMax() {
+    return _max.get();
+  }
+
+  /**
+   * Gets the bucket for a value.
+   *
+   * @param value
+   *          the value, not negative
+   * @return the bucket
+   */
+  static int bucket(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+    if (magnitude == MAX_MAGNITUDE && value >>> MAX_MAGNITUDE > 1) {
+      return BUCKETS - 1;
+    }
+    final int shift = magnitude - SUB_BUCKET_BITS;
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * Gets the largest value that is recorded in a bucket.
+   *
+   * @param bucket
+   *          the bucket
+   * @return the largest value
+   */
+  static long highestValue(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKETS - 1;
+    final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.core.LineageHeap;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Records the objects in the arguments as the producers of an object result.
+ */
+final class LineageCallPlan extends CallPlan {
+  private final CallPlan _callPlan;
+
+  LineageCallPlan(final CallPlan callPlan) {
+    _callPlan = callPlan;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    final XLValue result = _callPlan.call(heap, args);
+    if (result instanceof XLObject) {
+      final long[] producers = ObjectReferences.getHandles(args);
+      if (producers.length > 0) {
+        ((LineageHeap) heap).addLineage(((XLObject) result).getHandle(), producers, 0, producers.length);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Finds the objects on the heap that values refer to. A value refers to an object if it is an {@link XLObject}, a string that is
+ * an object handle, or an array containing either. Arrays of numbers are skipped without being unpacked.
+ */
+final class ObjectReferences {
+  private static final long[] EMPTY = new long[0];
+
+  private ObjectReferences() {
+  }
+
+  /**
+   * Gets the handles of the objects that values refer to.
+   *
+   * @param values
+   *          the values
+   * @return the handles, which can contain duplicates, or an empty array if there are none
+   */
+  static long[] getHandles(final XLValue[] values) {
+    long[] handles = EMPTY;
+    int n = 0;
+    for (final XLValue value : values) {
+      if (value instanceof XLArray) {
+        final XLArray array = (XLArray) value;
+        if (array.isNumeric()) {
+          continue;
+        }
+        for (final XLValue[] row : array.getArray()) {
+          for (final XLValue element : row) {
+            final XLObject object = toObject(element);
+            if (object != null) {
+              handles = add(handles, n++, object.getHandle());
+            }
+          }
+        }
+      } else {
+        final XLObject object = toObject(value);
+        if (object != null) {
+          handles = add(handles, n++, object.getHandle());
+        }
+      }
+    }
+    return n == handles.length ? handles : Arrays.copyOf(handles, n);
+  }
+
+  /**
+   * Tests whether any of the values refer to one of a set of objects.
+   *
+   * @param values
+   *          the values
+   * @param handles
+   *          the handles of the objects
+   * @return true if any value refers to one of the objects
+   */
+  static boolean refersTo(final XLValue[] values, final Set<Long> handles) {
+    for (final XLValue value : values) {
+      if (refersTo(value, handles)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether a value refers to one of a set of objects.
+   *
+   * @param value
+   *          the value
+   * @param handles
+   *          the handles of the objects
+   * @return true if the value refers to one of the objects
+   */
+  static boolean refersTo(final XLValue value, final Set<Long> handles) {
+    if (value instanceof XLArray) {
+      final XLArray array = (XLArray) value;
+      if (array.isNumeric()) {
+        return false;
+      }
+      for (final XLValue[] row : array.getArray()) {
+        for (final XLValue element : row) {
+          final XLObject object = toObject(element);
+          if (object != null && handles.contains(object.getHandle())) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+    final XLObject object = toObject(value);
+    return object != null && handles.contains(object.getHandle());
+  }
+
+  private static XLObject toObject(final XLValue value) {
+    if (value instanceof XLObject) {
+      return (XLObject) value;
+    }
+    if (value instanceof XLString && ((XLString) value).isXLObject()) {
+      return ((XLString) value).toXLObject();
+    }
+    return null;
+  }
+
+  private static long[] add(final long[] handles, final int n, final long handle) {
+    final long[] result = n == handles.length ? Arrays.copyOf(handles, Math.max(4, n << 1)) : handles;
+    result[n] = handle;
+    return result;
+  }
+}
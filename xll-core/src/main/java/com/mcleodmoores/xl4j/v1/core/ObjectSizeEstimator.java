@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the memory held by an object by walking the objects that can be reached from it. The sizes assume a 64-bit JVM with
+ * compressed references, which is the default for heaps under 32GB. Classes, class loaders, threads and enum constants are
+ * shared, so are not counted, and the walk stops after {@link #MAX_OBJECTS} objects, so the estimate for a very large graph is
+ * low. Objects that are shared between graphs are counted in each of them.
+ * <p>
+ * Fields that cannot be made accessible, such as the fields of JDK classes on Java 9 and later, cannot be read. Collections,
+ * maps and character sequences with fields like this are walked through their public API instead, with an estimate for the
+ * internal storage of each element; for any other class only the references themselves are counted, and a warning is logged.
+ */
+final class ObjectSizeEstimator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ObjectSizeEstimator.class);
+  /** The maximum number of objects visited for one estimate */
+  static final int MAX_OBJECTS = 100000;
+  private static final int OBJECT_HEADER = 12;
+  private static final int ARRAY_HEADER = 16;
+  private static final int REFERENCE = 4;
+  private static final int ALIGNMENT = 8;
+  /** The size of the node that holds an element of a linked or hashed collection, or an entry of a map */
+  private static final int NODE = 32;
+  private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+    @Override
+    protected Layout computeValue(final Class<?> type) {
+      return Layout.of(type);
+    }
+  };
+
+  private ObjectSizeEstimator() {
+  }
+
+  /**
+   * Estimates the memory held by an object.
+   *
+   * @param object
+   *          the object, not null
+   * @return the estimated number of bytes
+   */
+  static long estimate(final Object object) {
+    final Map<Object, Boolean> visited = new IdentityHashMap<>();
+    final Deque<Object> pending = new ArrayDeque<>();
+    pending.push(object);
+    visited.put(object, Boolean.TRUE);
+    long bytes = 0;
+    while (!pending.isEmpty()) {
+      final Object next = pending.pop();
+      final Class<?> type = next.getClass();
+      if (type.isArray()) {
+        final int length = Array.getLength(next);
+        final Class<?> componentType = type.getComponentType();
+        bytes += align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+        if (!componentType.isPrimitive()) {
+          for (final Object element : (Object[]) next) {
+            visit(element, visited, pending);
+          }
+        }
+        continue;
+      }
+      final Layout layout = LAYOUTS.get(type);
+      bytes += layout._size;
+      for (final Field field : layout._references) {
+        try {
+          visit(field.get(next), visited, pending);
+        } catch (final IllegalAccessException e) {
+          // counted as a reference
+        }
+      }
+      if (layout._opaque) {
+        bytes += walk(next, visited, pending);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Walks an object with fields that cannot be read through its public API.
+   *
+   * @param object
+   *          the object
+   * @param visited
+   *          the objects that have been visited
+   * @param pending
+   *          the objects that are still to be walked
+   * @return the estimated size of the internal storage of the object
+   */
+  private static long walk(final Object object, final Map<Object, Boolean> visited, final Deque<Object> pending) {
+    long bytes = 0;
+    try {
+      if (object instanceof Collection) {
+        final Collection<?> collection = (Collection<?>) object;
+        final long size = collection.size();
+        bytes += object instanceof RandomAccess ? align(ARRAY_HEADER + size * REFERENCE) : size * NODE;
+        for (final Object element : collection) {
+          visit(element, visited, pending);
+        }
+      } else if (object instanceof Map) {
+        final Map<?, ?> map = (Map<?, ?>) object;
+        bytes += align(ARRAY_HEADER + (long) map.size() * REFERENCE) + (long) map.size() * NODE;
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+          visit(entry.getKey(), visited, pending);
+          visit(entry.getValue(), visited, pending);
+        }
+      } else if (object instanceof CharSequence) {
+        bytes += align(ARRAY_HEADER + 2L * ((CharSequence) object).length());
+      }
+    } catch (final RuntimeException e) {
+      // modified while it was being walked, so the estimate is what has been counted so far
+    }
+    return bytes;
+  }
+
+  private static void visit(final Object object, final Map<Object, Boolean> visited, final Deque<Object> pending) {
+    if (object == null || visited.size() >= MAX_OBJECTS || isShared(object) || visited.put(object, Boolean.TRUE) != null) {
+      return;
+    }
+    pending.push(object);
+  }
+
+  private static boolean isShared(final Object object) {
+    return object instanceof Class || object instanceof ClassLoader || object instanceof Thread || object instanceof Enum;
+  }
+
+  private static int sizeOf(final Class<?> type) {
+    if (!type.isPrimitive()) {
+      return REFERENCE;
+    }
+    if (type == Long.TYPE || type == Double.TYPE) {
+      return 8;
+    }
+    if (type == Integer.TYPE || type == Float.TYPE) {
+      return 4;
+    }
+    if (type == Short.TYPE || type == Character.TYPE) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(final long size) {
+    return (size + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+
+  /**
+   * The shallow size of instances of a class and the fields that refer to other objects.
+   */
+  private static final class Layout {
+    private final long _size;
+    private final Field[] _references;
+    private final boolean _opaque;
+
+    private Layout(final long size, final Field[] references, final boolean opaque) {
+      _size = size;
+      _references = references;
+      _opaque = opaque;
+    }
+
+    static Layout of(final Class<?> type) {
+      long size = OBJECT_HEADER;
+      final List<Field> references = new ArrayList<>();
+      boolean opaque = false;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (final Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          size += sizeOf(field.getType());
+          if (!field.getType().isPrimitive()) {
+            try {
+              field.setAccessible(true);
+              references.add(field);
+            } catch (final RuntimeException e) {
+              opaque = true;
+            }
+          }
+        }
+      }
+      if (opaque && !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type)
+          && !CharSequence.class.isAssignableFrom(type)) {
+        LOGGER.warn("Cannot read the fields of {}, so only their references are counted in size estimates", type.getName());
+      }
+      return new Layout(align(size), references.toArray(new Field[references.size()]), opaque);
+    }
+  }
+}
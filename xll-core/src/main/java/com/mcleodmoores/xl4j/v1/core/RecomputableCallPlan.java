@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.EvictingHeap;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Marks object results as recomputable, so that they can be evicted from the heap.
+ */
+final class RecomputableCallPlan extends CallPlan {
+  private final CallPlan _callPlan;
+
+  RecomputableCallPlan(final CallPlan callPlan) {
+    _callPlan = callPlan;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    final XLValue result = _callPlan.call(heap, args);
+    if (result instanceof XLObject) {
+      ((EvictingHeap) heap).markRecomputable(((XLObject) result).getHandle());
+    }
+    return result;
+  }
+}
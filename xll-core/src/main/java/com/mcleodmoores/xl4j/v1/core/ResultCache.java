@@ -0,0 +1,382 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * A bounded cache of the results of functions marked as cacheable with <code>isCacheable</code> on
+ * {@link com.mcleodmoores.xl4j.v1.api.annotations.XLFunction} or {@link com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions}.
+ * Results are keyed on the export number and the argument values, so object arguments are keyed on their handle and arrays on
+ * their contents (the hash code of an {@link XLArray} is only calculated once).
+ * <p>
+ * The cache is split into segments, each of which is a least-recently-used map with its own lock. The size of the cache is bounded
+ * by the number of entries and by the weight of the entries, where the weight is the number of cells in the arguments and the
+ * result. The bounds can be set with the system properties <code>xl4j.cache.maxEntries</code> and <code>xl4j.cache.maxWeight</code>.
+ * <p>
+ * Errors are not cached. If the result is an object, the object is held by the cache and its handle is looked up again on each hit,
+ * so a result is still valid if the handle has been collected from the heap.
+ * <p>
+ * The entries that depend on a set of objects, because an argument refers to one of the objects or the result is one of them, can be
+ * counted and removed. The result is matched on the handle it was first given.
+ */
+public class ResultCache {
+  /** The system property used to set the maximum number of entries */
+  public static final String MAX_ENTRIES_PROPERTY_NAME = "xl4j.cache.maxEntries";
+  /** The system property used to set the maximum weight */
+  public static final String MAX_WEIGHT_PROPERTY_NAME = "xl4j.cache.maxWeight";
+  /** The default maximum number of entries */
+  public static final long DEFAULT_MAX_ENTRIES = 10000;
+  /** The default maximum weight, in cells */
+  public static final long DEFAULT_MAX_WEIGHT = 1000000;
+  /** The number of segments, a power of two */
+  private static final int SEGMENTS = 16;
+  private final Segment[] _segments = new Segment[SEGMENTS];
+  private final long _maxEntries;
+  private final long _maxWeight;
+  private final StripedCounter _hits = new StripedCounter();
+  private final StripedCounter _misses = new StripedCounter();
+  private final StripedCounter _evictions = new StripedCounter();
+
+  /**
+   * Creates a cache with the bounds from the system properties, or the defaults if they are not set.
+   */
+  public ResultCache() {
+    this(Long.getLong(MAX_ENTRIES_PROPERTY_NAME, DEFAULT_MAX_ENTRIES), Long.getLong(MAX_WEIGHT_PROPERTY_NAME, DEFAULT_MAX_WEIGHT));
+  }
+
+  /**
+   * @param maxEntries
+   *          the maximum number of entries, greater than zero
+   * @param maxWeight
+   *          the maximum total weight of the entries in cells, greater than zero
+   */
+  public ResultCache(final long maxEntries, final long maxWeight) {
+    ArgumentChecker.isTrue(maxEntries > 0, "maxEntries must be greater than zero");
+    ArgumentChecker.isTrue(maxWeight > 0, "maxWeight must be greater than zero");
+    _maxEntries = maxEntries;
+    _maxWeight = maxWeight;
+    // round up so that small caches can still hold something in every segment
+    final long segmentEntries = (maxEntries + SEGMENTS - 1) / SEGMENTS;
+    final long segmentWeight = (maxWeight + SEGMENTS - 1) / SEGMENTS;
+    for (int i = 0; i < SEGMENTS; i++) {
+      _segments[i] = new Segment(segmentEntries, segmentWeight);
+    }
+  }
+
+  /**
+   * Gets a cached result.
+   *
+   * @param heap
+   *          the heap, used to get the handle of an object result
+   * @param exportNumber
+   *          the export number of the function
+   * @param args
+   *          the arguments
+   * @return the result, or null if it is not in the cache
+   */
+  XLValue get(final Heap heap, final int exportNumber, final XLValue[] args) {
+    final Key key = new Key(exportNumber, args);
+    final CachedResult cached = segment(key).get(key);
+    if (cached == null) {
+      _misses.increment();
+      return null;
+    }
+    _hits.increment();
+    if (cached._object != null) {
+      final XLObject object = (XLObject) cached._value;
+      return XLObject.of(object.getClazz(), heap.getHandle(cached._object));
+    }
+    return cached._value;
+  }
+
+  /**
+   * Adds a result to the cache. Errors, and results that are heavier than a segment, are not cached.
+   *
+   * @param heap
+   *          the heap, used to get the object if the result is an object
+   * @param exportNumber
+   *          the export number of the function
+   * @param args
+   *          the arguments, which must not be changed after this call
+   * @param result
+   *          the result
+   */
+  void put(final Heap heap, final int exportNumber, final XLValue[] args, final XLValue result) {
+    if (result == null || result instanceof XLError) {
+      return;
+    }
+    final Object object = result instanceof XLObject ? heap.getObject(((XLObject) result).getHandle()) : null;
+    if (result instanceof XLObject && object == null) {
+      return;
+    }
+    final Key key = new Key(exportNumber, args);
+    final long weight = getCells(args) + getCells(result);
+    _evictions.add(segment(key).put(key, new CachedResult(result, object, weight)));
+  }
+
+  /**
+   * Counts the entries whose arguments refer to any of a set of objects or whose result is one of them.
+   *
+   * @param handles
+   *          the handles of the objects, not null
+   * @return the number of entries
+   */
+  public long countDependents(final Set<Long> handles) {
+    ArgumentChecker.notNull(handles, "handles");
+    long count = 0;
+    for (final Segment segment : _segments) {
+      count += segment.dependents(handles, false);
+    }
+    return count;
+  }
+
+  /**
+   * Removes the entries whose arguments refer to any of a set of objects or whose result is one of them. The removed entries
+   * are not counted as evictions.
+   *
+   * @param handles
+   *          the handles of the objects, not null
+   * @return the number of entries removed
+   */
+  public long invalidate(final Set<Long> handles) {
+    ArgumentChecker.notNull(handles, "handles");
+    long count = 0;
+    for (final Segment segment : _segments) {
+      count += segment.dependents(handles, true);
+    }
+    return count;
+  }
+
+  /**
+   * Removes all entries. The statistics are not reset.
+   */
+  public void clear() {
+    for (final Segment segment : _segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * @return the number of lookups that found a result
+   */
+  public long getHits() {
+    return _hits.sum();
+  }
+
+  /**
+   * @return the number of lookups that did not find a result
+   */
+  public long getMisses() {
+    return _misses.sum();
+  }
+
+  /**
+   * @return the number of entries removed to stay within the bounds
+   */
+  public long getEvictions() {
+    return _evictions.sum();
+  }
+
+  /**
+   * @return the fraction of lookups that found a result, or zero if there have been no lookups
+   */
+  public double getHitRate() {
+    final long hits = getHits();
+    final long lookups = hits + getMisses();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public long getSize() {
+    long size = 0;
+    for (final Segment segment : _segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the total weight of the entries in cells
+   */
+  public long getWeight() {
+    long weight = 0;
+    for (final Segment segment : _segments) {
+      weight += segment.weight();
+    }
+    return weight;
+  }
+
+  /**
+   * @return the maximum number of entries
+   */
+  public long getMaxEntries() {
+    return _maxEntries;
+  }
+
+  /**
+   * @return the maximum weight in cells
+   */
+  public long getMaxWeight() {
+    return _maxWeight;
+  }
+
+  private Segment segment(final Key key) {
+    // spread the hash so that keys that only differ in the high bits do not all go to the same segment
+    final int hash = key._hashCode ^ key._hashCode >>> 16;
+    return _segments[hash & SEGMENTS - 1];
+  }
+
+  private static long getCells(final XLValue[] args) {
+    long cells = 0;
+    for (final XLValue arg : args) {
+      cells += getCells(arg);
+    }
+    return cells;
+  }
+
+  private static long getCells(final XLValue value) {
+    if (value instanceof XLArray) {
+      final XLArray array = (XLArray) value;
+      return (long) array.getRows() * array.getColumns();
+    }
+    return 1;
+  }
+
+  /**
+   * The cache key, which holds the arguments without copying them.
+   */
+  private static final class Key {
+    private final int _exportNumber;
+    private final XLValue[] _args;
+    private final int _hashCode;
+
+    Key(final int exportNumber, final XLValue[] args) {
+      _exportNumber = exportNumber;
+      _args = args;
+      _hashCode = 31 * exportNumber + Arrays.hashCode(args);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return _exportNumber == other._exportNumber && _hashCode == other._hashCode && Arrays.equals(_args, other._args);
+    }
+  }
+
+  /**
+   * A cached result, holding the object if the result is an object handle.
+   */
+  private static final class CachedResult {
+    private final XLValue _value;
+    private final Object _object;
+    private final long _weight;
+
+    CachedResult(final XLValue value, final Object object, final long weight) {
+      _value = value;
+      _object = object;
+      _weight = weight;
+    }
+  }
+
+  /**
+   * A least-recently-used map bounded by size and weight.
+   */
+  private static final class Segment {
+    private final long _maxEntries;
+    private final long _maxWeight;
+    private final LinkedHashMap<Key, CachedResult> _map = new LinkedHashMap<>(16, 0.75f, true);
+    private long _weight;
+
+    Segment(final long maxEntries, final long maxWeight) {
+      _maxEntries = maxEntries;
+      _maxWeight = maxWeight;
+    }
+
+    synchronized CachedResult get(final Key key) {
+      return _map.get(key);
+    }
+
+    /**
+     * @return the number of entries evicted
+     */
+    synchronized int put(final Key key, final CachedResult result) {
+      if (result._weight > _maxWeight) {
+        return 0;
+      }
+      final CachedResult previous = _map.put(key, result);
+      if (previous != null) {
+        _weight -= previous._weight;
+      }
+      _weight += result._weight;
+      int evicted = 0;
+      final Iterator<Map.Entry<Key, CachedResult>> iterator = _map.entrySet().iterator();
+      while ((_map.size() > _maxEntries || _weight > _maxWeight) && iterator.hasNext()) {
+        final Map.Entry<Key, CachedResult> eldest = iterator.next();
+        _weight -= eldest.getValue()._weight;
+        iterator.remove();
+        evicted++;
+      }
+      return evicted;
+    }
+
+    /**
+     * @return the number of entries that depend on the objects
+     */
+    synchronized int dependents(final Set<Long> handles, final boolean remove) {
+      int count = 0;
+      final Iterator<Map.Entry<Key, CachedResult>> iterator = _map.entrySet().iterator();
+      while (iterator.hasNext()) {
+        final Map.Entry<Key, CachedResult> entry = iterator.next();
+        final CachedResult result = entry.getValue();
+        if (ObjectReferences.refersTo(entry.getKey()._args, handles)
+            || result._object != null && ObjectReferences.refersTo(result._value, handles)) {
+          count++;
+          if (remove) {
+            _weight -= result._weight;
+            iterator.remove();
+          }
+        }
+      }
+      return count;
+    }
+
+    synchronized void clear() {
+      _map.clear();
+      _weight = 0;
+    }
+
+    synchronized int size() {
+      return _map.size();
+    }
+
+    synchronized long weight() {
+      return _weight;
+    }
+  }
+}
@@ -0,0 +1,1269 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.EvictingHeap;
+import com.mcleodmoores.xl4j.v1.api.core.IncrementalHeap;
+import com.mcleodmoores.xl4j.v1.api.core.LineageHeap;
+import com.mcleodmoores.xl4j.v1.api.core.LineageListener;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Class to store objects and allocate handles for objects. The handles and objects are split across shards, each of which
+ * is an open-addressed table keyed on primitive handles (or object identity), so lookups do not box the handle and
+ * threads only contend when they use the same shard.
+ * <p>
+ * Garbage collection is epoch-based. Each call to {@link #cycleGC(long[])} starts a new epoch and stamps the reported
+ * handles with it. Every handle is filed in exactly one generation, and only the generation that has not been reported
+ * for {@link #COLLECTION_CYCLES} cycles is visited. Handles in it that have been seen since are moved to the generation
+ * of their last sighting; the rest are removed. The work done by a cycle therefore depends on the number of handles
+ * reported and the number that expire, not on the size of the heap.
+ * <p>
+ * A cycle can be run incrementally using the methods of {@link IncrementalHeap}, in which case the dead objects are
+ * removed on a background thread. If the heap is created in concurrent mode, which is the default if the system property
+ * <code>xl4j.heap.concurrentGC</code> is <code>true</code>, {@link #cycleGC(long[])} returns immediately and the handles
+ * are marked in chunks and swept on the background thread, so sheet operations carry on during collection. In this mode,
+ * the number of unrecognised handles that is returned is from the last cycle that has finished, and a request that is made
+ * while an earlier one is still waiting to start replaces it, so at most one collection is running and one waiting.
+ * <p>
+ * Any handle that is returned by {@link #getHandle(Object)} during a cycle, whether new or existing, is treated as if it
+ * was reported in the next cycle so that it cannot be removed before Excel has had the chance to report it.
+ * <p>
+ * If the heap is given a {@link HeapSnapshot}, which is the default if the system property <code>xl4j.heap.snapshot</code>
+ * names a file, serializable objects are saved to it in the background when their handle is created. After a restart, an
+ * object is read back from the snapshot the first time its handle is asked for, and keeps the same handle.
+ * <p>
+ * The number of objects of each class is kept up to date. If a soft limit is set by the system property
+ * <code>xl4j.heap.maxBytes</code>, the memory reachable from each new object is also estimated. The estimate is made on the
+ * background thread, not the thread that asked for the handle, and any that are outstanding are made at the end of each cycle.
+ * If the total is over the limit at the end of a cycle, objects that have been marked as recomputable are removed, least
+ * recently reported first, until it is under the limit. Objects that were reported in the cycle are never removed. Asking for
+ * a removed object throws an {@link EvictedObjectException}, which the call handler turns into <code>#REF!</code>, and the
+ * handle is counted as unrecognised when it is reported so that Excel recalculates the cell that produced it. The limit is
+ * soft because it is only checked during collection and because the estimates count objects that are shared by more than
+ * one object on the heap more than once.
+ * <p>
+ * The call handler records which objects were produced from which in a {@link HandleGraph}, which it uses to invalidate the
+ * cached results that depend on an object. The lineage does not keep objects alive: an expired object is removed, along with
+ * its edges, whether or not anything produced from it is still reported, as the objects produced from it hold their own
+ * references to anything they need. When a cycle removes objects that other objects were produced from, the
+ * {@link LineageListener}s are told the handles of those objects and of all of their descendants, so that the cached results
+ * that depend on them are invalidated in one step.
+ */
+public class ShardedHeap implements IncrementalHeap, EvictingHeap, LineageHeap {
+  /** The system property used to make collection concurrent by default */
+  public static final String CONCURRENT_GC_PROPERTY_NAME = "xl4j.heap.concurrentGC";
+  /** The system property used to set the soft limit on the estimated memory held by the heap in bytes, zero for no limit */
+  public static final String MAX_BYTES_PROPERTY_NAME = "xl4j.heap.maxBytes";
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardedHeap.class);
+  /** The number of cycles a handle can go unreported before the object is removed */
+  static final int COLLECTION_CYCLES = 4;
+  private static final int SHARD_BITS = 6;
+  private static final int N_SHARDS = 1 << SHARD_BITS;
+  private static final int INITIAL_SHARD_CAPACITY = 64;
+  private static final long LONG_MIX = 0x9E3779B97F4A7C15L;
+  private static final int INT_MIX = 0x9E3779B9;
+  private static final int N_GENERATIONS = COLLECTION_CYCLES + 2;
+  private static final int MARK_CHUNK_SIZE = 4096;
+  /** Returned when a handle is not on the heap */
+  private static final long NOT_FOUND = Long.MIN_VALUE;
+  /** Returned when an object has been removed */
+  private static final long REMOVED = Long.MAX_VALUE;
+  private final HandleShard[] _handleShards;
+  private final ObjectShard[] _objectShards;
+  private final HandleList[] _generations;
+  private final AtomicLong _sequence;
+  private final boolean _concurrentGC;
+  /** Null if objects are not persisted */
+  private final HeapSnapshot _snapshot;
+  /** The number of objects and estimated bytes for each class */
+  private final ConcurrentMap<Class<?>, ClassAccount> _classAccounts = new ConcurrentHashMap<>();
+  private final AtomicLong _estimatedBytes = new AtomicLong();
+  private final AtomicLong _evictions = new AtomicLong();
+  /** The handles of objects whose size has not been estimated */
+  private final HandleList _unaccounted = new HandleList();
+  /** True if a task to estimate the sizes of new objects is waiting to run on the collector */
+  private final AtomicBoolean _accountingScheduled = new AtomicBoolean();
+  /** Held while sizes are estimated, so that a sweep waits for estimates that are being made */
+  private final Object _accountingLock = new Object();
+  /** The handles of objects that were evicted, and the epoch in which they were evicted or last reported */
+  private final EvictedHandles _evicted = new EvictedHandles();
+  /** The objects that were produced from other objects */
+  private final HandleGraph _graph = new HandleGraph();
+  /** Told when objects that other objects were produced from are removed */
+  private final List<LineageListener> _lineageListeners = new CopyOnWriteArrayList<>();
+  /** The soft limit on the estimated bytes, zero for no limit */
+  private volatile long _maxBytes = Math.max(0, Long.getLong(MAX_BYTES_PROPERTY_NAME, 0));
+  private volatile int _epoch;
+  /** The cycle that is being marked, guarded by this */
+  private Cycle _cycle;
+  /** The last sweep, guarded by this */
+  private Future<Long> _sweep;
+  /** The number of unrecognised handles in the last cycle to finish */
+  private volatile long _unrecognisedHandles;
+  /** The handles from the latest concurrent collection request that has not started, null if none is waiting */
+  private final AtomicReference<long[]> _pendingHandles = new AtomicReference<>();
+  /** The background thread that removes dead objects, created when first needed and guarded by this */
+  private ExecutorService _collector;
+
+  /**
+   * Construct a heap, using concurrent collection if the system property <code>xl4j.heap.concurrentGC</code> is true and
+   * persisting objects to the file named by the system property <code>xl4j.heap.snapshot</code> if it is set.
+   */
+  public ShardedHeap() {
+    this(Boolean.getBoolean(CONCURRENT_GC_PROPERTY_NAME), HeapSnapshot.fromSystemProperty());
+  }
+
+  /**
+   * Construct a heap.
+   *
+   * @param concurrentGC
+   *          true if {@link #cycleGC(long[])} should return immediately and collect in the background
+   */
+  public ShardedHeap(final boolean concurrentGC) {
+    this(concurrentGC, null);
+  }
+
+  /**
+   * Construct a heap that persists objects to a snapshot.
+   *
+   * @param concurrentGC
+   *          true if {@link #cycleGC(long[])} should return immediately and collect in the background
+   * @param snapshot
+   *          the snapshot that objects are saved to and restored from, null if objects are not persisted
+   */
+  public ShardedHeap(final boolean concurrentGC, final HeapSnapshot snapshot) {
+    _concurrentGC = concurrentGC;
+    _snapshot = snapshot;
+    _handleShards = new HandleShard[N_SHARDS];
+    _objectShards = new ObjectShard[N_SHARDS];
+    for (int i = 0; i < N_SHARDS; i++) {
+      _handleShards[i] = new HandleShard();
+      _objectShards[i] = new ObjectShard();
+    }
+    _generations = new HandleList[N_GENERATIONS];
+    for (int i = 0; i < N_GENERATIONS; i++) {
+      _generations[i] = new HandleList();
+    }
+    final long baseHandle = ConcurrentHeap.createBaseHandle();
+    // never reuse a handle that could be in the snapshot
+    _sequence = new AtomicLong(snapshot == null ? baseHandle : Math.max(baseHandle, snapshot.getNextHandle()));
+  }
+
+  @Override
+  public long getHandle(final Object object) {
+    ArgumentChecker.notNull(object, "object");
+    final int objectHash = objectHash(object);
+    final ObjectShard objectShard = _objectShards[objectHash >>> (Integer.SIZE - SHARD_BITS)];
+    final long newHandle;
+    final int epoch;
+    synchronized (objectShard) {
+      // handles given out while a cycle is running are treated as if they were reported in the next cycle
+      epoch = _epoch + 1;
+      final int index = objectShard.find(object, objectHash);
+      if (index >= 0) {
+        final long handle = objectShard._handles[index];
+        final long handleHash = handleHash(handle);
+        final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+        synchronized (handleShard) {
+          handleShard.touch(handle, (int) handleHash, epoch);
+        }
+        return handle;
+      }
+      newHandle = _sequence.getAndIncrement();
+      final long handleHash = handleHash(newHandle);
+      final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+      synchronized (handleShard) {
+        handleShard.put(newHandle, (int) handleHash, object, epoch);
+        getClassAccount(object.getClass()).add(1, 0);
+      }
+      objectShard.put(object, objectHash, newHandle);
+    }
+    _generations[generation(epoch)].add(newHandle);
+    LOGGER.trace("Creating new object handle {}", newHandle);
+    scheduleAccounting(newHandle);
+    if (_snapshot != null) {
+      _snapshot.checkpoint(newHandle, object);
+    }
+    return newHandle;
+  }
+
+  @Override
+  public Object getObject(final long handle) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    Object object;
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      object = index < 0 ? null : handleShard._objects[index];
+    }
+    if (object == null && _evicted.contains(handle)) {
+      LOGGER.info("Object with handle {} was evicted", handle);
+      throw new EvictedObjectException(handle);
+    }
+    if (object == null && _snapshot != null) {
+      object = restore(handle);
+    }
+    if (object == null) {
+      if (_snapshot != null && _snapshot.isStale(handle)) {
+        LOGGER.warn("Object with handle {} from a previous session was not saved", handle);
+        throw new XL4JRuntimeException("Object with handle " + handle + " from a previous session was not saved");
+      }
+      LOGGER.warn("Cannot find object with handle " + handle);
+      throw new XL4JRuntimeException("Cannot find object with handle " + handle);
+    }
+    return object;
+  }
+
+  /**
+   * Puts an object from the snapshot back on the heap with its old handle.
+   *
+   * @param handle
+   *          the handle
+   * @return the object, or null if it is not in the snapshot
+   */
+  private Object restore(final long handle) {
+    final Object restored = _snapshot.restore(handle);
+    if (restored == null) {
+      return null;
+    }
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    final int objectHash = objectHash(restored);
+    final ObjectShard objectShard = _objectShards[objectHash >>> (Integer.SIZE - SHARD_BITS)];
+    final int epoch;
+    synchronized (objectShard) {
+      epoch = _epoch + 1;
+      synchronized (handleShard) {
+        final int index = handleShard.find(handle, (int) handleHash);
+        if (index >= 0) {
+          // restored by another thread
+          return handleShard._objects[index];
+        }
+        handleShard.put(handle, (int) handleHash, restored, epoch);
+        getClassAccount(restored.getClass()).add(1, 0);
+      }
+      objectShard.put(restored, objectHash, handle);
+    }
+    _generations[generation(epoch)].add(handle);
+    _snapshot.claim(handle);
+    scheduleAccounting(handle);
+    return restored;
+  }
+
+  @Override
+  public void markRecomputable(final long handle) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      if (index >= 0) {
+        handleShard._recomputable[index] = true;
+      }
+    }
+  }
+
+  @Override
+  public void addLineage(final long consumer, final long[] producers, final int offset, final int length) {
+    ArgumentChecker.notNull(producers, "producers");
+    if (length == 0) {
+      return;
+    }
+    _graph.addEdges(consumer, producers, offset, length);
+    // a handle that was removed while the edges were added would never be removed from the graph
+    if (lastSeen(consumer) == NOT_FOUND) {
+      _graph.remove(consumer);
+    }
+    for (int i = offset; i < offset + length; i++) {
+      if (lastSeen(producers[i]) == NOT_FOUND) {
+        _graph.remove(producers[i]);
+      }
+    }
+  }
+
+  @Override
+  public long[] getDescendants(final long handle) {
+    return _graph.getDescendants(handle);
+  }
+
+  @Override
+  public void addLineageListener(final LineageListener listener) {
+    _lineageListeners.add(ArgumentChecker.notNull(listener, "listener"));
+  }
+
+  /**
+   * @return the graph of the objects that were produced from other objects
+   */
+  public HandleGraph getHandleGraph() {
+    return _graph;
+  }
+
+  /**
+   * Gets the epoch in which a handle was last seen.
+   *
+   * @param handle
+   *          the handle
+   * @return the epoch, or {@link #NOT_FOUND} if the handle is not on the heap
+   */
+  private long lastSeen(final long handle) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      return index < 0 ? NOT_FOUND : handleShard._epochs[index];
+    }
+  }
+
+  /**
+   * Queues a new object to have its size estimated on the collector thread. Nothing is estimated if there is no limit.
+   *
+   * @param handle
+   *          the handle
+   */
+  private void scheduleAccounting(final long handle) {
+    if (_maxBytes <= 0) {
+      return;
+    }
+    _unaccounted.add(handle);
+    if (_accountingScheduled.compareAndSet(false, true)) {
+      getCollector().execute(new Runnable() {
+        @Override
+        public void run() {
+          _accountingScheduled.set(false);
+          accountPending();
+        }
+      });
+    }
+  }
+
+  /**
+   * Estimates the sizes of the objects that are waiting to be estimated.
+   */
+  private void accountPending() {
+    synchronized (_accountingLock) {
+      for (final long handle : _unaccounted.drain()) {
+        account(handle);
+      }
+    }
+  }
+
+  /**
+   * Estimates the size of an object. The size is estimated outside the shard locks, as the object graph could be large,
+   * and is only recorded if the object has not been removed in the meantime.
+   *
+   * @param handle
+   *          the handle
+   */
+  private void account(final long handle) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    final Object object;
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      if (index < 0) {
+        return;
+      }
+      object = handleShard._objects[index];
+    }
+    long bytes;
+    try {
+      bytes = ObjectSizeEstimator.estimate(object);
+    } catch (final RuntimeException e) {
+      // e.g. the object was changed by another thread while it was being walked
+      LOGGER.debug("Could not estimate size of {}: {}", object.getClass(), e.getMessage());
+      bytes = 0;
+    }
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      if (index >= 0 && handleShard._objects[index] == object) {
+        // replace any earlier estimate
+        final long change = bytes - handleShard._bytes[index];
+        handleShard._bytes[index] = bytes;
+        getClassAccount(object.getClass()).add(0, change);
+        _estimatedBytes.addAndGet(change);
+      }
+    }
+  }
+
+  private ClassAccount getClassAccount(final Class<?> type) {
+    final ClassAccount account = _classAccounts.get(type);
+    if (account != null) {
+      return account;
+    }
+    final ClassAccount newAccount = new ClassAccount();
+    final ClassAccount existing = _classAccounts.putIfAbsent(type, newAccount);
+    return existing == null ? newAccount : existing;
+  }
+
+  /**
+   * Removes an object from the accounts. Must be called while holding the lock on the handle's shard.
+   *
+   * @param object
+   *          the object
+   * @param bytes
+   *          the estimated size of the object
+   */
+  private void unaccount(final Object object, final long bytes) {
+    final ClassAccount account = _classAccounts.get(object.getClass());
+    if (account != null) {
+      account.add(-1, -bytes);
+    }
+    _estimatedBytes.addAndGet(-bytes);
+  }
+
+  @Override
+  public long cycleGC(final long[] activeHandles) {
+    ArgumentChecker.notNull(activeHandles, "activeHandles");
+    if (!_concurrentGC) {
+      startGC();
+      markLive(activeHandles, 0, activeHandles.length);
+      return sweep(takeCycle());
+    }
+    // a request made while another is waiting replaces its handles, so requests cannot pile up behind a long collection
+    if (_pendingHandles.getAndSet(activeHandles) != null) {
+      return _unrecognisedHandles;
+    }
+    getCollector().execute(new Runnable() {
+      @Override
+      public void run() {
+        final long[] handles = _pendingHandles.getAndSet(null);
+        try {
+          // the collector runs one task at a time, so any previous sweep has finished
+          startCycle();
+        } catch (final XL4JRuntimeException e) {
+          LOGGER.error("Could not start heap collection", e);
+          return;
+        }
+        try {
+          for (int i = 0; i < handles.length; i += MARK_CHUNK_SIZE) {
+            markLive(handles, i, Math.min(MARK_CHUNK_SIZE, handles.length - i));
+          }
+        } finally {
+          // already on the collector thread, so sweep now rather than queuing behind any later cycles
+          sweep(takeCycle());
+        }
+      }
+    });
+    return _unrecognisedHandles;
+  }
+
+  @Override
+  public void startGC() {
+    final Future<Long> sweep;
+    synchronized (this) {
+      if (_cycle != null) {
+        throw new XL4JRuntimeException("Heap collection cycle already started");
+      }
+      sweep = _sweep;
+    }
+    // the generations cannot be reused until the previous sweep has finished
+    if (sweep != null) {
+      try {
+        sweep.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new XL4JRuntimeException("Interrupted while waiting for heap collection", e);
+      } catch (final ExecutionException e) {
+        LOGGER.error("Error in previous heap collection", e.getCause());
+      }
+    }
+    startCycle();
+  }
+
+  private synchronized void startCycle() {
+    if (_cycle != null) {
+      throw new XL4JRuntimeException("Heap collection cycle already started");
+    }
+    final int epoch = _epoch + 1;
+    _epoch = epoch;
+    _cycle = new Cycle(epoch);
+    LOGGER.trace("GC starting, epoch {}", epoch);
+  }
+
+  @Override
+  public synchronized void markLive(final long[] activeHandles, final int offset, final int length) {
+    ArgumentChecker.notNull(activeHandles, "activeHandles");
+    if (_cycle == null) {
+      throw new XL4JRuntimeException("Heap collection cycle has not been started");
+    }
+    final int epoch = _cycle._epoch;
+    for (int i = offset; i < offset + length; i++) {
+      final long handle = activeHandles[i];
+      final long handleHash = handleHash(handle);
+      final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+      synchronized (handleShard) {
+        if (handleShard.touch(handle, (int) handleHash, epoch)) {
+          continue;
+        }
+      }
+      _cycle.unrecognised(handle);
+    }
+  }
+
+  @Override
+  public Future<Long> endGC() {
+    final Cycle cycle = takeCycle();
+    final Future<Long> sweep = getCollector().submit(new Callable<Long>() {
+      @Override
+      public Long call() {
+        return sweep(cycle);
+      }
+    });
+    synchronized (this) {
+      _sweep = sweep;
+    }
+    return sweep;
+  }
+
+  private synchronized Cycle takeCycle() {
+    if (_cycle == null) {
+      throw new XL4JRuntimeException("Heap collection cycle has not been started");
+    }
+    final Cycle cycle = _cycle;
+    _cycle = null;
+    return cycle;
+  }
+
+  private synchronized ExecutorService getCollector() {
+    if (_collector == null) {
+      _collector = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+          final Thread thread = new Thread(runnable, "xl4j-heap-collector");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return _collector;
+  }
+
+  /**
+   * Removes the objects in the generation that has gone unreported for long enough.
+   *
+   * @param cycle
+   *          the cycle
+   * @return the number of unrecognised handles in the cycle
+   */
+  private long sweep(final Cycle cycle) {
+    final int expiredEpoch = cycle._epoch - COLLECTION_CYCLES;
+    final long[] candidates = _generations[generation(expiredEpoch)].drain();
+    final HandleList removedLineage = new HandleList();
+    long removed = 0;
+    for (final long handle : candidates) {
+      final long lastSeen = removeIfExpired(handle, expiredEpoch, removedLineage);
+      if (lastSeen == REMOVED) {
+        removed++;
+      } else if (lastSeen != NOT_FOUND) {
+        // seen since this generation was filed, so move it to the generation it was last seen in
+        _generations[generation((int) lastSeen)].add(handle);
+      }
+    }
+    LOGGER.trace("{} objects removed during GC pass", removed);
+    final long unrecognisedHandles = cycle.countUnrecognised();
+    if (_snapshot != null) {
+      // handles from a previous session that are still in the sheet are unrecognised until they are restored
+      _snapshot.endCycle(cycle._unrecognised, cycle._nUnrecognised);
+    }
+    expireEvictedHandles(cycle);
+    accountPending();
+    evict(cycle._epoch, removedLineage);
+    lineageRemoved(removedLineage.drain());
+    if (unrecognisedHandles > 0) {
+      LOGGER.error("There were {} unrecognised handles, triggering recalc", unrecognisedHandles);
+    }
+    _unrecognisedHandles = unrecognisedHandles;
+    return unrecognisedHandles;
+  }
+
+  /**
+   * Removes an object if it has not been seen since an epoch.
+   *
+   * @param handle
+   *          the handle
+   * @param expiredEpoch
+   *          the epoch
+   * @param removedLineage
+   *          the list that the handles of the object and its descendants are added to if other objects were produced from it
+   * @return {@link #REMOVED} if the object was removed, {@link #NOT_FOUND} if it was not on the heap, or the epoch in which it
+   *         was last seen
+   */
+  private long removeIfExpired(final long handle, final int expiredEpoch, final HandleList removedLineage) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    final Object object;
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      if (index < 0) {
+        return NOT_FOUND;
+      }
+      object = handleShard._objects[index];
+    }
+    final int objectHash = objectHash(object);
+    final ObjectShard objectShard = _objectShards[objectHash >>> (Integer.SIZE - SHARD_BITS)];
+    synchronized (objectShard) {
+      synchronized (handleShard) {
+        // read the epoch while holding both locks, as the handle could be given out again at any time
+        final int index = handleShard.find(handle, (int) handleHash);
+        if (index < 0) {
+          return NOT_FOUND;
+        }
+        final int lastSeen = handleShard._epochs[index];
+        if (lastSeen - expiredEpoch > 0) {
+          return lastSeen;
+        }
+        unaccount(object, handleShard._bytes[index]);
+        handleShard.remove(handle, (int) handleHash);
+      }
+      objectShard.remove(object, objectHash);
+    }
+    removeFromGraph(handle, removedLineage);
+    if (_snapshot != null) {
+      _snapshot.remove(handle);
+    }
+    return REMOVED;
+  }
+
+  /**
+   * Removes a handle and its edges from the lineage graph.
+   *
+   * @param handle
+   *          the handle
+   * @param removedLineage
+   *          the list that the handle and the handles of its descendants are added to if other objects were produced from it
+   */
+  private void removeFromGraph(final long handle, final HandleList removedLineage) {
+    if (_graph.hasConsumers(handle)) {
+      removedLineage.add(handle);
+      for (final long descendant : _graph.getDescendants(handle)) {
+        removedLineage.add(descendant);
+      }
+    }
+    _graph.remove(handle);
+  }
+
+  /**
+   * Tells the listeners that objects that other objects were produced from have been removed.
+   *
+   * @param handles
+   *          the handles of the removed objects and their descendants
+   */
+  private void lineageRemoved(final long[] handles) {
+    if (handles.length == 0) {
+      return;
+    }
+    for (final LineageListener listener : _lineageListeners) {
+      try {
+        listener.lineageRemoved(handles);
+      } catch (final RuntimeException e) {
+        LOGGER.error("Lineage listener {} failed", listener, e);
+      }
+    }
+  }
+
+  /**
+   * Forgets evicted handles that have not been reported for {@link #COLLECTION_CYCLES} cycles.
+   *
+   * @param cycle
+   *          the cycle, with its unrecognised handles sorted
+   */
+  private void expireEvictedHandles(final Cycle cycle) {
+    _evicted.expire(cycle);
+  }
+
+  /**
+   * Removes recomputable objects that were not reported in this cycle, least recently reported first, until the estimated
+   * memory is under the limit.
+   *
+   * @param epoch
+   *          the epoch of the cycle
+   * @param removedLineage
+   *          the list that the handles of evicted objects and their descendants are added to if other objects were produced
+   *          from them
+   * @return the number of objects evicted
+   */
+  private long evict(final int epoch, final HandleList removedLineage) {
+    final long maxBytes = _maxBytes;
+    if (maxBytes <= 0 || _estimatedBytes.get() <= maxBytes) {
+      return 0;
+    }
+    final List<long[]> candidates = new ArrayList<>();
+    for (final HandleShard handleShard : _handleShards) {
+      synchronized (handleShard) {
+        for (int i = 0; i < handleShard._objects.length; i++) {
+          if (handleShard._objects[i] != null && handleShard._recomputable[i] && handleShard._epochs[i] - epoch < 0) {
+            candidates.add(new long[] {handleShard._epochs[i] - epoch, handleShard._handles[i]});
+          }
+        }
+      }
+    }
+    Collections.sort(candidates, new Comparator<long[]>() {
+      @Override
+      public int compare(final long[] candidate1, final long[] candidate2) {
+        return Long.compare(candidate1[0], candidate2[0]);
+      }
+    });
+    long evicted = 0;
+    for (final long[] candidate : candidates) {
+      if (_estimatedBytes.get() <= maxBytes) {
+        break;
+      }
+      if (evict(candidate[1], epoch, removedLineage)) {
+        evicted++;
+      }
+    }
+    _evictions.addAndGet(evicted);
+    if (_estimatedBytes.get() > maxBytes) {
+      LOGGER.warn("Heap holds an estimated {} bytes after evicting {} objects, which is over the limit of {} bytes", _estimatedBytes.get(),
+          evicted, maxBytes);
+    } else {
+      LOGGER.info("Evicted {} objects to bring the heap under the limit of {} bytes", evicted, maxBytes);
+    }
+    return evicted;
+  }
+
+  /**
+   * Evicts an object if it has not been seen since the start of the cycle.
+   *
+   * @param handle
+   *          the handle
+   * @param epoch
+   *          the epoch of the cycle
+   * @param removedLineage
+   *          the list that the handles of the object and its descendants are added to if other objects were produced from it
+   * @return true if the object was evicted
+   */
+  private boolean evict(final long handle, final int epoch, final HandleList removedLineage) {
+    final long handleHash = handleHash(handle);
+    final HandleShard handleShard = _handleShards[(int) (handleHash >>> (Long.SIZE - SHARD_BITS))];
+    final Object object;
+    synchronized (handleShard) {
+      final int index = handleShard.find(handle, (int) handleHash);
+      if (index < 0) {
+        return false;
+      }
+      object = handleShard._objects[index];
+    }
+    final int objectHash = objectHash(object);
+    final ObjectShard objectShard = _objectShards[objectHash >>> (Integer.SIZE - SHARD_BITS)];
+    synchronized (objectShard) {
+      synchronized (handleShard) {
+        final int index = handleShard.find(handle, (int) handleHash);
+        // the handle could have been given out again since the candidates were found
+        if (index < 0 || handleShard._epochs[index] - epoch >= 0) {
+          return false;
+        }
+        unaccount(object, handleShard._bytes[index]);
+        handleShard.remove(handle, (int) handleHash);
+      }
+      objectShard.remove(object, objectHash);
+    }
+    _evicted.put(handle, epoch);
+    removeFromGraph(handle, removedLineage);
+    if (_snapshot != null) {
+      _snapshot.remove(handle);
+    }
+    LOGGER.debug("Evicted object with handle {}", handle);
+    return true;
+  }
+
+  /**
+   * @return the estimated number of bytes held by the objects in the heap
+   */
+  public long getEstimatedBytes() {
+    return _estimatedBytes.get();
+  }
+
+  /**
+   * @return the soft limit on the estimated number of bytes, zero if there is no limit
+   */
+  public long getMaxBytes() {
+    return _maxBytes;
+  }
+
+  /**
+   * Sets the soft limit on the estimated number of bytes held by the heap, which is applied at the end of the next cycle. If
+   * there was no limit, the sizes of the objects already on the heap are estimated.
+   *
+   * @param maxBytes
+   *          the limit, or zero for no limit
+   */
+  public void setMaxBytes(final long maxBytes) {
+    ArgumentChecker.notNegative(maxBytes, "maxBytes");
+    final long previous = _maxBytes;
+    _maxBytes = maxBytes;
+    if (previous <= 0 && maxBytes > 0) {
+      for (final HandleShard handleShard : _handleShards) {
+        final List<Long> handles = new ArrayList<>();
+        synchronized (handleShard) {
+          for (int i = 0; i < handleShard._objects.length; i++) {
+            if (handleShard._objects[i] != null) {
+              handles.add(handleShard._handles[i]);
+            }
+          }
+        }
+        for (final long handle : handles) {
+          scheduleAccounting(handle);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of objects that have been evicted to keep the heap under the limit
+   */
+  public long getEvictions() {
+    return _evictions.get();
+  }
+
+  /**
+   * Gets the number of objects of each class on the heap and the estimated memory that they hold.
+   *
+   * @return the statistics, largest first
+   */
+  public List<HeapClassStatistic> getClassStatistics() {
+    final List<HeapClassStatistic> statistics = new ArrayList<>();
+    for (final Map.Entry<Class<?>, ClassAccount> entry : _classAccounts.entrySet()) {
+      final long objects = entry.getValue()._objects.get();
+      if (objects > 0) {
+        statistics.add(new HeapClassStatistic(entry.getKey().getName(), objects, entry.getValue()._bytes.get()));
+      }
+    }
+    Collections.sort(statistics, new Comparator<HeapClassStatistic>() {
+      @Override
+      public int compare(final HeapClassStatistic statistic1, final HeapClassStatistic statistic2) {
+        final int compare = Long.compare(statistic2.getBytes(), statistic1.getBytes());
+        return compare != 0 ? compare : statistic1.getClassName().compareTo(statistic2.getClassName());
+      }
+    });
+    return statistics;
+  }
+
+  /**
+   * @return the number of objects in the heap
+   */
+  public int size() {
+    int size = 0;
+    for (final HandleShard handleShard : _handleShards) {
+      synchronized (handleShard) {
+        size += handleShard._size;
+      }
+    }
+    return size;
+  }
+
+  private static int generation(final int epoch) {
+    return (epoch % N_GENERATIONS + N_GENERATIONS) % N_GENERATIONS;
+  }
+
+  private static long handleHash(final long handle) {
+    return handle * LONG_MIX;
+  }
+
+  private static int objectHash(final Object object) {
+    return System.identityHashCode(object) * INT_MIX;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("WorksheetHeap[\n");
+    for (final HandleShard handleShard : _handleShards) {
+      synchronized (handleShard) {
+        for (int i = 0; i < handleShard._objects.length; i++) {
+          if (handleShard._objects[i] != null) {
+            sb.append("  ");
+            sb.append(Long.toUnsignedString(handleShard._handles[i]));
+            sb.append(" = > ");
+            sb.append(handleShard._objects[i].toString());
+            sb.append('\n');
+          }
+        }
+      }
+    }
+    sb.append(']');
+    return sb.toString();
+  }
+
+  /**
+   * An open-addressed table from handle to object and the epoch in which the handle was last seen. Empty slots have
+   * a null object. Must be used while holding the shard's lock.
+   */
+  private static final class HandleShard {
+    private long[] _handles = new long[INITIAL_SHARD_CAPACITY];
+    private Object[] _objects = new Object[INITIAL_SHARD_CAPACITY];
+    private int[] _epochs = new int[INITIAL_SHARD_CAPACITY];
+    private long[] _bytes = new long[INITIAL_SHARD_CAPACITY];
+    private boolean[] _recomputable = new boolean[INITIAL_SHARD_CAPACITY];
+    private int _size;
+
+    int find(final long handle, final int hash) {
+      final int mask = _objects.length - 1;
+      int i = hash & mask;
+      while (_objects[i] != null) {
+        if (_handles[i] == handle) {
+          return i;
+        }
+        i = i + 1 & mask;
+      }
+      return -1;
+    }
+
+    boolean touch(final long handle, final int hash, final int epoch) {
+      final int index = find(handle, hash);
+      if (index < 0) {
+        return false;
+      }
+      if (_epochs[index] - epoch < 0) {
+        _epochs[index] = epoch;
+      }
+      return true;
+    }
+
+    int put(final long handle, final int hash, final Object object, final int epoch) {
+      if (_size + 1 > _objects.length >> 1) {
+        resize();
+      }
+      final int mask = _objects.length - 1;
+      int i = hash & mask;
+      while (_objects[i] != null) {
+        i = i + 1 & mask;
+      }
+      _handles[i] = handle;
+      _objects[i] = object;
+      _epochs[i] = epoch;
+      _bytes[i] = 0;
+      _recomputable[i] = false;
+      _size++;
+      return i;
+    }
+
+    void remove(final long handle, final int hash) {
+      int i = find(handle, hash);
+      if (i < 0) {
+        return;
+      }
+      final int mask = _objects.length - 1;
+      _objects[i] = null;
+      _size--;
+      // shift back any entries that would no longer be found
+      int j = i;
+      while (true) {
+        j = j + 1 & mask;
+        if (_objects[j] == null) {
+          return;
+        }
+        final int k = (int) handleHash(_handles[j]) & mask;
+        if (j > i ? k <= i || k > j : k <= i && k > j) {
+          _handles[i] = _handles[j];
+          _objects[i] = _objects[j];
+          _epochs[i] = _epochs[j];
+          _bytes[i] = _bytes[j];
+          _recomputable[i] = _recomputable[j];
+          _objects[j] = null;
+          i = j;
+        }
+      }
+    }
+
+    private void resize() {
+      final long[] handles = _handles;
+      final Object[] objects = _objects;
+      final int[] epochs = _epochs;
+      final long[] bytes = _bytes;
+      final boolean[] recomputable = _recomputable;
+      _handles = new long[handles.length << 1];
+      _objects = new Object[objects.length << 1];
+      _epochs = new int[epochs.length << 1];
+      _bytes = new long[bytes.length << 1];
+      _recomputable = new boolean[recomputable.length << 1];
+      _size = 0;
+      for (int i = 0; i < objects.length; i++) {
+        if (objects[i] != null) {
+          final int index = put(handles[i], (int) handleHash(handles[i]), objects[i], epochs[i]);
+          _bytes[index] = bytes[i];
+          _recomputable[index] = recomputable[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * An open-addressed identity table from object to handle. Empty slots have a null object. Must be used while holding
+   * the shard's lock.
+   */
+  private static final class ObjectShard {
+    private Object[] _objects = new Object[INITIAL_SHARD_CAPACITY];
+    private long[] _handles = new long[INITIAL_SHARD_CAPACITY];
+    private int _size;
+
+    int find(final Object object, final int hash) {
+      final int mask = _objects.length - 1;
+      int i = hash & mask;
+      while (_objects[i] != null) {
+        if (_objects[i] == object) {
+          return i;
+        }
+        i = i + 1 & mask;
+      }
+      return -1;
+    }
+
+    void put(final Object object, final int hash, final long handle) {
+      if (_size + 1 > _objects.length >> 1) {
+        resize();
+      }
+      final int mask = _objects.length - 1;
+      int i = hash & mask;
+      while (_objects[i] != null) {
+        i = i + 1 & mask;
+      }
+      _objects[i] = object;
+      _handles[i] = handle;
+      _size++;
+    }
+
+    void remove(final Object object, final int hash) {
+      int i = find(object, hash);
+      if (i < 0) {
+        return;
+      }
+      final int mask = _objects.length - 1;
+      _objects[i] = null;
+      _size--;
+      // shift back any entries that would no longer be found
+      int j = i;
+      while (true) {
+        j = j + 1 & mask;
+        if (_objects[j] == null) {
+          return;
+        }
+        final int k = objectHash(_objects[j]) & mask;
+        if (j > i ? k <= i || k > j : k <= i && k > j) {
+          _objects[i] = _objects[j];
+          _handles[i] = _handles[j];
+          _objects[j] = null;
+          i = j;
+        }
+      }
+    }
+
+    private void resize() {
+      final Object[] objects = _objects;
+      final long[] handles = _handles;
+      _objects = new Object[objects.length << 1];
+      _handles = new long[handles.length << 1];
+      _size = 0;
+      for (int i = 0; i < objects.length; i++) {
+        if (objects[i] != null) {
+          put(objects[i], objectHash(objects[i]), handles[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * The state of a collection cycle.
+   */
+  private static final class Cycle {
+    private final int _epoch;
+    private long[] _unrecognised;
+    private int _nUnrecognised;
+
+    Cycle(final int epoch) {
+      _epoch = epoch;
+    }
+
+    void unrecognised(final long handle) {
+      if (_unrecognised == null) {
+        _unrecognised = new long[INITIAL_SHARD_CAPACITY];
+      } else if (_nUnrecognised == _unrecognised.length) {
+        _unrecognised = Arrays.copyOf(_unrecognised, _nUnrecognised << 1);
+      }
+      _unrecognised[_nUnrecognised++] = handle;
+    }
+
+    /**
+     * Sorts the unrecognised handles and removes duplicates.
+     *
+     * @return the number of unique unrecognised handles
+     */
+    long countUnrecognised() {
+      if (_nUnrecognised == 0) {
+        return 0;
+      }
+      Arrays.sort(_unrecognised, 0, _nUnrecognised);
+      int unique = 1;
+      for (int i = 1; i < _nUnrecognised; i++) {
+        if (_unrecognised[i] != _unrecognised[unique - 1]) {
+          _unrecognised[unique++] = _unrecognised[i];
+        }
+      }
+      _nUnrecognised = unique;
+      return unique;
+    }
+  }
+
+  /**
+   * An open-addressed table from the handles of evicted objects to the epoch in which they were evicted or last reported.
+   */
+  private static final class EvictedHandles {
+    private long[] _handles = new long[INITIAL_SHARD_CAPACITY];
+    private int[] _epochs = new int[INITIAL_SHARD_CAPACITY];
+    private boolean[] _used = new boolean[INITIAL_SHARD_CAPACITY];
+    /** Read without the lock, so that looking up a missing handle does not contend when nothing has been evicted */
+    private volatile int _size;
+
+    boolean contains(final long handle) {
+      if (_size == 0) {
+        return false;
+      }
+      synchronized (this) {
+        return find(handle) >= 0;
+      }
+    }
+
+    synchronized void put(final long handle, final int epoch) {
+      final int index = find(handle);
+      if (index >= 0) {
+        _epochs[index] = epoch;
+        return;
+      }
+      if (_size + 1 > _used.length >> 1) {
+        resize(_used.length << 1);
+      }
+      insert(handle, epoch);
+    }
+
+    /**
+     * Stamps the handles that were unrecognised in a cycle with its epoch, and forgets the handles that have not been reported
+     * for {@link #COLLECTION_CYCLES} cycles.
+     *
+     * @param cycle
+     *          the cycle, with its unrecognised handles sorted
+     */
+    synchronized void expire(final Cycle cycle) {
+      if (_size == 0) {
+        return;
+      }
+      final long[] handles = _handles;
+      final int[] epochs = _epochs;
+      final boolean[] used = _used;
+      resize(used.length);
+      for (int i = 0; i < used.length; i++) {
+        if (used[i]) {
+          if (cycle._nUnrecognised > 0 && Arrays.binarySearch(cycle._unrecognised, 0, cycle._nUnrecognised, handles[i]) >= 0) {
+            insert(handles[i], cycle._epoch);
+          } else if (cycle._epoch - epochs[i] < COLLECTION_CYCLES) {
+            insert(handles[i], epochs[i]);
+          }
+        }
+      }
+    }
+
+    private int find(final long handle) {
+      final int mask = _used.length - 1;
+      int i = (int) handleHash(handle) & mask;
+      while (_used[i]) {
+        if (_handles[i] == handle) {
+          return i;
+        }
+        i = i + 1 & mask;
+      }
+      return -1;
+    }
+
+    private void insert(final long handle, final int epoch) {
+      final int mask = _used.length - 1;
+      int i = (int) handleHash(handle) & mask;
+      while (_used[i]) {
+        i = i + 1 & mask;
+      }
+      _handles[i] = handle;
+      _epochs[i] = epoch;
+      _used[i] = true;
+      _size++;
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity. Entries that should be kept must be inserted again.
+     */
+    private void resize(final int capacity) {
+      final long[] handles = _handles;
+      final int[] epochs = _epochs;
+      final boolean[] used = _used;
+      _handles = new long[capacity];
+      _epochs = new int[capacity];
+      _used = new boolean[capacity];
+      _size = 0;
+      if (capacity > used.length) {
+        for (int i = 0; i < used.length; i++) {
+          if (used[i]) {
+            insert(handles[i], epochs[i]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The number of objects of a class and their estimated size.
+   */
+  private static final class ClassAccount {
+    private final AtomicLong _objects = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+
+    void add(final long objects, final long bytes) {
+      _objects.addAndGet(objects);
+      _bytes.addAndGet(bytes);
+    }
+  }
+
+  /**
+   * A growable list of handles, e.g. the handles in a generation.
+   */
+  private static final class HandleList {
+    private static final long[] EMPTY = new long[0];
+    private long[] _handles = new long[INITIAL_SHARD_CAPACITY];
+    private int _size;
+
+    synchronized void add(final long handle) {
+      if (_size == _handles.length) {
+        _handles = Arrays.copyOf(_handles, _size << 1);
+      }
+      _handles[_size++] = handle;
+    }
+
+    synchronized long[] drain() {
+      if (_size == 0) {
+        return EMPTY;
+      }
+      final long[] handles = Arrays.copyOf(_handles, _size);
+      _size = 0;
+      return handles;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Collapses concurrent calls to a function with the same arguments into a single call, for functions marked with
+ * <code>isSingleFlight</code> on {@link com.mcleodmoores.xl4j.v1.api.annotations.XLFunction} or
+ * {@link com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions}. The first caller makes the call and any callers that arrive while
+ * it is running wait for, and share, its result. Calls are keyed on the export number and the argument values, so object
+ * arguments are keyed on their handle.
+ * <p>
+ * Nothing is kept once a call has completed, so unlike {@link ResultCache} this only affects calls that overlap in time.
+ */
+public class SingleFlight {
+  /** The logger */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlight.class);
+  private final ConcurrentMap<Key, Flight> _flights = new ConcurrentHashMap<>();
+  private final StripedCounter _executions = new StripedCounter();
+  private final StripedCounter _coalesced = new StripedCounter();
+
+  /**
+   * A call to be made at most once for concurrent callers.
+   */
+  interface Call {
+
+    /**
+     * @return the result
+     */
+    XLValue call();
+  }
+
+  /**
+   * Makes a call, or waits for the result of an identical call that is already running.
+   *
+   * @param exportNumber
+   *          the export number of the function
+   * @param args
+   *          the arguments, which must not be changed after this call
+   * @param call
+   *          the call
+   * @return the result
+   */
+  XLValue call(final int exportNumber, final XLValue[] args, final Call call) {
+    final Key key = new Key(exportNumber, args);
+    final Flight flight = new Flight();
+    final Flight running = _flights.putIfAbsent(key, flight);
+    if (running != null) {
+      _coalesced.increment();
+      return running.await();
+    }
+    _executions.increment();
+    XLValue result = XLError.Null;
+    try {
+      result = call.call();
+    } finally {
+      // remove before publishing so that later callers make a new call rather than getting this result
+      _flights.remove(key, flight);
+      flight.complete(result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of calls that were made
+   */
+  public long getExecutions() {
+    return _executions.sum();
+  }
+
+  /**
+   * @return the number of calls that shared the result of a call that was already running
+   */
+  public long getCoalesced() {
+    return _coalesced.sum();
+  }
+
+  /**
+   * @return the fraction of calls that shared the result of another call, or zero if there have been no calls
+   */
+  public double getCoalescedRate() {
+    final long coalesced = getCoalesced();
+    final long calls = coalesced + getExecutions();
+    return calls == 0 ? 0 : (double) coalesced / calls;
+  }
+
+  /**
+   * @return the number of calls that are running
+   */
+  public int getInFlight() {
+    return _flights.size();
+  }
+
+  /**
+   * A running call.
+   */
+  private static final class Flight {
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile XLValue _result;
+
+    void complete(final XLValue result) {
+      _result = result;
+      _done.countDown();
+    }
+
+    XLValue await() {
+      try {
+        _done.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOGGER.info("Interrupted while waiting for the result of a call, returning XLError");
+        return XLError.Null;
+      }
+      return _result;
+    }
+  }
+
+  /**
+   * The key, which holds the arguments without copying them.
+   */
+  private static final class Key {
+    private final int _exportNumber;
+    private final XLValue[] _args;
+    private final int _hashCode;
+
+    Key(final int exportNumber, final XLValue[] args) {
+      _exportNumber = exportNumber;
+      _args = args;
+      _hashCode = 31 * exportNumber + Arrays.hashCode(args);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return _exportNumber == other._exportNumber && _hashCode == other._hashCode && Arrays.equals(_args, other._args);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Waits for the result of an identical call that is already running rather than calling the function again.
+ */
+final class SingleFlightCallPlan extends CallPlan {
+  private final CallPlan _callPlan;
+  private final SingleFlight _singleFlight;
+  private final int _exportNumber;
+
+  SingleFlightCallPlan(final CallPlan callPlan, final SingleFlight singleFlight, final int exportNumber) {
+    _callPlan = callPlan;
+    _singleFlight = singleFlight;
+    _exportNumber = exportNumber;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    // the call plan can replace strings with object handles in the arguments, so the key needs a copy
+    return _singleFlight.call(_exportNumber, args.clone(), new SingleFlight.Call() {
+      @Override
+      public XLValue call() {
+        return _callPlan.call(heap, args);
+      }
+    });
+  }
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Gets the value of a static field.
+ */
+final class StaticFieldCallPlan extends CallPlan {
+  private final FieldGetter _fieldGetter;
+
+  StaticFieldCallPlan(final FieldGetter fieldGetter) {
+    _fieldGetter = fieldGetter;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    return _fieldGetter.get(null);
+  }
+}
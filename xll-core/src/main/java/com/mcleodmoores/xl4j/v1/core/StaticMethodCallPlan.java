@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * Calls a static method.
+ */
+final class StaticMethodCallPlan extends CallPlan {
+  private final MethodInvoker _methodInvoker;
+
+  StaticMethodCallPlan(final MethodInvoker methodInvoker) {
+    _methodInvoker = methodInvoker;
+  }
+
+  @Override
+  XLValue call(final Heap heap, final XLValue[] args) {
+    resolveObjects(args);
+    return _methodInvoker.invoke(null, args);
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is spread over several cells so that threads updating it concurrently do not contend on the same cache line.
+ * The cell is chosen from the thread id, and the total is only calculated when the counter is read.
+ */
+final class StripedCounter {
+  /** The number of longs in a cache line, used to space out the cells */
+  private static final int PADDING = 8;
+  /** The maximum number of cells */
+  private static final int MAX_STRIPES = 16;
+  /** The number of cells, a power of two */
+  private static final int STRIPES;
+  static {
+    final int processors = Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+    STRIPES = Integer.highestOneBit(processors) == processors ? processors : Integer.highestOneBit(processors) << 1;
+  }
+  /** The cells */
+  private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * PADDING);
+
+  /**
+   * Adds to the counter.
+   *
+   * @param x
+   *          the amount to add
+   */
+  void add(final long x) {
+    _cells.getAndAdd(index(), x);
+  }
+
+  /**
+   * Adds one to the counter.
+   */
+  void increment() {
+    _cells.getAndIncrement(index());
+  }
+
+  /**
+   * Gets the total. This is not an atomic snapshot if the counter is being updated.
+   *
+   * @return the total
+   */
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      sum += _cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  private static int index() {
+    return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+  }
+}
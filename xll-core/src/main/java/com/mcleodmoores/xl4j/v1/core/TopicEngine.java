@@ -0,0 +1,634 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * The Java side of a real-time data server. Cells subscribe to topics, producers publish values to them, and changed topics
+ * are passed to an {@link UpdateCallback} in batches, so that a feed that ticks thousands of times a second does not push every
+ * change to Excel.
+ * <p>
+ * A topic is identified by the name of a function and its arguments. Every cell that subscribes to the same function and
+ * arguments shares one topic, which is reference counted: the {@link TopicSource} is told when the first subscription to a topic
+ * is made and when the last is removed, so that it only produces values for topics that are in use.
+ * <p>
+ * Only the latest value published to a topic is kept until the next batch, so values that are published faster than they are
+ * delivered are conflated. A topic can also be throttled, so that it is delivered at most once in each throttle interval
+ * however often it changes; a value published during the interval is held back, not dropped, and is delivered when the
+ * interval ends. The default throttle interval is set with the system property <code>xl4j.rtd.throttleMillis</code> (default 0,
+ * i.e. every batch) and can be changed for all topics of a function or for a single topic.
+ * <p>
+ * Batches are made by calling {@link #flush()}, which the simulator does directly, or every <code>xl4j.rtd.notifyMillis</code>
+ * (default 100) milliseconds on a background thread after {@link #start()}. Publishing does not take any locks.
+ */
+public class TopicEngine implements Closeable {
+  /** The system property used to set the default throttle interval in milliseconds */
+  public static final String THROTTLE_PROPERTY_NAME = "xl4j.rtd.throttleMillis";
+  /** The system property used to set the interval between batches in milliseconds */
+  public static final String NOTIFY_PROPERTY_NAME = "xl4j.rtd.notifyMillis";
+  /** The default interval between batches in milliseconds */
+  public static final long DEFAULT_NOTIFY_MILLIS = 100;
+  /** The logger */
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopicEngine.class);
+  /** A source that does nothing */
+  private static final TopicSource NO_SOURCE = new TopicSource() {
+
+    @Override
+    public void connect(final Topic topic) {
+    }
+
+    @Override
+    public void disconnect(final Topic topic) {
+    }
+  };
+  /** The number of engines, used to name the batch threads */
+  private static final AtomicInteger ENGINES = new AtomicInteger();
+  /** The callback that batches of updates are passed to */
+  private final UpdateCallback _callback;
+  /** The source that is told when topics are connected and disconnected */
+  private final TopicSource _source;
+  /** The topics with at least one subscription, keyed by function and arguments */
+  private final Map<TopicKey, Topic> _topics = new ConcurrentHashMap<>();
+  /** The topics with at least one subscription, keyed by id */
+  private final Map<Integer, Topic> _topicsById = new ConcurrentHashMap<>();
+  /** The throttle interval for each function that has one that is not the default, in nanoseconds */
+  private final Map<String, Long> _functionThrottles = new HashMap<>();
+  /** The topics that have been published to since they were last delivered */
+  private final BlockingQueue<Topic> _changed = new LinkedBlockingQueue<>();
+  /** The next topic id */
+  private final AtomicInteger _nextId = new AtomicInteger();
+  /** Makes sure that only one batch is made at a time */
+  private final Object _flushLock = new Object();
+  private final StripedCounter _published = new StripedCounter();
+  private final StripedCounter _conflated = new StripedCounter();
+  private long _delivered;
+  private long _batches;
+  private int _subscriptions;
+  /** The default throttle interval in nanoseconds */
+  private volatile long _defaultThrottleNanos =
+      TimeUnit.MILLISECONDS.toNanos(Math.max(0, Long.getLong(THROTTLE_PROPERTY_NAME, 0)));
+  /** Makes batches in the background, or null if not started */
+  private ScheduledExecutorService _scheduler;
+
+  /**
+   * Creates an engine with no source, so values are only published by producers that look up topics with
+   * {@link #getTopic(String, XLValue...)}.
+   *
+   * @param callback
+   *          the callback that batches of updates are passed to, not null
+   */
+  public TopicEngine(final UpdateCallback callback) {
+    this(callback, NO_SOURCE);
+  }
+
+  /**
+   * Creates an engine.
+   *
+   * @param callback
+   *          the callback that batches of updates are passed to, not null
+   * @param source
+   *          the source that is told when topics are connected and disconnected, not null
+   */
+  public TopicEngine(final UpdateCallback callback, final TopicSource source) {
+    _callback = ArgumentChecker.notNull(callback, "callback");
+    _source = ArgumentChecker.notNull(source, "source");
+  }
+
+  /**
+   * Subscribes to a topic, creating it if this is the first subscription.
+   *
+   * @param functionName
+   *          the name of the function, not null
+   * @param args
+   *          the arguments, not null
+   * @return the topic, which holds the last value delivered for it if it already existed
+   */
+  public Topic subscribe(final String functionName, final XLValue... args) {
+    ArgumentChecker.notNull(functionName, "functionName");
+    ArgumentChecker.notNull(args, "args");
+    final TopicKey key = new TopicKey(functionName, args.clone());
+    final Topic topic;
+    synchronized (this) {
+      final Topic existing = _topics.get(key);
+      _subscriptions++;
+      if (existing != null) {
+        existing._subscriptions++;
+        return existing;
+      }
+      final Long functionThrottle = _functionThrottles.get(functionName);
+      topic = new Topic(_nextId.getAndIncrement(), key, functionThrottle == null ? _defaultThrottleNanos : functionThrottle);
+      _topics.put(key, topic);
+      _topicsById.put(topic._id, topic);
+    }
+    try {
+      _source.connect(topic);
+    } catch (final RuntimeException e) {
+      LOGGER.error("Exception while connecting topic " + topic, e);
+    }
+    return topic;
+  }
+
+  /**
+   * Removes a subscription to a topic. The topic is removed when its last subscription is removed, and any value that has not
+   * been delivered is dropped.
+   *
+   * @param topicId
+   *          the id of the topic
+   * @return true if this was the last subscription to the topic
+   * @throws XL4JRuntimeException
+   *           if there is no topic with this id
+   */
+  public boolean unsubscribe(final int topicId) {
+    final Topic topic;
+    synchronized (this) {
+      topic = _topicsById.get(topicId);
+      if (topic == null) {
+        throw new XL4JRuntimeException("Could not find topic with id " + topicId);
+      }
+      _subscriptions--;
+      if (--topic._subscriptions > 0) {
+        return false;
+      }
+      _topics.remove(topic._key);
+      _topicsById.remove(topicId);
+      topic._connected = false;
+    }
+    try {
+      _source.disconnect(topic);
+    } catch (final RuntimeException e) {
+      LOGGER.error("Exception while disconnecting topic " + topic, e);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the topic for a function and arguments if anything is subscribed to it.
+   *
+   * @param functionName
+   *          the name of the function, not null
+   * @param args
+   *          the arguments, not null
+   * @return the topic, or null if nothing is subscribed to it
+   */
+  public Topic getTopic(final String functionName, final XLValue... args) {
+    ArgumentChecker.notNull(functionName, "functionName");
+    ArgumentChecker.notNull(args, "args");
+    return _topics.get(new TopicKey(functionName, args));
+  }
+
+  /**
+   * Gets a topic.
+   *
+   * @param topicId
+   *          the id of the topic
+   * @return the topic, or null if nothing is subscribed to it
+   */
+  public Topic getTopic(final int topicId) {
+    return _topicsById.get(topicId);
+  }
+
+  /**
+   * Publishes a value to a topic, replacing any value that has not yet been delivered.
+   *
+   * @param topic
+   *          the topic, not null
+   * @param value
+   *          the value, not null
+   * @return false if the topic has no subscriptions, so the value was dropped
+   */
+  public boolean publish(final Topic topic, final XLValue value) {
+    ArgumentChecker.notNull(topic, "topic");
+    ArgumentChecker.notNull(value, "value");
+    if (!topic._connected) {
+      return false;
+    }
+    _published.increment();
+    if (topic._pending.getAndSet(value) != null) {
+      _conflated.increment();
+    }
+    if (topic._queued.compareAndSet(false, true)) {
+      _changed.add(topic);
+    }
+    return true;
+  }
+
+  /**
+   * Publishes a value to the topic for a function and arguments.
+   *
+   * @param functionName
+   *          the name of the function, not null
+   * @param args
+   *          the arguments, not null
+   * @param value
+   *          the value, not null
+   * @return false if nothing is subscribed to the topic, so the value was dropped
+   */
+  public boolean publish(final String functionName, final XLValue[] args, final XLValue value) {
+    final Topic topic = getTopic(functionName, args);
+    return topic != null && publish(topic, value);
+  }
+
+  /**
+   * Sets the default throttle interval for topics that are created after this call.
+   *
+   * @param interval
+   *          the minimum time between deliveries of a topic, zero to deliver in every batch
+   * @param unit
+   *          the unit of the interval, not null
+   */
+  public void setDefaultThrottle(final long interval, final TimeUnit unit) {
+    ArgumentChecker.notNegative(interval, "interval");
+    ArgumentChecker.notNull(unit, "unit");
+    _defaultThrottleNanos = unit.toNanos(interval);
+  }
+
+  /**
+   * Sets the throttle interval for all topics of a function, including those that already exist.
+   *
+   * @param functionName
+   *          the name of the function, not null
+   * @param interval
+   *          the minimum time between deliveries of a topic, zero to deliver in every batch
+   * @param unit
+   *          the unit of the interval, not null
+   */
+  public synchronized void setThrottle(final String functionName, final long interval, final TimeUnit unit) {
+    ArgumentChecker.notNull(functionName, "functionName");
+    ArgumentChecker.notNegative(interval, "interval");
+    ArgumentChecker.notNull(unit, "unit");
+    final long nanos = unit.toNanos(interval);
+    _functionThrottles.put(functionName, nanos);
+    for (final Topic topic : _topics.values()) {
+      if (topic._key._functionName.equals(functionName)) {
+        topic._throttleNanos = nanos;
+      }
+    }
+  }
+
+  /**
+   * Delivers the topics that have changed and are not being throttled in one batch.
+   *
+   * @return the number of topics delivered
+   */
+  public int flush() {
+    return flush(System.nanoTime());
+  }
+
+  /**
+   * Delivers the topics that have changed and are not being throttled at a given time in one batch. This allows the simulator
+   * to control time.
+   *
+   * @param nanos
+   *          the time, on the same scale as {@link System#nanoTime()}
+   * @return the number of topics delivered
+   */
+  public int flush(final long nanos) {
+    final List<Update> updates;
+    synchronized (_flushLock) {
+      // only the topics that have changed up to now, so that a topic that is published to while the batch is made is not
+      // delivered twice
+      final List<Topic> changed = new ArrayList<>(_changed.size());
+      _changed.drainTo(changed);
+      updates = new ArrayList<>(changed.size());
+      final List<Topic> throttled = new ArrayList<>();
+      for (final Topic topic : changed) {
+        if (!topic._connected) {
+          topic._pending.set(null);
+          continue;
+        }
+        if (topic._delivered && nanos - topic._lastDelivered < topic._throttleNanos) {
+          throttled.add(topic);
+          continue;
+        }
+        // cleared before the value is taken, so that a value published after this is queued again
+        topic._queued.set(false);
+        final XLValue value = topic._pending.getAndSet(null);
+        if (value == null) {
+          continue;
+        }
+        topic._value = value;
+        topic._lastDelivered = nanos;
+        topic._delivered = true;
+        updates.add(new Update(topic, value));
+      }
+      _changed.addAll(throttled);
+      if (updates.isEmpty()) {
+        return 0;
+      }
+      _delivered += updates.size();
+      _batches++;
+    }
+    try {
+      _callback.topicsUpdated(Collections.unmodifiableList(updates));
+    } catch (final RuntimeException e) {
+      LOGGER.error("Exception in topic update callback", e);
+    }
+    return updates.size();
+  }
+
+  /**
+   * Starts making batches on a background thread every <code>xl4j.rtd.notifyMillis</code> milliseconds.
+   */
+  public synchronized void start() {
+    if (_scheduler != null) {
+      return;
+    }
+    final long interval = Long.getLong(NOTIFY_PROPERTY_NAME, DEFAULT_NOTIFY_MILLIS);
+    ArgumentChecker.isTrue(interval > 0, NOTIFY_PROPERTY_NAME + " must be greater than zero");
+    final String name = "xl4j-rtd-" + ENGINES.incrementAndGet();
+    _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    _scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops making batches in the background. Topics and subscriptions are kept.
+   */
+  @Override
+  public synchronized void close() {
+    if (_scheduler != null) {
+      _scheduler.shutdownNow();
+      _scheduler = null;
+    }
+  }
+
+  /**
+   * @return the number of topics with at least one subscription
+   */
+  public int getTopicCount() {
+    return _topicsById.size();
+  }
+
+  /**
+   * @return the number of subscriptions to all topics
+   */
+  public synchronized int getSubscriptionCount() {
+    return _subscriptions;
+  }
+
+  /**
+   * @return the number of values published to topics with subscriptions
+   */
+  public long getPublished() {
+    return _published.sum();
+  }
+
+  /**
+   * @return the number of values that were replaced by a later value before they were delivered
+   */
+  public long getConflated() {
+    return _conflated.sum();
+  }
+
+  /**
+   * @return the number of values delivered
+   */
+  public long getDelivered() {
+    synchronized (_flushLock) {
+      return _delivered;
+    }
+  }
+
+  /**
+   * @return the number of batches passed to the callback
+   */
+  public long getBatches() {
+    synchronized (_flushLock) {
+      return _batches;
+    }
+  }
+
+  /**
+   * Receives batches of changed topics, e.g. to tell Excel that it should ask for new values.
+   */
+  public interface UpdateCallback {
+
+    /**
+     * Called with the topics that have changed since they were last delivered. It is called on the thread making the batch
+     * and should return quickly.
+     *
+     * @param updates
+     *          the latest value of each changed topic, not empty
+     */
+    void topicsUpdated(List<Update> updates);
+  }
+
+  /**
+   * Produces values for topics while they have subscriptions.
+   */
+  public interface TopicSource {
+
+    /**
+     * Called when the first subscription to a topic is made. The source should start publishing values to the topic.
+     *
+     * @param topic
+     *          the topic
+     */
+    void connect(Topic topic);
+
+    /**
+     * Called when the last subscription to a topic is removed. Values published to it after this are dropped.
+     *
+     * @param topic
+     *          the topic
+     */
+    void disconnect(Topic topic);
+  }
+
+  /**
+   * A function and arguments that have been subscribed to.
+   */
+  public static final class Topic {
+    private final int _id;
+    private final TopicKey _key;
+    /** The value published since the last delivery, or null */
+    private final AtomicReference<XLValue> _pending = new AtomicReference<>();
+    /** True if the topic is on the queue of changed topics */
+    private final AtomicBoolean _queued = new AtomicBoolean();
+    /** The number of subscriptions, guarded by the engine */
+    private int _subscriptions = 1;
+    private volatile boolean _connected = true;
+    private volatile long _throttleNanos;
+    private volatile XLValue _value;
+    /** The time of the last delivery, only used when making batches */
+    private long _lastDelivered;
+    private boolean _delivered;
+
+    Topic(final int id, final TopicKey key, final long throttleNanos) {
+      _id = id;
+      _key = key;
+      _throttleNanos = throttleNanos;
+    }
+
+    /**
+     * @return the id of the topic
+     */
+    public int getId() {
+      return _id;
+    }
+
+    /**
+     * @return the name of the function
+     */
+    public String getFunctionName() {
+      return _key._functionName;
+    }
+
+    /**
+     * @return the arguments. The array is not copied
+     */
+    public XLValue[] getArgs() {
+      return _key._args;
+    }
+
+    /**
+     * @return the last value delivered, or null if no value has been delivered
+     */
+    public XLValue getValue() {
+      return _value;
+    }
+
+    /**
+     * @return true if the topic has at least one subscription
+     */
+    public boolean isConnected() {
+      return _connected;
+    }
+
+    /**
+     * Sets the minimum time between deliveries of this topic.
+     *
+     * @param interval
+     *          the interval, zero to deliver in every batch
+     * @param unit
+     *          the unit of the interval, not null
+     */
+    public void setThrottle(final long interval, final TimeUnit unit) {
+      ArgumentChecker.notNegative(interval, "interval");
+      ArgumentChecker.notNull(unit, "unit");
+      _throttleNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * @param unit
+     *          the unit, not null
+     * @return the minimum time between deliveries of this topic
+     */
+    public long getThrottle(final TimeUnit unit) {
+      ArgumentChecker.notNull(unit, "unit");
+      return unit.convert(_throttleNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return "Topic[id=" + _id + ", " + _key._functionName + Arrays.toString(_key._args) + "]";
+    }
+  }
+
+  /**
+   * The value delivered for a topic in a batch.
+   */
+  public static final class Update {
+    private final Topic _topic;
+    private final XLValue _value;
+
+    Update(final Topic topic, final XLValue value) {
+      _topic = topic;
+      _value = value;
+    }
+
+    /**
+     * @return the topic
+     */
+    public Topic getTopic() {
+      return _topic;
+    }
+
+    /**
+     * @return the id of the topic
+     */
+    public int getTopicId() {
+      return _topic._id;
+    }
+
+    /**
+     * @return the value
+     */
+    public XLValue getValue() {
+      return _value;
+    }
+
+    @Override
+    public String toString() {
+      return "Update[topic=" + _topic._id + ", value=" + _value + "]";
+    }
+  }
+
+  /**
+   * The function and arguments of a topic.
+   */
+  private static final class TopicKey {
+    private final String _functionName;
+    private final XLValue[] _args;
+    private final int _hashCode;
+
+    TopicKey(final String functionName, final XLValue[] args) {
+      _functionName = functionName;
+      _args = args;
+      _hashCode = 31 * functionName.hashCode() + Arrays.hashCode(args);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof TopicKey)) {
+        return false;
+      }
+      final TopicKey other = (TopicKey) obj;
+      return _hashCode == other._hashCode && _functionName.equals(other._functionName) && Arrays.equals(_args, other._args);
+    }
+  }
+}
@@ -3,12 +3,14 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 
 import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * Base for classes containing information about fields and the converters required to convert them
@@ -17,6 +19,8 @@ import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 public abstract class AbstractFieldGetter implements FieldGetter {
   /** The field */
   private final Field _field;
+  /** The getter for the field, null if the field is read using reflection */
+  private final MethodHandle _getterHandle;
   /** The class of the field */
   private final Class<?> _type;
   /** The type of the field */
@@ -33,7 +37,18 @@ public abstract class AbstractFieldGetter implements FieldGetter {
    *          the field, not null
    */
   public AbstractFieldGetter(final Field field) {
+    this(field, null);
+  }
+
+  /**
+   * @param field
+   *          the field, not null
+   * @param getterHandle
+   *          a method handle of type <code>(Object)Object</code> that reads the field, or null to use reflection
+   */
+  public AbstractFieldGetter(final Field field, final MethodHandle getterHandle) {
     _field = ArgumentChecker.notNull(field, "field");
+    _getterHandle = getterHandle;
     _type = field.getType();
     _genericType = field.getGenericType();
     _isStatic = Modifier.isStatic(field.getModifiers());
@@ -66,6 +81,30 @@ public abstract class AbstractFieldGetter implements FieldGetter {
     return _declaringClass;
   }
 
+  /**
+   * Reads the value of the field, through the bound method handle if there is one.
+   *
+   * @param object
+   *          the object from which to obtain the field, can be null if the field is static
+   * @return the value of the field
+   */
+  protected Object getFieldValue(final Object object) {
+    if (_getterHandle == null) {
+      try {
+        return _field.get(object);
+      } catch (final IllegalAccessException e) {
+        throw new XL4JRuntimeException("Error getting field " + _name + " from " + _declaringClass, e);
+      }
+    }
+    try {
+      return (Object) _getterHandle.invokeExact(object);
+    } catch (final Error e) {
+      throw e;
+    } catch (final Throwable t) {
+      throw new XL4JRuntimeException("Error getting field " + _name + " from " + _declaringClass, t);
+    }
+  }
+
   /**
    * @return  the field
    */
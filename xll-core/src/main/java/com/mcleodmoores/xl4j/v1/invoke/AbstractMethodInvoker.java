@@ -3,6 +3,7 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -13,25 +14,27 @@ import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
 import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
-import com.mcleodmoores.xl4j.v1.api.values.XLNil;
-import com.mcleodmoores.xl4j.v1.api.values.XLObject;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * A class holding the converters required to convert arguments into the appropriate types and convert the result.
  */
-public abstract class AbstractMethodInvoker implements MethodInvoker {
+public abstract class AbstractMethodInvoker implements OffsetMethodInvoker {
   private static final Logger LOGGER = LoggerFactory.getLogger(AbstractMethodInvoker.class);
   private final Method _method;
+  private final MethodHandle _methodHandle;
+  private final Type[] _genericParameterTypes;
   private final TypeConverter[] _argumentConverters;
   private final TypeConverter _returnConverter;
-  private final TypeConverter _objectXlObjectConverter;
+  private final ArgumentBinding[] _argumentBindings;
+  /** Null unless the varargs converter can convert the arguments without them being copied into an XLArray */
+  private final VarArgsTypeConverter _varArgsConverter;
 
   /**
    * Constructor.
@@ -47,122 +50,138 @@ public abstract class AbstractMethodInvoker implements MethodInvoker {
    */
   public AbstractMethodInvoker(final Method method, final TypeConverter[] argumentConverters, final TypeConverter returnConverter,
       final TypeConverter objectXlObjectConverter) {
+    this(method, null, argumentConverters, returnConverter, objectXlObjectConverter);
+  }
+
+  /**
+   * Constructor for an invoker that calls the method through a method handle bound when the function is registered
+   * rather than using reflection for each call.
+   *
+   * @param method
+   *          the method to call.
+   * @param methodHandle
+   *          a method handle of type <code>(Object, Object[])Object</code> that calls the method, or null to use reflection
+   * @param argumentConverters
+   *          the converters required to call the method
+   * @param returnConverter
+   *          the converter required to convert the result back to an Excel type
+   * @param objectXlObjectConverter
+   *          converts XLObject to Object
+   */
+  public AbstractMethodInvoker(final Method method, final MethodHandle methodHandle, final TypeConverter[] argumentConverters,
+      final TypeConverter returnConverter, final TypeConverter objectXlObjectConverter) {
     _method = ArgumentChecker.notNull(method, "method");
+    _methodHandle = methodHandle;
+    _genericParameterTypes = method.getGenericParameterTypes();
     _argumentConverters = ArgumentChecker.notNull(argumentConverters, "argumentConverters");
     _returnConverter = ArgumentChecker.notNull(returnConverter, "returnConverter");
-    _objectXlObjectConverter = ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter");
+    // XLObjects passed to parameters whose converters do not expect them are got from the heap
+    _argumentBindings = ArgumentBinding.of(_genericParameterTypes, argumentConverters,
+        ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter"));
+    final TypeConverter varArgsConverter = !method.isVarArgs() || argumentConverters.length == 0 ? null
+        : argumentConverters[argumentConverters.length - 1];
+    _varArgsConverter = varArgsConverter instanceof VarArgsTypeConverter ? (VarArgsTypeConverter) varArgsConverter : null;
   }
 
   @Override
   public XLValue invoke(final Object object, final XLValue[] arguments) {
+    return invoke(object, arguments, 0);
+  }
+
+  @Override
+  public XLValue invoke(final Object object, final XLValue[] arguments, final int offset) {
     ArgumentChecker.notNull(arguments, "arguments");
-    Object[] args;
-    try {
-      if (_method.isVarArgs()) {
-        if (arguments.length == 0) {
-          try {
-            // find the appropriate type for the empty array - needed for primitives
-            final Class<?>[] parameterTypes = _method.getParameterTypes();
-            final Class<?> varArgType = parameterTypes[parameterTypes.length - 1].getComponentType();
-            if (varArgType == null) {
-              LOGGER.error("Last argument for varargs method was not an array: should never happen");
-              throw new XL4JRuntimeException("Error invoking method: last argument for varargs method was not an array");
-            }
-            LOGGER.info("invoking method {} on {} with empty array", _method, object == null ? "null" : object.getClass().getSimpleName());
-            final Object result = _method.invoke(object, Array.newInstance(varArgType, 0));
-            return convertResult(result, _returnConverter);
-          } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-            throw new XL4JRuntimeException("Error invoking method", e);
-          }
-        }
-        args = new Object[_method.getParameterCount()];
-        final int varArgIndex = _method.getParameterCount() - 1;
-        final int nVarArgs = arguments.length - varArgIndex;
-        if (nVarArgs < 0) {
-          throw new XL4JRuntimeException("Wrong number of arguments for " + _method + ", have " + Arrays.toString(arguments));
-        }
-        for (int i = 0; i < varArgIndex; i++) {
-          final Type expectedClass = _method.getGenericParameterTypes()[i];
-          // handle the case where nothing is passed and this should be converted to a null
-          // which happens unless the method is expecting an XLValue.
-          if (arguments[i] instanceof XLNil || arguments[i] instanceof XLMissing && !expectedClass.getClass().isAssignableFrom(XLValue.class)) {
-            args[i] = null;
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
+    final int nArguments = arguments.length - offset;
+    final Object[] args;
+    if (_method.isVarArgs()) {
+      if (nArguments == 0) {
+        // find the appropriate type for the empty array - needed for primitives
+        final Class<?>[] parameterTypes = _method.getParameterTypes();
+        final Class<?> varArgType = parameterTypes[parameterTypes.length - 1].getComponentType();
+        if (varArgType == null) {
+          LOGGER.error("Last argument for varargs method was not an array: should never happen");
+          throw new XL4JRuntimeException("Error invoking method: last argument for varargs method was not an array");
         }
-        final XLValue[] varArgs = new XLValue[nVarArgs];
-        System.arraycopy(arguments, varArgIndex, varArgs, 0, nVarArgs);
-        final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
-        final Type expectedClass = _method.getGenericParameterTypes()[varArgIndex];
-        args[args.length - 1] = _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
-      } else {
-        args = new Object[arguments.length];
-        for (int i = 0; i < _argumentConverters.length; i++) {
-          final Type expectedClass = _method.getGenericParameterTypes()[i];
-          // handle the case where nothing is passed and this should be converted to a null
-          // which happens unless the method is expecting an XLValue.
-          if (arguments[i] instanceof XLNil || arguments[i] instanceof XLMissing && !expectedClass.getClass().isAssignableFrom(XLValue.class)) {
-            args[i] = null;
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
-      }
-      try {
-        LOGGER.info("invoking method {} on {}", _method, object == null ? "null" : object.getClass().getSimpleName());
-        final Object result = _method.invoke(object, args);
-        if (result == null) {
-          // void method
-          return XLMissing.INSTANCE;
+        if (LOGGER.isTraceEnabled()) {
+          LOGGER.trace("invoking method {} on {} with empty array", _method, object == null ? "null" : object.getClass().getSimpleName());
         }
+        final Object result = invokeMethod(object, new Object[] {Array.newInstance(varArgType, 0)});
         return convertResult(result, _returnConverter);
-      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-        throw new XL4JRuntimeException("Error invoking method", e);
       }
-    } catch (final ClassCastException e) {
-      // TODO this is a workaround that gets the object from the heap rather than trying to perform the conversion on XLObject
-      // in a converter that does not expect that type. This can happen when a XLFunction uses TypeConversionMode.OBJECT_RESULT
-      if (_method.isVarArgs()) {
-        args = new Object[_method.getParameterCount()];
-        final int varArgIndex = _method.getParameterCount() - 1;
-        final int nVarArgs = arguments.length - varArgIndex;
-        for (int i = 0; i < varArgIndex; i++) {
-          final Type expectedClass = _method.getGenericParameterTypes()[i];
-          if (arguments[i] instanceof XLObject && !expectedClass.equals(XLObject.class)) {
-            args[i] = _objectXlObjectConverter.toJavaObject(Object.class, arguments[i]);
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
-        final XLValue[] varArgs = new XLValue[nVarArgs];
-        System.arraycopy(arguments, varArgIndex, varArgs, 0, nVarArgs);
-        final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
-        final Type expectedClass = _method.getGenericParameterTypes()[varArgIndex];
-        args[args.length - 1] = _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
-      } else {
-        args = new Object[arguments.length];
-        for (int i = 0; i < _argumentConverters.length; i++) {
-          final Type expectedClass = _method.getGenericParameterTypes()[i];
-          if (arguments[i] instanceof XLObject && !expectedClass.equals(XLObject.class)) {
-            args[i] = _objectXlObjectConverter.toJavaObject(Object.class, arguments[i]);
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
+      args = new Object[_method.getParameterCount()];
+      final int varArgIndex = _method.getParameterCount() - 1;
+      final int nVarArgs = nArguments - varArgIndex;
+      if (nVarArgs < 0) {
+        throw new XL4JRuntimeException("Wrong number of arguments for " + _method + ", have " + Arrays.toString(arguments));
+      }
+      for (int i = 0; i < varArgIndex; i++) {
+        args[i] = _argumentBindings[i].bind(arguments[offset + i]);
+      }
+      args[args.length - 1] = bindVarArgs(arguments, offset + varArgIndex, nVarArgs);
+    } else {
+      args = new Object[nArguments];
+      for (int i = 0; i < _argumentBindings.length; i++) {
+        args[i] = _argumentBindings[i].bind(arguments[offset + i]);
       }
+    }
+    if (LOGGER.isTraceEnabled()) {
+      LOGGER.trace("invoking method {} on {}", _method, object == null ? "null" : object.getClass().getSimpleName());
+    }
+    final Object result = invokeMethod(object, args);
+    if (result == null) {
+      // void method
+      return XLMissing.INSTANCE;
+    }
+    return convertResult(result, _returnConverter);
+  }
+
+  /**
+   * Converts the trailing arguments into the array passed as the varargs parameter. If the converter allows, the array is
+   * filled straight from the arguments.
+   *
+   * @param arguments
+   *          the arguments
+   * @param from
+   *          the index of the first varargs argument
+   * @param length
+   *          the number of varargs arguments
+   * @return the varargs array
+   */
+  private Object bindVarArgs(final XLValue[] arguments, final int from, final int length) {
+    final Type expectedClass = _genericParameterTypes[_genericParameterTypes.length - 1];
+    if (_varArgsConverter != null) {
+      return _varArgsConverter.toJavaArray(expectedClass, arguments, from, length);
+    }
+    final XLValue[] varArgs = new XLValue[length];
+    System.arraycopy(arguments, from, varArgs, 0, length);
+    final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
+    return _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
+  }
+
+  /**
+   * Calls the method, through the bound method handle if there is one.
+   *
+   * @param object
+   *          the object on which to execute the method, or null if static
+   * @param args
+   *          the converted arguments
+   * @return the result of the method, null if the method is void
+   */
+  private Object invokeMethod(final Object object, final Object[] args) {
+    if (_methodHandle == null) {
       try {
-        LOGGER.info("invoking method {} on {}", _method, object == null ? "null" : object.getClass().getSimpleName());
-        final Object result = _method.invoke(object, args);
-        if (result == null) {
-          // void method
-          return XLMissing.INSTANCE;
-        }
-        return convertResult(result, _returnConverter);
-      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e1) {
-        throw new XL4JRuntimeException("Error invoking method", e1);
+        return _method.invoke(object, args);
+      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+        throw new XL4JRuntimeException("Error invoking method", e);
       }
     }
+    try {
+      return (Object) _methodHandle.invokeExact(object, args);
+    } catch (final Error e) {
+      throw e;
+    } catch (final Throwable t) {
+      throw new XL4JRuntimeException("Error invoking method", t);
+    }
   }
 
   /**
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import java.lang.reflect.Type;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Converts the Excel value passed for a parameter of a method or constructor into the Java object used in the call. The
+ * bindings are worked out when an invoker is created, so each argument only needs a type test to choose between:
+ * <ul>
+ * <li>null, for {@link XLNil} or {@link XLMissing};</li>
+ * <li>the object on the heap, for an {@link XLObject} passed to a parameter whose converter does not take {@link XLObject}
+ * (e.g. when a function uses <code>TypeConversionMode.OBJECT_RESULT</code> and the object is passed back in);</li>
+ * <li>the converter for the parameter otherwise.</li>
+ * </ul>
+ */
+final class ArgumentBinding {
+  private final Type _type;
+  private final TypeConverter _converter;
+  /** Null if XLObjects are passed to the converter */
+  private final TypeConverter _objectXlObjectConverter;
+
+  private ArgumentBinding(final Type type, final TypeConverter converter, final TypeConverter objectXlObjectConverter) {
+    _type = type;
+    _converter = converter;
+    _objectXlObjectConverter = objectXlObjectConverter;
+  }
+
+  /**
+   * Creates the bindings for the parameters of a method or constructor.
+   *
+   * @param parameterTypes
+   *          the (generic) parameter types, not null
+   * @param argumentConverters
+   *          the converter for each parameter, not null, but can contain nulls
+   * @param objectXlObjectConverter
+   *          the converter that gets objects from the heap, not null
+   * @return the bindings, one for each converter
+   */
+  static ArgumentBinding[] of(final Type[] parameterTypes, final TypeConverter[] argumentConverters,
+      final TypeConverter objectXlObjectConverter) {
+    ArgumentChecker.notNull(parameterTypes, "parameterTypes");
+    ArgumentChecker.notNull(argumentConverters, "argumentConverters");
+    ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter");
+    final int n = Math.min(parameterTypes.length, argumentConverters.length);
+    final ArgumentBinding[] bindings = new ArgumentBinding[n];
+    for (int i = 0; i < n; i++) {
+      final Type type = parameterTypes[i];
+      final TypeConverter converter = argumentConverters[i];
+      // there is no converter if an overload cannot be called with the argument types, in which case the call fails
+      final boolean convertsObjects = converter == null || XLObject.class.equals(type)
+          || converter.getJavaToExcelTypeMapping().getExcelClass().isAssignableFrom(XLObject.class);
+      bindings[i] = new ArgumentBinding(type, converter, convertsObjects ? null : objectXlObjectConverter);
+    }
+    return bindings;
+  }
+
+  /**
+   * Converts an argument.
+   *
+   * @param argument
+   *          the argument
+   * @return the object to pass to the method or constructor
+   */
+  Object bind(final XLValue argument) {
+    if (argument instanceof XLNil || argument instanceof XLMissing) {
+      return null;
+    }
+    if (_objectXlObjectConverter != null && argument instanceof XLObject) {
+      return _objectXlObjectConverter.toJavaObject(Object.class, argument);
+    }
+    if (_converter == null) {
+      throw new XL4JRuntimeException("No type converter for " + _type + " from " + argument);
+    }
+    return _converter.toJavaObject(_type, argument);
+  }
+
+  /**
+   * @return true if XLObject arguments are got from the heap rather than passed to the converter
+   */
+  boolean isDereferencing() {
+    return _objectXlObjectConverter != null;
+  }
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Caches the overload resolution for methods and constructors that are called by name, e.g. from <code>J.Method</code> or
+ * <code>J.Construct</code>. A call site is keyed on the invoker factory, class, method name, result conversion mode and the
+ * classes of the arguments from Excel, and holds the candidate invokers from the factory in the order that they should be
+ * tried.
+ * <p>
+ * The candidate that last succeeded is tried first, so repeated calls with the same argument types go straight to it without
+ * reflection or exceptions. If it fails, the remaining candidates are tried, with any that have failed before tried last, as a
+ * failure can depend on the argument values rather than their types. Classes and methods that could not be resolved at all are
+ * also cached, so that the factory is not asked again.
+ * <p>
+ * The cache is cleared if it grows beyond {@link #MAX_CALL_SITES} entries.
+ */
+public final class CallSiteCache {
+  /** The maximum number of call sites before the cache is cleared */
+  public static final int MAX_CALL_SITES = 10000;
+  /** The logger */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallSiteCache.class);
+  private final ConcurrentMap<Key, CallSite<?>> _callSites = new ConcurrentHashMap<>();
+  private final AtomicLong _hits = new AtomicLong();
+  private final AtomicLong _misses = new AtomicLong();
+
+  /**
+   * Gets the call site for a method, resolving the candidate methods if this is the first call with these argument types.
+   *
+   * @param invokerFactory
+   *          the invoker factory, not null
+   * @param clazz
+   *          the class, not null
+   * @param methodName
+   *          the method name, not null
+   * @param typeConversionMode
+   *          the result conversion mode, not null
+   * @param args
+   *          the arguments from Excel, not null
+   * @return the call site
+   */
+  public CallSite<MethodInvoker> getMethodCallSite(final InvokerFactory invokerFactory, final Class<?> clazz, final XLString methodName,
+      final TypeConversionMode typeConversionMode, final XLValue... args) {
+    ArgumentChecker.notNull(invokerFactory, "invokerFactory");
+    ArgumentChecker.notNull(clazz, "clazz");
+    ArgumentChecker.notNull(methodName, "methodName");
+    ArgumentChecker.notNull(typeConversionMode, "typeConversionMode");
+    ArgumentChecker.notNull(args, "args");
+    final Class<? extends XLValue>[] argTypes = getArgTypes(args);
+    final Key key = new Key(invokerFactory, clazz, methodName.getValue(), typeConversionMode, argTypes);
+    @SuppressWarnings("unchecked")
+    final CallSite<MethodInvoker> cached = (CallSite<MethodInvoker>) _callSites.get(key);
+    if (cached != null) {
+      _hits.incrementAndGet();
+      return cached;
+    }
+    _misses.incrementAndGet();
+    CallSite<MethodInvoker> callSite;
+    try {
+      callSite = new MethodCallSite(order(invokerFactory.getMethodTypeConverter(clazz, methodName, typeConversionMode, argTypes)), null);
+    } catch (final XL4JRuntimeException e) {
+      callSite = new MethodCallSite(new MethodInvoker[0], e.getMessage());
+    }
+    return put(key, callSite);
+  }
+
+  /**
+   * Gets the call site for a constructor, resolving the candidate constructors if this is the first call with these argument types.
+   *
+   * @param invokerFactory
+   *          the invoker factory, not null
+   * @param clazz
+   *          the class, not null
+   * @param typeConversionMode
+   *          the result conversion mode, not null
+   * @param args
+   *          the arguments from Excel, not null
+   * @return the call site
+   */
+  public CallSite<ConstructorInvoker> getConstructorCallSite(final InvokerFactory invokerFactory, final Class<?> clazz,
+      final TypeConversionMode typeConversionMode, final XLValue... args) {
+    ArgumentChecker.notNull(invokerFactory, "invokerFactory");
+    ArgumentChecker.notNull(clazz, "clazz");
+    ArgumentChecker.notNull(typeConversionMode, "typeConversionMode");
+    ArgumentChecker.notNull(args, "args");
+    final Class<? extends XLValue>[] argTypes = getArgTypes(args);
+    final Key key = new Key(invokerFactory, clazz, null, typeConversionMode, argTypes);
+    @SuppressWarnings("unchecked")
+    final CallSite<ConstructorInvoker> cached = (CallSite<ConstructorInvoker>) _callSites.get(key);
+    if (cached != null) {
+      _hits.incrementAndGet();
+      return cached;
+    }
+    _misses.incrementAndGet();
+    CallSite<ConstructorInvoker> callSite;
+    try {
+      callSite = new ConstructorCallSite(order(invokerFactory.getConstructorTypeConverter(clazz, typeConversionMode, argTypes)), null);
+    } catch (final XL4JRuntimeException e) {
+      callSite = new ConstructorCallSite(new ConstructorInvoker[0], e.getMessage());
+    }
+    return put(key, callSite);
+  }
+
+  /**
+   * Removes all call sites.
+   */
+  public void clear() {
+    _callSites.clear();
+  }
+
+  /**
+   * @return the number of call sites
+   */
+  public int size() {
+    return _callSites.size();
+  }
+
+  /**
+   * @return the number of lookups that found a call site
+   */
+  public long getHits() {
+    return _hits.get();
+  }
+
+  /**
+   * @return the number of lookups that had to resolve the candidates
+   */
+  public long getMisses() {
+    return _misses.get();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> CallSite<T> put(final Key key, final CallSite<T> callSite) {
+    if (_callSites.size() >= MAX_CALL_SITES) {
+      LOGGER.info("Clearing {} call sites", _callSites.size());
+      _callSites.clear();
+    }
+    final CallSite<?> existing = _callSites.putIfAbsent(key, callSite);
+    return existing == null ? callSite : (CallSite<T>) existing;
+  }
+
+  /**
+   * Puts the invokers from the factory into the order that they should be tried. The factory fills the array from the front with
+   * exact matches and from the back with varargs matches, leaving nulls in between.
+   *
+   * @param invokers
+   *          the invokers from the factory
+   * @return the invokers in order
+   */
+  private static <T> List<T> order(final T[] invokers) {
+    final List<T> ordered = new ArrayList<>();
+    int i = 0;
+    for (; i < invokers.length && invokers[i] != null; i++) {
+      ordered.add(invokers[i]);
+    }
+    for (int j = invokers.length - 1; j >= i && invokers[j] != null; j--) {
+      ordered.add(invokers[j]);
+    }
+    return ordered;
+  }
+
+  private static Class<? extends XLValue>[] getArgTypes(final XLValue... args) {
+    @SuppressWarnings("unchecked")
+    final Class<? extends XLValue>[] result = (Class<? extends XLValue>[]) new Class<?>[args.length];
+    for (int i = 0; i < args.length; i++) {
+      result[i] = args[i].getClass();
+    }
+    return result;
+  }
+
+  /**
+   * The resolved candidates for a call site.
+   *
+   * @param <T>
+   *          the type of the invoker
+   */
+  public abstract static class CallSite<T> {
+    private final T[] _candidates;
+    private final String _unresolved;
+    /** The number of times that each candidate has failed */
+    private final AtomicIntegerArray _failures;
+    /** The index of the candidate that last succeeded, or -1 */
+    private volatile int _winner = -1;
+
+    CallSite(final T[] candidates, final String unresolved) {
+      _candidates = candidates;
+      _unresolved = unresolved;
+      _failures = new AtomicIntegerArray(candidates.length);
+    }
+
+    /**
+     * Calls the candidates until one succeeds.
+     *
+     * @param object
+     *          the object to call the method on, null for static methods and constructors
+     * @param args
+     *          the arguments
+     * @return the result
+     * @throws XL4JRuntimeException
+     *           if the call site could not be resolved or no candidate succeeded
+     */
+    public XLValue call(final Object object, final XLValue[] args) {
+      if (_unresolved != null) {
+        throw new XL4JRuntimeException(_unresolved);
+      }
+      final int winner = _winner;
+      if (winner >= 0) {
+        try {
+          return invoke(_candidates[winner], object, args);
+        } catch (final Exception e) {
+          LOGGER.trace("previously successful candidate threw exception", e);
+          _failures.incrementAndGet(winner);
+        }
+      }
+      // candidates that have not failed before, then those that have
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < _candidates.length; i++) {
+          if (i == winner || _failures.get(i) > 0 == (pass == 0)) {
+            continue;
+          }
+          try {
+            final XLValue result = invoke(_candidates[i], object, args);
+            _winner = i;
+            return result;
+          } catch (final Exception e) {
+            LOGGER.trace("trying to invoke candidate, but exception thrown", e);
+            _failures.incrementAndGet(i);
+          }
+        }
+      }
+      throw new XL4JRuntimeException("No candidate could be called with arguments " + Arrays.toString(args));
+    }
+
+    /**
+     * @return the number of candidates
+     */
+    public int getCandidateCount() {
+      return _candidates.length;
+    }
+
+    /**
+     * @return the candidate that last succeeded, or null if none has
+     */
+    public T getWinner() {
+      final int winner = _winner;
+      return winner < 0 ? null : _candidates[winner];
+    }
+
+    /**
+     * @param index
+     *          the index of the candidate
+     * @return the number of times that the candidate has failed
+     */
+    public int getFailures(final int index) {
+      return _failures.get(index);
+    }
+
+    /**
+     * Calls a candidate.
+     *
+     * @param candidate
+     *          the candidate
+     * @param object
+     *          the object, null for static methods and constructors
+     * @param args
+     *          the arguments
+     * @return the result
+     */
+    abstract XLValue invoke(T candidate, Object object, XLValue[] args);
+  }
+
+  /**
+   * A call site for methods.
+   */
+  private static final class MethodCallSite extends CallSite<MethodInvoker> {
+
+    MethodCallSite(final List<MethodInvoker> candidates, final String unresolved) {
+      this(candidates.toArray(new MethodInvoker[candidates.size()]), unresolved);
+    }
+
+    MethodCallSite(final MethodInvoker[] candidates, final String unresolved) {
+      super(candidates, unresolved);
+    }
+
+    @Override
+    XLValue invoke(final MethodInvoker candidate, final Object object, final XLValue[] args) {
+      return candidate.invoke(object, args);
+    }
+  }
+
+  /**
+   * A call site for constructors.
+   */
+  private static final class ConstructorCallSite extends CallSite<ConstructorInvoker> {
+
+    ConstructorCallSite(final List<ConstructorInvoker> candidates, final String unresolved) {
+      this(candidates.toArray(new ConstructorInvoker[candidates.size()]), unresolved);
+    }
+
+    ConstructorCallSite(final ConstructorInvoker[] candidates, final String unresolved) {
+      super(candidates, unresolved);
+    }
+
+    @Override
+    XLValue invoke(final ConstructorInvoker candidate, final Object object, final XLValue[] args) {
+      return candidate.newInstance(args);
+    }
+  }
+
+  /**
+   * The call site key.
+   */
+  private static final class Key {
+    private final InvokerFactory _invokerFactory;
+    private final Class<?> _clazz;
+    private final String _name;
+    private final TypeConversionMode _typeConversionMode;
+    private final Class<?>[] _argTypes;
+    private final int _hashCode;
+
+    Key(final InvokerFactory invokerFactory, final Class<?> clazz, final String name, final TypeConversionMode typeConversionMode,
+        final Class<?>[] argTypes) {
+      _invokerFactory = invokerFactory;
+      _clazz = clazz;
+      _name = name;
+      _typeConversionMode = typeConversionMode;
+      _argTypes = argTypes;
+      int hashCode = System.identityHashCode(invokerFactory);
+      hashCode = 31 * hashCode + clazz.hashCode();
+      hashCode = 31 * hashCode + (name == null ? 0 : name.hashCode());
+      hashCode = 31 * hashCode + typeConversionMode.hashCode();
+      hashCode = 31 * hashCode + Arrays.hashCode(argTypes);
+      _hashCode = hashCode;
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return _invokerFactory == other._invokerFactory && _clazz == other._clazz && _typeConversionMode == other._typeConversionMode
+          && (_name == null ? other._name == null : _name.equals(other._name)) && Arrays.equals(_argTypes, other._argTypes);
+    }
+  }
+}
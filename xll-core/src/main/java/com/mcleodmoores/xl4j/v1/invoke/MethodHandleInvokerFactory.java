@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+
+/**
+ * A class that creates objects that have the ability to invoke methods, construct objects or retrieve fields. Methods,
+ * constructors and fields that are registered as functions are bound to method handles when the invoker is created, so
+ * that each call goes straight to the target without the access checks and argument unwrapping that reflection performs.
+ * <p>
+ * Invokers for the J.* functions, which are resolved while the sheet is calculating, are created reflectively because
+ * binding a method handle is more expensive than a single reflective call. If a target cannot be bound (e.g. because it
+ * is declared in a non-public class), the invoker falls back to reflection.
+ */
+public class MethodHandleInvokerFactory extends ReflectiveInvokerFactory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandleInvokerFactory.class);
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+  /**
+   * Default constructor.
+   *
+   * @param excel
+   *          the excel object to allow heap access
+   * @param typeConverterRegistry
+   *          a registry of type converters
+   */
+  public MethodHandleInvokerFactory(final Excel excel, final TypeConverterRegistry typeConverterRegistry) {
+    super(excel, typeConverterRegistry);
+  }
+
+  @Override
+  protected MethodHandle bindMethod(final Method method) {
+    try {
+      MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+      if (Modifier.isStatic(method.getModifiers())) {
+        // ignore the null object passed in for static methods
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      // (Object, Object[])Object
+      final int parameterCount = method.getParameterCount();
+      return handle.asType(MethodType.genericMethodType(parameterCount + 1)).asSpreader(Object[].class, parameterCount);
+    } catch (final IllegalAccessException e) {
+      LOGGER.warn("Could not bind method handle for {}, using reflection: {}", method, e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  protected MethodHandle bindConstructor(final Constructor<?> constructor) {
+    try {
+      // (Object[])Object
+      final int parameterCount = constructor.getParameterCount();
+      return LOOKUP.unreflectConstructor(constructor).asFixedArity()
+          .asType(MethodType.genericMethodType(parameterCount)).asSpreader(Object[].class, parameterCount);
+    } catch (final IllegalAccessException e) {
+      LOGGER.warn("Could not bind method handle for {}, using reflection: {}", constructor, e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  protected MethodHandle bindFieldGetter(final Field field) {
+    try {
+      MethodHandle handle = LOOKUP.unreflectGetter(field);
+      if (Modifier.isStatic(field.getModifiers())) {
+        // ignore the null object passed in for static fields
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      return handle.asType(MethodType.genericMethodType(1));
+    } catch (final IllegalAccessException e) {
+      LOGGER.warn("Could not bind method handle for {}, using reflection: {}", field, e.getMessage());
+      return null;
+    }
+  }
+}
@@ -3,6 +3,7 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -15,10 +16,8 @@ import org.slf4j.LoggerFactory;
 import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
-import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
-import com.mcleodmoores.xl4j.v1.api.values.XLNil;
-import com.mcleodmoores.xl4j.v1.api.values.XLObject;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
@@ -28,9 +27,13 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 public class ObjectConstructorInvoker implements ConstructorInvoker {
   private static final Logger LOGGER = LoggerFactory.getLogger(ObjectConstructorInvoker.class);
   private final Constructor<?> _constructor;
+  private final MethodHandle _constructorHandle;
+  private final Class<?>[] _parameterTypes;
   private final TypeConverter[] _argumentConverters;
   private final TypeConverter _returnConverter;
-  private final TypeConverter _objectXlObjectConverter;
+  private final ArgumentBinding[] _argumentBindings;
+  /** Null unless the varargs converter can convert the arguments without them being copied into an XLArray */
+  private final VarArgsTypeConverter _varArgsConverter;
 
   /**
    * Constructor.
@@ -46,115 +49,120 @@ public class ObjectConstructorInvoker implements ConstructorInvoker {
    */
   public ObjectConstructorInvoker(final Constructor<?> constructor, final TypeConverter[] argumentConverters,
       final TypeConverter returnConverter, final TypeConverter objectXlObjectConverter) {
+    this(constructor, null, argumentConverters, returnConverter, objectXlObjectConverter);
+  }
+
+  /**
+   * Constructor for an invoker that calls the constructor through a method handle bound when the function is registered
+   * rather than using reflection for each call.
+   *
+   * @param constructor
+   *          the constructor to call
+   * @param constructorHandle
+   *          a method handle of type <code>(Object[])Object</code> that calls the constructor, or null to use reflection
+   * @param argumentConverters
+   *          the converters required to call the method
+   * @param returnConverter
+   *          the converter required to convert the result back to an Excel type
+   * @param objectXlObjectConverter
+   *          converts XLObject to Object
+   */
+  public ObjectConstructorInvoker(final Constructor<?> constructor, final MethodHandle constructorHandle, final TypeConverter[] argumentConverters,
+      final TypeConverter returnConverter, final TypeConverter objectXlObjectConverter) {
     _constructor = ArgumentChecker.notNull(constructor, "constructor");
+    _constructorHandle = constructorHandle;
+    _parameterTypes = constructor.getParameterTypes();
     _argumentConverters = ArgumentChecker.notNull(argumentConverters, "argumentConverters");
     _returnConverter = ArgumentChecker.notNull(returnConverter, "returnConverter");
-    _objectXlObjectConverter = ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter");
+    // XLObjects passed to parameters whose converters do not expect them are got from the heap
+    _argumentBindings = ArgumentBinding.of(_parameterTypes, argumentConverters,
+        ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter"));
+    final TypeConverter varArgsConverter = !constructor.isVarArgs() || argumentConverters.length == 0 ? null
+        : argumentConverters[argumentConverters.length - 1];
+    _varArgsConverter = varArgsConverter instanceof VarArgsTypeConverter ? (VarArgsTypeConverter) varArgsConverter : null;
   }
 
   @Override
   public XLValue newInstance(final XLValue[] arguments) {
     ArgumentChecker.notNull(arguments, "arguments");
-    Object[] args;
-    try {
-      if (_constructor.isVarArgs()) {
-        if (arguments.length == 0) {
-          try {
-            // find the appropriate type for the empty array
-            final Class<?>[] parameterTypes = _constructor.getParameterTypes();
-            final Class<?> varArgType = parameterTypes[parameterTypes.length - 1].getComponentType();
-            if (varArgType == null) {
-              LOGGER.error("Last argument for varargs constructor was not an array: should never happen");
-              throw new XL4JRuntimeException("Error invoking constructor: last argument for varargs was not an array");
-            }
-            LOGGER.info("invoking constructor on {} with empty array", _constructor);
-            final Object result = _constructor.newInstance(Array.newInstance(varArgType, 0));
-            return (XLValue) _returnConverter.toXLValue(result);
-          } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-            throw new XL4JRuntimeException("", e);
-          }
-        }
-        args = new Object[_constructor.getParameterCount()];
-        final int varArgIndex = _constructor.getParameterCount() - 1;
-        final int nVarArgs = arguments.length - varArgIndex;
-        if (nVarArgs < 0) {
-          throw new XL4JRuntimeException("Wrong number of arguments for " + _constructor + ", have " + Arrays.toString(arguments));
-        }
-        for (int i = 0; i < varArgIndex; i++) {
-          final Type expectedClass = _constructor.getParameterTypes()[i];
-          // handle the case where nothing is passed and this should be converted to a null
-          // which happens unless the method is expecting an XLValue.
-          if (arguments[i] instanceof XLNil || arguments[i] instanceof XLMissing && !expectedClass.getClass().isAssignableFrom(XLValue.class)) {
-            args[i] = null;
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
+    final Object[] args;
+    if (_constructor.isVarArgs()) {
+      if (arguments.length == 0) {
+        // find the appropriate type for the empty array
+        final Class<?> varArgType = _parameterTypes[_parameterTypes.length - 1].getComponentType();
+        if (varArgType == null) {
+          LOGGER.error("Last argument for varargs constructor was not an array: should never happen");
+          throw new XL4JRuntimeException("Error invoking constructor: last argument for varargs was not an array");
         }
-        final XLValue[] varArgs = new XLValue[nVarArgs];
-        System.arraycopy(arguments, varArgIndex, varArgs, 0, nVarArgs);
-        final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
-        final Type expectedClass = _constructor.getParameterTypes()[varArgIndex];
-        args[args.length - 1] = _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
-      } else {
-        args = new Object[arguments.length];
-        for (int i = 0; i < _argumentConverters.length; i++) {
-          final Type expectedClass = _constructor.getParameterTypes()[i];
-          // handle the case where nothing is passed and this should be converted to a null
-          // which happens unless the method is expecting an XLValue.
-          if (arguments[i] instanceof XLNil || arguments[i] instanceof XLMissing && !expectedClass.getClass().isAssignableFrom(XLValue.class)) {
-            args[i] = null;
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
-      }
-      try {
-        final Object result = _constructor.newInstance(args);
+        LOGGER.trace("invoking constructor on {} with empty array", _constructor);
+        final Object result = construct(new Object[] {Array.newInstance(varArgType, 0)});
         return (XLValue) _returnConverter.toXLValue(result);
-      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | InstantiationException e) {
-        throw new XL4JRuntimeException("Error invoking constructor: " + e.getMessage(), e);
       }
-    } catch (final ClassCastException e) {
-      // TODO this is a workaround that gets the object from the heap rather than trying to perform the conversion on XLObject
-      // in a converter that does not expect that type. This can happen when a XLFunction uses TypeConversionMode.OBJECT_RESULT
-      if (_constructor.isVarArgs()) {
-        args = new Object[_constructor.getParameterCount()];
-        final int varArgIndex = _constructor.getParameterCount() - 1;
-        final int nVarArgs = arguments.length - varArgIndex;
-        if (nVarArgs < 0) {
-          throw new XL4JRuntimeException("Wrong number of arguments for " + _constructor + ", have " + Arrays.toString(arguments));
-        }
-        for (int i = 0; i < varArgIndex; i++) {
-          final Type expectedClass = _constructor.getParameterTypes()[i];
-          if (arguments[i] instanceof XLObject && !expectedClass.equals(XLObject.class)) {
-            args[i] = _objectXlObjectConverter.toJavaObject(Object.class, arguments[i]);
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
-        final XLValue[] varArgs = new XLValue[nVarArgs];
-        System.arraycopy(arguments, varArgIndex, varArgs, 0, nVarArgs);
-        final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
-        final Type expectedClass = _constructor.getParameterTypes()[varArgIndex];
-        args[args.length - 1] = _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
-      } else {
-        args = new Object[arguments.length];
-        for (int i = 0; i < _argumentConverters.length; i++) {
-          final Type expectedClass = _constructor.getParameterTypes()[i];
-          if (arguments[i] instanceof XLObject && !expectedClass.equals(XLObject.class)) {
-            args[i] = _objectXlObjectConverter.toJavaObject(Object.class, arguments[i]);
-          } else {
-            args[i] = _argumentConverters[i].toJavaObject(expectedClass, arguments[i]);
-          }
-        }
+      args = new Object[_constructor.getParameterCount()];
+      final int varArgIndex = _constructor.getParameterCount() - 1;
+      final int nVarArgs = arguments.length - varArgIndex;
+      if (nVarArgs < 0) {
+        throw new XL4JRuntimeException("Wrong number of arguments for " + _constructor + ", have " + Arrays.toString(arguments));
       }
+      for (int i = 0; i < varArgIndex; i++) {
+        args[i] = _argumentBindings[i].bind(arguments[i]);
+      }
+      args[args.length - 1] = bindVarArgs(arguments, varArgIndex, nVarArgs);
+    } else {
+      args = new Object[arguments.length];
+      for (int i = 0; i < _argumentBindings.length; i++) {
+        args[i] = _argumentBindings[i].bind(arguments[i]);
+      }
+    }
+    final Object result = construct(args);
+    return (XLValue) _returnConverter.toXLValue(result);
+  }
+
+  /**
+   * Converts the trailing arguments into the array passed as the varargs parameter. If the converter allows, the array is
+   * filled straight from the arguments.
+   *
+   * @param arguments
+   *          the arguments
+   * @param from
+   *          the index of the first varargs argument
+   * @param length
+   *          the number of varargs arguments
+   * @return the varargs array
+   */
+  private Object bindVarArgs(final XLValue[] arguments, final int from, final int length) {
+    final Type expectedClass = _parameterTypes[_parameterTypes.length - 1];
+    if (_varArgsConverter != null) {
+      return _varArgsConverter.toJavaArray(expectedClass, arguments, from, length);
+    }
+    final XLValue[] varArgs = new XLValue[length];
+    System.arraycopy(arguments, from, varArgs, 0, length);
+    final XLValue[][] varArgsAsArray = new XLValue[][] { varArgs };
+    return _argumentConverters[_argumentConverters.length - 1].toJavaObject(expectedClass, XLArray.of(varArgsAsArray));
+  }
+
+  /**
+   * Calls the constructor, through the bound method handle if there is one.
+   *
+   * @param args
+   *          the converted arguments
+   * @return the new instance
+   */
+  private Object construct(final Object[] args) {
+    if (_constructorHandle == null) {
       try {
-        final Object result = _constructor.newInstance(args);
-        return (XLValue) _returnConverter.toXLValue(result);
-      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | InstantiationException e1) {
-        throw new XL4JRuntimeException("Error invoking constructor: " + e.getMessage(), e1);
+        return _constructor.newInstance(args);
+      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | InstantiationException e) {
+        throw new XL4JRuntimeException("Error invoking constructor: " + e.getMessage(), e);
       }
     }
+    try {
+      return (Object) _constructorHandle.invokeExact(args);
+    } catch (final Error e) {
+      throw e;
+    } catch (final Throwable t) {
+      throw new XL4JRuntimeException("Error invoking constructor: " + t.getMessage(), t);
+    }
   }
 
   @Override
@@ -3,12 +3,12 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
-import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * A class holding the converter required to convert the value of a field to the appropriate type.
@@ -27,12 +27,21 @@ public class ObjectFieldGetter extends AbstractFieldGetter {
     _converter = ArgumentChecker.notNull(converter, "converter");
   }
 
+  /**
+   * @param field
+   *          the field, not null
+   * @param getterHandle
+   *          a method handle of type <code>(Object)Object</code> that reads the field, or null to use reflection
+   * @param converter
+   *          the result converter, not null
+   */
+  public ObjectFieldGetter(final Field field, final MethodHandle getterHandle, final TypeConverter converter) {
+    super(field, getterHandle);
+    _converter = ArgumentChecker.notNull(converter, "converter");
+  }
+
   @Override
   public XLValue get(final Object object) {
-    try {
-      return (XLValue) _converter.toXLValue(getField().get(object));
-    } catch (final IllegalAccessException e) {
-      throw new XL4JRuntimeException("Error getting field " + getFieldName() + " from " + getFieldDeclaringClass(), e);
-    }
+    return (XLValue) _converter.toXLValue(getFieldValue(object));
   }
 }
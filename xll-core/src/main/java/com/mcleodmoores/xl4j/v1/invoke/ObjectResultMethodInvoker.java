@@ -3,6 +3,7 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
@@ -34,6 +35,26 @@ public class ObjectResultMethodInvoker extends AbstractMethodInvoker {
     _objectXlObjectConverter = ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter");
   }
 
+  /**
+   * Constructor for an invoker that calls the method through a method handle if there is one.
+   *
+   * @param method
+   *          the method to call.
+   * @param methodHandle
+   *          a method handle of type <code>(Object, Object[])Object</code> that calls the method, or null to use reflection
+   * @param argumentConverters
+   *          the converters required to call the method
+   * @param returnConverter
+   *          the converter required to convert the result back to an Excel type
+   * @param objectXlObjectConverter
+   *          a converter to convert the object into an object if necessary
+   */
+  public ObjectResultMethodInvoker(final Method method, final MethodHandle methodHandle, final TypeConverter[] argumentConverters,
+      final TypeConverter returnConverter, final TypeConverter objectXlObjectConverter) {
+    super(method, methodHandle, argumentConverters, returnConverter, objectXlObjectConverter);
+    _objectXlObjectConverter = ArgumentChecker.notNull(objectXlObjectConverter, "objectXlObjectConverter");
+  }
+
   @Override
   protected XLValue convertResult(final Object object, final TypeConverter returnConverter) {
     if (object instanceof XLObject) {
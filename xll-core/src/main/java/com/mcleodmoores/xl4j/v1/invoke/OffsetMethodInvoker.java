@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * A method invoker that can use the arguments starting at an offset in the array, so that the caller can skip an object
+ * reference without copying the arguments.
+ */
+public interface OffsetMethodInvoker extends MethodInvoker {
+
+  /**
+   * Actually execute a method, performing the necessary type conversions, using the arguments starting at an offset in the
+   * array.
+   *
+   * @param object
+   *          the object on which to execute the method, or null if static
+   * @param arguments
+   *          the arguments to pass to the method, starting at the offset
+   * @param offset
+   *          the index of the first argument to pass to the method
+   * @return the value to return to Excel
+   */
+  XLValue invoke(Object object, XLValue[] arguments, int offset);
+}
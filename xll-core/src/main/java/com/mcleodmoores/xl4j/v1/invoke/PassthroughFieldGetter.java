@@ -3,10 +3,10 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
-import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * A class that passes through the value of a field without further conversion.
@@ -21,13 +21,19 @@ public class PassthroughFieldGetter extends AbstractFieldGetter {
     super(field);
   }
 
+  /**
+   * @param field
+   *          the field, not null
+   * @param getterHandle
+   *          a method handle of type <code>(Object)Object</code> that reads the field, or null to use reflection
+   */
+  public PassthroughFieldGetter(final Field field, final MethodHandle getterHandle) {
+    super(field, getterHandle);
+  }
+
   @Override
   public XLValue get(final Object object) {
-    try {
-      return (XLValue) getField().get(object);
-    } catch (final IllegalAccessException e) {
-      throw new XL4JRuntimeException("Error getting field", e);
-    }
+    return (XLValue) getFieldValue(object);
   }
 
 }
@@ -13,7 +13,6 @@ import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
 import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
@@ -22,9 +21,11 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 /**
  * A class holding the converters required to convert arguments into the appropriate types and convert the result.
  */
-public class PassthroughMethodInvoker implements MethodInvoker {
+public class PassthroughMethodInvoker implements OffsetMethodInvoker {
   private static final Logger LOGGER = LoggerFactory.getLogger(PassthroughMethodInvoker.class);
   private final Method _method;
+  /** The component type of the varargs parameter, or null if the method is not varargs */
+  private final Class<?> _varArgType;
 
   /**
    * Constructor.
@@ -34,37 +35,43 @@ public class PassthroughMethodInvoker implements MethodInvoker {
    */
   public PassthroughMethodInvoker(final Method method) {
     _method = ArgumentChecker.notNull(method, "method");
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    _varArgType = method.isVarArgs() ? parameterTypes[parameterTypes.length - 1].getComponentType() : null;
   }
 
   @Override
   public XLValue invoke(final Object object, final XLValue[] arguments) {
+    return invoke(object, arguments, 0);
+  }
+
+  @Override
+  public XLValue invoke(final Object object, final XLValue[] arguments, final int offset) {
     ArgumentChecker.notNull(arguments, "arguments");
+    final int nArguments = arguments.length - offset;
     try {
       if (_method.isVarArgs()) {
-        if (arguments.length == 0) {
+        if (nArguments == 0) {
           // find the appropriate type for the empty array
-          final Class<?>[] parameterTypes = _method.getParameterTypes();
-          final Class<?> varArgType = parameterTypes[parameterTypes.length - 1].getComponentType();
-          if (varArgType == null) {
+          if (_varArgType == null) {
             LOGGER.error("Last argument for varargs method was not an array: should never happen");
             throw new XL4JRuntimeException("Error invoking method: last argument for varargs method was not an array");
           }
-          return (XLValue) _method.invoke(object, Array.newInstance(varArgType, 0));
+          return (XLValue) _method.invoke(object, Array.newInstance(_varArgType, 0));
         }
-        // create an array for the varargs argument
+        // create an array for the varargs argument, filled straight from the arguments
         final int nArgs = _method.getParameterCount();
-        final int nVarargInputs = arguments.length - nArgs + 1;
+        final int nVarargInputs = nArguments - nArgs + 1;
         if (nVarargInputs < 0) {
           throw new XL4JRuntimeException("Wrong number of arguments for " + _method + ", have " + Arrays.toString(arguments));
         }
         final Object[] args = new Object[nArgs];
-        final Class<?>[] parameterTypes = _method.getParameterTypes();
-        final Class<?> varArgType = parameterTypes[parameterTypes.length - 1].getComponentType();
-        final Object[] varargs = (Object[]) Array.newInstance(varArgType, nVarargInputs);
-        System.arraycopy(arguments, 0, args, 0, nArgs - 1);
-        System.arraycopy(arguments, nArgs - 1, varargs, 0, nVarargInputs);
+        final Object[] varargs = (Object[]) Array.newInstance(_varArgType, nVarargInputs);
+        System.arraycopy(arguments, offset, args, 0, nArgs - 1);
+        System.arraycopy(arguments, offset + nArgs - 1, varargs, 0, nVarargInputs);
         args[args.length - 1] = varargs;
-        LOGGER.info("invoking method {} on {} with {}", _method.getName(), object, Arrays.toString(args));
+        if (LOGGER.isTraceEnabled()) {
+          LOGGER.trace("invoking method {} on {} with {}", _method.getName(), object, Arrays.toString(args));
+        }
         final XLValue result = (XLValue) _method.invoke(object, args);
         if (result == null) {
           // void method
@@ -72,8 +79,12 @@ public class PassthroughMethodInvoker implements MethodInvoker {
         }
         return result;
       }
-      LOGGER.info("invoking method {} on {} with {}", _method.getName(), object, Arrays.toString(arguments));
-      final XLValue result = (XLValue) _method.invoke(object, (Object[]) arguments);
+      // the method is called with the arguments array itself, so it must be trimmed
+      final Object[] args = offset == 0 ? arguments : Arrays.copyOfRange(arguments, offset, arguments.length);
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace("invoking method {} on {} with {}", _method.getName(), object, Arrays.toString(args));
+      }
+      final XLValue result = (XLValue) _method.invoke(object, args);
       if (result == null) {
         // void method
         return XLMissing.INSTANCE;
@@ -3,6 +3,7 @@
  */
 package com.mcleodmoores.xl4j.v1.invoke;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -276,13 +277,14 @@ public class ReflectiveInvokerFactory implements InvokerFactory {
         throw new XL4JRuntimeException("Could not find type converter for " + returnType + " (return type)");
       }
       final TypeConverter[] argumentConverters = buildArgumentConverters(genericParameterTypes);
+      final MethodHandle methodHandle = bindMethod(method);
       switch (resultType) {
         case SIMPLEST_RESULT:
-          return new SimpleResultMethodInvoker(method, argumentConverters, resultConverter, _objectXlObjectConverter);
+          return new SimpleResultMethodInvoker(method, methodHandle, argumentConverters, resultConverter, _objectXlObjectConverter);
         case PASSTHROUGH:
-          return new PassthroughResultMethodInvoker(method, argumentConverters, resultConverter, _objectXlObjectConverter);
+          return new PassthroughResultMethodInvoker(method, methodHandle, argumentConverters, resultConverter, _objectXlObjectConverter);
         case OBJECT_RESULT:
-          return new ObjectResultMethodInvoker(method, argumentConverters, _objectXlObjectConverter, _objectXlObjectConverter);
+          return new ObjectResultMethodInvoker(method, methodHandle, argumentConverters, _objectXlObjectConverter, _objectXlObjectConverter);
         default:
           throw new IllegalArgumentException("Unhandled result type " + resultType);
       }
@@ -297,7 +299,8 @@ public class ReflectiveInvokerFactory implements InvokerFactory {
     final Class<?>[] genericParameterTypes = ArgumentChecker.notNull(constructor, "constructor").getParameterTypes();
     try {
       final TypeConverter[] argumentConverters = buildArgumentConverters(genericParameterTypes);
-      return new ObjectConstructorInvoker(constructor, argumentConverters, _objectXlObjectConverter, _objectXlObjectConverter);
+      return new ObjectConstructorInvoker(constructor, bindConstructor(constructor), argumentConverters, _objectXlObjectConverter,
+          _objectXlObjectConverter);
     } catch (final XL4JRuntimeException e) {
       throw new XL4JRuntimeException("Could not construct invoker for " + constructor, e);
     }
@@ -307,18 +310,55 @@ public class ReflectiveInvokerFactory implements InvokerFactory {
   public FieldGetter getFieldTypeConverter(final Field field, final TypeConversionMode resultType) {
     ArgumentChecker.notNull(field, "field");
     ArgumentChecker.notNull(resultType, "resultType");
+    final MethodHandle getterHandle = bindFieldGetter(field);
     switch (resultType) {
       case SIMPLEST_RESULT:
-        return new ObjectFieldGetter(field, _typeConverterRegistry.findConverter(field.getType()));
+        return new ObjectFieldGetter(field, getterHandle, _typeConverterRegistry.findConverter(field.getType()));
       case OBJECT_RESULT:
-        return new ObjectFieldGetter(field, _objectXlObjectConverter);
+        return new ObjectFieldGetter(field, getterHandle, _objectXlObjectConverter);
       case PASSTHROUGH:
-        return new PassthroughFieldGetter(field);
+        return new PassthroughFieldGetter(field, getterHandle);
       default:
         throw new XL4JRuntimeException("Unhandled result type " + resultType);
     }
   }
 
+  /**
+   * Binds a method that is being registered as a function to a method handle that is used instead of reflection
+   * for each call. This implementation does not bind the method, so it is invoked reflectively.
+   *
+   * @param method
+   *          the method, not null
+   * @return a method handle of type <code>(Object, Object[])Object</code>, or null if the method should be called using reflection
+   */
+  protected MethodHandle bindMethod(final Method method) {
+    return null;
+  }
+
+  /**
+   * Binds a constructor that is being registered as a function to a method handle that is used instead of reflection
+   * for each call. This implementation does not bind the constructor, so it is invoked reflectively.
+   *
+   * @param constructor
+   *          the constructor, not null
+   * @return a method handle of type <code>(Object[])Object</code>, or null if the constructor should be called using reflection
+   */
+  protected MethodHandle bindConstructor(final Constructor<?> constructor) {
+    return null;
+  }
+
+  /**
+   * Binds a field that is being registered as a function to a method handle that is used instead of reflection
+   * each time the value is read. This implementation does not bind the field, so it is read reflectively.
+   *
+   * @param field
+   *          the field, not null
+   * @return a method handle of type <code>(Object)Object</code>, or null if the field should be read using reflection
+   */
+  protected MethodHandle bindFieldGetter(final Field field) {
+    return null;
+  }
+
   private static boolean isAssignableFrom(final Class<?>[] parameterTypes, final Class<? extends XLValue>[] argumentTypes, final boolean isVarArgs) {
     if (isVarArgs) { // check that the first parameters match and that the last parameters match varargs type
       final int nNonVarArgsTypes = parameterTypes.length - 1;
@@ -0,0 +1,457 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.processor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.FunctionType;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLConstant;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndex;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndexEntry;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndexEntry.MemberType;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndexEntry.Source;
+
+/**
+ * Writes a {@link FunctionIndex} of the functions in the classes being compiled, so that
+ * {@link com.mcleodmoores.xl4j.v1.core.IndexedFunctionRegistry} can register them without scanning the classpath. The function
+ * names, signatures and argument help follow the same rules as {@link com.mcleodmoores.xl4j.v1.core.AbstractFunctionRegistry}
+ * and {@link com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback}. Functions that would not register are reported as warnings
+ * and left out of the index.
+ * <p>
+ * The processor is registered as a service in xll-core, so it runs whenever an add-in is compiled against xll-core. The index
+ * only contains the classes in the compilation, so incremental builds that do not recompile every function class will write an
+ * incomplete index.
+ */
+@SupportedAnnotationTypes({
+  "com.mcleodmoores.xl4j.v1.api.annotations.XLFunction",
+  "com.mcleodmoores.xl4j.v1.api.annotations.XLFunctions",
+  "com.mcleodmoores.xl4j.v1.api.annotations.XLConstant" })
+public class FunctionIndexProcessor extends AbstractProcessor {
+  /** The number of parameters that are registered for a varargs function */
+  private static final int VARARGS_MAX_PARAMS = 32;
+  private static final Set<String> EXCLUDED_METHOD_NAMES = new HashSet<>(Arrays.asList("clone", "equals", "finalize", "getClass",
+      "hashCode", "notify", "notifyAll", "toString", "wait"));
+  private static final String CONSTRUCTOR_NAME = "<init>";
+  // entries in the order that AbstractFunctionRegistry creates them
+  private final List<FunctionIndexEntry> _methods = new ArrayList<>();
+  private final List<FunctionIndexEntry> _constructors = new ArrayList<>();
+  private final List<FunctionIndexEntry> _types = new ArrayList<>();
+  private final List<FunctionIndexEntry> _constantTypes = new ArrayList<>();
+  private final List<FunctionIndexEntry> _constantFields = new ArrayList<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    if (roundEnv.processingOver()) {
+      writeIndex();
+      return false;
+    }
+    for (final Element element : roundEnv.getElementsAnnotatedWith(XLFunction.class)) {
+      try {
+        if (element.getKind() == ElementKind.METHOD) {
+          addMethod((ExecutableElement) element);
+        } else if (element.getKind() == ElementKind.CONSTRUCTOR) {
+          addConstructor((ExecutableElement) element);
+        }
+      } catch (final IllegalArgumentException e) {
+        warn(element, e);
+      }
+    }
+    for (final Element element : roundEnv.getElementsAnnotatedWith(XLFunctions.class)) {
+      if (element instanceof TypeElement) {
+        addTypeFunctions((TypeElement) element);
+      }
+    }
+    for (final Element element : roundEnv.getElementsAnnotatedWith(XLConstant.class)) {
+      try {
+        if (element instanceof TypeElement) {
+          addTypeConstants((TypeElement) element);
+        } else if (element.getKind() == ElementKind.FIELD) {
+          addFieldConstant((VariableElement) element);
+        }
+      } catch (final IllegalArgumentException e) {
+        warn(element, e);
+      }
+    }
+    // other processors might want these annotations
+    return false;
+  }
+
+  private void writeIndex() {
+    final List<FunctionIndexEntry> entries = new ArrayList<>();
+    final Set<String> names = new HashSet<>();
+    for (final List<FunctionIndexEntry> list : Arrays.asList(_methods, _constructors, _types, _constantTypes, _constantFields)) {
+      for (final FunctionIndexEntry entry : list) {
+        if (names.add(entry.getFunctionName().toUpperCase())) {
+          entries.add(entry);
+        } else {
+          processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+              "Have already indexed a function called " + entry.getFunctionName() + ", ignoring " + entry);
+        }
+      }
+    }
+    if (entries.isEmpty()) {
+      return;
+    }
+    try {
+      final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", FunctionIndex.RESOURCE_NAME);
+      try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+        FunctionIndex.write(writer, entries);
+      }
+    } catch (final IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write function index: " + e.getMessage());
+    }
+  }
+
+  private void addMethod(final ExecutableElement method) {
+    if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+      throw new IllegalArgumentException("Abstract method, not indexing function");
+    }
+    final TypeElement type = (TypeElement) method.getEnclosingElement();
+    final XLNamespace namespace = type.getAnnotation(XLNamespace.class);
+    final XLFunction function = method.getAnnotation(XLFunction.class);
+    final String name = namespace(namespace) + (function.name().isEmpty() ? type.getSimpleName() + "." + method.getSimpleName() : function.name());
+    final XLParameter[] parameters = getParameterAnnotations(method);
+    final boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+    final String signature = buildSignature(method.getReturnType(), parameters, method.getParameters().size(), !isStatic, method.isVarArgs(),
+        function.isVolatile(), function.isMultiThreadSafe(), function.isMacroEquivalent(), function.isAutoRTDAsynchronous(),
+        function.functionType());
+    _methods.add(FunctionIndexEntry.builder()
+        .member(MemberType.METHOD, Source.FUNCTION, binaryName(type), method.getSimpleName().toString(), getParameterTypes(method))
+        .function(name, signature, function.functionType().getExcelValue())
+        .flags(method.isVarArgs(), function.isLongRunning(), function.isAutoRTDAsynchronous(), function.isManualAsynchronous(),
+            function.isCallerRequired())
+        .help(buildArgumentNames(isStatic ? null : type, parameters), category(function.category(), name), emptyToNull(function.helpTopic()),
+            emptyToNull(function.description()), buildArgsHelp(parameters))
+        .build());
+  }
+
+  private void addConstructor(final ExecutableElement constructor) {
+    final TypeElement type = (TypeElement) constructor.getEnclosingElement();
+    final XLNamespace namespace = type.getAnnotation(XLNamespace.class);
+    final XLFunction function = constructor.getAnnotation(XLFunction.class);
+    final String name = namespace(namespace) + (function.name().isEmpty() ? type.getSimpleName().toString() : function.name());
+    final XLParameter[] parameters = getParameterAnnotations(constructor);
+    final String signature = buildSignature(type.asType(), parameters, constructor.getParameters().size(), false, constructor.isVarArgs(),
+        function.isVolatile(), function.isMultiThreadSafe(), function.isMacroEquivalent(), function.isAutoRTDAsynchronous(),
+        function.functionType());
+    _constructors.add(FunctionIndexEntry.builder()
+        .member(MemberType.CONSTRUCTOR, Source.FUNCTION, binaryName(type), CONSTRUCTOR_NAME, getParameterTypes(constructor))
+        .function(name, signature, function.functionType().getExcelValue())
+        .flags(constructor.isVarArgs(), function.isLongRunning(), function.isAutoRTDAsynchronous(), function.isManualAsynchronous(),
+            function.isCallerRequired())
+        .help(buildArgumentNames(null, parameters), category(function.category(), name), emptyToNull(function.helpTopic()),
+            emptyToNull(function.description()), buildArgsHelp(parameters))
+        .build());
+  }
+
+  private void addTypeFunctions(final TypeElement type) {
+    final XLNamespace namespace = type.getAnnotation(XLNamespace.class);
+    final XLFunctions functions = type.getAnnotation(XLFunctions.class);
+    final String prefix = namespace(namespace) + (functions.prefix().isEmpty() ? type.getSimpleName().toString() : functions.prefix());
+    final XLParameter[] parameters = new XLParameter[0];
+    if (!type.getModifiers().contains(Modifier.ABSTRACT)) {
+      int count = 1;
+      for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+        if (constructor.getAnnotation(XLFunction.class) != null) {
+          continue;
+        }
+        final String name = prefix + (count == 1 ? "" : "_$" + count);
+        count++;
+        try {
+          final String signature = buildSignature(type.asType(), parameters, constructor.getParameters().size(), false,
+              constructor.isVarArgs(), functions.isVolatile(), functions.isMultiThreadSafe(), functions.isMacroEquivalent(),
+              functions.isAutoRTDAsynchronous(), functions.functionType());
+          _types.add(FunctionIndexEntry.builder()
+              .member(MemberType.CONSTRUCTOR, Source.FUNCTIONS, binaryName(type), CONSTRUCTOR_NAME, getParameterTypes(constructor))
+              .function(name, signature, functions.functionType().getExcelValue())
+              .flags(constructor.isVarArgs(), functions.isLongRunning(), functions.isAutoRTDAsynchronous(), functions.isManualAsynchronous(),
+                  functions.isCallerRequired())
+              .help("", category(functions.category(), name), emptyToNull(functions.helpTopic()), emptyToNull(functions.description()))
+              .build());
+        } catch (final IllegalArgumentException e) {
+          warn(constructor, e);
+        }
+      }
+    }
+    final Map<String, Integer> methodNames = new HashMap<>();
+    for (final ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      final Set<Modifier> modifiers = method.getModifiers();
+      if (!modifiers.contains(Modifier.PUBLIC) || method.getAnnotation(XLFunction.class) != null) {
+        continue;
+      }
+      final String methodName = method.getSimpleName().toString();
+      final boolean isInterfaceDefault = type.getKind() == ElementKind.INTERFACE && method.isDefault();
+      if (modifiers.contains(Modifier.ABSTRACT) || isInterfaceDefault || EXCLUDED_METHOD_NAMES.contains(methodName)) {
+        continue;
+      }
+      final int methodNameCount = methodNames.containsKey(methodName) ? methodNames.get(methodName) + 1 : 1;
+      methodNames.put(methodName, methodNameCount);
+      final String name = prefix + "." + methodName + (methodNameCount == 1 ? "" : "_$" + methodNameCount);
+      final boolean isStatic = modifiers.contains(Modifier.STATIC);
+      try {
+        final String signature = buildSignature(method.getReturnType(), parameters, method.getParameters().size(), !isStatic,
+            method.isVarArgs(), functions.isVolatile(), functions.isMultiThreadSafe(), functions.isMacroEquivalent(),
+            functions.isAutoRTDAsynchronous(), functions.functionType());
+        _types.add(FunctionIndexEntry.builder()
+            .member(MemberType.METHOD, Source.FUNCTIONS, binaryName(type), methodName, getParameterTypes(method))
+            .function(name, signature, functions.functionType().getExcelValue())
+            .flags(method.isVarArgs(), functions.isLongRunning(), functions.isAutoRTDAsynchronous(), functions.isManualAsynchronous(),
+                functions.isCallerRequired())
+            .help(buildArgumentNames(isStatic ? null : (TypeElement) method.getEnclosingElement(), parameters),
+                category(functions.category(), name), emptyToNull(functions.helpTopic()), emptyToNull(functions.description()))
+            .build());
+      } catch (final IllegalArgumentException e) {
+        warn(method, e);
+      }
+    }
+  }
+
+  private void addTypeConstants(final TypeElement type) {
+    final XLNamespace namespace = type.getAnnotation(XLNamespace.class);
+    final XLConstant constant = type.getAnnotation(XLConstant.class);
+    final String prefix = namespace(namespace) + (constant.name().isEmpty() ? type.getSimpleName().toString() : constant.name());
+    for (final VariableElement field : ElementFilter.fieldsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (field.getModifiers().contains(Modifier.PUBLIC)) {
+        final String name = prefix + "." + field.getSimpleName();
+        _constantTypes.add(buildConstant(field, Source.CONSTANT_TYPE, type, constant, name));
+      }
+    }
+  }
+
+  private void addFieldConstant(final VariableElement field) {
+    final TypeElement type = (TypeElement) field.getEnclosingElement();
+    final XLNamespace namespace = type.getAnnotation(XLNamespace.class);
+    final XLConstant constant = field.getAnnotation(XLConstant.class);
+    final String name = namespace(namespace) + (constant.name().isEmpty() ? type.getSimpleName() + "." + field.getSimpleName() : constant.name());
+    _constantFields.add(buildConstant(field, Source.CONSTANT_FIELD, type, constant, name));
+  }
+
+  private FunctionIndexEntry buildConstant(final VariableElement field, final Source source, final TypeElement type, final XLConstant constant,
+      final String name) {
+    // the same as DefaultExcelCallback, where a static field has an extra argument
+    final String signature = (field.getModifiers().contains(Modifier.STATIC) ? "Q" : "") + (isReference(field.asType()) ? "U" : "Q") + "$";
+    return FunctionIndexEntry.builder()
+        .member(MemberType.FIELD, source, binaryName(type), field.getSimpleName().toString())
+        .function(name, signature, FunctionType.FUNCTION.getExcelValue())
+        .flags(false, false, false, false, false)
+        .help("", category(constant.category(), name), emptyToNull(constant.helpTopic()), emptyToNull(constant.description()))
+        .build();
+  }
+
+  /**
+   * Builds the Excel type signature in the same way as {@link com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback}. The Excel return
+   * type is taken from the declared return type, as the type converters are not available at compile time.
+   */
+  private String buildSignature(final TypeMirror returnType, final XLParameter[] parameters, final int parameterCount,
+      final boolean hasObjectArgument, final boolean isVarArgs, final boolean isVolatile, final boolean isMTSafe, final boolean isMacroEquivalent,
+      final boolean isAutoRTDAsynchronous, final FunctionType functionType) {
+    if (isVolatile && isMTSafe || isMTSafe && isMacroEquivalent || isAutoRTDAsynchronous && isMTSafe) {
+      throw new IllegalArgumentException(
+          "Illegal combination of XLFunction attributes, cannot be volatile & thread-safe or macro-equivalent & thread-safe or auto RTD async & thread-safe");
+    }
+    final StringBuilder signature = new StringBuilder();
+    if (functionType == FunctionType.COMMAND) {
+      if (!isSubtype(returnType, "com.mcleodmoores.xl4j.v1.api.values.XLInteger")) {
+        throw new IllegalArgumentException("Commands must have a return type XLInteger (gets converted to type J (int))");
+      }
+      signature.append('J');
+    } else {
+      signature.append(isReference(returnType) ? 'U' : 'Q');
+    }
+    if (parameters.length != 0 && parameters.length != parameterCount) {
+      throw new IllegalArgumentException("Function must have an XLParameter annotation for each parameter");
+    }
+    if (hasObjectArgument) {
+      signature.append('Q');
+    }
+    for (int i = 0; i < parameterCount; i++) {
+      if (parameters.length != 0 && parameters[i] != null && parameters[i].referenceType()) {
+        if (!isMacroEquivalent) {
+          throw new IllegalArgumentException("Cannot register reference type parameters if not a macro equivalent: "
+              + "function annotation @XLFunction(isMacroEquivalent = true) required");
+        }
+        signature.append('U');
+      } else {
+        signature.append('Q');
+      }
+    }
+    if (isVarArgs) {
+      if (parameterCount == 0) {
+        throw new IllegalArgumentException("Variable argument list function should have at least one parameter type");
+      }
+      final boolean isLastTypeReferenceType = parameters.length != 0 && parameters[parameterCount - 1] != null
+          && parameters[parameterCount - 1].referenceType();
+      for (int i = 0; i < VARARGS_MAX_PARAMS - parameterCount; i++) {
+        signature.append(isLastTypeReferenceType ? 'U' : 'Q');
+      }
+    }
+    if (isMacroEquivalent) {
+      signature.append('#');
+    } else if (isMTSafe) {
+      signature.append('$');
+    } else if (isVolatile) {
+      signature.append('!');
+    }
+    return signature.toString();
+  }
+
+  private static String buildArgumentNames(final TypeElement objectType, final XLParameter[] parameters) {
+    final StringBuilder names = new StringBuilder();
+    int argCounter = 1;
+    if (objectType != null) {
+      names.append(objectType.getSimpleName());
+      if (parameters.length > 0) {
+        names.append(',');
+      }
+      argCounter++;
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i] != null && !parameters[i].name().isEmpty()) {
+        names.append(parameters[i].name());
+      } else {
+        names.append(Integer.toString(argCounter));
+      }
+      if (i < parameters.length - 1) {
+        names.append(',');
+      }
+      argCounter++;
+    }
+    return names.toString();
+  }
+
+  private static String[] buildArgsHelp(final XLParameter[] parameters) {
+    final String[] help = new String[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      help[i] = parameters[i] == null ? null : emptyToNull(parameters[i].description());
+    }
+    return help;
+  }
+
+  private static XLParameter[] getParameterAnnotations(final ExecutableElement executable) {
+    final List<? extends VariableElement> parameters = executable.getParameters();
+    final XLParameter[] annotations = new XLParameter[parameters.size()];
+    for (int i = 0; i < annotations.length; i++) {
+      annotations[i] = parameters.get(i).getAnnotation(XLParameter.class);
+    }
+    return annotations;
+  }
+
+  private String[] getParameterTypes(final ExecutableElement executable) {
+    final List<? extends VariableElement> parameters = executable.getParameters();
+    final String[] types = new String[parameters.size()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = className(processingEnv.getTypeUtils().erasure(parameters.get(i).asType()));
+    }
+    return types;
+  }
+
+  /**
+   * Gets the name of an erased type in the form returned by {@link Class#getName()}.
+   */
+  private String className(final TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return descriptor(type).replace('/', '.');
+      case DECLARED:
+        return binaryName((TypeElement) ((DeclaredType) type).asElement());
+      default:
+        // primitives
+        return type.getKind().name().toLowerCase();
+    }
+  }
+
+  private String descriptor(final TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return "[" + descriptor(((ArrayType) type).getComponentType());
+      case DECLARED:
+        return "L" + binaryName((TypeElement) ((DeclaredType) type).asElement()) + ";";
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      default:
+        throw new IllegalArgumentException("Unhandled parameter type " + type);
+    }
+  }
+
+  private String binaryName(final TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  private boolean isReference(final TypeMirror type) {
+    return isSubtype(type, "com.mcleodmoores.xl4j.v1.api.values.XLLocalReference")
+        || isSubtype(type, "com.mcleodmoores.xl4j.v1.api.values.XLMultiReference");
+  }
+
+  private boolean isSubtype(final TypeMirror type, final String className) {
+    final TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+    return element != null && processingEnv.getTypeUtils().isAssignable(type, element.asType());
+  }
+
+  private void warn(final Element element, final IllegalArgumentException e) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, e.getMessage() + ", not indexing function", element);
+  }
+
+  private static String namespace(final XLNamespace namespace) {
+    return namespace == null ? "" : namespace.value();
+  }
+
+  private static String category(final String category, final String name) {
+    return category.isEmpty() ? name : category;
+  }
+
+  private static String emptyToNull(final String value) {
+    return value.isEmpty() ? null : value;
+  }
+}
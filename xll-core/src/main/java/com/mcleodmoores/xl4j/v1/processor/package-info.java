@@ -0,0 +1,6 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited. All rights reserved.
+ *
+ * Annotation processors that run when add-ins are compiled.
+ */
+package com.mcleodmoores.xl4j.v1.processor;
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.CallLog;
+import com.mcleodmoores.xl4j.v1.core.CallLog.RecordedCall;
+import com.mcleodmoores.xl4j.v1.core.CallRecorder;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Replays a log written by {@link CallRecorder} through the simulator, so that builds of the add-in can be compared on the same
+ * workload. The calls are made one at a time in the order they were recorded, either as fast as possible or at the times at
+ * which they were originally made.
+ * <p>
+ * Export numbers are not stable between builds, so each function is looked up by its worksheet name and called through
+ * {@link MockDLLExports} with its export number in this build. If more than one function has the same name, the first is called.
+ * Objects returned by a recorded call are given new handles by the replay, so the handles passed to later calls, either as
+ * objects or as strings, are replaced with the new ones. Calls to functions that are not registered are skipped.
+ * <p>
+ * The log can be replayed from the command line with
+ * <pre>
+ * java com.mcleodmoores.xl4j.v1.simulator.CallReplayer calls.log [paced]
+ * </pre>
+ */
+public final class CallReplayer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CallReplayer.class);
+  private final MockDLLExports _exports;
+  private final MockFunctionProcessor _processor;
+
+  /**
+   * Creates a replayer that calls functions through the call handler of the current {@link ExcelFactory} instance.
+   */
+  public CallReplayer() {
+    this(new MockDLLExports(ExcelFactory.getInstance().getExcelCallHandler()));
+  }
+
+  /**
+   * Creates a replayer.
+   *
+   * @param exports
+   *          the exports that functions are called through, not null
+   */
+  public CallReplayer(final MockDLLExports exports) {
+    _exports = ArgumentChecker.notNull(exports, "exports");
+    _processor = MockFunctionProcessor.getInstance();
+  }
+
+  /**
+   * Replays a log.
+   *
+   * @param file
+   *          the log, not null
+   * @param paced
+   *          true to make each call at the same time after the first as it was recorded, false to make the calls as fast as
+   *          possible
+   * @return the result of the replay
+   * @throws IOException
+   *           if the log cannot be read
+   */
+  public ReplayResult replay(final File file, final boolean paced) throws IOException {
+    ArgumentChecker.notNull(file, "file");
+    final Map<String, Integer> exportNumbers = new HashMap<>();
+    final Map<Long, XLObject> handles = new HashMap<>();
+    final ReplayResult replayResult = new ReplayResult();
+    try (CallLog log = new CallLog(file)) {
+      final long start = System.nanoTime();
+      long firstOffset = -1;
+      RecordedCall call;
+      while ((call = log.next()) != null) {
+        final Integer exportNumber = getExportNumber(exportNumbers, call.getFunctionName());
+        if (exportNumber == null) {
+          replayResult._skipped++;
+          continue;
+        }
+        if (paced) {
+          if (firstOffset < 0) {
+            firstOffset = call.getOffsetNanos();
+          }
+          final long due = start + call.getOffsetNanos() - firstOffset;
+          for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+            LockSupport.parkNanos(wait);
+          }
+        }
+        final XLValue[] args = call.getArgs();
+        for (int i = 0; i < args.length; i++) {
+          args[i] = replaceHandles(args[i], handles);
+        }
+        final long callStart = System.nanoTime();
+        final XLValue result = _exports.UDF(exportNumber, args);
+        replayResult._replayedNanos += System.nanoTime() - callStart;
+        replayResult._recordedNanos += call.getLatencyNanos();
+        replayResult._calls++;
+        if (result instanceof XLError) {
+          replayResult._errors++;
+        }
+        if (!call.getResultType().isInstance(toObject(result))) {
+          replayResult._mismatches++;
+          LOGGER.debug("{} returned {}", call, result);
+        }
+        if (call.getResult() instanceof XLObject && toObject(result) instanceof XLObject) {
+          handles.put(((XLObject) call.getResult()).getHandle(), (XLObject) toObject(result));
+        }
+      }
+      replayResult._elapsedNanos = System.nanoTime() - start;
+    }
+    LOGGER.info("Replayed {}: {}", file, replayResult);
+    return replayResult;
+  }
+
+  private Integer getExportNumber(final Map<String, Integer> exportNumbers, final String functionName) {
+    if (exportNumbers.containsKey(functionName)) {
+      return exportNumbers.get(functionName);
+    }
+    Integer exportNumber = null;
+    try {
+      exportNumber = _processor.getEntries(functionName)[0]._exportNumber;
+    } catch (final XL4JRuntimeException e) {
+      LOGGER.warn("Function {} is not registered, calls to it will not be replayed", functionName);
+    }
+    exportNumbers.put(functionName, exportNumber);
+    return exportNumber;
+  }
+
+  private static XLValue toObject(final XLValue value) {
+    if (value instanceof XLString && ((XLString) value).isXLObject()) {
+      return ((XLString) value).toXLObject();
+    }
+    return value;
+  }
+
+  private static XLValue replaceHandles(final XLValue value, final Map<Long, XLObject> handles) {
+    if (handles.isEmpty()) {
+      return value;
+    }
+    if (value instanceof XLObject) {
+      final XLObject replacement = handles.get(((XLObject) value).getHandle());
+      return replacement == null ? value : replacement;
+    }
+    if (value instanceof XLString && ((XLString) value).isXLObject()) {
+      final XLObject replacement = handles.get(((XLString) value).toXLObject().getHandle());
+      return replacement == null ? value : replacement.toXLString();
+    }
+    if (value instanceof XLArray && !((XLArray) value).isNumeric()) {
+      final XLValue[][] array = ((XLArray) value).getArray();
+      boolean replaced = false;
+      final XLValue[][] newArray = new XLValue[array.length][];
+      for (int i = 0; i < array.length; i++) {
+        newArray[i] = new XLValue[array[i].length];
+        for (int j = 0; j < array[i].length; j++) {
+          newArray[i][j] = replaceHandles(array[i][j], handles);
+          replaced |= newArray[i][j] != array[i][j];
+        }
+      }
+      return replaced ? XLArray.of(newArray) : value;
+    }
+    return value;
+  }
+
+  /**
+   * Replays a log from the command line and prints the result.
+   *
+   * @param args
+   *          the name of the log, optionally followed by <code>paced</code> to replay the calls at their original times
+   * @throws IOException
+   *           if the log cannot be read
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length == 0 || args.length > 2 || args.length == 2 && !"paced".equalsIgnoreCase(args[1])) {
+      System.err.println("Usage: " + CallReplayer.class.getName() + " <call log> [paced]");
+      return;
+    }
+    final ReplayResult result = new CallReplayer().replay(new File(args[0]), args.length == 2);
+    System.out.println(result);
+  }
+
+  /**
+   * The number of calls replayed and the time that they took.
+   */
+  public static final class ReplayResult {
+    private long _calls;
+    private long _skipped;
+    private long _errors;
+    private long _mismatches;
+    private long _recordedNanos;
+    private long _replayedNanos;
+    private long _elapsedNanos;
+
+    /**
+     * @return the number of calls replayed
+     */
+    public long getCalls() {
+      return _calls;
+    }
+
+    /**
+     * @return the number of calls that were not replayed because their function is not registered
+     */
+    public long getSkipped() {
+      return _skipped;
+    }
+
+    /**
+     * @return the number of replayed calls that returned an error
+     */
+    public long getErrors() {
+      return _errors;
+    }
+
+    /**
+     * @return the number of replayed calls whose result was not the same type as the recorded result
+     */
+    public long getMismatches() {
+      return _mismatches;
+    }
+
+    /**
+     * @return the total time taken by the calls when they were recorded, in nanoseconds
+     */
+    public long getRecordedNanos() {
+      return _recordedNanos;
+    }
+
+    /**
+     * @return the total time taken by the calls when they were replayed, in nanoseconds
+     */
+    public long getReplayedNanos() {
+      return _replayedNanos;
+    }
+
+    /**
+     * @return the time taken by the replay, including any waiting between calls, in nanoseconds
+     */
+    public long getElapsedNanos() {
+      return _elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return _calls + " calls (" + _skipped + " skipped, " + _errors + " errors, " + _mismatches + " different result types), "
+          + TimeUnit.NANOSECONDS.toMillis(_recordedNanos) + "ms recorded, " + TimeUnit.NANOSECONDS.toMillis(_replayedNanos)
+          + "ms replayed, " + TimeUnit.NANOSECONDS.toMillis(_elapsedNanos) + "ms elapsed";
+    }
+  }
+}
@@ -0,0 +1,402 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator.FunctionEntry;
+
+/**
+ * A parsed cell formula. The formulas that are understood are calls to registered functions, whose arguments can be numbers,
+ * strings in double quotes, <code>TRUE</code> and <code>FALSE</code>, references to cells such as <code>B2</code> or
+ * <code>$B$2</code>, ranges such as <code>A1:C3</code>, which are passed as arrays, empty arguments, which are passed as missing,
+ * and other function calls, e.g. <code>=JMethod(A1, "add", JConstruct("java.lang.Integer", 1))</code>.
+ * <p>
+ * The flags of the functions are read from their Excel signatures in the same way as {@link MockExcelFunctionEntryAccumulator}: a
+ * formula can be calculated on any thread only if every function in it is thread-safe, and is volatile if any function in it is
+ * volatile or macro-sheet equivalent.
+ */
+final class Formula {
+  private final String _text;
+  private final Expression _expression;
+  private final List<String> _references;
+  private final boolean _threadSafe;
+  private final boolean _volatile;
+
+  private Formula(final String text, final Expression expression, final List<String> references, final boolean threadSafe,
+      final boolean isVolatile) {
+    _text = text;
+    _expression = expression;
+    _references = references;
+    _threadSafe = threadSafe;
+    _volatile = isVolatile;
+  }
+
+  /**
+   * Parses a formula.
+   *
+   * @param text
+   *          the formula, with or without a leading <code>=</code>
+   * @param processor
+   *          the processor used to look up and call functions
+   * @param cells
+   *          the resolver for cell references
+   * @return the formula
+   * @throws XL4JRuntimeException
+   *           if the formula cannot be parsed or calls a function that is not registered
+   */
+  static Formula parse(final String text, final MockFunctionProcessor processor, final CellResolver cells) {
+    final Parser parser = new Parser(text, processor, cells);
+    final Expression expression = parser.parse();
+    return new Formula(text, expression, parser._references, parser._threadSafe, parser._volatile);
+  }
+
+  /**
+   * @return the text of the formula
+   */
+  String getText() {
+    return _text;
+  }
+
+  /**
+   * @return the cells that the formula refers to, including every cell in a range
+   */
+  List<String> getReferences() {
+    return _references;
+  }
+
+  /**
+   * @return true if the formula can be calculated on any thread
+   */
+  boolean isThreadSafe() {
+    return _threadSafe;
+  }
+
+  /**
+   * @return true if the formula is calculated on every recalculation
+   */
+  boolean isVolatile() {
+    return _volatile;
+  }
+
+  /**
+   * Calculates the formula.
+   *
+   * @return the result
+   */
+  XLValue evaluate() {
+    return _expression.evaluate();
+  }
+
+  /**
+   * Converts a column letter and row number reference, e.g. <code>AB12</code>, to its row and column, both starting from zero.
+   *
+   * @param reference
+   *          the reference, without any <code>$</code>
+   * @return the row and column, or null if this is not a reference
+   */
+  static int[] toRowColumn(final String reference) {
+    int i = 0;
+    int column = 0;
+    while (i < reference.length() && reference.charAt(i) >= 'A' && reference.charAt(i) <= 'Z') {
+      column = column * 26 + reference.charAt(i) - 'A' + 1;
+      i++;
+    }
+    if (i == 0 || i == reference.length()) {
+      return null;
+    }
+    int row = 0;
+    for (; i < reference.length(); i++) {
+      final char c = reference.charAt(i);
+      if (c < '0' || c > '9') {
+        return null;
+      }
+      row = row * 10 + c - '0';
+    }
+    return row == 0 ? null : new int[] {row - 1, column - 1};
+  }
+
+  /**
+   * Converts a row and column, both starting from zero, to a reference.
+   *
+   * @param row
+   *          the row
+   * @param column
+   *          the column
+   * @return the reference
+   */
+  static String toReference(final int row, final int column) {
+    final StringBuilder sb = new StringBuilder();
+    for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+      sb.insert(0, (char) ('A' + (c - 1) % 26));
+    }
+    return sb.append(row + 1).toString();
+  }
+
+  /**
+   * Gets the current value of a cell.
+   */
+  interface CellResolver {
+
+    /**
+     * Gets the current value of a cell.
+     *
+     * @param reference
+     *          the normalised reference
+     * @return the value of the cell
+     */
+    XLValue getValue(String reference);
+  }
+
+  /**
+   * A part of a formula.
+   */
+  private interface Expression {
+
+    XLValue evaluate();
+  }
+
+  /**
+   * A recursive descent parser for formulas.
+   */
+  private static final class Parser {
+    private final String _text;
+    private final MockFunctionProcessor _processor;
+    private final CellResolver _cells;
+    private final List<String> _references = new ArrayList<>();
+    private boolean _threadSafe = true;
+    private boolean _volatile;
+    private int _position;
+
+    Parser(final String text, final MockFunctionProcessor processor, final CellResolver cells) {
+      _text = text;
+      _processor = processor;
+      _cells = cells;
+    }
+
+    Expression parse() {
+      skipWhitespace();
+      if (_position < _text.length() && _text.charAt(_position) == '=') {
+        _position++;
+      }
+      final Expression expression = parseExpression();
+      skipWhitespace();
+      if (_position != _text.length()) {
+        throw error("Unexpected characters");
+      }
+      return expression;
+    }
+
+    private Expression parseExpression() {
+      skipWhitespace();
+      if (_position == _text.length()) {
+        throw error("Expected a value");
+      }
+      final char c = _text.charAt(_position);
+      if (c == '"') {
+        return constant(XLString.of(parseString()));
+      }
+      if (c == '-' || c == '.' || c >= '0' && c <= '9') {
+        return constant(parseNumber());
+      }
+      final String name = parseName();
+      if (name.isEmpty()) {
+        throw error("Unexpected character '" + c + "'");
+      }
+      skipWhitespace();
+      if (_position < _text.length() && _text.charAt(_position) == '(') {
+        _position++;
+        return parseCall(name);
+      }
+      if (name.equalsIgnoreCase("TRUE") || name.equalsIgnoreCase("FALSE")) {
+        return constant(XLBoolean.from(Boolean.parseBoolean(name)));
+      }
+      final String from = toCellReference(name);
+      if (_position < _text.length() && _text.charAt(_position) == ':') {
+        _position++;
+        skipWhitespace();
+        return range(from, toCellReference(parseName()));
+      }
+      return reference(from);
+    }
+
+    private Expression parseCall(final String name) {
+      final FunctionEntry[] entries = _processor.getEntries(name);
+      for (final FunctionEntry entry : entries) {
+        final String signature = entry._functionSignature;
+        // a macro-sheet equivalent function is treated as volatile, as MockExcelFunctionEntryAccumulator does
+        _threadSafe &= signature.endsWith("$");
+        _volatile |= signature.endsWith("!") || signature.endsWith("#");
+      }
+      final List<Expression> args = new ArrayList<>();
+      skipWhitespace();
+      if (_position < _text.length() && _text.charAt(_position) == ')') {
+        _position++;
+      } else {
+        while (true) {
+          skipWhitespace();
+          if (_position < _text.length() && (_text.charAt(_position) == ',' || _text.charAt(_position) == ')')) {
+            args.add(constant(XLMissing.INSTANCE));
+          } else {
+            args.add(parseExpression());
+          }
+          skipWhitespace();
+          if (_position == _text.length()) {
+            throw error("Expected ')'");
+          }
+          final char c = _text.charAt(_position++);
+          if (c == ')') {
+            break;
+          }
+          if (c != ',') {
+            throw error("Expected ',' or ')'");
+          }
+        }
+      }
+      final MockFunctionProcessor processor = _processor;
+      final Expression[] argExpressions = args.toArray(new Expression[args.size()]);
+      return new Expression() {
+        @Override
+        public XLValue evaluate() {
+          final XLValue[] values = new XLValue[argExpressions.length];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = argExpressions[i].evaluate();
+          }
+          return processor.invoke(name, entries, values);
+        }
+      };
+    }
+
+    private String parseString() {
+      final StringBuilder sb = new StringBuilder();
+      _position++;
+      while (true) {
+        if (_position == _text.length()) {
+          throw error("Unterminated string");
+        }
+        final char c = _text.charAt(_position++);
+        if (c == '"') {
+          // a doubled quote is a quote
+          if (_position < _text.length() && _text.charAt(_position) == '"') {
+            sb.append('"');
+            _position++;
+          } else {
+            return sb.toString();
+          }
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+
+    private XLNumber parseNumber() {
+      final int start = _position;
+      _position++;
+      while (_position < _text.length()) {
+        final char c = _text.charAt(_position);
+        if (c >= '0' && c <= '9' || c == '.' || c == 'E' || c == 'e' || (c == '-' || c == '+') && isExponent(_position - 1)) {
+          _position++;
+        } else {
+          break;
+        }
+      }
+      try {
+        return XLNumber.of(Double.parseDouble(_text.substring(start, _position)));
+      } catch (final NumberFormatException e) {
+        throw error("Invalid number");
+      }
+    }
+
+    private boolean isExponent(final int position) {
+      final char c = _text.charAt(position);
+      return c == 'E' || c == 'e';
+    }
+
+    private String parseName() {
+      final int start = _position;
+      while (_position < _text.length()) {
+        final char c = _text.charAt(_position);
+        if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$' || c == '-' && _position > start) {
+          _position++;
+        } else {
+          break;
+        }
+      }
+      return _text.substring(start, _position);
+    }
+
+    private String toCellReference(final String name) {
+      final String reference = name.replace("$", "").toUpperCase();
+      if (toRowColumn(reference) == null) {
+        throw error("Unknown name " + name);
+      }
+      return reference;
+    }
+
+    private Expression reference(final String reference) {
+      _references.add(reference);
+      final CellResolver cells = _cells;
+      return new Expression() {
+        @Override
+        public XLValue evaluate() {
+          return cells.getValue(reference);
+        }
+      };
+    }
+
+    private Expression range(final String from, final String to) {
+      final int[] start = toRowColumn(from);
+      final int[] end = toRowColumn(to);
+      final int rows = Math.abs(end[0] - start[0]) + 1;
+      final int columns = Math.abs(end[1] - start[1]) + 1;
+      final String[][] references = new String[rows][columns];
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < columns; j++) {
+          references[i][j] = toReference(Math.min(start[0], end[0]) + i, Math.min(start[1], end[1]) + j);
+          _references.add(references[i][j]);
+        }
+      }
+      final CellResolver cells = _cells;
+      return new Expression() {
+        @Override
+        public XLValue evaluate() {
+          final XLValue[][] values = new XLValue[rows][columns];
+          for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+              values[i][j] = cells.getValue(references[i][j]);
+            }
+          }
+          return XLArray.of(values);
+        }
+      };
+    }
+
+    private static Expression constant(final XLValue value) {
+      return new Expression() {
+        @Override
+        public XLValue evaluate() {
+          return value;
+        }
+      };
+    }
+
+    private void skipWhitespace() {
+      while (_position < _text.length() && Character.isWhitespace(_text.charAt(_position))) {
+        _position++;
+      }
+    }
+
+    private XL4JRuntimeException error(final String message) {
+      return new XL4JRuntimeException(message + " at position " + _position + " in formula " + _text);
+    }
+  }
+}
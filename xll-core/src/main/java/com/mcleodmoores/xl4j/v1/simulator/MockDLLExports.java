@@ -3,6 +3,7 @@
  */
 package com.mcleodmoores.xl4j.v1.simulator;
 
+import com.mcleodmoores.xl4j.v1.api.core.BatchExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 
@@ -278,4 +279,15 @@ public class MockDLLExports {
   public XLValue UDF(final int block, final XLValue... args) {
     return _callHandler.invoke(block, args);
   }
+
+  public XLValue[] UDF_BATCH(final int block, final XLValue[][] args) {
+    if (_callHandler instanceof BatchExcelFunctionCallHandler) {
+      return ((BatchExcelFunctionCallHandler) _callHandler).invokeBatch(block, args);
+    }
+    final XLValue[] results = new XLValue[args.length];
+    for (int i = 0; i < args.length; i++) {
+      results[i] = _callHandler.invoke(block, args[i]);
+    }
+    return results;
+  }
 }
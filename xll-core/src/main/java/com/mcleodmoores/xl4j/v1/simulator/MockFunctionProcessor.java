@@ -5,22 +5,29 @@ package com.mcleodmoores.xl4j.v1.simulator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mcleodmoores.xl4j.v1.api.core.BatchExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.core.Excel;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.values.XLError;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.AsyncExecutor;
+import com.mcleodmoores.xl4j.v1.core.AsyncExecutor.Completion;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator;
 import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator.FunctionEntry;
 
 /**
- * A mock function processor that allows Excel functions to be tested in Java.
+ * A mock function processor that allows Excel functions to be tested in Java. Functions are looked up by their worksheet name in an
+ * index that is built once, when the processor is created.
  */
 public final class MockFunctionProcessor {
   /** The logger */
@@ -38,7 +45,8 @@ public final class MockFunctionProcessor {
   }
 
   private final Excel _excel = ExcelFactory.getInstance();
-  private final FunctionEntry[] _entries;
+  /** The entries for each worksheet name, in registration order */
+  private final Map<String, FunctionEntry[]> _entries = new HashMap<>();
   private final ExcelFunctionCallHandler _excelCallHandler;
 
   /**
@@ -48,7 +56,18 @@ public final class MockFunctionProcessor {
     _excel.getFunctionRegistry().registerFunctions(_excel.getExcelCallback());
     final NativeExcelFunctionEntryAccumulator excelFunctionRegistry = (NativeExcelFunctionEntryAccumulator) _excel.getExcelCallback()
         .getLowLevelExcelCallback();
-    _entries = excelFunctionRegistry.getEntries();
+    for (final FunctionEntry entry : excelFunctionRegistry.getEntries()) {
+      final FunctionEntry[] existing = _entries.get(entry._functionWorksheetName);
+      final FunctionEntry[] entries;
+      if (existing == null) {
+        entries = new FunctionEntry[] {entry};
+      } else {
+        // might have more than one function called the same thing
+        entries = Arrays.copyOf(existing, existing.length + 1);
+        entries[existing.length] = entry;
+      }
+      _entries.put(entry._functionWorksheetName, entries);
+    }
     _excelCallHandler = _excel.getExcelCallHandler();
   }
 
@@ -62,29 +81,34 @@ public final class MockFunctionProcessor {
    * @return the result
    */
   public XLValue invoke(final String functionName, final XLValue... args) {
-    final List<Integer> exportNumbers = new ArrayList<>();
-    // might have more than one function called the same thing
-    for (final FunctionEntry entry : _entries) {
-      if (entry._functionWorksheetName.equals(functionName)) {
-        exportNumbers.add(entry._exportNumber);
-      }
-    }
-    if (exportNumbers.isEmpty()) {
-      throw new XL4JRuntimeException("Could not find function called " + functionName);
-    }
+    return invoke(functionName, getEntries(functionName), args);
+  }
+
+  /**
+   * Invoke a function that has already been looked up.
+   *
+   * @param functionName
+   *          the name of the function
+   * @param entries
+   *          the entries for the functions with this name
+   * @param args
+   *          the arguments
+   * @return the result
+   */
+  XLValue invoke(final String functionName, final FunctionEntry[] entries, final XLValue... args) {
     final Object[] newArgs = new Object[args.length];
     System.arraycopy(args, 0, newArgs, 0, args.length);
-    if (exportNumbers.size() == 1) { // old behaviour
+    if (entries.length == 1) { // old behaviour
       try {
-        return _excelCallHandler.invoke(exportNumbers.get(0), args);
+        return _excelCallHandler.invoke(entries[0]._exportNumber, args);
       } catch (IllegalArgumentException | ClassCastException e) {
         throw new XL4JRuntimeException("Problem invoking function " + functionName + " with args " + Arrays.toString(newArgs), e);
       }
     }
     XLValue lastError = null;
-    for (final int exportNumber : exportNumbers) {
+    for (final FunctionEntry entry : entries) {
       try {
-        final XLValue result = _excelCallHandler.invoke(exportNumber, args);
+        final XLValue result = _excelCallHandler.invoke(entry._exportNumber, args);
         if (result instanceof XLError) {
           lastError = result;
           LOGGER.info("Error returned by function {} with args {}", functionName, Arrays.toString(newArgs));
@@ -103,4 +127,78 @@ public final class MockFunctionProcessor {
     return lastError;
   }
 
+  /**
+   * Invoke a function once for each row of arguments in a single call to the call handler, as the native layer does for a block of
+   * cells that call the same function. If there is more than one function with this name, or the call handler cannot invoke a
+   * batch, each row is invoked separately.
+   *
+   * @param functionName
+   *          the name of the function
+   * @param args
+   *          the arguments, one row per call
+   * @return the results, one per row
+   */
+  public XLValue[] invokeBatch(final String functionName, final XLValue[][] args) {
+    final FunctionEntry[] entries = getEntries(functionName);
+    if (entries.length > 1 || !(_excelCallHandler instanceof BatchExcelFunctionCallHandler)) {
+      final XLValue[] results = new XLValue[args.length];
+      for (int i = 0; i < args.length; i++) {
+        results[i] = invoke(functionName, entries, args[i]);
+      }
+      return results;
+    }
+    return ((BatchExcelFunctionCallHandler) _excelCallHandler).invokeBatch(entries[0]._exportNumber, args);
+  }
+
+  /**
+   * Invoke a function on the simulator's asynchronous executor, as the native layer does for long-running and asynchronous
+   * functions. The result is put on the completion queue, which can be drained with {@link #drainCompletions()}.
+   *
+   * @param caller
+   *          the caller, e.g. a cell reference. An earlier call from the same caller that has not completed is cancelled
+   * @param functionName
+   *          the name of the function
+   * @param args
+   *          the arguments
+   * @return the result of the call
+   */
+  public Future<XLValue> invokeAsync(final Object caller, final String functionName, final XLValue... args) {
+    return getAsyncExecutor().submit(caller, getEntries(functionName)[0]._exportNumber, args);
+  }
+
+  /**
+   * Removes all completed asynchronous calls from the completion queue.
+   *
+   * @return the completed calls, in the order that they completed
+   */
+  public List<Completion> drainCompletions() {
+    final List<Completion> completions = new ArrayList<>();
+    getAsyncExecutor().drainTo(completions);
+    return completions;
+  }
+
+  /**
+   * Gets the entries for the functions with a worksheet name.
+   *
+   * @param functionName
+   *          the name of the function
+   * @return the entries, in registration order
+   * @throws XL4JRuntimeException
+   *           if there is no function with this name
+   */
+  FunctionEntry[] getEntries(final String functionName) {
+    final FunctionEntry[] entries = _entries.get(functionName);
+    if (entries == null) {
+      throw new XL4JRuntimeException("Could not find function called " + functionName);
+    }
+    return entries;
+  }
+
+  private AsyncExecutor getAsyncExecutor() {
+    if (_excel instanceof SimulatedExcel) {
+      return ((SimulatedExcel) _excel).getAsyncExecutor();
+    }
+    throw new XL4JRuntimeException("Asynchronous calls are only supported by " + SimulatedExcel.class.getSimpleName());
+  }
+
 }
\ No newline at end of file
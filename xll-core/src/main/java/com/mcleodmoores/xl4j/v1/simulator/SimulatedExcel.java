@@ -5,31 +5,38 @@ package com.mcleodmoores.xl4j.v1.simulator;
 
 import org.reflections.Reflections;
 
-import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ClassResolvingExcel;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelCallback;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
 import com.mcleodmoores.xl4j.v1.api.core.Heap;
 import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.LineageHeap;
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
-import com.mcleodmoores.xl4j.v1.core.ConcurrentHeap;
+import com.mcleodmoores.xl4j.v1.core.AsyncExecutor;
+import com.mcleodmoores.xl4j.v1.core.CallRecorder;
 import com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback;
 import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.core.ReflectiveFunctionRegistry;
 import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
 import com.mcleodmoores.xl4j.v1.typeconvert.CachingTypeConverterRegistry;
 import com.mcleodmoores.xl4j.v1.typeconvert.ScanningTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.util.ClassResolver;
+import com.mcleodmoores.xl4j.v1.util.HeapUtils;
+import com.mcleodmoores.xl4j.v1.util.InvokerFactoryUtils;
 import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
 import com.mcleodmoores.xl4j.v1.xll.LowLevelExcelCallback;
 
 /**
  * A mock implementation of the Excel interface for use in testing.
  */
-public class SimulatedExcel implements Excel {
+public class SimulatedExcel implements ClassResolvingExcel {
   private final Heap _heap;
   private final ReflectiveFunctionRegistry _functionRegistry;
   private final ExcelCallback _excelCallback;
   private final ExcelFunctionCallHandler _excelCallHandler;
+  private final AsyncExecutor _asyncExecutor;
+  private final ClassResolver _classResolver;
   private final ReflectiveInvokerFactory _invokerFactory;
   private final TypeConverterRegistry _typeConverterRegistry;
   private final MockExcelFunctionEntryAccumulator _rawCallback;
@@ -38,12 +45,20 @@ public class SimulatedExcel implements Excel {
    * Create an instance of the Excel interface suitable for testing.
    */
   public SimulatedExcel() {
-    _heap = new ConcurrentHeap();
+    _heap = HeapUtils.getHeap();
     Reflections reflections = ReflectionsUtils.getReflections();
     _typeConverterRegistry = new CachingTypeConverterRegistry(new ScanningTypeConverterRegistry(this, reflections));
-    _invokerFactory = new ReflectiveInvokerFactory(this, _typeConverterRegistry);
+    _invokerFactory = InvokerFactoryUtils.getInvokerFactory(this, _typeConverterRegistry);
     _functionRegistry = new ReflectiveFunctionRegistry(reflections,  _invokerFactory);
-    _excelCallHandler = new DefaultExcelFunctionCallHandler(_functionRegistry, _heap);
+    final DefaultExcelFunctionCallHandler excelCallHandler = new DefaultExcelFunctionCallHandler(_functionRegistry, _heap);
+    excelCallHandler.setCallRecorder(CallRecorder.fromSystemProperty());
+    if (_heap instanceof LineageHeap) {
+      // invalidate the cached results that depend on objects when the heap collects them
+      ((LineageHeap) _heap).addLineageListener(excelCallHandler);
+    }
+    _excelCallHandler = excelCallHandler;
+    _asyncExecutor = new AsyncExecutor(_functionRegistry, _excelCallHandler);
+    _classResolver = new ClassResolver(reflections);
     _rawCallback = new MockExcelFunctionEntryAccumulator();
     _excelCallback = new DefaultExcelCallback(_rawCallback);
   }
@@ -73,6 +88,15 @@ public class SimulatedExcel implements Excel {
     return _excelCallHandler;
   }
 
+  /**
+   * Gets the executor used to run long-running and asynchronous functions. Tests drain completed calls from it.
+   *
+   * @return the asynchronous executor
+   */
+  public AsyncExecutor getAsyncExecutor() {
+    return _asyncExecutor;
+  }
+
   @Override
   public TypeConverterRegistry getTypeConverterRegistry() {
     return _typeConverterRegistry;
@@ -83,4 +107,8 @@ public class SimulatedExcel implements Excel {
     return _rawCallback;
   }
 
-}
\ No newline at end of file
+  @Override
+  public ClassResolver getClassResolver() {
+    return _classResolver;
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.Topic;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.TopicSource;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.Update;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.UpdateCallback;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * Plays the part of Excel and the real-time data server for a {@link TopicEngine}, so that streaming functions can be tested
+ * without Excel.
+ * <p>
+ * Cells subscribe to the topic for a function and its arguments, and subscribing a cell again replaces its earlier subscription,
+ * as happens when Excel recalculates the cell with new arguments. The function must be registered. Each call to
+ * {@link #refresh()} makes a batch in the engine, counts it as one notification to Excel and returns the number of topics that
+ * changed; the value of a cell is then the last value delivered for its topic.
+ * <p>
+ * By default, the topic source calls the function once when a topic is first subscribed to and publishes the result, which is
+ * what the native real-time data server does for functions marked as <code>isAutoRTDAsynchronous</code>. Streaming sources are
+ * given to the other constructor.
+ */
+public final class SimulatedRtdServer {
+  private final TopicEngine _engine;
+  private final MockFunctionProcessor _processor = MockFunctionProcessor.getInstance();
+  /** The topic that each cell is subscribed to */
+  private final Map<Object, Topic> _cells = new ConcurrentHashMap<>();
+  private final AtomicLong _notifications = new AtomicLong();
+
+  /**
+   * Creates a server whose topics are calculated once by calling their function.
+   */
+  public SimulatedRtdServer() {
+    _engine = new TopicEngine(createCallback(), new TopicSource() {
+
+      @Override
+      public void connect(final Topic topic) {
+        _engine.publish(topic, _processor.invoke(topic.getFunctionName(), topic.getArgs().clone()));
+      }
+
+      @Override
+      public void disconnect(final Topic topic) {
+      }
+    });
+  }
+
+  /**
+   * Creates a server.
+   *
+   * @param source
+   *          the source that publishes values to topics while they have subscriptions, not null
+   */
+  public SimulatedRtdServer(final TopicSource source) {
+    _engine = new TopicEngine(createCallback(), ArgumentChecker.notNull(source, "source"));
+  }
+
+  private UpdateCallback createCallback() {
+    return new UpdateCallback() {
+      @Override
+      public void topicsUpdated(final List<Update> updates) {
+        _notifications.incrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * @return the topic engine, e.g. for setting throttle intervals or publishing values
+   */
+  public TopicEngine getTopicEngine() {
+    return _engine;
+  }
+
+  /**
+   * Subscribes a cell to the topic for a function and arguments, replacing any earlier subscription for the cell.
+   *
+   * @param cell
+   *          the cell, not null
+   * @param functionName
+   *          the name of the function, not null
+   * @param args
+   *          the arguments, not null
+   * @return the topic
+   */
+  public Topic subscribe(final Object cell, final String functionName, final XLValue... args) {
+    ArgumentChecker.notNull(cell, "cell");
+    _processor.getEntries(functionName);
+    final Topic topic = _engine.subscribe(functionName, args);
+    final Topic previous = _cells.put(cell, topic);
+    if (previous != null) {
+      _engine.unsubscribe(previous.getId());
+    }
+    return topic;
+  }
+
+  /**
+   * Removes the subscription for a cell, as happens when the formula is deleted.
+   *
+   * @param cell
+   *          the cell, not null
+   * @return true if the cell was subscribed
+   */
+  public boolean unsubscribe(final Object cell) {
+    ArgumentChecker.notNull(cell, "cell");
+    final Topic topic = _cells.remove(cell);
+    if (topic == null) {
+      return false;
+    }
+    _engine.unsubscribe(topic.getId());
+    return true;
+  }
+
+  /**
+   * Delivers the topics that have changed.
+   *
+   * @return the number of topics that changed
+   */
+  public int refresh() {
+    return _engine.flush();
+  }
+
+  /**
+   * Delivers the topics that have changed at a given time, so that throttling can be tested without waiting.
+   *
+   * @param nanos
+   *          the time, on the same scale as {@link System#nanoTime()}
+   * @return the number of topics that changed
+   */
+  public int refresh(final long nanos) {
+    return _engine.flush(nanos);
+  }
+
+  /**
+   * Gets the value of a cell.
+   *
+   * @param cell
+   *          the cell, not null
+   * @return the last value delivered for the cell's topic, or null if the cell is not subscribed or nothing has been delivered
+   */
+  public XLValue getValue(final Object cell) {
+    ArgumentChecker.notNull(cell, "cell");
+    final Topic topic = _cells.get(cell);
+    return topic == null ? null : topic.getValue();
+  }
+
+  /**
+   * @return the number of times that Excel would have been told that topics had changed
+   */
+  public long getNotifications() {
+    return _notifications.get();
+  }
+}
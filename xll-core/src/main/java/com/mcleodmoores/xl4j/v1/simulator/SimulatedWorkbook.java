@@ -0,0 +1,394 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * A headless grid of cells that is recalculated the way Excel recalculates a workbook, for load tests and scaling measurements
+ * that run without Excel. A cell holds either a value or a {@link Formula} that calls registered functions with values and
+ * references to other cells, e.g. <code>=JMethod(A1, "size")</code>.
+ * <p>
+ * The references between cells form a dependency graph, and a circular reference is rejected when the formula is set. Changing a
+ * cell marks it and everything that depends on it as dirty. {@link #recalculate()} calculates the dirty cells, and cells with
+ * volatile or macro-sheet equivalent functions and their dependents, each once and after all of its precedents. As in Excel,
+ * cells whose functions are all thread-safe are calculated on a pool of threads, and the rest on the thread that called
+ * {@link #recalculate()}. Errors thrown by functions are returned as <code>#VALUE!</code>.
+ * <p>
+ * A workbook is not thread-safe: cells must not be changed while it is being recalculated.
+ */
+public class SimulatedWorkbook implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SimulatedWorkbook.class);
+  private static final AtomicInteger WORKBOOK_COUNT = new AtomicInteger();
+  private final MockFunctionProcessor _processor;
+  private final int _threads;
+  private final Map<String, Cell> _cells = new HashMap<>();
+  private final Formula.CellResolver _resolver = new Formula.CellResolver() {
+    @Override
+    public XLValue getValue(final String reference) {
+      // formulas only refer to normalised references, and the cells that they refer to are created when the formula is set
+      return _cells.get(reference)._value;
+    }
+  };
+  /** Created on the first recalculation that has thread-safe cells */
+  private ExecutorService _executor;
+
+  /**
+   * Creates a workbook that calculates thread-safe cells on one thread per processor.
+   */
+  public SimulatedWorkbook() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a workbook.
+   *
+   * @param threads
+   *          the number of threads used to calculate thread-safe cells, or zero to calculate every cell on the calling thread
+   */
+  public SimulatedWorkbook(final int threads) {
+    ArgumentChecker.notNegative(threads, "threads");
+    _processor = MockFunctionProcessor.getInstance();
+    _threads = threads;
+  }
+
+  /**
+   * Sets a cell to a value.
+   *
+   * @param reference
+   *          the cell reference, e.g. <code>A1</code>, not null
+   * @param value
+   *          the value, not null
+   */
+  public void setValue(final String reference, final XLValue value) {
+    ArgumentChecker.notNull(value, "value");
+    final Cell cell = getOrCreate(normalise(reference));
+    unlink(cell);
+    cell._formula = null;
+    cell._value = value;
+    markDirty(cell);
+  }
+
+  /**
+   * Sets a cell to a formula. The cell is calculated at the next recalculation.
+   *
+   * @param reference
+   *          the cell reference, e.g. <code>A1</code>, not null
+   * @param formula
+   *          the formula, e.g. <code>=JConstruct("java.util.ArrayList")</code>, not null
+   * @throws XL4JRuntimeException
+   *           if the formula cannot be parsed or refers to the cell, directly or through other cells
+   */
+  public void setFormula(final String reference, final String formula) {
+    ArgumentChecker.notNull(formula, "formula");
+    final Cell cell = getOrCreate(normalise(reference));
+    final Formula parsed = Formula.parse(formula, _processor, _resolver);
+    final List<Cell> precedents = new ArrayList<>();
+    for (final String precedent : parsed.getReferences()) {
+      precedents.add(getOrCreate(precedent));
+    }
+    for (final Cell precedent : precedents) {
+      if (precedent == cell || dependsOn(precedent, cell)) {
+        throw new XL4JRuntimeException("Circular reference to " + cell._reference + " in formula " + formula);
+      }
+    }
+    unlink(cell);
+    cell._formula = parsed;
+    cell._precedents = precedents;
+    for (final Cell precedent : precedents) {
+      precedent._dependents.add(cell);
+    }
+    markDirty(cell);
+  }
+
+  /**
+   * Gets the value of a cell, which is the last calculated value if the cell has a formula.
+   *
+   * @param reference
+   *          the cell reference, not null
+   * @return the value, or nil if the cell is empty
+   */
+  public XLValue getValue(final String reference) {
+    final Cell cell = _cells.get(normalise(reference));
+    return cell == null ? XLNil.INSTANCE : cell._value;
+  }
+
+  /**
+   * Gets the formula in a cell.
+   *
+   * @param reference
+   *          the cell reference, not null
+   * @return the formula, or null if the cell does not have one
+   */
+  public String getFormula(final String reference) {
+    final Cell cell = _cells.get(normalise(reference));
+    return cell == null || cell._formula == null ? null : cell._formula.getText();
+  }
+
+  /**
+   * @return the number of threads used to calculate thread-safe cells
+   */
+  public int getThreads() {
+    return _threads;
+  }
+
+  /**
+   * Calculates the dirty and volatile cells and the cells that depend on them.
+   *
+   * @return the number of cells calculated
+   */
+  public int recalculate() {
+    final Set<Cell> roots = new LinkedHashSet<>();
+    for (final Cell cell : _cells.values()) {
+      if (cell._formula != null && (cell._dirty || cell._formula.isVolatile())) {
+        roots.add(cell);
+      }
+    }
+    return calculate(roots);
+  }
+
+  /**
+   * Calculates every cell that has a formula.
+   *
+   * @return the number of cells calculated
+   */
+  public int recalculateAll() {
+    final Set<Cell> roots = new LinkedHashSet<>();
+    for (final Cell cell : _cells.values()) {
+      if (cell._formula != null) {
+        roots.add(cell);
+      }
+    }
+    return calculate(roots);
+  }
+
+  /**
+   * Stops the threads used to calculate thread-safe cells.
+   */
+  @Override
+  public void close() {
+    if (_executor != null) {
+      _executor.shutdown();
+      _executor = null;
+    }
+  }
+
+  /**
+   * Calculates cells and everything that depends on them, in dependency order. Thread-safe cells are submitted to the pool as
+   * soon as their precedents have been calculated. The calling thread calculates the other cells and does all of the
+   * bookkeeping, so the counts of uncalculated precedents are only changed by one thread.
+   *
+   * @param roots
+   *          the cells to calculate
+   * @return the number of cells calculated
+   */
+  private int calculate(final Set<Cell> roots) {
+    // find everything downstream of the roots and count the precedents of each that are also being calculated
+    final Set<Cell> pending = new LinkedHashSet<>();
+    final Deque<Cell> stack = new ArrayDeque<>(roots);
+    while (!stack.isEmpty()) {
+      final Cell cell = stack.pop();
+      if (pending.add(cell)) {
+        cell._remaining = 0;
+        stack.addAll(cell._dependents);
+      }
+    }
+    for (final Cell cell : pending) {
+      for (final Cell dependent : cell._dependents) {
+        dependent._remaining++;
+      }
+    }
+    final long start = System.nanoTime();
+    final Deque<Cell> mainThread = new ArrayDeque<>();
+    final BlockingQueue<Cell> completed = new LinkedBlockingQueue<>();
+    int running = 0;
+    for (final Cell cell : pending) {
+      if (cell._remaining == 0) {
+        running += schedule(cell, mainThread, completed);
+      }
+    }
+    int calculated = 0;
+    while (calculated < pending.size()) {
+      final Cell cell;
+      if (!mainThread.isEmpty()) {
+        cell = mainThread.poll();
+        cell.calculate();
+      } else if (running > 0) {
+        try {
+          cell = completed.take();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new XL4JRuntimeException("Interrupted during recalculation", e);
+        }
+        running--;
+      } else {
+        throw new XL4JRuntimeException("Recalculation stopped with " + (pending.size() - calculated) + " cells uncalculated");
+      }
+      calculated++;
+      for (final Cell dependent : cell._dependents) {
+        if (--dependent._remaining == 0) {
+          running += schedule(dependent, mainThread, completed);
+        }
+      }
+    }
+    LOGGER.debug("Calculated {} cells in {}us", calculated, (System.nanoTime() - start) / 1000);
+    return calculated;
+  }
+
+  /**
+   * Queues a cell whose precedents have all been calculated.
+   *
+   * @return one if the cell was submitted to the pool
+   */
+  private int schedule(final Cell cell, final Deque<Cell> mainThread, final BlockingQueue<Cell> completed) {
+    if (!cell._formula.isThreadSafe() || _threads == 0) {
+      mainThread.add(cell);
+      return 0;
+    }
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          cell.calculate();
+        } finally {
+          completed.add(cell);
+        }
+      }
+    });
+    return 1;
+  }
+
+  private ExecutorService getExecutor() {
+    if (_executor == null) {
+      final int workbook = WORKBOOK_COUNT.incrementAndGet();
+      _executor = Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+          final Thread thread = new Thread(runnable, "xl4j-workbook-" + workbook + "-" + _count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return _executor;
+  }
+
+  private Cell getOrCreate(final String reference) {
+    Cell cell = _cells.get(reference);
+    if (cell == null) {
+      cell = new Cell(reference);
+      _cells.put(reference, cell);
+    }
+    return cell;
+  }
+
+  /**
+   * Removes the links from a cell to its precedents.
+   */
+  private static void unlink(final Cell cell) {
+    for (final Cell precedent : cell._precedents) {
+      precedent._dependents.remove(cell);
+    }
+    cell._precedents = new ArrayList<>();
+  }
+
+  /**
+   * Tests whether a cell depends on another, directly or indirectly.
+   */
+  private static boolean dependsOn(final Cell cell, final Cell precedent) {
+    final Set<Cell> visited = new LinkedHashSet<>();
+    final Deque<Cell> stack = new ArrayDeque<>();
+    stack.push(precedent);
+    while (!stack.isEmpty()) {
+      final Cell next = stack.pop();
+      if (next == cell) {
+        return true;
+      }
+      if (visited.add(next)) {
+        stack.addAll(next._dependents);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Marks a cell that has changed and everything that depends on it as dirty. Everything that depends on a dirty cell is
+   * already dirty, so the walk stops at dirty cells.
+   */
+  private static void markDirty(final Cell cell) {
+    cell._dirty = cell._formula != null;
+    final Deque<Cell> stack = new ArrayDeque<>(cell._dependents);
+    while (!stack.isEmpty()) {
+      final Cell next = stack.pop();
+      if (!next._dirty) {
+        next._dirty = true;
+        stack.addAll(next._dependents);
+      }
+    }
+  }
+
+  private static String normalise(final String reference) {
+    ArgumentChecker.notNull(reference, "reference");
+    final String normalised = reference.replace("$", "").toUpperCase();
+    if (Formula.toRowColumn(normalised) == null) {
+      throw new XL4JRuntimeException("Invalid cell reference " + reference);
+    }
+    return normalised;
+  }
+
+  /**
+   * A cell and its links to other cells.
+   */
+  private static final class Cell {
+    private final String _reference;
+    private final Set<Cell> _dependents = new LinkedHashSet<>();
+    private List<Cell> _precedents = new ArrayList<>();
+    /** Null if the cell holds a value */
+    private Formula _formula;
+    /** Written by the thread that calculated the cell and read by the threads that calculate its dependents */
+    private volatile XLValue _value = XLNil.INSTANCE;
+    private boolean _dirty;
+    /** The number of precedents that have not been calculated in the current recalculation */
+    private int _remaining;
+
+    Cell(final String reference) {
+      _reference = reference;
+    }
+
+    void calculate() {
+      try {
+        _value = _formula.evaluate();
+      } catch (final RuntimeException e) {
+        LOGGER.info("Error calculating {}: {}", _reference, e.getMessage());
+        _value = XLError.Value;
+      }
+      _dirty = false;
+    }
+  }
+}
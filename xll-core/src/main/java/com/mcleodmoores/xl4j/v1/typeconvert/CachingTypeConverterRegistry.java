@@ -59,12 +59,9 @@ public class CachingTypeConverterRegistry implements TypeConverterRegistry {
 
   @Override
   public TypeConverter findConverter(final ExcelToJavaTypeMapping requiredMapping) {
-    if (_excelToJavaCache.containsKey(requiredMapping)) {
-      final TypeConverter converter = _excelToJavaCache.get(requiredMapping);
-      if (converter.equals(NULL_CONVERTER)) {
-        return null;
-      }
-      return converter;
+    final TypeConverter cached = _excelToJavaCache.get(requiredMapping);
+    if (cached != null) {
+      return cached == NULL_CONVERTER ? null : cached;
     }
     final TypeConverter converter = _underlying.findConverter(requiredMapping);
     if (converter == null) {
@@ -77,12 +74,9 @@ public class CachingTypeConverterRegistry implements TypeConverterRegistry {
 
   @Override
   public TypeConverter findConverter(final Type requiredJava) {
-    if (_javaToExcelCache.containsKey(requiredJava)) {
-      final TypeConverter converter = _javaToExcelCache.get(requiredJava);
-      if (converter.equals(NULL_CONVERTER)) {
-        return null;
-      }
-      return converter;
+    final TypeConverter cached = _javaToExcelCache.get(requiredJava);
+    if (cached != null) {
+      return cached == NULL_CONVERTER ? null : cached;
     }
     final TypeConverter converter = _underlying.findConverter(requiredJava);
     if (converter == null) {
@@ -3,14 +3,22 @@
  */
 package com.mcleodmoores.xl4j.v1.typeconvert;
 
+import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.reflections.Reflections;
@@ -26,12 +34,28 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * Type resolver.
+ * <p>
+ * When the converters have been found, they are indexed by the raw Java class that they convert to and from, and a
+ * dispatch table keyed by (Excel class, raw Java class) is seeded with the exact mapping of each converter. Lookups for
+ * other types walk the Java type hierarchy through the index to find the converter that a scan in priority order would
+ * have returned, and the result is added to the dispatch table so that subsequent lookups are a pair of hash lookups.
  */
 public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
   private static final Logger LOGGER = LoggerFactory.getLogger(ScanningTypeConverterRegistry.class);
+  private static final RankedConverter NO_CONVERTER = new RankedConverter(Integer.MAX_VALUE, null);
 
   // we want highest priority keys first, so we use a reversing comparator.
   private final ConcurrentSkipListMap<Integer, List<TypeConverter>> _converters = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+  /** Converters indexed by the raw Java class of their Excel to Java mapping, in priority order */
+  private final Map<Class<?>, List<RankedConverter>> _excelToJavaIndex = new HashMap<>();
+  /** Converters indexed by the raw Java class of their Java to Excel mapping, in priority order */
+  private final Map<Class<?>, List<RankedConverter>> _javaToExcelIndex = new HashMap<>();
+  /** Excel to Java converters keyed by Excel class and then raw Java class */
+  private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, RankedConverter>> _excelToJavaDispatch = new ConcurrentHashMap<>();
+  /** Excel to Java converters for parameterized types, which can also match on generic interfaces */
+  private final ConcurrentMap<ExcelToJavaTypeMapping, RankedConverter> _genericExcelToJavaDispatch = new ConcurrentHashMap<>();
+  /** Java to Excel converters keyed by raw Java class */
+  private final ConcurrentMap<Class<?>, RankedConverter> _javaToExcelDispatch = new ConcurrentHashMap<>();
 
   /**
    * Construct a TypeResolver.
@@ -43,6 +67,7 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
    */
   public ScanningTypeConverterRegistry(final Excel excel, final Reflections reflections) {
     scanAndCreateTypeConverters(reflections, excel);
+    buildDispatchTables();
   }
 
   /**
@@ -57,6 +82,7 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
    */
   public ScanningTypeConverterRegistry(final Excel excel, final Reflections reflections, final String packageName) {
     scanAndCreateTypeConverters(reflections, excel);
+    buildDispatchTables();
   }
 
   @SuppressWarnings("rawtypes")
@@ -98,7 +124,35 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
   }
 
   /**
-   * Find a type converter to perform the required conversion, searching linearly in priority order and returning the first match.
+   * Indexes the converters by raw Java class and seeds the dispatch tables with the exact mapping of each converter.
+   */
+  private void buildDispatchTables() {
+    final List<TypeConverter> scanOrder = getConvertersInPriorityOrder();
+    for (int rank = 0; rank < scanOrder.size(); rank++) {
+      final TypeConverter typeConverter = scanOrder.get(rank);
+      final RankedConverter rankedConverter = new RankedConverter(rank, typeConverter);
+      addToIndex(_excelToJavaIndex, typeConverter.getExcelToJavaTypeMapping().getJavaClass(), rankedConverter);
+      addToIndex(_javaToExcelIndex, typeConverter.getJavaToExcelTypeMapping().getJavaClass(), rankedConverter);
+    }
+    for (final TypeConverter typeConverter : scanOrder) {
+      final ExcelToJavaTypeMapping excelToJava = typeConverter.getExcelToJavaTypeMapping();
+      getExcelToJavaDispatch(excelToJava.getExcelClass(), excelToJava.getJavaClass());
+      getJavaToExcelDispatch(typeConverter.getJavaToExcelTypeMapping().getJavaClass());
+    }
+  }
+
+  private static void addToIndex(final Map<Class<?>, List<RankedConverter>> index, final Class<?> javaClass,
+      final RankedConverter rankedConverter) {
+    List<RankedConverter> converters = index.get(javaClass);
+    if (converters == null) {
+      converters = new ArrayList<>();
+      index.put(javaClass, converters);
+    }
+    converters.add(rankedConverter);
+  }
+
+  /**
+   * Find a type converter to perform the required conversion, returning the first match in priority order.
    *
    * @param requiredMapping
    *          the required conversion
@@ -106,20 +160,20 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
    */
   @Override
   public TypeConverter findConverter(final ExcelToJavaTypeMapping requiredMapping) {
-    for (final int priority : _converters.keySet()) {
-      final List<TypeConverter> converters = _converters.get(priority);
-      for (final TypeConverter typeConverter : converters) {
-        if (typeConverter.getExcelToJavaTypeMapping().isAssignableFrom(requiredMapping)) {
-          return typeConverter;
-        }
+    if (requiredMapping.getJavaType() instanceof ParameterizedType) {
+      RankedConverter rankedConverter = _genericExcelToJavaDispatch.get(requiredMapping);
+      if (rankedConverter == null) {
+        rankedConverter = scanForConverter(requiredMapping);
+        _genericExcelToJavaDispatch.putIfAbsent(requiredMapping, rankedConverter);
       }
+      return rankedConverter.getConverter();
     }
-    return null;
+    return getExcelToJavaDispatch(requiredMapping.getExcelClass(), requiredMapping.getJavaClass()).getConverter();
   }
 
   /**
-   * Find a type converter to perform the required conversion, searching linearly in priority order. This method is used to find a converter
-   * from Java back into Excel, when you don't know the target Excel type. and returning the first match.
+   * Find a type converter to perform the required conversion, returning the first match in priority order. This method is
+   * used to find a converter from Java back into Excel, when you don't know the target Excel type.
    *
    * @param requiredJava
    *          the Java type required to convert from.
@@ -127,15 +181,129 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
    */
   @Override
   public TypeConverter findConverter(final Type requiredJava) {
-    for (final int priority : _converters.keySet()) {
-      final List<TypeConverter> converters = _converters.get(priority);
-      for (final TypeConverter typeConverter : converters) {
-        if (typeConverter.getJavaToExcelTypeMapping().getJavaClass().isAssignableFrom(XL4JReflectionUtils.reduceToClass(requiredJava))) {
-          return typeConverter;
+    final Class<?> requiredClass = requiredJava instanceof Class ? (Class<?>) requiredJava : XL4JReflectionUtils.reduceToClass(requiredJava);
+    return getJavaToExcelDispatch(requiredClass).getConverter();
+  }
+
+  private RankedConverter getExcelToJavaDispatch(final Class<?> excelClass, final Class<?> javaClass) {
+    ConcurrentMap<Class<?>, RankedConverter> byJavaClass = _excelToJavaDispatch.get(excelClass);
+    if (byJavaClass == null) {
+      final ConcurrentMap<Class<?>, RankedConverter> newByJavaClass = new ConcurrentHashMap<>();
+      byJavaClass = _excelToJavaDispatch.putIfAbsent(excelClass, newByJavaClass);
+      if (byJavaClass == null) {
+        byJavaClass = newByJavaClass;
+      }
+    }
+    RankedConverter rankedConverter = byJavaClass.get(javaClass);
+    if (rankedConverter == null) {
+      rankedConverter = NO_CONVERTER;
+      for (final Class<?> type : getSupertypes(javaClass)) {
+        final List<RankedConverter> converters = _excelToJavaIndex.get(type);
+        if (converters != null) {
+          for (final RankedConverter converter : converters) {
+            if (converter._rank >= rankedConverter._rank) {
+              break;
+            }
+            if (converter._converter.getExcelToJavaTypeMapping().getExcelClass().isAssignableFrom(excelClass)) {
+              rankedConverter = converter;
+              break;
+            }
+          }
+        }
+      }
+      byJavaClass.putIfAbsent(javaClass, rankedConverter);
+    }
+    return rankedConverter;
+  }
+
+  private RankedConverter getJavaToExcelDispatch(final Class<?> javaClass) {
+    RankedConverter rankedConverter = _javaToExcelDispatch.get(javaClass);
+    if (rankedConverter == null) {
+      rankedConverter = NO_CONVERTER;
+      for (final Class<?> type : getSupertypes(javaClass)) {
+        final List<RankedConverter> converters = _javaToExcelIndex.get(type);
+        if (converters != null && converters.get(0)._rank < rankedConverter._rank) {
+          rankedConverter = converters.get(0);
         }
       }
+      _javaToExcelDispatch.putIfAbsent(javaClass, rankedConverter);
     }
-    return null;
+    return rankedConverter;
+  }
+
+  /**
+   * Searches linearly in priority order for a converter, used for parameterized types that can match a converter through
+   * its generic interfaces.
+   *
+   * @param requiredMapping
+   *          the required conversion
+   * @return the converter, or {@link #NO_CONVERTER}
+   */
+  private RankedConverter scanForConverter(final ExcelToJavaTypeMapping requiredMapping) {
+    final List<TypeConverter> scanOrder = getConvertersInPriorityOrder();
+    for (int rank = 0; rank < scanOrder.size(); rank++) {
+      if (scanOrder.get(rank).getExcelToJavaTypeMapping().isAssignableFrom(requiredMapping)) {
+        return new RankedConverter(rank, scanOrder.get(rank));
+      }
+    }
+    return NO_CONVERTER;
+  }
+
+  /**
+   * Gets all of the types that a class can be assigned to, i.e. the class, its superclasses and all interfaces that
+   * it implements. For arrays, these are the arrays of each of the supertypes of the component type as well as
+   * <code>Object</code>, <code>Cloneable</code> and <code>Serializable</code>.
+   *
+   * @param type
+   *          the type
+   * @return the supertypes, including the type itself
+   */
+  private static Set<Class<?>> getSupertypes(final Class<?> type) {
+    final Set<Class<?>> supertypes = new LinkedHashSet<>();
+    if (type.isPrimitive()) {
+      supertypes.add(type);
+      return supertypes;
+    }
+    if (type.isArray()) {
+      final Class<?> componentType = type.getComponentType();
+      if (componentType.isPrimitive()) {
+        supertypes.add(type);
+      } else {
+        for (final Class<?> componentSupertype : getSupertypes(componentType)) {
+          supertypes.add(Array.newInstance(componentSupertype, 0).getClass());
+        }
+      }
+      supertypes.add(Object.class);
+      supertypes.add(Cloneable.class);
+      supertypes.add(Serializable.class);
+      return supertypes;
+    }
+    addClassAndInterfaces(type, supertypes);
+    supertypes.add(Object.class);
+    return supertypes;
+  }
+
+  private static void addClassAndInterfaces(final Class<?> type, final Set<Class<?>> supertypes) {
+    Class<?> current = type;
+    while (current != null) {
+      if (supertypes.add(current)) {
+        for (final Class<?> interfaceType : current.getInterfaces()) {
+          addClassAndInterfaces(interfaceType, supertypes);
+        }
+      }
+      current = current.getSuperclass();
+    }
+  }
+
+  /**
+   * @return the converters in the order that they are searched
+   */
+  /*package*/ List<TypeConverter> getConvertersInPriorityOrder() {
+    final List<TypeConverter> converters = new ArrayList<>();
+    for (final List<TypeConverter> priorityConverters : _converters.values()) {
+      converters.addAll(priorityConverters);
+    }
+    return converters;
   }
 
   /**
@@ -169,4 +337,21 @@ public class ScanningTypeConverterRegistry implements TypeConverterRegistry {
       }
     }
   }
+
+  /**
+   * A converter and its position in the priority order.
+   */
+  private static final class RankedConverter {
+    private final int _rank;
+    private final TypeConverter _converter;
+
+    RankedConverter(final int rank, final TypeConverter converter) {
+      _rank = rank;
+      _converter = converter;
+    }
+
+    TypeConverter getConverter() {
+      return _converter;
+    }
+  }
 }
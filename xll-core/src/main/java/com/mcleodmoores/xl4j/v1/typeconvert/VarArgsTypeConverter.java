@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert;
+
+import java.lang.reflect.Type;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+
+/**
+ * A type converter for arrays that can also convert a range of the arguments of a function directly into a Java array, which is
+ * used to bind the varargs parameter of a method or constructor. Without this, the arguments are copied into an
+ * {@link com.mcleodmoores.xl4j.v1.api.values.XLArray} that is passed to {@link #toJavaObject(Type, Object)}.
+ */
+public interface VarArgsTypeConverter extends TypeConverter {
+
+  /**
+   * Converts a range of Excel values into a Java array.
+   *
+   * @param expectedType
+   *          the type of the varargs parameter we're binding to
+   * @param values
+   *          the values, not null. This array is not changed or kept.
+   * @param offset
+   *          the index of the first value to convert
+   * @param length
+   *          the number of values to convert
+   * @return a Java array converted from the values
+   */
+  Object toJavaArray(Type expectedType, XLValue[] values, int offset, int length);
+}
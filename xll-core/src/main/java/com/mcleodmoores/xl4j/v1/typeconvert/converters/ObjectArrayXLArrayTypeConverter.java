@@ -15,6 +15,7 @@ import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 import com.mcleodmoores.xl4j.v1.util.ConverterUtils;
 import com.mcleodmoores.xl4j.v1.util.XL4JReflectionUtils;
@@ -25,7 +26,7 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
  * converter that can be found is used (e.g. Boolean -&gt; XLBoolean, rather than an XLObject wrapping a boolean).This converter is higher
  * priority than {@link ObjectArrayXLArrayTypeConverter2}, which only converts to XLObjects.
  */
-public final class ObjectArrayXLArrayTypeConverter extends AbstractTypeConverter {
+public final class ObjectArrayXLArrayTypeConverter extends AbstractTypeConverter implements VarArgsTypeConverter {
   /** The Excel context */
   private final Excel _excel;
 
@@ -77,15 +78,27 @@ public final class ObjectArrayXLArrayTypeConverter extends AbstractTypeConverter
     ArgumentChecker.notNull(from, "from");
     final XLArray xlArr = (XLArray) from;
     final XLValue[][] arr = xlArr.getArray();
+    if (arr.length == 1) {
+      return toJavaArray(expectedType, arr[0], 0, arr[0].length);
+    }
+    final XLValue[] column = new XLValue[arr.length];
+    for (int i = 0; i < arr.length; i++) {
+      column[i] = arr[i][0];
+    }
+    return toJavaArray(expectedType, column, 0, column.length);
+  }
+
+  @Override
+  public Object toJavaArray(final Type expectedType, final XLValue[] values, final int offset, final int length) {
+    ArgumentChecker.notNull(values, "values");
     final Type componentType;
     if (expectedType instanceof Class) {
       final Class<?> expectedClass = (Class<?>) expectedType;
       componentType = expectedClass.getComponentType();
     } else if (expectedType instanceof GenericArrayType) {
-      // XLArray is not empty by definition so no test for emptiness needed
       final Type componentTypeForGenericArray = ConverterUtils.getComponentTypeForGenericArray((GenericArrayType) expectedType);
       // handle generic array inputs
-      if (arr[0][0] instanceof XLArray && componentTypeForGenericArray.equals(Object.class)) {
+      if (length > 0 && values[offset] instanceof XLArray && componentTypeForGenericArray.equals(Object.class)) {
         componentType = Object[].class;
       } else {
         componentType = componentTypeForGenericArray;
@@ -96,11 +109,9 @@ public final class ObjectArrayXLArrayTypeConverter extends AbstractTypeConverter
     TypeConverter lastConverter = null;
     Class<?> lastClass = null;
     final TypeConverterRegistry typeConverterRegistry = _excel.getTypeConverterRegistry();
-    final boolean isRow = arr.length == 1;
-    final int n = isRow ? arr[0].length : arr.length;
-    final Object[] targetArr = (Object[]) Array.newInstance(XL4JReflectionUtils.reduceToClass(componentType), n);
-    for (int i = 0; i < n; i++) {
-      final XLValue val = isRow ? arr[0][i] : arr[i][0];
+    final Object[] targetArr = (Object[]) Array.newInstance(XL4JReflectionUtils.reduceToClass(componentType), length);
+    for (int i = 0; i < length; i++) {
+      final XLValue val = values[offset + i];
       Class<?> valueClass;
       XLValue valueToConvert;
       if (val instanceof XLString && ((XLString) val).isXLObject()) {
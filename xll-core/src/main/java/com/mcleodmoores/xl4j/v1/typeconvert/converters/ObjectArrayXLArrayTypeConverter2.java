@@ -15,6 +15,7 @@ import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 import com.mcleodmoores.xl4j.v1.util.ConverterUtils;
 import com.mcleodmoores.xl4j.v1.util.XL4JReflectionUtils;
@@ -24,7 +25,7 @@ import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
  * Type converter to convert from arrays of Objects to Excel arrays and back again. This converter converts every Java object to an
  * XLObject. If the most specific type is required, {@link ObjectArrayXLArrayTypeConverter} should be used, which is at a higher priority.
  */
-public final class ObjectArrayXLArrayTypeConverter2 extends AbstractTypeConverter {
+public final class ObjectArrayXLArrayTypeConverter2 extends AbstractTypeConverter implements VarArgsTypeConverter {
   /** The priority */
   private static final int PRIORITY = 6;
   /** The Excel context */
@@ -62,6 +63,21 @@ public final class ObjectArrayXLArrayTypeConverter2 extends AbstractTypeConverte
   @Override
   public Object toJavaObject(final Type expectedType, final Object from) {
     ArgumentChecker.notNull(from, "from");
+    final XLArray xlArr = (XLArray) from;
+    final XLValue[][] arr = xlArr.getArray();
+    if (arr.length == 1) {
+      return toJavaArray(expectedType, arr[0], 0, arr[0].length);
+    }
+    final XLValue[] column = new XLValue[arr.length];
+    for (int i = 0; i < arr.length; i++) {
+      column[i] = arr[i][0];
+    }
+    return toJavaArray(expectedType, column, 0, column.length);
+  }
+
+  @Override
+  public Object toJavaArray(final Type expectedType, final XLValue[] values, final int offset, final int length) {
+    ArgumentChecker.notNull(values, "values");
     Type componentType = null;
     if (expectedType instanceof Class) {
       final Class<?> expectedClass = (Class<?>) expectedType;
@@ -71,16 +87,12 @@ public final class ObjectArrayXLArrayTypeConverter2 extends AbstractTypeConverte
     } else {
       throw new XL4JRuntimeException("expectedType not array or GenericArrayType");
     }
-    final XLArray xlArr = (XLArray) from;
-    final XLValue[][] arr = xlArr.getArray();
     TypeConverter lastConverter = null;
     Class<?> lastClass = null;
     final TypeConverterRegistry typeConverterRegistry = _excel.getTypeConverterRegistry();
-    final boolean isRow = arr.length == 1;
-    final int n = isRow ? arr[0].length : arr.length;
-    final Object[] targetArr = (Object[]) Array.newInstance(XL4JReflectionUtils.reduceToClass(componentType), n);
-    for (int i = 0; i < n; i++) {
-      final XLValue val = isRow ? arr[0][i] : arr[i][0];
+    final Object[] targetArr = (Object[]) Array.newInstance(XL4JReflectionUtils.reduceToClass(componentType), length);
+    for (int i = 0; i < length; i++) {
+      final XLValue val = values[offset + i];
       Class<?> valueClass;
       XLValue valueToConvert;
       if (val instanceof XLString && ((XLString) val).isXLObject()) {
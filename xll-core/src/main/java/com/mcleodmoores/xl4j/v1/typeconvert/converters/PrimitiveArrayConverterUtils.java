@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert.converters;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Element conversions shared by the primitive array converters. These have the same behaviour as the single value converters
+ * (e.g. {@link PrimitiveIntegerXLNumberTypeConverter} and {@link PrimitiveIntegerXLStringTypeConverter}), but do not box the
+ * values or go through the {@link com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter} interface, so they can be used in
+ * tight loops over whole rows and columns.
+ */
+final class PrimitiveArrayConverterUtils {
+
+  /**
+   * Restricted constructor.
+   */
+  private PrimitiveArrayConverterUtils() {
+  }
+
+  /**
+   * Gets the length of a one-dimensional array. If the array is not a row, the first column is used.
+   *
+   * @param array
+   *          the array
+   * @return the length
+   */
+  static int getLength(final XLArray array) {
+    return array.isRow() ? array.getColumns() : array.getRows();
+  }
+
+  /**
+   * Gets an element of a one-dimensional array. If the array is not a row, the first column is used.
+   *
+   * @param array
+   *          the array
+   * @param i
+   *          the index
+   * @return the value
+   */
+  static XLValue getValue(final XLArray array, final int i) {
+    return array.isRow() ? array.getValue(0, i) : array.getValue(i, 0);
+  }
+
+  /**
+   * Gets an element of a one-dimensional numeric array. If the array is not a row, the first column is used.
+   *
+   * @param array
+   *          the array
+   * @param i
+   *          the index
+   * @return the number
+   */
+  static double getNumber(final XLArray array, final int i) {
+    return array.isRow() ? array.getNumber(0, i) : array.getNumber(i, 0);
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a double
+   */
+  static double toDouble(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Double.parseDouble(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to double");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as an int
+   */
+  static int toInt(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return (int) ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Integer.parseInt(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to integer");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a long
+   */
+  static long toLong(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return (long) ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Long.parseLong(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to long");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a float
+   */
+  static float toFloat(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return (float) ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Float.parseFloat(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to float");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a short
+   */
+  static short toShort(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return (short) ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Short.parseShort(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to short");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a byte
+   */
+  static byte toByte(final XLValue value) {
+    if (value instanceof XLNumber) {
+      return (byte) ((XLNumber) value).getValue();
+    } else if (value instanceof XLString) {
+      return Byte.parseByte(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to byte");
+  }
+
+  /**
+   * @param value
+   *          the value
+   * @return the value as a boolean
+   */
+  static boolean toBoolean(final XLValue value) {
+    if (value instanceof XLBoolean) {
+      return ((XLBoolean) value).getValue();
+    } else if (value instanceof XLString) {
+      return Boolean.parseBoolean(((XLString) value).getValue());
+    }
+    throw new XL4JRuntimeException("Could not convert objects of type " + value.getClass() + " to boolean");
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert.converters;
+
+import java.lang.reflect.Type;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.AbstractTypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+
+/**
+ * Type converter to convert from two-dimensional arrays of doubles to Excel arrays and back again. The input array from Excel can
+ * contain any type of {@link XLValue} (e.g. <code>XLNumber</code>, <code>XLString("1")</code>) and an attempt will be made to convert
+ * this value to a double. Arrays backed by numbers are converted without creating any
+ * {@link com.mcleodmoores.xl4j.v1.api.values.XLNumber}s, and the results are written directly into the array backing the
+ * {@link XLArray}. This converter is higher priority than {@link ObjectArrayXLArrayTypeConverter}.
+ * <p>
+ * This class assumes that the input array from / to Excel is rectangular.
+ */
+public final class PrimitiveDoubleArray2DXLArrayTypeConverter extends AbstractTypeConverter {
+  /** The priority */
+  private static final int PRIORITY = 11;
+
+  /**
+   * Default constructor.
+   */
+  public PrimitiveDoubleArray2DXLArrayTypeConverter() {
+    super(double[][].class, XLArray.class, PRIORITY);
+  }
+
+  @Override
+  public Object toXLValue(final Object from) {
+    ArgumentChecker.notNull(from, "from");
+    final double[][] fromArr = (double[][]) from;
+    if (fromArr.length == 0) {
+      return XLArray.ofRow(new double[0]);
+    }
+    // copies the rows directly into the array backing the result
+    return XLArray.ofNumbers(fromArr);
+  }
+
+  @Override
+  public Object toJavaObject(final Type expectedType, final Object from) {
+    ArgumentChecker.notNull(from, "from");
+    final XLArray xlArr = (XLArray) from;
+    final int rows = xlArr.getRows();
+    final int columns = xlArr.getColumns();
+    final double[][] targetArr = new double[rows][columns];
+    if (xlArr.isNumeric()) {
+      for (int i = 0; i < rows; i++) {
+        final double[] row = targetArr[i];
+        for (int j = 0; j < columns; j++) {
+          row[j] = xlArr.getNumber(i, j);
+        }
+      }
+      return targetArr;
+    }
+    for (int i = 0; i < rows; i++) {
+      final double[] row = targetArr[i];
+      for (int j = 0; j < columns; j++) {
+        row[j] = PrimitiveArrayConverterUtils.toDouble(xlArr.getValue(i, j));
+      }
+    }
+    return targetArr;
+  }
+}
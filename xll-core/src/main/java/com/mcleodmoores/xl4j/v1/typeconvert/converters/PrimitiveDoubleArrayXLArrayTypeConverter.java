@@ -6,24 +6,19 @@ package com.mcleodmoores.xl4j.v1.typeconvert.converters;
 import java.lang.reflect.Type;
 
 import com.mcleodmoores.xl4j.v1.api.typeconvert.AbstractTypeConverter;
-import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
 import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
-import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
-import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * Type converter to convert from arrays of doubles to Excel arrays and back again. The input array from Excel can contain any type of
  * {@link XLValue} (e.g. <code>XLNumber</code>, <code>XLString("1.0d")</code>) and an attempt will be made to convert this value to a
- * double.
+ * double. Arrays that are backed by primitive numbers are converted without creating any {@link XLNumber}s. The arrays are
+ * copied in both directions, so a function that changes its argument or result cannot change a value held by Excel.
  */
-public final class PrimitiveDoubleArrayXLArrayTypeConverter extends AbstractTypeConverter {
-  /** The underlying converter */
-  private static final TypeConverter CONVERTER = new PrimitiveDoubleXLNumberTypeConverter();
-  /** The underlying string converter */
-  private static final TypeConverter STRING_CONVERTER = new PrimitiveDoubleXLStringTypeConverter();
+public final class PrimitiveDoubleArrayXLArrayTypeConverter extends AbstractTypeConverter implements VarArgsTypeConverter {
 
   /**
    * Default constructor.
@@ -35,42 +30,32 @@ public final class PrimitiveDoubleArrayXLArrayTypeConverter extends AbstractType
   @Override
   public Object toXLValue(final Object from) {
     ArgumentChecker.notNull(from, "from");
-    final double[] fromArr = (double[]) from;
-    final XLValue[][] toArr = new XLValue[1][fromArr.length];
-    for (int i = 0; i < fromArr.length; i++) {
-      final XLValue value = (XLValue) CONVERTER.toXLValue(fromArr[i]);
-      toArr[0][i] = value;
-    }
-    return XLArray.of(toArr);
+    return XLArray.ofRow(((double[]) from).clone());
   }
 
   @Override
   public Object toJavaObject(final Type expectedType, final Object from) {
     ArgumentChecker.notNull(from, "from");
     final XLArray xlArr = (XLArray) from;
-    final XLValue[][] arr = xlArr.getArray();
-    if (arr.length == 1) { // array is a single row
-      final double[] targetArr = new double[arr[0].length];
-      for (int i = 0; i < arr[0].length; i++) {
-        targetArr[i] = convertValue(arr[0][i]);
-      }
-      return targetArr;
+    if (xlArr.isNumeric()) {
+      // a single bulk copy of the underlying array
+      return (xlArr.isRow() ? xlArr : xlArr.getColumn(0)).copyNumbers();
     }
-    // array is single column
-    final double[] targetArr = new double[arr.length];
-    for (int i = 0; i < arr.length; i++) {
-      targetArr[i] = convertValue(arr[i][0]);
+    // a single row, or the first column
+    final double[] targetArr = new double[PrimitiveArrayConverterUtils.getLength(xlArr)];
+    for (int i = 0; i < targetArr.length; i++) {
+      targetArr[i] = PrimitiveArrayConverterUtils.toDouble(PrimitiveArrayConverterUtils.getValue(xlArr, i));
     }
     return targetArr;
   }
 
-  private static double convertValue(final XLValue val) {
-    if (val instanceof XLString) {
-      return (double) STRING_CONVERTER.toJavaObject(Double.TYPE, val);
-    } else if (val instanceof XLNumber) {
-      return (double) CONVERTER.toJavaObject(Double.TYPE, val);
+  @Override
+  public Object toJavaArray(final Type expectedType, final XLValue[] values, final int offset, final int length) {
+    ArgumentChecker.notNull(values, "values");
+    final double[] targetArr = new double[length];
+    for (int i = 0; i < length; i++) {
+      targetArr[i] = PrimitiveArrayConverterUtils.toDouble(values[offset + i]);
     }
-    throw new XL4JRuntimeException("Could not convert objects of type " + val.getClass() + " to double");
+    return targetArr;
   }
-
 }
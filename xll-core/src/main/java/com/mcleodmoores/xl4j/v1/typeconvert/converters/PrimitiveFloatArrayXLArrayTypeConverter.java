@@ -6,23 +6,19 @@ package com.mcleodmoores.xl4j.v1.typeconvert.converters;
 import java.lang.reflect.Type;
 
 import com.mcleodmoores.xl4j.v1.api.typeconvert.AbstractTypeConverter;
-import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
 import com.mcleodmoores.xl4j.v1.api.values.XLArray;
-import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
-import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
-import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
  * Type converter to convert from arrays of floats to Excel arrays and back again. The input array from Excel can contain any type of
  * {@link XLValue} (e.g. <code>XLNumber</code>, <code>XLString("1.0f")</code>) and an attempt will be made to convert this value to a float.
+ * <p>
+ * Whole rows and columns are converted in a single loop without boxing, and arrays backed by numbers are read without
+ * creating any {@link com.mcleodmoores.xl4j.v1.api.values.XLNumber}s.
  */
-public final class PrimitiveFloatArrayXLArrayTypeConverter extends AbstractTypeConverter {
-  /** The underlying converter */
-  private static final TypeConverter CONVERTER = new PrimitiveFloatXLNumberTypeConverter();
-  /** The underlying string converter */
-  private static final TypeConverter STRING_CONVERTER = new PrimitiveFloatXLStringTypeConverter();
+public final class PrimitiveFloatArrayXLArrayTypeConverter extends AbstractTypeConverter implements VarArgsTypeConverter {
 
   /**
    * Default constructor.
@@ -35,41 +31,38 @@ public final class PrimitiveFloatArrayXLArrayTypeConverter extends AbstractTypeC
   public Object toXLValue(final Object from) {
     ArgumentChecker.notNull(from, "from");
     final float[] fromArr = (float[]) from;
-    final XLValue[][] toArr = new XLValue[1][fromArr.length];
+    final double[] toArr = new double[fromArr.length];
     for (int i = 0; i < fromArr.length; i++) {
-      final XLValue value = (XLValue) CONVERTER.toXLValue(fromArr[i]);
-      toArr[0][i] = value;
+      toArr[i] = fromArr[i];
     }
-    return XLArray.of(toArr);
+    return XLArray.ofRow(toArr);
   }
 
   @Override
   public Object toJavaObject(final Type expectedType, final Object from) {
     ArgumentChecker.notNull(from, "from");
     final XLArray xlArr = (XLArray) from;
-    final XLValue[][] arr = xlArr.getArray();
-    if (arr.length == 1) { // array is a single row
-      final float[] targetArr = new float[arr[0].length];
-      for (int i = 0; i < arr[0].length; i++) {
-        targetArr[i] = convertValue(arr[0][i]);
+    // a single row, or the first column
+    final float[] targetArr = new float[PrimitiveArrayConverterUtils.getLength(xlArr)];
+    if (xlArr.isNumeric()) {
+      for (int i = 0; i < targetArr.length; i++) {
+        targetArr[i] = (float) PrimitiveArrayConverterUtils.getNumber(xlArr, i);
       }
       return targetArr;
     }
-    // array is single column
-    final float[] targetArr = new float[arr.length];
-    for (int i = 0; i < arr.length; i++) {
-      targetArr[i] = convertValue(arr[i][0]);
+    for (int i = 0; i < targetArr.length; i++) {
+      targetArr[i] = PrimitiveArrayConverterUtils.toFloat(PrimitiveArrayConverterUtils.getValue(xlArr, i));
     }
     return targetArr;
   }
 
-  private static float convertValue(final XLValue val) {
-    if (val instanceof XLString) {
-      return (float) STRING_CONVERTER.toJavaObject(Float.TYPE, val);
-    } else if (val instanceof XLNumber) {
-      return (float) CONVERTER.toJavaObject(Float.TYPE, val);
+  @Override
+  public Object toJavaArray(final Type expectedType, final XLValue[] values, final int offset, final int length) {
+    ArgumentChecker.notNull(values, "values");
+    final float[] targetArr = new float[length];
+    for (int i = 0; i < length; i++) {
+      targetArr[i] = PrimitiveArrayConverterUtils.toFloat(values[offset + i]);
     }
-    throw new XL4JRuntimeException("Could not convert objects of type " + val.getClass() + " to float");
+    return targetArr;
   }
-
 }
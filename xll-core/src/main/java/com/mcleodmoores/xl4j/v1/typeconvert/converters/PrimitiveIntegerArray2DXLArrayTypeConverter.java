@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert.converters;
+
+import java.lang.reflect.Type;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.AbstractTypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Type converter to convert from two-dimensional arrays of ints to Excel arrays and back again. The input array from Excel can
+ * contain any type of {@link XLValue} (e.g. <code>XLNumber</code>, <code>XLString("1")</code>) and an attempt will be made to convert
+ * this value to an int. Arrays backed by numbers are converted without creating any
+ * {@link com.mcleodmoores.xl4j.v1.api.values.XLNumber}s, and the results are written directly into the array backing the
+ * {@link XLArray}. This converter is higher priority than {@link ObjectArrayXLArrayTypeConverter}.
+ * <p>
+ * This class assumes that the input array from / to Excel is rectangular.
+ */
+public final class PrimitiveIntegerArray2DXLArrayTypeConverter extends AbstractTypeConverter {
+  /** The priority */
+  private static final int PRIORITY = 11;
+
+  /**
+   * Default constructor.
+   */
+  public PrimitiveIntegerArray2DXLArrayTypeConverter() {
+    super(int[][].class, XLArray.class, PRIORITY);
+  }
+
+  @Override
+  public Object toXLValue(final Object from) {
+    ArgumentChecker.notNull(from, "from");
+    final int[][] fromArr = (int[][]) from;
+    if (fromArr.length == 0) {
+      return XLArray.ofRow(new double[0]);
+    }
+    final int columns = fromArr[0].length;
+    final double[] toArr = new double[fromArr.length * columns];
+    for (int i = 0, k = 0; i < fromArr.length; i++) {
+      final int[] row = fromArr[i];
+      if (row.length != columns) {
+        throw new XL4JRuntimeException("All rows must have " + columns + " columns");
+      }
+      for (int j = 0; j < columns; j++, k++) {
+        toArr[k] = row[j];
+      }
+    }
+    return XLArray.ofNumbers(toArr, fromArr.length, columns);
+  }
+
+  @Override
+  public Object toJavaObject(final Type expectedType, final Object from) {
+    ArgumentChecker.notNull(from, "from");
+    final XLArray xlArr = (XLArray) from;
+    final int rows = xlArr.getRows();
+    final int columns = xlArr.getColumns();
+    final int[][] targetArr = new int[rows][columns];
+    if (xlArr.isNumeric()) {
+      for (int i = 0; i < rows; i++) {
+        final int[] row = targetArr[i];
+        for (int j = 0; j < columns; j++) {
+          row[j] = (int) xlArr.getNumber(i, j);
+        }
+      }
+      return targetArr;
+    }
+    for (int i = 0; i < rows; i++) {
+      final int[] row = targetArr[i];
+      for (int j = 0; j < columns; j++) {
+        row[j] = PrimitiveArrayConverterUtils.toInt(xlArr.getValue(i, j));
+      }
+    }
+    return targetArr;
+  }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.scanners.TypeAnnotationsScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves class names entered in worksheets (e.g. in <code>J.Construct</code> or <code>J.StaticMethod</code>) to classes.
+ * <p>
+ * Names are either fully qualified, or short names (the simple name of the class). Short names are looked up in names registered
+ * with {@link #register(String, Class)}, then in an index of the classes in the {@link Reflections} scan, then in
+ * <code>java.lang</code>. A short name that matches more than one class in the scan is ambiguous and is not resolved.
+ * <p>
+ * Resolved classes are cached, as are names that could not be resolved, so a name is only looked up in the class loader once. The
+ * cache of names that could not be resolved is cleared if it grows beyond {@link #MAX_UNRESOLVED} entries, and can be cleared
+ * with {@link #clearUnresolved()} if classes are added to the class path.
+ */
+public class ClassResolver {
+  /** The maximum number of names that could not be resolved that are remembered */
+  public static final int MAX_UNRESOLVED = 10000;
+  /** The logger */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClassResolver.class);
+  /** The package searched for short names that are not in the index */
+  private static final String JAVA_LANG = "java.lang.";
+  private final ClassLoader _classLoader;
+  /** The fully-qualified names of classes in the scan, keyed by simple name */
+  private final Map<String, Set<String>> _shortNames;
+  /** Short names registered explicitly */
+  private final ConcurrentMap<String, Class<?>> _registered = new ConcurrentHashMap<>();
+  /** The resolved classes, keyed by the name used to look them up */
+  private final ConcurrentMap<String, Class<?>> _resolved = new ConcurrentHashMap<>();
+  /** The reason that each name could not be resolved */
+  private final ConcurrentMap<String, String> _unresolved = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a resolver that uses the class loader of this class.
+   *
+   * @param reflections
+   *          the scanned classes used for short names, not null
+   */
+  public ClassResolver(final Reflections reflections) {
+    this(reflections, ClassResolver.class.getClassLoader());
+  }
+
+  /**
+   * @param reflections
+   *          the scanned classes used for short names, not null
+   * @param classLoader
+   *          the class loader used to load classes, not null
+   */
+  public ClassResolver(final Reflections reflections, final ClassLoader classLoader) {
+    ArgumentChecker.notNull(reflections, "reflections");
+    _classLoader = ArgumentChecker.notNull(classLoader, "classLoader");
+    _shortNames = buildShortNameIndex(getClassNames(reflections));
+  }
+
+  /**
+   * Creates a resolver from a set of class names, e.g. an index generated at build time.
+   *
+   * @param classNames
+   *          the fully-qualified names of the classes that can be referred to by short name, not null
+   * @param classLoader
+   *          the class loader used to load classes, not null
+   */
+  public ClassResolver(final Collection<String> classNames, final ClassLoader classLoader) {
+    ArgumentChecker.notNull(classNames, "classNames");
+    _classLoader = ArgumentChecker.notNull(classLoader, "classLoader");
+    _shortNames = buildShortNameIndex(classNames);
+  }
+
+  /**
+   * Registers a short name for a class. Registered names take precedence over the names in the index.
+   *
+   * @param shortName
+   *          the short name, not null
+   * @param clazz
+   *          the class, not null
+   */
+  public void register(final String shortName, final Class<?> clazz) {
+    ArgumentChecker.notNull(shortName, "shortName");
+    ArgumentChecker.notNull(clazz, "clazz");
+    _registered.put(shortName, clazz);
+    // the name might have been cached as something else
+    _resolved.remove(shortName);
+    _unresolved.remove(shortName);
+  }
+
+  /**
+   * Resolves a class name.
+   *
+   * @param name
+   *          the fully-qualified or short name, not null
+   * @return the class
+   * @throws ClassNotFoundException
+   *           if the class cannot be found, or the short name is ambiguous
+   */
+  public Class<?> resolve(final String name) throws ClassNotFoundException {
+    ArgumentChecker.notNull(name, "name");
+    final Class<?> cached = _resolved.get(name);
+    if (cached != null) {
+      return cached;
+    }
+    final String reason = _unresolved.get(name);
+    if (reason != null) {
+      throw new ClassNotFoundException(reason);
+    }
+    try {
+      final Class<?> clazz = load(name);
+      _resolved.put(name, clazz);
+      return clazz;
+    } catch (final ClassNotFoundException e) {
+      if (_unresolved.size() >= MAX_UNRESOLVED) {
+        LOGGER.info("Clearing {} unresolved class names", _unresolved.size());
+        _unresolved.clear();
+      }
+      _unresolved.put(name, e.getMessage());
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the fully-qualified names of the classes in the index with a short name.
+   *
+   * @param shortName
+   *          the short name, not null
+   * @return the names, empty if there are none
+   */
+  public Set<String> getCandidates(final String shortName) {
+    ArgumentChecker.notNull(shortName, "shortName");
+    final Set<String> candidates = _shortNames.get(shortName);
+    return candidates == null ? Collections.<String>emptySet() : candidates;
+  }
+
+  /**
+   * Tests whether a short name matches more than one class in the index.
+   *
+   * @param shortName
+   *          the short name, not null
+   * @return true if the name is ambiguous
+   */
+  public boolean isAmbiguous(final String shortName) {
+    return getCandidates(shortName).size() > 1;
+  }
+
+  /**
+   * Forgets the names that could not be resolved, e.g. after classes have been added to the class path.
+   */
+  public void clearUnresolved() {
+    _unresolved.clear();
+  }
+
+  private Class<?> load(final String name) throws ClassNotFoundException {
+    final Class<?> registered = _registered.get(name);
+    if (registered != null) {
+      return registered;
+    }
+    if (name.indexOf('.') < 0) {
+      final Set<String> candidates = _shortNames.get(name);
+      if (candidates != null) {
+        if (candidates.size() > 1) {
+          throw new ClassNotFoundException("Short class name " + name + " is ambiguous: could be any of " + candidates);
+        }
+        return Class.forName(candidates.iterator().next(), true, _classLoader);
+      }
+      try {
+        return Class.forName(JAVA_LANG + name, true, _classLoader);
+      } catch (final ClassNotFoundException e) {
+        // fall through to try the name as it is, as it could be in the default package
+      }
+    }
+    return Class.forName(name, true, _classLoader);
+  }
+
+  /**
+   * Gets the names of all classes in the scan.
+   *
+   * @param reflections
+   *          the scanned classes
+   * @return the class names
+   */
+  private static Collection<String> getClassNames(final Reflections reflections) {
+    final Set<String> classNames = new HashSet<>();
+    final Set<String> indices = reflections.getStore().keySet();
+    for (final String index : new String[] {SubTypesScanner.class.getSimpleName(), TypeAnnotationsScanner.class.getSimpleName()}) {
+      if (indices.contains(index)) {
+        // the values are the scanned types; the keys are their supertypes or annotations, which are often JDK or library
+        // classes that are not scanned themselves
+        classNames.addAll(reflections.getStore().get(index).keySet());
+        classNames.addAll(reflections.getStore().get(index).values());
+      }
+    }
+    return classNames;
+  }
+
+  private static Map<String, Set<String>> buildShortNameIndex(final Collection<String> classNames) {
+    final Map<String, Set<String>> shortNames = new HashMap<>();
+    for (final String className : classNames) {
+      final String shortName = getShortName(className);
+      if (shortName.isEmpty() || Character.isDigit(shortName.charAt(0))) {
+        // anonymous classes
+        continue;
+      }
+      Set<String> names = shortNames.get(shortName);
+      if (names == null) {
+        names = new TreeSet<>();
+        shortNames.put(shortName, names);
+      }
+      names.add(className);
+    }
+    for (final Map.Entry<String, Set<String>> entry : shortNames.entrySet()) {
+      entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+    }
+    return shortNames;
+  }
+
+  private static String getShortName(final String className) {
+    final int index = Math.max(className.lastIndexOf('.'), className.lastIndexOf('$'));
+    return className.substring(index + 1);
+  }
+}
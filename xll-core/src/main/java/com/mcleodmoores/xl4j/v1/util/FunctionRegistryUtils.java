@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.util;
+
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.core.IndexedFunctionRegistry;
+import com.mcleodmoores.xl4j.v1.core.ReflectiveFunctionRegistry;
+
+/**
+ * Utility class to hide whether functions are found by scanning the classpath or from the function indexes written when the
+ * add-in was compiled. The add-in can choose by setting the system property <code>xl4j.registry</code> in its JVM options to
+ * <code>reflective</code> (the default) or <code>indexed</code>. If <code>indexed</code> is selected but there are no indexes
+ * on the classpath, the classpath is scanned.
+ */
+public final class FunctionRegistryUtils {
+  /** The system property used to select the function registry */
+  public static final String REGISTRY_PROPERTY_NAME = "xl4j.registry";
+  private static final Logger LOGGER = LoggerFactory.getLogger(FunctionRegistryUtils.class);
+
+  private FunctionRegistryUtils() {
+  }
+
+  private static boolean isIndexed() {
+    final String registry = System.getProperty(REGISTRY_PROPERTY_NAME);
+    if (registry != null) {
+      if (registry.toLowerCase().contains("indexed")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param reflections
+   *          the reflections object used to scan the classpath
+   * @param invokerFactory
+   *          the invoker factory
+   * @return a function registry of the type selected for this add-in
+   */
+  public static FunctionRegistry getFunctionRegistry(final Reflections reflections, final InvokerFactory invokerFactory) {
+    if (isIndexed()) {
+      final ClassLoader classLoader = Thread.currentThread().getContextClassLoader() == null ? FunctionRegistryUtils.class.getClassLoader()
+          : Thread.currentThread().getContextClassLoader();
+      if (IndexedFunctionRegistry.hasIndex(classLoader)) {
+        return new IndexedFunctionRegistry(classLoader, invokerFactory);
+      }
+      LOGGER.warn("No function indexes found on the classpath, scanning for functions");
+    }
+    return new ReflectiveFunctionRegistry(reflections, invokerFactory);
+  }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.util;
+
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.core.ConcurrentHeap;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+
+/**
+ * Utility class to hide which heap stores the objects returned to Excel. The add-in can choose by setting the system property
+ * <code>xl4j.heap</code> in its JVM options to <code>concurrent</code> (the default) or <code>sharded</code>. Memory limits,
+ * lineage, incremental collection and snapshots are only available from the sharded heap.
+ */
+public final class HeapUtils {
+  /** The system property used to select the heap */
+  public static final String HEAP_PROPERTY_NAME = "xl4j.heap";
+
+  private HeapUtils() {
+  }
+
+  private static boolean isSharded() {
+    final String heap = System.getProperty(HEAP_PROPERTY_NAME);
+    if (heap != null) {
+      if (heap.toLowerCase().contains("sharded")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a heap of the type selected for this add-in
+   */
+  public static Heap getHeap() {
+    return isSharded() ? new ShardedHeap() : new ConcurrentHeap();
+  }
+}
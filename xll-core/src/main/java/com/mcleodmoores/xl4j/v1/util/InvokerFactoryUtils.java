@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2014 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.util;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.invoke.MethodHandleInvokerFactory;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+
+/**
+ * Utility class to hide whether registered functions are called using reflection or method handles. The add-in can choose
+ * by setting the system property <code>xl4j.invoker</code> in its JVM options to <code>reflective</code> (the default) or
+ * <code>methodhandle</code>.
+ */
+public final class InvokerFactoryUtils {
+  /** The system property used to select the invoker factory */
+  public static final String INVOKER_PROPERTY_NAME = "xl4j.invoker";
+
+  private InvokerFactoryUtils() {
+  }
+
+  private static boolean isMethodHandle() {
+    final String invoker = System.getProperty(INVOKER_PROPERTY_NAME);
+    if (invoker != null) {
+      if (invoker.toLowerCase().contains("methodhandle")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param excel
+   *          the excel object to allow heap access
+   * @param typeConverterRegistry
+   *          a registry of type converters
+   * @return an invoker factory of the type selected for this add-in
+   */
+  public static ReflectiveInvokerFactory getInvokerFactory(final Excel excel, final TypeConverterRegistry typeConverterRegistry) {
+    return isMethodHandle() ? new MethodHandleInvokerFactory(excel, typeConverterRegistry)
+        : new ReflectiveInvokerFactory(excel, typeConverterRegistry);
+  }
+}
@@ -5,30 +5,35 @@ package com.mcleodmoores.xl4j.v1.xll;
 
 import org.reflections.Reflections;
 
-import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ClassResolvingExcel;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelCallback;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
 import com.mcleodmoores.xl4j.v1.api.core.FunctionRegistry;
 import com.mcleodmoores.xl4j.v1.api.core.Heap;
 import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.LineageHeap;
 import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
-import com.mcleodmoores.xl4j.v1.core.ConcurrentHeap;
+import com.mcleodmoores.xl4j.v1.core.CallRecorder;
 import com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback;
 import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
-import com.mcleodmoores.xl4j.v1.core.ReflectiveFunctionRegistry;
 import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
 import com.mcleodmoores.xl4j.v1.typeconvert.CachingTypeConverterRegistry;
 import com.mcleodmoores.xl4j.v1.typeconvert.ScanningTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.util.ClassResolver;
+import com.mcleodmoores.xl4j.v1.util.FunctionRegistryUtils;
+import com.mcleodmoores.xl4j.v1.util.HeapUtils;
+import com.mcleodmoores.xl4j.v1.util.InvokerFactoryUtils;
 import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
 
 /**
  * Implementation of Excel interface that actually communicates with the XLL plug-in.
  */
-public class NativeExcel implements Excel {
+public class NativeExcel implements ClassResolvingExcel {
   private final Heap _heap;
   private final FunctionRegistry _functionRegistry;
   private final ExcelCallback _excelCallback;
   private final ExcelFunctionCallHandler _excelCallHandler;
+  private final ClassResolver _classResolver;
   private final ReflectiveInvokerFactory _invokerFactory;
   private final TypeConverterRegistry _typeConverterRegistry;
   private final NativeExcelFunctionEntryAccumulator _rawCallback;
@@ -39,11 +44,18 @@ public class NativeExcel implements Excel {
    */
   public NativeExcel() {
     _reflections = ReflectionsUtils.getReflections();
-    _heap = new ConcurrentHeap();
+    _heap = HeapUtils.getHeap();
     _typeConverterRegistry = new CachingTypeConverterRegistry(new ScanningTypeConverterRegistry(this, _reflections));
-    _invokerFactory = new ReflectiveInvokerFactory(this, _typeConverterRegistry);
-    _functionRegistry = new ReflectiveFunctionRegistry(_reflections, _invokerFactory);
-    _excelCallHandler = new DefaultExcelFunctionCallHandler(_functionRegistry, _heap);
+    _invokerFactory = InvokerFactoryUtils.getInvokerFactory(this, _typeConverterRegistry);
+    _functionRegistry = FunctionRegistryUtils.getFunctionRegistry(_reflections, _invokerFactory);
+    final DefaultExcelFunctionCallHandler excelCallHandler = new DefaultExcelFunctionCallHandler(_functionRegistry, _heap);
+    excelCallHandler.setCallRecorder(CallRecorder.fromSystemProperty());
+    if (_heap instanceof LineageHeap) {
+      // invalidate the cached results that depend on objects when the heap collects them
+      ((LineageHeap) _heap).addLineageListener(excelCallHandler);
+    }
+    _excelCallHandler = excelCallHandler;
+    _classResolver = new ClassResolver(_reflections);
     _rawCallback = new NativeExcelFunctionEntryAccumulator();
     _excelCallback = new DefaultExcelCallback(_rawCallback);
   }
@@ -87,4 +99,9 @@ public class NativeExcel implements Excel {
   public TypeConverterRegistry getTypeConverterRegistry() {
     return _typeConverterRegistry;
   }
+
+  @Override
+  public ClassResolver getClassResolver() {
+    return _classResolver;
+  }
 }
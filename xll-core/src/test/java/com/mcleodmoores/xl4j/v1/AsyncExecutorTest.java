@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.AsyncExecutor;
+import com.mcleodmoores.xl4j.v1.core.AsyncExecutor.Completion;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link AsyncExecutor}.
+ */
+public class AsyncExecutorTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static volatile CountDownLatch s_started;
+  private static volatile CountDownLatch s_release;
+
+  /**
+   * Tests that long-running and manually asynchronous functions are identified.
+   */
+  @Test
+  public void testIsAsynchronous() {
+    final String[] names = {"longRunning", "manualAsynchronous", "synchronous"};
+    final boolean[] expected = {true, true, false};
+    for (int i = 0; i < names.length; i++) {
+      final AsyncExecutor executor = newExecutor(names[i]);
+      try {
+        assertEquals(executor.isAsynchronous(0), expected[i], names[i]);
+        // cached
+        assertEquals(executor.isAsynchronous(0), expected[i], names[i]);
+        // unknown functions are run synchronously
+        assertFalse(executor.isAsynchronous(1));
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Tests that the result of a call is put on the completion queue.
+   */
+  @Test
+  public void testCompletion() throws Exception {
+    final AsyncExecutor executor = newExecutor("longRunning");
+    try {
+      final Future<XLValue> future = executor.submit("A1", 0, XLNumber.of(2));
+      assertEquals(future.get(10, TimeUnit.SECONDS), XLNumber.of(4));
+      final Completion completion = executor.poll(10, TimeUnit.SECONDS);
+      assertEquals(completion.getCaller(), "A1");
+      assertEquals(completion.getExportNumber(), 0);
+      assertEquals(completion.getResult(), XLNumber.of(4));
+      assertEquals(executor.getPendingCount(), 0);
+      assertNull(executor.poll(0, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that a new call from the same caller cancels the earlier call, and that only the latest result is reported.
+   */
+  @Test
+  public void testCancelOnRecalculation() throws Exception {
+    final AsyncExecutor executor = newExecutor(Executors.newFixedThreadPool(2), "blocking");
+    try {
+      s_started = new CountDownLatch(1);
+      s_release = new CountDownLatch(1);
+      final Future<XLValue> first = executor.submit("A1", 0, XLNumber.of(1));
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      final Future<XLValue> second = executor.submit("A1", 0, XLNumber.of(2));
+      assertTrue(first.isCancelled());
+      s_release.countDown();
+      assertEquals(second.get(10, TimeUnit.SECONDS), XLNumber.of(2));
+      final Completion completion = executor.poll(10, TimeUnit.SECONDS);
+      assertEquals(completion.getResult(), XLNumber.of(2));
+      final List<Completion> completions = new ArrayList<>();
+      assertEquals(executor.drainTo(completions), 0);
+    } finally {
+      s_release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that pending calls can be cancelled.
+   */
+  @Test
+  public void testCancelAll() throws Exception {
+    final AsyncExecutor executor = newExecutor(Executors.newSingleThreadExecutor(), "blocking");
+    try {
+      s_started = new CountDownLatch(1);
+      s_release = new CountDownLatch(1);
+      final Future<XLValue> a1 = executor.submit("A1", 0, XLNumber.of(1));
+      final Future<XLValue> a2 = executor.submit("A2", 0, XLNumber.of(2));
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      assertEquals(executor.getPendingCount(), 2);
+      assertFalse(executor.cancel("A3"));
+      assertEquals(executor.cancelAll(), 2);
+      assertTrue(a1.isCancelled());
+      assertTrue(a2.isCancelled());
+      assertEquals(executor.getPendingCount(), 0);
+      assertNull(executor.poll(100, TimeUnit.MILLISECONDS));
+    } finally {
+      s_release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that a call rejected by the executor completes with an error rather than being run on the calling thread.
+   */
+  @Test
+  public void testRejected() throws Exception {
+    final AsyncExecutor executor = newExecutor(new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>()),
+        "blocking");
+    try {
+      s_started = new CountDownLatch(1);
+      s_release = new CountDownLatch(1);
+      executor.submit("A1", 0, XLNumber.of(1));
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      final Future<XLValue> rejected = executor.submit("A2", 0, XLNumber.of(2));
+      assertEquals(rejected.get(0, TimeUnit.SECONDS), XLError.NA);
+      final Completion completion = executor.poll(10, TimeUnit.SECONDS);
+      assertEquals(completion.getCaller(), "A2");
+      assertEquals(completion.getResult(), XLError.NA);
+      assertEquals(executor.getPendingCount(), 1);
+    } finally {
+      s_release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that the caller cannot be null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullCaller() {
+    final AsyncExecutor executor = newExecutor("longRunning");
+    try {
+      executor.submit(null, 0, XLNumber.of(1));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static AsyncExecutor newExecutor(final String... names) {
+    return newExecutor(null, names);
+  }
+
+  private static AsyncExecutor newExecutor(final ExecutorService executor, final String... names) {
+    final TypeConverterRegistry typeConverters = MockTypeConverterRegistry.builder()
+        .with(new PrimitiveDoubleXLNumberTypeConverter())
+        .build();
+    try {
+      final MockFunctionRegistry.Builder builder = MockFunctionRegistry.builder();
+      for (final String name : names) {
+        builder.xlFunction(AsyncExecutorTest.class.getMethod(name, double.class));
+      }
+      final MockFunctionRegistry registry = builder.build();
+      registry.createAndRegisterFunctions(new ReflectiveInvokerFactory(EXCEL, typeConverters));
+      final DefaultExcelFunctionCallHandler handler = new DefaultExcelFunctionCallHandler(registry, EXCEL.getHeap());
+      return executor == null ? new AsyncExecutor(registry, handler) : new AsyncExecutor(registry, handler, executor);
+    } catch (final NoSuchMethodException e) {
+      throw new XL4JRuntimeException("Could not find method", e);
+    }
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(isLongRunning = true)
+  public static double longRunning(final double x) {
+    return 2 * x;
+  }
+
+  @XLFunction(isManualAsynchronous = true)
+  public static double manualAsynchronous(final double x) {
+    return 2 * x;
+  }
+
+  @XLFunction
+  public static double synchronous(final double x) {
+    return 2 * x;
+  }
+
+  @XLFunction(isLongRunning = true)
+  public static double blocking(final double x) throws InterruptedException {
+    s_started.countDown();
+    s_release.await();
+    return x;
+  }
+}
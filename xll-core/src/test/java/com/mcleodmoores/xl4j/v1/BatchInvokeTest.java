@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.FunctionStatistic;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.simulator.MockDLLExports;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link DefaultExcelFunctionCallHandler#invokeBatch(int, XLValue[][])}.
+ */
+public class BatchInvokeTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final Set<Thread> THREADS = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+  /**
+   * Tests that each row is called and the results are in the same order as the rows.
+   */
+  @Test
+  public void testRows() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("notThreadSafe");
+    final XLValue[] results = handler.invokeBatch(0, rows(100));
+    assertEquals(results.length, 100);
+    for (int i = 0; i < results.length; i++) {
+      assertEquals(results[i], XLNumber.of(2 * i));
+    }
+    final FunctionStatistic statistic = handler.getFunctionStatistics().getStatistics().get(0);
+    assertEquals(statistic.getCalls(), 100);
+  }
+
+  /**
+   * Tests that functions that are not thread-safe are called on the calling thread, however many rows there are.
+   */
+  @Test
+  public void testNotThreadSafe() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("notThreadSafe");
+    handler.setParallelThreshold(1);
+    THREADS.clear();
+    handler.invokeBatch(0, rows(1000));
+    assertEquals(THREADS, Collections.singleton(Thread.currentThread()));
+  }
+
+  /**
+   * Tests that thread-safe functions give the same results when the rows are called in parallel.
+   */
+  @Test
+  public void testParallel() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("threadSafe");
+    handler.setParallelThreshold(10);
+    final XLValue[] results = handler.invokeBatch(0, rows(10000));
+    for (int i = 0; i < results.length; i++) {
+      assertEquals(results[i], XLNumber.of(2 * i));
+    }
+    assertEquals(handler.getFunctionStatistics().getStatistics().get(0).getCalls(), 10000);
+  }
+
+  /**
+   * Tests that batches smaller than the threshold are called on the calling thread.
+   */
+  @Test
+  public void testBelowThreshold() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("threadSafe");
+    handler.setParallelThreshold(1000);
+    THREADS.clear();
+    handler.invokeBatch(0, rows(999));
+    assertEquals(THREADS, Collections.singleton(Thread.currentThread()));
+  }
+
+  /**
+   * Tests that rows that fail, and missing rows, are errors without affecting the other rows.
+   */
+  @Test
+  public void testErrors() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("notThreadSafe");
+    final XLValue[][] rows = rows(3);
+    rows[1] = new XLValue[] {XLString.of("not a number")};
+    rows[2] = null;
+    final XLValue[] results = handler.invokeBatch(0, rows);
+    assertEquals(results[0], XLNumber.of(0));
+    assertTrue(results[1] instanceof XLError);
+    assertEquals(results[2], XLError.Null);
+  }
+
+  /**
+   * Tests that every row is an error if the function is unknown.
+   */
+  @Test
+  public void testUnknownFunction() {
+    final XLValue[] results = newHandler("notThreadSafe").invokeBatch(1, rows(3));
+    for (final XLValue result : results) {
+      assertEquals(result, XLError.Null);
+    }
+  }
+
+  /**
+   * Tests that the rows cannot be null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullRows() {
+    newHandler("notThreadSafe").invokeBatch(0, null);
+  }
+
+  /**
+   * Tests the batch export of the simulated DLL.
+   */
+  @Test
+  public void testMockDllExports() {
+    final MockDLLExports exports = new MockDLLExports(newHandler("threadSafe"));
+    final XLValue[] results = exports.UDF_BATCH(0, rows(5));
+    for (int i = 0; i < results.length; i++) {
+      assertEquals(results[i], exports.UDF_0(XLNumber.of(i)));
+    }
+  }
+
+  /**
+   * Tests that the batch export of the simulated DLL calls each row separately if the call handler cannot invoke a batch.
+   */
+  @Test
+  public void testMockDllExportsWithoutBatch() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("threadSafe");
+    final MockDLLExports exports = new MockDLLExports(new ExcelFunctionCallHandler() {
+
+      @Override
+      public XLValue invoke(final int exportNumber, final XLValue... args) {
+        return handler.invoke(exportNumber, args);
+      }
+    });
+    final XLValue[] results = exports.UDF_BATCH(0, rows(5));
+    assertEquals(results.length, 5);
+    for (int i = 0; i < results.length; i++) {
+      assertEquals(results[i], XLNumber.of(2 * i));
+    }
+  }
+
+  private static XLValue[][] rows(final int n) {
+    final XLValue[][] rows = new XLValue[n][];
+    for (int i = 0; i < n; i++) {
+      rows[i] = new XLValue[] {XLNumber.of(i)};
+    }
+    return rows;
+  }
+
+  private static DefaultExcelFunctionCallHandler newHandler(final String name) {
+    final TypeConverterRegistry typeConverters = MockTypeConverterRegistry.builder()
+        .with(new PrimitiveDoubleXLNumberTypeConverter())
+        .build();
+    try {
+      final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+          .xlFunction(BatchInvokeTest.class.getMethod(name, double.class))
+          .build();
+      registry.createAndRegisterFunctions(new ReflectiveInvokerFactory(EXCEL, typeConverters));
+      return new DefaultExcelFunctionCallHandler(registry, EXCEL.getHeap());
+    } catch (final NoSuchMethodException e) {
+      throw new XL4JRuntimeException("Could not find method", e);
+    }
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(isMultiThreadSafe = true)
+  public static double threadSafe(final double x) {
+    THREADS.add(Thread.currentThread());
+    return 2 * x;
+  }
+
+  @XLFunction(isMultiThreadSafe = false)
+  public static double notThreadSafe(final double x) {
+    THREADS.add(Thread.currentThread());
+    return 2 * x;
+  }
+}
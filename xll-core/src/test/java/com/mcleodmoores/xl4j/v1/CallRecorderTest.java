@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBigData;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLInteger;
+import com.mcleodmoores.xl4j.v1.api.values.XLLocalReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLMultiReference;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLRange;
+import com.mcleodmoores.xl4j.v1.api.values.XLSheetId;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.CallLog;
+import com.mcleodmoores.xl4j.v1.core.CallLog.RecordedCall;
+import com.mcleodmoores.xl4j.v1.core.CallRecorder;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link CallRecorder} and {@link CallLog}.
+ */
+public class CallRecorderTest {
+
+  /**
+   * Tests that every type of value is read back as it was written.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testValues() throws IOException {
+    final File file = createFile();
+    final XLValue[] args = new XLValue[] {XLNumber.of(1.5), XLString.of("café"), XLBoolean.TRUE, XLInteger.of(-3), XLError.Div0,
+        XLNil.INSTANCE, XLMissing.INSTANCE, XLObject.of("java.util.List", 12345L), XLObject.of("java.util.Map", 6L).toXLString(),
+        XLArray.ofNumbers(new double[] {1, 2, 3, 4, 5, 6}, 2, 3),
+        XLArray.of(new XLValue[][] {{XLString.of("a"), XLNumber.of(2)}, {XLNil.INSTANCE, XLBoolean.FALSE}}),
+        XLBigData.of(new byte[] {1, 2, 3}), XLLocalReference.of(XLRange.of(1, 2, 3, 4)),
+        XLMultiReference.of(XLSheetId.of(2), XLRange.ofCell(1, 1), XLRange.of(0, 9, 0, 0))};
+    try (CallRecorder recorder = new CallRecorder(file)) {
+      recorder.define(3, "JMethod");
+      recorder.define(3, "Ignored");
+      recorder.record(3, args, XLObject.of("java.util.List", 99L), 1000);
+      recorder.record(3, new XLValue[0], XLError.NA, 2000);
+      recorder.record(4, new XLValue[] {XLNumber.of(1)}, XLNumber.of(2), 3000);
+      // written on another thread
+      recorder.flush();
+      assertEquals(recorder.getCalls(), 3);
+      assertEquals(recorder.getDropped(), 0);
+    }
+    try (CallLog log = new CallLog(file)) {
+      assertTrue(log.getStartTime() <= System.currentTimeMillis());
+      final RecordedCall first = log.next();
+      assertEquals(first.getExportNumber(), 3);
+      assertEquals(first.getFunctionName(), "JMethod");
+      assertEquals(first.getLatencyNanos(), 1000);
+      assertEquals(first.getArgs(), args);
+      assertEquals(first.getResultType(), XLObject.class);
+      assertEquals(first.getResult(), XLObject.of("java.util.List", 99L));
+      final RecordedCall second = log.next();
+      assertEquals(second.getArgs().length, 0);
+      assertEquals(second.getResultType(), XLError.class);
+      assertEquals(second.getResult(), XLError.NA);
+      assertTrue(second.getOffsetNanos() >= first.getOffsetNanos() - second.getLatencyNanos());
+      final RecordedCall third = log.next();
+      assertEquals(third.getFunctionName(), "");
+      assertEquals(third.getResultType(), XLNumber.class);
+      assertNull(third.getResult());
+      assertNull(log.next());
+    }
+  }
+
+  /**
+   * Tests that every error is read back as it was written.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testErrors() throws IOException {
+    final File file = createFile();
+    try (CallRecorder recorder = new CallRecorder(file)) {
+      for (final XLError error : XLError.values()) {
+        recorder.record(0, new XLValue[] {error}, error, 10);
+      }
+    }
+    try (CallLog log = new CallLog(file)) {
+      for (final XLError error : XLError.values()) {
+        final RecordedCall call = log.next();
+        assertEquals(call.getArgs(), new XLValue[] {error});
+        assertEquals(call.getResult(), error);
+      }
+      assertNull(log.next());
+    }
+  }
+
+  /**
+   * Tests that a log that ends part way through a call is read up to the last complete call.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testTruncated() throws IOException {
+    final File file = createFile();
+    try (CallRecorder recorder = new CallRecorder(file)) {
+      recorder.define(0, "Test");
+      recorder.record(0, new XLValue[] {XLString.of("first")}, XLNumber.of(1), 10);
+      recorder.record(0, new XLValue[] {XLString.of("second")}, XLNumber.of(2), 10);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 4);
+    }
+    try (CallLog log = new CallLog(file)) {
+      assertEquals(log.next().getArgs()[0], XLString.of("first"));
+      assertNull(log.next());
+    }
+  }
+
+  /**
+   * Tests that a file that is not a call log is rejected.
+   *
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNotCallLog() throws IOException {
+    final File file = createFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[64]);
+    }
+    new CallLog(file).close();
+  }
+
+  /**
+   * Tests that nothing is written after the recorder is closed.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testClosed() throws IOException {
+    final File file = createFile();
+    final CallRecorder recorder = new CallRecorder(file);
+    recorder.close();
+    recorder.record(0, new XLValue[0], XLNil.INSTANCE, 0);
+    recorder.flush();
+    recorder.close();
+    assertEquals(recorder.getCalls(), 0);
+    try (CallLog log = new CallLog(file)) {
+      assertNull(log.next());
+    }
+  }
+
+  /**
+   * Tests that calls that do not fit in the queue are dropped and counted, and that the calls that are written can be read.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testDropped() throws IOException {
+    final File file = createFile();
+    final int n = 10000;
+    final CallRecorder recorder = new CallRecorder(file, 1);
+    try {
+      recorder.define(0, "Test");
+      for (int i = 0; i < n; i++) {
+        recorder.record(0, new XLValue[] {XLNumber.of(i)}, XLNumber.of(i), 10);
+      }
+    } finally {
+      recorder.close();
+    }
+    assertTrue(recorder.getCalls() > 0);
+    assertEquals(recorder.getCalls() + recorder.getDropped(), n);
+    try (CallLog log = new CallLog(file)) {
+      int calls = 0;
+      double previous = -1;
+      for (RecordedCall call = log.next(); call != null; call = log.next()) {
+        assertEquals(call.getFunctionName(), "Test");
+        final double value = ((XLNumber) call.getArgs()[0]).getValue();
+        assertTrue(value > previous);
+        previous = value;
+        calls++;
+      }
+      assertEquals(calls, recorder.getCalls());
+    }
+  }
+
+  private static File createFile() throws IOException {
+    final File file = File.createTempFile("xl4j-calls", ".log");
+    file.deleteOnExit();
+    return file;
+  }
+}
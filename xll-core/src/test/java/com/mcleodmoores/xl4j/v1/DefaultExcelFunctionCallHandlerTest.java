@@ -4,6 +4,8 @@
 package com.mcleodmoores.xl4j.v1;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.Objects;
@@ -262,6 +264,9 @@ public class DefaultExcelFunctionCallHandlerTest {
     assertEquals(definitions.size(), 1);
     final int exportNumber = definitions.iterator().next().getExportNumber();
     assertEquals(handler.invoke(exportNumber, XLString.of("A")), XLString.of("A####"));
+    // a string parameter is passed the object when the argument is an object handle passed as a string
+    final XLObject xlObject = XLObject.of(String.class, HEAP.getHandle("B"));
+    assertEquals(handler.invoke(exportNumber, xlObject.toXLString()), XLString.of("B####"));
   }
 
   /**
@@ -286,6 +291,57 @@ public class DefaultExcelFunctionCallHandlerTest {
     assertEquals(HEAP.getObject(xlObject.getHandle()), new TestClass(23));
   }
 
+  /**
+   * Tests that the call plan is reused and that it gives the same results as the traced calls.
+   * @throws NoSuchMethodException  if the method cannot be found
+   * @throws SecurityException  if the method cannot be found
+   */
+  @Test
+  public void testTracing() throws NoSuchMethodException, SecurityException {
+    final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+        .xlFunction(TestClass.class.getMethod("method", Double.class))
+        .build();
+    final InvokerFactory invokerFactory = new ReflectiveInvokerFactory(EXCEL, TYPE_CONVERTERS);
+    final DefaultExcelFunctionCallHandler handler = new DefaultExcelFunctionCallHandler(registry, HEAP);
+    final ExcelCallback callback = new DefaultExcelCallback(new NativeExcelFunctionEntryAccumulator());
+    registry.createAndRegisterFunctions(invokerFactory);
+    registry.registerFunctions(callback);
+    final int exportNumber = registry.getFunctionDefinitions().iterator().next().getExportNumber();
+    final TestClass object = new TestClass(2);
+    final XLObject xlObject = XLObject.of(object.getClass(), HEAP.getHandle(object));
+    assertFalse(handler.isTracing());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(handler.invoke(exportNumber, xlObject, XLNumber.of(i)), XLNumber.of(2 * i));
+      assertEquals(handler.invoke(exportNumber, xlObject.toXLString(), XLNumber.of(i)), XLNumber.of(2 * i));
+    }
+    handler.setTracing(true);
+    assertTrue(handler.isTracing());
+    assertEquals(handler.invoke(exportNumber, xlObject, XLNumber.of(5)), XLNumber.of(10));
+    assertEquals(handler.invoke(exportNumber, xlObject.toXLString(), XLNumber.of(4)), XLNumber.of(8));
+    handler.setTracing(false);
+    assertEquals(handler.invoke(exportNumber, xlObject, XLNumber.of(5)), XLNumber.of(10));
+  }
+
+  /**
+   * Tests that the object reference for an instance method cannot be a value.
+   * @throws NoSuchMethodException  if the method cannot be found
+   * @throws SecurityException  if the method cannot be found
+   */
+  @Test
+  public void testNoObjectReference() throws NoSuchMethodException, SecurityException {
+    final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+        .xlFunction(TestClass.class.getMethod("method", Double.class))
+        .build();
+    final InvokerFactory invokerFactory = new ReflectiveInvokerFactory(EXCEL, TYPE_CONVERTERS);
+    final ExcelFunctionCallHandler handler = new DefaultExcelFunctionCallHandler(registry, HEAP);
+    final ExcelCallback callback = new DefaultExcelCallback(new NativeExcelFunctionEntryAccumulator());
+    registry.createAndRegisterFunctions(invokerFactory);
+    registry.registerFunctions(callback);
+    final int exportNumber = registry.getFunctionDefinitions().iterator().next().getExportNumber();
+    assertEquals(handler.invoke(exportNumber, XLNumber.of(1), XLNumber.of(5)), XLError.Null);
+    assertEquals(handler.invoke(exportNumber, new XLValue[0]), XLError.Null);
+  }
+
   /**
    * A test class.
    */
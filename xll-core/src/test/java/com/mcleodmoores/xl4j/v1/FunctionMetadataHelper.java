@@ -154,6 +154,16 @@ public final class FunctionMetadataHelper {
         return false;
       }
 
+      @Override
+      public boolean isCacheable() {
+        return false;
+      }
+
+      @Override
+      public boolean isSingleFlight() {
+        return false;
+      }
+
       @Override
       public int hashCode() {
         return super.hashCode();
@@ -359,6 +369,16 @@ public final class FunctionMetadataHelper {
         return false;
       }
 
+      @Override
+      public boolean isCacheable() {
+        return false;
+      }
+
+      @Override
+      public boolean isSingleFlight() {
+        return false;
+      }
+
       @Override
       public int hashCode() {
         return super.hashCode();
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.FunctionStatistic;
+import com.mcleodmoores.xl4j.v1.core.FunctionStatistics;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator;
+
+/**
+ * Unit tests for {@link FunctionStatistics}.
+ */
+public class FunctionStatisticsTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final TypeConverterRegistry TYPE_CONVERTERS = MockTypeConverterRegistry.builder()
+      .with(new PrimitiveDoubleXLNumberTypeConverter())
+      .build();
+
+  /**
+   * Tests the exception when the registry is null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullRegistry() {
+    new FunctionStatistics(null);
+  }
+
+  /**
+   * Tests that calls are counted for each function and that unknown export numbers are ignored.
+   * @throws Exception  if the methods cannot be found
+   */
+  @Test
+  public void testCounts() throws Exception {
+    final MockFunctionRegistry registry = createRegistry();
+    final FunctionStatistics statistics = new FunctionStatistics(registry);
+    final int add = getExportNumber(registry, "StatsAdd");
+    final int negate = getExportNumber(registry, "StatsNegate");
+    assertNull(statistics.getStatistic("StatsAdd"));
+    statistics.record(add, 1000, false, 3);
+    statistics.record(add, 3000, true, 3);
+    statistics.record(negate, 10000, false, 100);
+    statistics.record(-1, 10000, false, 1);
+    statistics.record(1000, 10000, false, 1);
+    final FunctionStatistic addStatistic = statistics.getStatistic("StatsAdd");
+    assertEquals(addStatistic.getName(), "StatsAdd");
+    assertEquals(addStatistic.getCalls(), 2);
+    assertEquals(addStatistic.getErrors(), 1);
+    assertEquals(addStatistic.getCells(), 6);
+    assertEquals(addStatistic.getTotalNanos(), 4000);
+    assertEquals(addStatistic.getMeanNanos(), 2000.);
+    assertEquals(addStatistic.getMaxNanos(), 3000);
+    final List<FunctionStatistic> all = statistics.getStatistics();
+    assertEquals(all.size(), 2);
+    assertEquals(all.get(0).getName(), "StatsAdd");
+    assertEquals(all.get(1).getName(), "StatsNegate");
+    final List<FunctionStatistic> top = statistics.getTopFunctions(1);
+    assertEquals(top.size(), 1);
+    assertEquals(top.get(0).getName(), "StatsNegate");
+    assertEquals(statistics.getTopFunctions(10).size(), 2);
+    statistics.reset();
+    assertTrue(statistics.getStatistics().isEmpty());
+  }
+
+  /**
+   * Tests that the percentiles are within the accuracy of the histogram.
+   * @throws Exception  if the methods cannot be found
+   */
+  @Test
+  public void testPercentiles() throws Exception {
+    final MockFunctionRegistry registry = createRegistry();
+    final FunctionStatistics statistics = new FunctionStatistics(registry);
+    final int add = getExportNumber(registry, "StatsAdd");
+    for (int i = 1; i <= 1000; i++) {
+      statistics.record(add, i * 1000L, false, 1);
+    }
+    final FunctionStatistic statistic = statistics.getStatistic("StatsAdd");
+    assertEquals(statistic.getPercentileNanos(0), 1000, 125);
+    assertEquals(statistic.getPercentileNanos(50), 500000, 62500);
+    assertEquals(statistic.getPercentileNanos(90), 900000, 112500);
+    assertEquals(statistic.getPercentileNanos(99), 990000, 123750);
+    assertEquals(statistic.getPercentileNanos(100), 1000000);
+    // very long calls go in the last bucket
+    statistics.record(add, Long.MAX_VALUE, false, 1);
+    assertEquals(statistics.getStatistic("StatsAdd").getPercentileNanos(100), Long.MAX_VALUE);
+  }
+
+  /**
+   * Tests that concurrent updates are not lost.
+   * @throws Exception  if a task fails
+   */
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final MockFunctionRegistry registry = createRegistry();
+    final FunctionStatistics statistics = new FunctionStatistics(registry);
+    final int add = getExportNumber(registry, "StatsAdd");
+    final int n = 100000;
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<Void>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = 0; i < n; i++) {
+              statistics.record(add, 10, i % 10 == 0, 2);
+            }
+            return null;
+          }
+        }));
+      }
+      for (final Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    final FunctionStatistic statistic = statistics.getStatistic("StatsAdd");
+    assertEquals(statistic.getCalls(), 4 * n);
+    assertEquals(statistic.getErrors(), 4 * n / 10);
+    assertEquals(statistic.getCells(), 8 * n);
+    assertEquals(statistic.getTotalNanos(), 40 * n);
+  }
+
+  /**
+   * Tests that the call handler records calls and errors.
+   * @throws Exception  if the methods cannot be found
+   */
+  @Test
+  public void testCallHandler() throws Exception {
+    final MockFunctionRegistry registry = createRegistry();
+    final DefaultExcelFunctionCallHandler handler = new DefaultExcelFunctionCallHandler(registry, EXCEL.getHeap());
+    final int add = getExportNumber(registry, "StatsAdd");
+    assertEquals(handler.invoke(add, XLNumber.of(1), XLNumber.of(2)), XLNumber.of(3));
+    assertEquals(handler.invoke(add, XLNumber.of(1)), XLError.Null);
+    assertEquals(handler.invoke(add, XLArray.of(new XLValue[][] {{XLNumber.of(1), XLNumber.of(2)}}), XLNumber.of(2)), XLError.Null);
+    final FunctionStatistic statistic = handler.getFunctionStatistics().getStatistic("StatsAdd");
+    assertEquals(statistic.getCalls(), 3);
+    assertEquals(statistic.getErrors(), 2);
+    assertEquals(statistic.getCells(), 3 + 2 + 4);
+    handler.getFunctionStatistics().setEnabled(false);
+    handler.invoke(add, XLNumber.of(1), XLNumber.of(2));
+    assertEquals(handler.getFunctionStatistics().getStatistic("StatsAdd").getCalls(), 3);
+  }
+
+  /**
+   * Tests the file dump.
+   * @throws Exception  if the file cannot be read
+   */
+  @Test
+  public void testDump() throws Exception {
+    final MockFunctionRegistry registry = createRegistry();
+    final FunctionStatistics statistics = new FunctionStatistics(registry);
+    statistics.record(getExportNumber(registry, "StatsAdd"), 2000, false, 3);
+    final File file = File.createTempFile("xl4j-stats", ".csv");
+    file.deleteOnExit();
+    statistics.dump(file);
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals(lines.size(), 2);
+    assertTrue(lines.get(0).startsWith("Name,Calls,Errors,Cells"));
+    assertTrue(lines.get(1).startsWith("StatsAdd,1,0,3,2,2.0,"), lines.get(1));
+  }
+
+  private static MockFunctionRegistry createRegistry() throws Exception {
+    final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+        .xlFunction(FunctionStatisticsTest.class.getMethod("add", Double.TYPE, Double.TYPE))
+        .xlFunction(FunctionStatisticsTest.class.getMethod("negate", Double.TYPE))
+        .build();
+    registry.createAndRegisterFunctions(new ReflectiveInvokerFactory(EXCEL, TYPE_CONVERTERS));
+    registry.registerFunctions(new DefaultExcelCallback(new NativeExcelFunctionEntryAccumulator()));
+    return registry;
+  }
+
+  private static int getExportNumber(final MockFunctionRegistry registry, final String name) {
+    for (final FunctionDefinition definition : registry.getFunctionDefinitions()) {
+      if (definition.getFunctionMetadata().getName().equals(name)) {
+        return definition.getExportNumber();
+      }
+    }
+    throw new XL4JRuntimeException("Could not find " + name);
+  }
+
+  /**
+   * @param a  the first value
+   * @param b  the second value
+   * @return  the sum
+   */
+  @XLFunction(name = "StatsAdd")
+  public static double add(@XLParameter final double a, @XLParameter final double b) {
+    return a + b;
+  }
+
+  /**
+   * @param a  the value
+   * @return  the negated value
+   */
+  @XLFunction(name = "StatsNegate")
+  public static double negate(@XLParameter final double a) {
+    return -a;
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.core.HandleGraph;
+
+/**
+ * Unit tests for {@link HandleGraph}.
+ */
+public class HandleGraphTest {
+
+  /**
+   * Tests adding edges.
+   */
+  @Test
+  public void testEdges() {
+    final HandleGraph graph = new HandleGraph();
+    graph.addEdges(3, new long[] {1, 2, 1, 3}, 0, 4);
+    // duplicates and edges to itself are ignored
+    assertEquals(graph.getEdgeCount(), 2);
+    assertEquals(graph.size(), 3);
+    assertEquals(sorted(graph.getProducers(3)), new long[] {1, 2});
+    assertEquals(graph.getConsumers(1), new long[] {3});
+    assertTrue(graph.hasConsumers(2));
+    assertFalse(graph.hasConsumers(3));
+    assertEquals(graph.getProducers(4).length, 0);
+    graph.addEdges(5, new long[] {5}, 0, 1);
+    assertEquals(graph.size(), 3);
+  }
+
+  /**
+   * Tests the descendants and ancestors of a handle, including a handle that can be reached by more than one path.
+   */
+  @Test
+  public void testWalk() {
+    final HandleGraph graph = new HandleGraph();
+    graph.addEdges(2, new long[] {1}, 0, 1);
+    graph.addEdges(3, new long[] {1}, 0, 1);
+    graph.addEdges(4, new long[] {2, 3}, 0, 2);
+    graph.addEdges(5, new long[] {4}, 0, 1);
+    assertEquals(sorted(graph.getDescendants(1)), new long[] {2, 3, 4, 5});
+    assertEquals(sorted(graph.getDescendants(3)), new long[] {4, 5});
+    assertEquals(sorted(graph.getAncestors(5)), new long[] {1, 2, 3, 4});
+    assertEquals(graph.getDescendants(5).length, 0);
+    assertEquals(graph.getDescendants(6).length, 0);
+  }
+
+  /**
+   * Tests that removing a handle removes its edges, and any handle that is left without edges.
+   */
+  @Test
+  public void testRemove() {
+    final HandleGraph graph = new HandleGraph();
+    graph.addEdges(2, new long[] {1}, 0, 1);
+    graph.addEdges(3, new long[] {2}, 0, 1);
+    graph.addEdges(4, new long[] {2}, 0, 1);
+    graph.remove(3);
+    assertEquals(graph.getConsumers(2), new long[] {4});
+    assertEquals(graph.getEdgeCount(), 2);
+    graph.remove(2);
+    assertEquals(graph.getEdgeCount(), 0);
+    assertEquals(graph.size(), 0);
+    assertFalse(graph.hasConsumers(1));
+    assertEquals(graph.getProducers(4).length, 0);
+  }
+
+  /**
+   * Tests a graph with many handles.
+   */
+  @Test
+  public void testManyHandles() {
+    final HandleGraph graph = new HandleGraph();
+    final int n = 10000;
+    for (long i = 1; i < n; i++) {
+      graph.addEdges(i, new long[] {0, i - 1}, 0, 2);
+    }
+    assertEquals(graph.size(), n);
+    assertEquals(graph.getEdgeCount(), 2 * n - 3);
+    assertEquals(graph.getConsumers(0).length, n - 1);
+    assertEquals(graph.getDescendants(0).length, n - 1);
+    for (long i = n - 1; i > 0; i -= 2) {
+      graph.remove(i);
+    }
+    assertEquals(graph.getConsumers(0).length, n / 2 - 1);
+    for (long i = 1; i < n; i++) {
+      graph.remove(i);
+    }
+    assertEquals(graph.size(), 0);
+    assertEquals(graph.getEdgeCount(), 0);
+  }
+
+  private static long[] sorted(final long[] handles) {
+    Arrays.sort(handles);
+    return handles;
+  }
+}
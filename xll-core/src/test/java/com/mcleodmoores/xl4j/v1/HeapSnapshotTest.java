@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.core.HeapSnapshot;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link HeapSnapshot}.
+ */
+public class HeapSnapshotTest {
+  private static final int N_CYCLES = 4;
+
+  /**
+   * Tests that serializable objects are restored with the same handle after a restart and that handles for objects that
+   * were not saved are stale.
+   *
+   * @throws IOException
+   *           if the snapshot cannot be opened
+   */
+  @Test
+  public void testRestore() throws IOException {
+    final File file = createFile();
+    final HeapSnapshot snapshot = new HeapSnapshot(file);
+    final ShardedHeap heap = new ShardedHeap(false, snapshot);
+    final long stringHandle = heap.getHandle(new String("persisted"));
+    final long listHandle = heap.getHandle(new ArrayList<>(Arrays.asList(1, 2, 3)));
+    final long objectHandle = heap.getHandle(new Object());
+    snapshot.close();
+
+    final HeapSnapshot restarted = new HeapSnapshot(file);
+    assertEquals(restarted.size(), 2);
+    assertTrue(restarted.getNextHandle() > objectHandle);
+    final ShardedHeap restartedHeap = new ShardedHeap(false, restarted);
+    assertEquals(restartedHeap.size(), 0);
+    final Object string = restartedHeap.getObject(stringHandle);
+    assertEquals(string, "persisted");
+    assertSame(restartedHeap.getObject(stringHandle), string);
+    assertEquals(restartedHeap.getHandle(string), stringHandle);
+    assertEquals(restartedHeap.getObject(listHandle), Arrays.asList(1, 2, 3));
+    assertEquals(restartedHeap.size(), 2);
+    assertTrue(restarted.isStale(objectHandle));
+    assertFalse(restarted.isStale(stringHandle));
+    try {
+      restartedHeap.getObject(objectHandle);
+      fail();
+    } catch (final XL4JRuntimeException e) {
+      assertTrue(e.getMessage().contains("previous session"));
+    }
+    // new handles are never the same as handles from the previous session
+    assertTrue(restartedHeap.getHandle(new Object()) > Math.max(stringHandle, Math.max(listHandle, objectHandle)));
+    restarted.close();
+  }
+
+  /**
+   * Tests that objects that have been removed from the heap are not restored.
+   *
+   * @throws IOException
+   *           if the snapshot cannot be opened
+   */
+  @Test
+  public void testRemovedObjects() throws IOException {
+    final File file = createFile();
+    final HeapSnapshot snapshot = new HeapSnapshot(file);
+    final ShardedHeap heap = new ShardedHeap(false, snapshot);
+    final long liveHandle = heap.getHandle(new String("live"));
+    final long deadHandle = heap.getHandle(new String("dead"));
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {liveHandle});
+    }
+    snapshot.close();
+
+    final HeapSnapshot restarted = new HeapSnapshot(file);
+    assertEquals(restarted.size(), 1);
+    assertTrue(restarted.contains(liveHandle));
+    assertFalse(restarted.contains(deadHandle));
+    assertTrue(restarted.isStale(deadHandle));
+    restarted.close();
+  }
+
+  /**
+   * Tests that objects from a previous session are kept while their handles are reported, and dropped once they have gone
+   * unreported for enough cycles without being restored.
+   *
+   * @throws IOException
+   *           if the snapshot cannot be opened
+   */
+  @Test
+  public void testUnclaimedObjects() throws IOException {
+    final File file = createFile();
+    final HeapSnapshot snapshot = new HeapSnapshot(file);
+    final long handle = new ShardedHeap(false, snapshot).getHandle(new String("unclaimed"));
+    snapshot.close();
+
+    final HeapSnapshot restarted = new HeapSnapshot(file);
+    final ShardedHeap restartedHeap = new ShardedHeap(false, restarted);
+    for (int i = 0; i < 2 * N_CYCLES; i++) {
+      // unrecognised until it is restored
+      assertEquals(restartedHeap.cycleGC(new long[] {handle}), 1);
+    }
+    restarted.flush();
+    assertTrue(restarted.contains(handle));
+    for (int i = 0; i < N_CYCLES; i++) {
+      restartedHeap.cycleGC(new long[0]);
+    }
+    restarted.flush();
+    assertFalse(restarted.contains(handle));
+    restarted.close();
+  }
+
+  /**
+   * Tests that compaction keeps the live objects.
+   *
+   * @throws Exception
+   *           if the snapshot cannot be opened or compacted
+   */
+  @Test
+  public void testCompaction() throws Exception {
+    final File file = createFile();
+    final HeapSnapshot snapshot = new HeapSnapshot(file);
+    final ShardedHeap heap = new ShardedHeap(false, snapshot);
+    final List<Long> liveHandles = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final long handle = heap.getHandle(Integer.toString(i));
+      if (i % 10 == 0) {
+        liveHandles.add(handle);
+      }
+    }
+    final long[] live = new long[liveHandles.size()];
+    for (int i = 0; i < live.length; i++) {
+      live[i] = liveHandles.get(i);
+    }
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(live);
+    }
+    snapshot.flush();
+    assertEquals(snapshot.size(), live.length);
+    final long length = file.length();
+    assertTrue(snapshot.compact().get() > 0);
+    assertEquals(file.length(), length);
+    assertEquals(snapshot.compact().get().intValue(), 0);
+    final long newHandle = heap.getHandle("after compaction");
+    snapshot.close();
+
+    final HeapSnapshot restarted = new HeapSnapshot(file);
+    assertEquals(restarted.size(), live.length + 1);
+    final ShardedHeap restartedHeap = new ShardedHeap(false, restarted);
+    for (int i = 0; i < live.length; i++) {
+      assertEquals(restartedHeap.getObject(live[i]), Integer.toString(i * 10));
+    }
+    assertEquals(restartedHeap.getObject(newHandle), "after compaction");
+    restarted.close();
+  }
+
+  /**
+   * Tests that a file that is not a snapshot is overwritten.
+   *
+   * @throws IOException
+   *           if the snapshot cannot be opened
+   */
+  @Test
+  public void testInvalidFile() throws IOException {
+    final File file = createFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30,
+          31, 32, 33, 34, 35, 36, 37, 38, 39, 40});
+    }
+    final HeapSnapshot snapshot = new HeapSnapshot(file);
+    assertEquals(snapshot.size(), 0);
+    final long handle = new ShardedHeap(false, snapshot).getHandle(new String("valid"));
+    snapshot.close();
+    final HeapSnapshot restarted = new HeapSnapshot(file);
+    assertTrue(restarted.contains(handle));
+    restarted.close();
+  }
+
+  private static File createFile() throws IOException {
+    final File file = File.createTempFile("xl4j-heap", ".snapshot");
+    file.deleteOnExit();
+    return file;
+  }
+}
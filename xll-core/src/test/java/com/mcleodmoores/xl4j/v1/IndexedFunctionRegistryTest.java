@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.FunctionDefinition;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelCallback;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndex;
+import com.mcleodmoores.xl4j.v1.core.FunctionIndexEntry;
+import com.mcleodmoores.xl4j.v1.core.IndexedFunctionRegistry;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.processor.FunctionIndexProcessor;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator;
+import com.mcleodmoores.xl4j.v1.xll.NativeExcelFunctionEntryAccumulator.FunctionEntry;
+
+/**
+ * Unit tests for {@link FunctionIndexProcessor} and {@link IndexedFunctionRegistry}. Test classes are compiled with the processor
+ * and the registrations from the index are compared with those made from the function definitions.
+ */
+public class IndexedFunctionRegistryTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final String LOADED_PROPERTY = "xl4j.test.indexed.loaded";
+  private static final String FUNCTIONS_SOURCE = "package indexed;\n"
+      + "import com.mcleodmoores.xl4j.v1.api.annotations.*;\n"
+      + "import com.mcleodmoores.xl4j.v1.api.values.*;\n"
+      + "@XLNamespace(\"Idx.\")\n"
+      + "public class Functions {\n"
+      + "  static { System.setProperty(\"" + LOADED_PROPERTY + "\", \"true\"); }\n"
+      + "  @XLConstant public static final double CONSTANT = 3;\n"
+      + "  private final double _value;\n"
+      + "  @XLFunction(name = \"New\", description = \"Creates\")\n"
+      + "  public Functions(@XLParameter(name = \"value\") final double value) { _value = value; }\n"
+      + "  @XLFunction(name = \"Add\", description = \"Adds\", category = \"Maths\", helpTopic = \"help\")\n"
+      + "  public static double add(@XLParameter(name = \"a\", description = \"first\") final double a, final double b) { return a + b; }\n"
+      + "  @XLFunction public double value() { return _value; }\n"
+      + "  @XLFunction(name = \"Count\") public static int count(@XLParameter(name = \"values\") final XLValue... values) { return values.length; }\n"
+      + "  @XLFunction(name = \"Now\", isVolatile = true, isMultiThreadSafe = false) public static String now() { return \"now\"; }\n"
+      + "  @XLFunction(name = \"Nested\") public static String nested(final int[] values, final Inner inner) { return \"\"; }\n"
+      + "  public static class Inner { }\n"
+      + "}\n";
+  private static final String POINT_SOURCE = "package indexed;\n"
+      + "import com.mcleodmoores.xl4j.v1.api.annotations.*;\n"
+      + "@XLFunctions(prefix = \"Point\", description = \"A point\")\n"
+      + "public class Point {\n"
+      + "  private final double _x;\n"
+      + "  public Point(final double x) { _x = x; }\n"
+      + "  public double getX() { return _x; }\n"
+      + "  public static Point origin() { return new Point(0); }\n"
+      + "}\n";
+  private static final String CONSTANTS_SOURCE = "package indexed;\n"
+      + "import com.mcleodmoores.xl4j.v1.api.annotations.*;\n"
+      + "@XLConstant(name = \"Consts\", category = \"Constants\")\n"
+      + "public class Constants {\n"
+      + "  public static final int ONE = 1;\n"
+      + "  public static final String NAME = \"name\";\n"
+      + "}\n";
+  private Path _directory;
+  private URLClassLoader _classLoader;
+
+  /**
+   * Compiles the test classes with the processor.
+   * @throws IOException  if the output directory cannot be created
+   */
+  @BeforeClass
+  public void compile() throws IOException {
+    _directory = Files.createTempDirectory("xl4j-index");
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final List<JavaFileObject> sources = Arrays.asList(source("Functions", FUNCTIONS_SOURCE), source("Point", POINT_SOURCE),
+        source("Constants", CONSTANTS_SOURCE));
+    final List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", _directory.toString(),
+        "-source", "1.7", "-target", "1.7");
+    final JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, sources);
+    task.setProcessors(Arrays.asList(new FunctionIndexProcessor()));
+    assertTrue(task.call());
+    _classLoader = new URLClassLoader(new URL[] {_directory.toUri().toURL()}, getClass().getClassLoader());
+  }
+
+  /**
+   * Removes the compiled classes.
+   * @throws IOException  if the directory cannot be deleted
+   */
+  @AfterClass(alwaysRun = true)
+  public void cleanUp() throws IOException {
+    if (_classLoader != null) {
+      _classLoader.close();
+    }
+    if (_directory != null) {
+      delete(_directory.toFile());
+    }
+  }
+
+  /**
+   * Tests the names and members written to the index.
+   */
+  @Test
+  public void testIndexContents() {
+    final IndexedFunctionRegistry registry = new IndexedFunctionRegistry(_classLoader, newInvokerFactory());
+    final NativeExcelFunctionEntryAccumulator accumulator = new NativeExcelFunctionEntryAccumulator();
+    registry.registerFunctions(new DefaultExcelCallback(accumulator));
+    final Map<String, FunctionEntry> entries = byName(accumulator);
+    assertEquals(entries.keySet().size(), 12);
+    for (final String name : Arrays.asList("Idx.Add", "Idx.Functions.value", "Idx.Count", "Idx.Now", "Idx.Nested", "Idx.New",
+        "Idx.Functions.CONSTANT", "Point", "Point.getX", "Point.origin", "Consts.ONE", "Consts.NAME")) {
+      assertTrue(entries.containsKey(name), name);
+    }
+    final FunctionEntry add = entries.get("Idx.Add");
+    assertEquals(add._functionSignature, "QQQ$");
+    assertEquals(add._argumentNames, "a,2");
+    assertEquals(add._functionCategory, "Maths");
+    assertEquals(add._helpTopic, "help");
+    assertEquals(add._description, "Adds");
+    assertEquals(add._argsHelp, new String[] {"first  ", "  "});
+    assertEquals(entries.get("Idx.Functions.value")._functionSignature, "QQ$");
+    assertEquals(entries.get("Idx.Functions.value")._argumentNames, "Functions");
+    assertEquals(entries.get("Idx.Now")._functionSignature, "Q!");
+    assertTrue(entries.get("Idx.Count")._isVarArgs);
+    assertEquals(entries.get("Consts.ONE")._functionCategory, "Constants");
+  }
+
+  /**
+   * Tests that registering from the index gives the same registrations as registering the function definitions.
+   */
+  @Test
+  public void testSameAsDefinitions() {
+    final IndexedFunctionRegistry registry = new IndexedFunctionRegistry(_classLoader, newInvokerFactory());
+    final NativeExcelFunctionEntryAccumulator fromIndex = new NativeExcelFunctionEntryAccumulator();
+    registry.registerFunctions(new DefaultExcelCallback(fromIndex));
+    final NativeExcelFunctionEntryAccumulator fromDefinitions = new NativeExcelFunctionEntryAccumulator();
+    final DefaultExcelCallback callback = new DefaultExcelCallback(fromDefinitions);
+    for (final FunctionDefinition definition : registry.getFunctionDefinitions()) {
+      callback.registerFunction(definition);
+    }
+    final Map<String, FunctionEntry> expected = byName(fromDefinitions);
+    final Map<String, FunctionEntry> actual = byName(fromIndex);
+    assertEquals(actual.keySet(), expected.keySet());
+    for (final Map.Entry<String, FunctionEntry> entry : expected.entrySet()) {
+      final String name = entry.getKey();
+      final FunctionEntry e = entry.getValue();
+      final FunctionEntry a = actual.get(name);
+      assertEquals(a._exportNumber, e._exportNumber, name);
+      assertEquals(a._functionExportName, e._functionExportName, name);
+      assertEquals(a._functionSignature, e._functionSignature, name);
+      assertEquals(a._argumentNames, e._argumentNames, name);
+      assertEquals(a._functionCategory, e._functionCategory, name);
+      assertEquals(a._functionType, e._functionType, name);
+      assertEquals(a._helpTopic, e._helpTopic, name);
+      assertEquals(a._description, e._description, name);
+      assertEquals(a._argsHelp, e._argsHelp, name);
+      assertEquals(a._isVarArgs, e._isVarArgs, name);
+      assertEquals(a._isLongRunning, e._isLongRunning, name);
+      assertEquals(a._isAutoRTDAsynchronous, e._isAutoRTDAsynchronous, name);
+      assertEquals(a._isManualAsynchronous, e._isManualAsynchronous, name);
+      assertEquals(a._isCallerRequired, e._isCallerRequired, name);
+    }
+  }
+
+  /**
+   * Tests that classes are not loaded until a function is called.
+   */
+  @Test
+  public void testLazyLoading() {
+    System.clearProperty(LOADED_PROPERTY);
+    // a new class loader so that the class has not been initialized by other tests
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {_directory.toUri().toURL()}, getClass().getClassLoader())) {
+      final IndexedFunctionRegistry registry = new IndexedFunctionRegistry(classLoader, newInvokerFactory());
+      final NativeExcelFunctionEntryAccumulator accumulator = new NativeExcelFunctionEntryAccumulator();
+      registry.registerFunctions(new DefaultExcelCallback(accumulator));
+      assertNull(System.getProperty(LOADED_PROPERTY));
+      final int exportNumber = byName(accumulator).get("Idx.Add")._exportNumber;
+      final DefaultExcelFunctionCallHandler handler = new DefaultExcelFunctionCallHandler(registry, EXCEL.getHeap());
+      assertEquals(handler.invoke(exportNumber, XLNumber.of(1), XLNumber.of(2)), XLNumber.of(3));
+      assertEquals(System.getProperty(LOADED_PROPERTY), "true");
+      assertEquals(handler.invoke(byName(accumulator).get("Idx.Now")._exportNumber), XLString.of("now"));
+    } catch (final IOException e) {
+      throw new XL4JRuntimeException("Could not close class loader", e);
+    } finally {
+      System.clearProperty(LOADED_PROPERTY);
+    }
+  }
+
+  /**
+   * Tests the exception when there is no function for an export number.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testUnknownExportNumber() {
+    new IndexedFunctionRegistry(_classLoader, newInvokerFactory()).getFunctionDefinition(100);
+  }
+
+  /**
+   * Tests that there is no index visible to a class loader that does not see the compiled classes.
+   */
+  @Test
+  public void testHasIndex() {
+    assertTrue(IndexedFunctionRegistry.hasIndex(_classLoader));
+    assertFalse(IndexedFunctionRegistry.hasIndex(new URLClassLoader(new URL[0], null)));
+  }
+
+  /**
+   * Tests that entries, including those with nulls and characters that must be escaped, can be written and read.
+   * @throws IOException  if the index cannot be read or written
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    final List<FunctionIndexEntry> entries = new ArrayList<>();
+    entries.add(FunctionIndexEntry.builder()
+        .member(FunctionIndexEntry.MemberType.METHOD, FunctionIndexEntry.Source.FUNCTION, "a.B", "c", "int", "[Ljava.lang.String;")
+        .function("B.c", "QQQ$", 1)
+        .flags(true, false, true, false, true)
+        .help("x,y", "Category\twith tab", null, "Line\nbreak and \\ backslash", "first", null)
+        .build());
+    entries.add(FunctionIndexEntry.builder()
+        .member(FunctionIndexEntry.MemberType.FIELD, FunctionIndexEntry.Source.CONSTANT_TYPE, "a.B", "D")
+        .function("B.D", "QQ$", 1)
+        .flags(false, false, false, false, false)
+        .help("", "B.D", null, null)
+        .build());
+    final StringWriter writer = new StringWriter();
+    FunctionIndex.write(writer, entries);
+    assertEquals(FunctionIndex.read(new StringReader(writer.toString())), entries);
+  }
+
+  private static ReflectiveInvokerFactory newInvokerFactory() {
+    return new ReflectiveInvokerFactory(EXCEL, EXCEL.getTypeConverterRegistry());
+  }
+
+  private static Map<String, FunctionEntry> byName(final NativeExcelFunctionEntryAccumulator accumulator) {
+    final Map<String, FunctionEntry> entries = new HashMap<>();
+    for (final FunctionEntry entry : accumulator.getEntries()) {
+      entries.put(entry._functionWorksheetName, entry);
+    }
+    return entries;
+  }
+
+  private static JavaFileObject source(final String className, final String source) {
+    return new SimpleJavaFileObject(URI.create("string:///indexed/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
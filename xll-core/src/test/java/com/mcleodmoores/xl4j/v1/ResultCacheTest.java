@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.ResultCache;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.ObjectXLObjectTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.XLValueXLValueTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link ResultCache} and the caching of results in {@link DefaultExcelFunctionCallHandler}.
+ */
+public class ResultCacheTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final AtomicInteger CALLS = new AtomicInteger();
+  /** The number of cycles after which an unreported object is collected */
+  private static final int N_CYCLES = 4;
+
+  /**
+   * Tests that a cacheable function is only called once for the same arguments.
+   */
+  @Test
+  public void testCacheable() {
+    final Heap heap = new ShardedHeap();
+    final DefaultExcelFunctionCallHandler handler = newHandler(heap, "cacheable", double.class);
+    final int exportNumber = 0;
+    CALLS.set(0);
+    assertEquals(handler.invoke(exportNumber, XLNumber.of(2)), XLNumber.of(4));
+    assertEquals(handler.invoke(exportNumber, XLNumber.of(2)), XLNumber.of(4));
+    assertEquals(handler.invoke(exportNumber, XLNumber.of(3)), XLNumber.of(6));
+    assertEquals(CALLS.get(), 2);
+    final ResultCache cache = handler.getResultCache();
+    assertEquals(cache.getHits(), 1);
+    assertEquals(cache.getMisses(), 2);
+    assertEquals(cache.getSize(), 2);
+    assertEquals(cache.getWeight(), 4);
+    cache.clear();
+    assertEquals(handler.invoke(exportNumber, XLNumber.of(2)), XLNumber.of(4));
+    assertEquals(CALLS.get(), 3);
+  }
+
+  /**
+   * Tests that functions that are not marked as cacheable, or are volatile, are always called.
+   */
+  @Test
+  public void testNotCached() {
+    for (final String name : new String[] {"notCacheable", "volatileCacheable"}) {
+      final DefaultExcelFunctionCallHandler handler = newHandler(new ShardedHeap(), name, double.class);
+      CALLS.set(0);
+      handler.invoke(0, XLNumber.of(2));
+      handler.invoke(0, XLNumber.of(2));
+      assertEquals(CALLS.get(), 2, name);
+      assertEquals(handler.getResultCache().getSize(), 0);
+      assertEquals(handler.getResultCache().getMisses(), 0);
+    }
+  }
+
+  /**
+   * Tests that an object result is cached and that its handle is still valid after it has been collected from the heap.
+   */
+  @Test
+  public void testObjectResult() {
+    final ShardedHeap heap = new ShardedHeap();
+    final DefaultExcelFunctionCallHandler handler = newHandler(heap, "build", double.class);
+    CALLS.set(0);
+    final XLObject first = (XLObject) handler.invoke(0, XLNumber.of(1));
+    final Object object = heap.getObject(first.getHandle());
+    // collect the handle
+    for (int i = 0; i < 10; i++) {
+      heap.cycleGC(new long[0]);
+    }
+    final XLObject second = (XLObject) handler.invoke(0, XLNumber.of(1));
+    assertEquals(CALLS.get(), 1);
+    assertNotEquals(second.getHandle(), first.getHandle());
+    assertSame(heap.getObject(second.getHandle()), object);
+    assertEquals(second.getClazz(), first.getClazz());
+  }
+
+  /**
+   * Tests that object results are marked as recomputable, so that they can be evicted, and that calls that use an evicted
+   * object return #REF!.
+   */
+  @Test
+  public void testRecomputableResult() {
+    final ShardedHeap heap = new ShardedHeap();
+    final XLObject built = (XLObject) newHandler(heap, "build", double.class).invoke(0, XLNumber.of(1));
+    final long notRecomputable = heap.getHandle(new StringBuilder("not recomputable"));
+    heap.setMaxBytes(1);
+    heap.cycleGC(new long[0]);
+    heap.cycleGC(new long[0]);
+    assertEquals(heap.getEvictions(), 1);
+    heap.getObject(notRecomputable);
+    final DefaultExcelFunctionCallHandler handler = newHandler(heap, "identity", Object.class);
+    assertEquals(handler.invoke(0, built), XLError.Ref);
+    assertEquals(handler.invoke(0, XLObject.of(StringBuilder.class, built.getHandle() + 1000)), XLError.Null);
+  }
+
+  /**
+   * Tests that object arguments are keyed on their handle.
+   */
+  @Test
+  public void testObjectArguments() {
+    final Heap heap = new ShardedHeap();
+    final DefaultExcelFunctionCallHandler handler = newHandler(heap, "identity", Object.class);
+    final XLObject a = XLObject.of(StringBuilder.class, heap.getHandle(new StringBuilder("a")));
+    final XLObject b = XLObject.of(StringBuilder.class, heap.getHandle(new StringBuilder("a")));
+    CALLS.set(0);
+    handler.invoke(0, a);
+    handler.invoke(0, a);
+    handler.invoke(0, b);
+    assertEquals(CALLS.get(), 2);
+  }
+
+  /**
+   * Tests that the cached results that depend on an object, directly or through objects produced from it, are found and removed.
+   */
+  @Test
+  public void testInvalidation() {
+    final ShardedHeap heap = new ShardedHeap();
+    final ResultCache cache = new ResultCache();
+    final DefaultExcelFunctionCallHandler build = newHandler(heap, cache, "build", double.class);
+    final DefaultExcelFunctionCallHandler append = newHandler(heap, cache, "append", Object.class);
+    final XLObject a = (XLObject) build.invoke(0, XLNumber.of(1));
+    final XLObject b = (XLObject) append.invoke(0, a);
+    final XLObject c = (XLObject) append.invoke(0, b);
+    assertEquals(heap.getHandleGraph().getDescendants(a.getHandle()).length, 2);
+    assertEquals(cache.getSize(), 3);
+    assertEquals(build.getDependentResults(a.getHandle()), 3);
+    assertEquals(build.getDependentResults(b.getHandle()), 2);
+    assertEquals(build.getDependentResults(c.getHandle()), 1);
+    assertEquals(append.invalidate(b.getHandle()), 2);
+    assertEquals(cache.getSize(), 1);
+    CALLS.set(0);
+    build.invoke(0, XLNumber.of(1));
+    append.invoke(0, a);
+    assertEquals(CALLS.get(), 1);
+  }
+
+  /**
+   * Tests that the cached results that depend on an object and the objects produced from it are removed when the object is
+   * collected.
+   */
+  @Test
+  public void testInvalidationOnCollection() {
+    final ShardedHeap heap = new ShardedHeap();
+    final ResultCache cache = new ResultCache();
+    final DefaultExcelFunctionCallHandler build = newHandler(heap, cache, "build", double.class);
+    final DefaultExcelFunctionCallHandler append = newHandler(heap, cache, "append", Object.class);
+    heap.addLineageListener(build);
+    final XLObject a = (XLObject) build.invoke(0, XLNumber.of(1));
+    final XLObject b = (XLObject) append.invoke(0, a);
+    build.invoke(0, XLNumber.of(2));
+    assertEquals(cache.getSize(), 3);
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {b.getHandle()});
+    }
+    // only the result that does not depend on a is left
+    assertEquals(cache.getSize(), 1);
+    CALLS.set(0);
+    build.invoke(0, XLNumber.of(1));
+    assertEquals(CALLS.get(), 1);
+  }
+
+  /**
+   * Tests that the least recently used entries are evicted when there are too many entries.
+   */
+  @Test
+  public void testEntryBound() {
+    final ResultCache cache = new ResultCache(16, 1000);
+    final DefaultExcelFunctionCallHandler handler = newHandler(new ShardedHeap(), cache, "cacheableValue", XLValue.class);
+    for (int i = 0; i < 1000; i++) {
+      handler.invoke(0, XLNumber.of(i));
+    }
+    assertTrue(cache.getSize() <= 16);
+    assertEquals(cache.getEvictions(), 1000 - cache.getSize());
+  }
+
+  /**
+   * Tests that entries are evicted when they are too heavy.
+   */
+  @Test
+  public void testWeightBound() {
+    final ResultCache cache = new ResultCache(1000, 16 * 10);
+    final DefaultExcelFunctionCallHandler handler = newHandler(new ShardedHeap(), cache, "sum", XLArray.class);
+    final XLArray large = XLArray.ofRow(new double[1000]);
+    handler.invoke(0, large);
+    // too heavy to cache
+    assertEquals(cache.getSize(), 0);
+    for (int i = 0; i < 100; i++) {
+      handler.invoke(0, XLArray.ofRow(new double[] {i, 1, 2, 3}));
+    }
+    assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    assertTrue(cache.getEvictions() > 0);
+  }
+
+  /**
+   * Tests that the bounds must be positive.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testZeroBound() {
+    new ResultCache(0, 10);
+  }
+
+  /**
+   * Tests that the hash code of an array is stable and matches equal arrays.
+   */
+  @Test
+  public void testArrayHashCode() {
+    final XLArray array1 = XLArray.ofRow(new double[] {1, 2, 3});
+    final XLArray array2 = XLArray.of(new XLValue[][] {{XLNumber.of(1), XLNumber.of(2), XLNumber.of(3)}});
+    assertEquals(array1.hashCode(), array2.hashCode());
+    assertEquals(array1.hashCode(), array1.hashCode());
+    assertEquals(array1, array2);
+  }
+
+  private static DefaultExcelFunctionCallHandler newHandler(final Heap heap, final String name, final Class<?> parameterType) {
+    return newHandler(heap, new ResultCache(), name, parameterType);
+  }
+
+  private static DefaultExcelFunctionCallHandler newHandler(final Heap heap, final ResultCache cache, final String name,
+      final Class<?> parameterType) {
+    final Excel excel = withHeap(heap);
+    final TypeConverterRegistry typeConverters = MockTypeConverterRegistry.builder()
+        .with(new PrimitiveDoubleXLNumberTypeConverter())
+        .with(new ObjectXLObjectTypeConverter(excel))
+        .with(new XLValueXLValueTypeConverter())
+        .build();
+    try {
+      final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+          .xlFunction(ResultCacheTest.class.getMethod(name, parameterType))
+          .build();
+      registry.createAndRegisterFunctions(new ReflectiveInvokerFactory(excel, typeConverters));
+      return new DefaultExcelFunctionCallHandler(registry, heap, cache);
+    } catch (final NoSuchMethodException e) {
+      throw new XL4JRuntimeException("Could not find method", e);
+    }
+  }
+
+  /**
+   * Creates an Excel that uses a separate heap, so that collecting handles does not affect other tests.
+   */
+  private static Excel withHeap(final Heap heap) {
+    return (Excel) Proxy.newProxyInstance(Excel.class.getClassLoader(), new Class<?>[] {Excel.class}, new InvocationHandler() {
+
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        return method.getName().equals("getHeap") ? heap : method.invoke(EXCEL, args);
+      }
+    });
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(isCacheable = true)
+  public static double cacheable(final double x) {
+    CALLS.incrementAndGet();
+    return 2 * x;
+  }
+
+  @XLFunction
+  public static double notCacheable(final double x) {
+    CALLS.incrementAndGet();
+    return 2 * x;
+  }
+
+  @XLFunction(isCacheable = true, isVolatile = true, isMultiThreadSafe = false)
+  public static double volatileCacheable(final double x) {
+    CALLS.incrementAndGet();
+    return 2 * x;
+  }
+
+  @XLFunction(isCacheable = true)
+  public static Object build(final double x) {
+    CALLS.incrementAndGet();
+    return new StringBuilder(Double.toString(x));
+  }
+
+  @XLFunction(isCacheable = true)
+  public static Object identity(final Object x) {
+    CALLS.incrementAndGet();
+    return x;
+  }
+
+  @XLFunction(isCacheable = true)
+  public static Object append(final Object x) {
+    CALLS.incrementAndGet();
+    return new StringBuilder(x.toString()).append('!');
+  }
+
+  @XLFunction(isCacheable = true)
+  public static XLValue cacheableValue(final XLValue x) {
+    return x;
+  }
+
+  @XLFunction(isCacheable = true)
+  public static XLValue sum(final XLArray x) {
+    double sum = 0;
+    for (final double d : x.getNumbers()) {
+      sum += d;
+    }
+    return XLNumber.of(sum);
+  }
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.core.LineageListener;
+import com.mcleodmoores.xl4j.v1.core.EvictedObjectException;
+import com.mcleodmoores.xl4j.v1.core.HandleGraph;
+import com.mcleodmoores.xl4j.v1.core.HeapClassStatistic;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link ShardedHeap}.
+ */
+public class ShardedHeapTest {
+  private static final int N_CYCLES = 4;
+
+  /**
+   * Tests that the same handle is returned for the same object and that objects can be retrieved.
+   */
+  @Test
+  public void testHandles() {
+    final ShardedHeap heap = new ShardedHeap();
+    final List<Object> objects = new ArrayList<>();
+    final long[] handles = new long[10000];
+    for (int i = 0; i < handles.length; i++) {
+      final Object object = new Object();
+      objects.add(object);
+      handles[i] = heap.getHandle(object);
+    }
+    assertEquals(heap.size(), handles.length);
+    for (int i = 0; i < handles.length; i++) {
+      assertEquals(heap.getHandle(objects.get(i)), handles[i]);
+      assertSame(heap.getObject(handles[i]), objects.get(i));
+    }
+    // equal objects that are not the same instance get different handles
+    assertNotEquals(heap.getHandle(new String("A")), heap.getHandle(new String("A")));
+  }
+
+  /**
+   * Tests the exception when there is no object for a handle.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testUnknownHandle() {
+    final ShardedHeap heap = new ShardedHeap();
+    final long handle = heap.getHandle(new Object());
+    heap.getObject(handle + 1);
+  }
+
+  /**
+   * Tests that objects are only collected once they have not been reported for enough cycles.
+   */
+  @Test
+  public void testCollection() {
+    final ShardedHeap heap = new ShardedHeap();
+    final Object live = new Object();
+    final Object dead = new Object();
+    final long liveHandle = heap.getHandle(live);
+    final long deadHandle = heap.getHandle(dead);
+    for (int i = 0; i < N_CYCLES; i++) {
+      assertEquals(heap.cycleGC(new long[] {liveHandle}), 0);
+      assertSame(heap.getObject(deadHandle), dead);
+    }
+    assertEquals(heap.cycleGC(new long[] {liveHandle}), 0);
+    assertSame(heap.getObject(liveHandle), live);
+    assertEquals(heap.size(), 1);
+    try {
+      heap.getObject(deadHandle);
+      fail();
+    } catch (final XL4JRuntimeException e) {
+      // expected
+    }
+    // the object gets a new handle
+    assertNotEquals(heap.getHandle(dead), deadHandle);
+    // the live object survives if it is reported occasionally
+    for (int i = 0; i < 5 * N_CYCLES; i++) {
+      heap.cycleGC(i % N_CYCLES == 0 ? new long[] {liveHandle} : new long[0]);
+    }
+    assertSame(heap.getObject(liveHandle), live);
+  }
+
+  /**
+   * Tests that unrecognised handles are counted once.
+   */
+  @Test
+  public void testUnrecognisedHandles() {
+    final ShardedHeap heap = new ShardedHeap();
+    final long handle = heap.getHandle(new Object());
+    assertEquals(heap.cycleGC(new long[] {handle, handle + 10, handle + 10, handle + 20}), 2);
+    assertEquals(heap.cycleGC(new long[] {handle}), 0);
+  }
+
+  /**
+   * Tests that a large number of objects is collected without disturbing the live objects.
+   */
+  @Test
+  public void testManyObjects() {
+    final ShardedHeap heap = new ShardedHeap();
+    final int n = 100000;
+    final Object[] objects = new Object[n];
+    final long[] live = new long[n / 2];
+    for (int i = 0; i < n; i++) {
+      objects[i] = Integer.toString(i);
+      final long handle = heap.getHandle(objects[i]);
+      if (i % 2 == 0) {
+        live[i / 2] = handle;
+      }
+    }
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(live);
+    }
+    assertEquals(heap.size(), n / 2);
+    for (int i = 0; i < n; i += 2) {
+      assertSame(heap.getObject(live[i / 2]), objects[i]);
+      assertEquals(heap.getHandle(objects[i]), live[i / 2]);
+    }
+  }
+
+  /**
+   * Tests that concurrent requests for handles for the same objects get the same handles.
+   * @throws Exception  if a task fails
+   */
+  @Test
+  public void testConcurrentHandles() throws Exception {
+    final ShardedHeap heap = new ShardedHeap();
+    final int n = 10000;
+    final Object[] objects = new Object[n];
+    for (int i = 0; i < n; i++) {
+      objects[i] = new Object();
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<long[]>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        results.add(executor.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() {
+            final long[] handles = new long[n];
+            for (int i = 0; i < n; i++) {
+              handles[i] = heap.getHandle(objects[i]);
+            }
+            return handles;
+          }
+        }));
+      }
+      final long[] expected = results.get(0).get();
+      for (final Future<long[]> result : results) {
+        assertEquals(result.get(), expected);
+      }
+      assertEquals(heap.size(), n);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that a cycle cannot be started twice.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testCycleAlreadyStarted() {
+    final ShardedHeap heap = new ShardedHeap(false);
+    heap.startGC();
+    heap.startGC();
+  }
+
+  /**
+   * Tests that handles cannot be marked if a cycle has not been started.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testCycleNotStarted() {
+    final ShardedHeap heap = new ShardedHeap(false);
+    heap.markLive(new long[] {heap.getHandle(new Object())}, 0, 1);
+  }
+
+  /**
+   * Tests an incremental collection where the handles are reported in chunks and objects are allocated during the cycle.
+   * @throws Exception  if the sweep fails
+   */
+  @Test
+  public void testIncrementalCollection() throws Exception {
+    final ShardedHeap heap = new ShardedHeap(false);
+    final int n = 10000;
+    final long[] handles = new long[n];
+    for (int i = 0; i < n; i++) {
+      handles[i] = heap.getHandle(Integer.toString(i));
+    }
+    Object created = null;
+    long createdHandle = 0;
+    for (int cycle = 0; cycle <= N_CYCLES; cycle++) {
+      heap.startGC();
+      // report the first half of the handles in chunks
+      for (int i = 0; i < n / 2; i += 1000) {
+        heap.markLive(handles, i, 1000);
+      }
+      if (cycle == N_CYCLES) {
+        // allocated after the cycle has started and never reported
+        created = new Object();
+        createdHandle = heap.getHandle(created);
+      }
+      assertEquals(heap.endGC().get().longValue(), 0L);
+    }
+    assertEquals(heap.size(), n / 2 + 1);
+    assertSame(heap.getObject(createdHandle), created);
+    for (int i = 0; i < n / 2; i++) {
+      assertEquals(heap.getObject(handles[i]), Integer.toString(i));
+    }
+  }
+
+  /**
+   * Tests that handles given out again during a cycle are not collected by it.
+   * @throws Exception  if the sweep fails
+   */
+  @Test
+  public void testHandleReusedDuringCycle() throws Exception {
+    final ShardedHeap heap = new ShardedHeap(false);
+    final Object object = new Object();
+    final long handle = heap.getHandle(object);
+    for (int cycle = 0; cycle < N_CYCLES; cycle++) {
+      heap.cycleGC(new long[0]);
+    }
+    heap.startGC();
+    // the sheet picks up the handle before the cycle ends
+    assertEquals(heap.getHandle(object), handle);
+    heap.endGC().get();
+    assertSame(heap.getObject(handle), object);
+  }
+
+  /**
+   * Tests that concurrent collection removes the dead objects in the background.
+   * @throws Exception  if the test is interrupted
+   */
+  @Test
+  public void testConcurrentCollection() throws Exception {
+    final ShardedHeap heap = new ShardedHeap(true);
+    final Object live = new Object();
+    final long liveHandle = heap.getHandle(live);
+    final long deadHandle = heap.getHandle(new Object());
+    heap.cycleGC(new long[] {liveHandle, deadHandle + 100});
+    for (int i = 0; i < N_CYCLES; i++) {
+      heap.cycleGC(new long[] {liveHandle});
+      // allocation and lookup carry on during collection
+      heap.getHandle(new Object());
+      assertSame(heap.getObject(liveHandle), live);
+    }
+    // requests made while one is waiting are coalesced, so keep asking until enough cycles have run
+    final long timeout = System.currentTimeMillis() + 10000;
+    while (heap.size() > N_CYCLES + 1 && System.currentTimeMillis() < timeout) {
+      heap.cycleGC(new long[] {liveHandle});
+      Thread.sleep(10);
+    }
+    assertSame(heap.getObject(liveHandle), live);
+    try {
+      heap.getObject(deadHandle);
+      fail();
+    } catch (final XL4JRuntimeException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests that the objects of each class are counted and their sizes estimated, and that the accounts are updated when
+   * objects are removed.
+   */
+  @Test
+  public void testAccounting() {
+    final ShardedHeap heap = new ShardedHeap();
+    heap.setMaxBytes(Long.MAX_VALUE);
+    final long liveHandle = heap.getHandle(new double[1000]);
+    final long deadHandle = heap.getHandle(new double[1000]);
+    final long builderHandle = heap.getHandle(new StringBuilder("abc"));
+    assertEquals(heap.size(), 3);
+    // any estimates that have not been made are made at the end of the cycle
+    heap.cycleGC(new long[] {liveHandle, deadHandle, builderHandle});
+    assertTrue(heap.getEstimatedBytes() >= 2 * 8000);
+    List<HeapClassStatistic> statistics = heap.getClassStatistics();
+    assertEquals(statistics.size(), 2);
+    assertEquals(statistics.get(0).getClassName(), double[].class.getName());
+    assertEquals(statistics.get(0).getObjects(), 2);
+    assertTrue(statistics.get(0).getBytes() >= 2 * 8000);
+    assertEquals(statistics.get(1).getClassName(), StringBuilder.class.getName());
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {liveHandle});
+    }
+    statistics = heap.getClassStatistics();
+    assertEquals(statistics.size(), 1);
+    assertEquals(statistics.get(0).getObjects(), 1);
+    assertEquals(heap.getEstimatedBytes(), statistics.get(0).getBytes());
+  }
+
+  /**
+   * Tests that sizes are only estimated when there is a limit, and that the objects already on the heap are estimated when a
+   * limit is set.
+   */
+  @Test
+  public void testNoAccountingWithoutLimit() {
+    final ShardedHeap heap = new ShardedHeap();
+    final long handle = heap.getHandle(new double[1000]);
+    heap.cycleGC(new long[] {handle});
+    assertEquals(heap.getEstimatedBytes(), 0);
+    assertEquals(heap.getClassStatistics().get(0).getObjects(), 1);
+    heap.setMaxBytes(Long.MAX_VALUE);
+    heap.cycleGC(new long[] {handle});
+    assertTrue(heap.getEstimatedBytes() >= 8000);
+  }
+
+  /**
+   * Tests that recomputable objects are evicted, least recently reported first, when the heap is over its limit, and that
+   * objects that are not recomputable or were reported in the cycle are kept.
+   */
+  @Test
+  public void testEviction() {
+    final ShardedHeap heap = new ShardedHeap();
+    heap.setMaxBytes(Long.MAX_VALUE);
+    final long pinnedHandle = heap.getHandle(new double[1000]);
+    final long reportedHandle = heap.getHandle(new double[1000]);
+    final long olderHandle = heap.getHandle(new double[1000]);
+    final long newerHandle = heap.getHandle(new double[1000]);
+    heap.markRecomputable(reportedHandle);
+    heap.markRecomputable(olderHandle);
+    heap.markRecomputable(newerHandle);
+    heap.cycleGC(new long[] {pinnedHandle, reportedHandle, olderHandle, newerHandle});
+    heap.cycleGC(new long[] {pinnedHandle, reportedHandle, newerHandle});
+    assertEquals(heap.getEvictions(), 0);
+    // room for three arrays
+    heap.setMaxBytes(heap.getEstimatedBytes() * 3 / 4 + 1);
+    assertEquals(heap.cycleGC(new long[] {pinnedHandle, reportedHandle}), 0);
+    assertEquals(heap.getEvictions(), 1);
+    assertEquals(heap.size(), 3);
+    heap.getObject(newerHandle);
+    try {
+      heap.getObject(olderHandle);
+      fail();
+    } catch (final EvictedObjectException e) {
+      assertEquals(e.getHandle(), olderHandle);
+    }
+    // reporting the evicted handle triggers a recalculation
+    assertEquals(heap.cycleGC(new long[] {pinnedHandle, reportedHandle, olderHandle}), 1);
+    // room for one array, but the unreported recomputable object is the only one that can go
+    heap.setMaxBytes(1);
+    heap.cycleGC(new long[] {pinnedHandle, reportedHandle});
+    assertEquals(heap.getEvictions(), 2);
+    assertEquals(heap.size(), 2);
+    heap.getObject(pinnedHandle);
+    heap.getObject(reportedHandle);
+    // the evicted handle is forgotten once it stops being reported
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {pinnedHandle, reportedHandle});
+    }
+    try {
+      heap.getObject(olderHandle);
+      fail();
+    } catch (final EvictedObjectException e) {
+      fail();
+    } catch (final XL4JRuntimeException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests that an expired object is removed even though something produced from it is still reported, and that its edges are
+   * removed with it.
+   */
+  @Test
+  public void testLineage() {
+    final ShardedHeap heap = new ShardedHeap();
+    final HandleGraph graph = heap.getHandleGraph();
+    final long root = heap.getHandle(new Object());
+    final long child = heap.getHandle(new Object());
+    final long grandchild = heap.getHandle(new Object());
+    final long unrelated = heap.getHandle(new Object());
+    heap.addLineage(child, new long[] {root}, 0, 1);
+    heap.addLineage(grandchild, new long[] {child, root}, 0, 2);
+    // a handle that is not on the heap is not added
+    heap.addLineage(grandchild, new long[] {unrelated + 1000}, 0, 1);
+    assertEquals(graph.getEdgeCount(), 3);
+    assertEquals(graph.getDescendants(root).length, 2);
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {grandchild});
+    }
+    assertEquals(heap.size(), 1);
+    heap.getObject(grandchild);
+    assertFalse(graph.hasConsumers(root));
+    assertEquals(graph.size(), 0);
+    // the edges of an object go with it
+    final long producer = heap.getHandle(new Object());
+    final long consumer = heap.getHandle(new Object());
+    heap.addLineage(consumer, new long[] {producer}, 0, 1);
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {grandchild, producer});
+    }
+    assertEquals(heap.size(), 2);
+    assertEquals(graph.size(), 0);
+    assertEquals(graph.getEdgeCount(), 0);
+  }
+
+  /**
+   * Tests that the listeners are told when an object that other objects were produced from is collected, along with all of its
+   * descendants.
+   */
+  @Test
+  public void testLineageListener() {
+    final ShardedHeap heap = new ShardedHeap();
+    final List<Long> removed = new ArrayList<>();
+    heap.addLineageListener(new LineageListener() {
+
+      @Override
+      public void lineageRemoved(final long[] handles) {
+        for (final long handle : handles) {
+          removed.add(handle);
+        }
+      }
+    });
+    final long root = heap.getHandle(new Object());
+    final long child = heap.getHandle(new Object());
+    final long grandchild = heap.getHandle(new Object());
+    heap.addLineage(child, new long[] {root}, 0, 1);
+    heap.addLineage(grandchild, new long[] {child}, 0, 1);
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {child, grandchild});
+    }
+    assertEquals(heap.size(), 2);
+    assertTrue(removed.containsAll(Arrays.asList(root, child, grandchild)));
+    assertEquals(removed.size(), 3);
+    // nothing was produced from the grandchild
+    removed.clear();
+    for (int i = 0; i <= N_CYCLES; i++) {
+      heap.cycleGC(new long[] {child});
+    }
+    assertEquals(heap.size(), 1);
+    assertTrue(removed.isEmpty());
+  }
+}
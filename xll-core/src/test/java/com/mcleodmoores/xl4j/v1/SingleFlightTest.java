@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.SingleFlight;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveDoubleXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link SingleFlight} and collapsing concurrent calls in {@link DefaultExcelFunctionCallHandler}.
+ */
+public class SingleFlightTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final int THREADS = 8;
+  private static final AtomicInteger CALLS = new AtomicInteger();
+  private static volatile CountDownLatch s_started;
+  private static volatile CountDownLatch s_release;
+
+  /**
+   * Tests that concurrent calls with the same arguments are collapsed into one call and that every caller gets the result.
+   */
+  @Test
+  public void testConcurrentIdenticalCalls() throws Exception {
+    final DefaultExcelFunctionCallHandler handler = newHandler("singleFlight");
+    final SingleFlight singleFlight = handler.getSingleFlight();
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      CALLS.set(0);
+      s_started = new CountDownLatch(1);
+      s_release = new CountDownLatch(1);
+      final List<Future<XLValue>> results = new ArrayList<>();
+      results.add(executor.submit(call(handler, 3)));
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      for (int i = 1; i < THREADS; i++) {
+        results.add(executor.submit(call(handler, 3)));
+      }
+      waitFor(singleFlight, THREADS - 1);
+      assertEquals(singleFlight.getInFlight(), 1);
+      s_release.countDown();
+      for (final Future<XLValue> result : results) {
+        assertEquals(result.get(10, TimeUnit.SECONDS), XLNumber.of(6));
+      }
+      assertEquals(CALLS.get(), 1);
+      assertEquals(singleFlight.getExecutions(), 1);
+      assertEquals(singleFlight.getCoalesced(), THREADS - 1);
+      assertEquals(singleFlight.getCoalescedRate(), (double) (THREADS - 1) / THREADS);
+      assertEquals(singleFlight.getInFlight(), 0);
+    } finally {
+      s_release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that calls with different arguments are not collapsed.
+   */
+  @Test
+  public void testDifferentArguments() throws Exception {
+    final DefaultExcelFunctionCallHandler handler = newHandler("singleFlight");
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CALLS.set(0);
+      s_started = new CountDownLatch(2);
+      s_release = new CountDownLatch(1);
+      final Future<XLValue> first = executor.submit(call(handler, 1));
+      final Future<XLValue> second = executor.submit(call(handler, 2));
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      s_release.countDown();
+      assertEquals(first.get(10, TimeUnit.SECONDS), XLNumber.of(2));
+      assertEquals(second.get(10, TimeUnit.SECONDS), XLNumber.of(4));
+      assertEquals(CALLS.get(), 2);
+      assertEquals(handler.getSingleFlight().getCoalesced(), 0);
+    } finally {
+      s_release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that results are not kept once a call has completed.
+   */
+  @Test
+  public void testSequentialCalls() {
+    final DefaultExcelFunctionCallHandler handler = newHandler("singleFlight");
+    CALLS.set(0);
+    s_started = new CountDownLatch(2);
+    s_release = new CountDownLatch(0);
+    handler.invoke(0, XLNumber.of(1));
+    handler.invoke(0, XLNumber.of(1));
+    assertEquals(CALLS.get(), 2);
+    assertEquals(handler.getSingleFlight().getExecutions(), 2);
+    assertEquals(handler.getSingleFlight().getCoalesced(), 0);
+  }
+
+  /**
+   * Tests that functions that are not single-flight are not collapsed.
+   */
+  @Test
+  public void testNotSingleFlight() throws Exception {
+    final DefaultExcelFunctionCallHandler handler = newHandler("notSingleFlight");
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CALLS.set(0);
+      s_started = new CountDownLatch(2);
+      s_release = new CountDownLatch(1);
+      final Future<XLValue> first = executor.submit(call(handler, 1));
+      final Future<XLValue> second = executor.submit(call(handler, 1));
+      // both calls are running at the same time
+      assertTrue(s_started.await(10, TimeUnit.SECONDS));
+      s_release.countDown();
+      assertEquals(first.get(10, TimeUnit.SECONDS), XLNumber.of(2));
+      assertEquals(second.get(10, TimeUnit.SECONDS), XLNumber.of(2));
+      assertEquals(CALLS.get(), 2);
+      assertEquals(handler.getSingleFlight().getExecutions(), 0);
+    } finally {
+      s_release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  private static Callable<XLValue> call(final DefaultExcelFunctionCallHandler handler, final double x) {
+    return new Callable<XLValue>() {
+      @Override
+      public XLValue call() {
+        return handler.invoke(0, XLNumber.of(x));
+      }
+    };
+  }
+
+  private static void waitFor(final SingleFlight singleFlight, final long coalesced) throws InterruptedException {
+    final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (singleFlight.getCoalesced() < coalesced) {
+      if (System.nanoTime() > end) {
+        throw new AssertionError("Only " + singleFlight.getCoalesced() + " calls were coalesced");
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  private static DefaultExcelFunctionCallHandler newHandler(final String name) {
+    final TypeConverterRegistry typeConverters = MockTypeConverterRegistry.builder()
+        .with(new PrimitiveDoubleXLNumberTypeConverter())
+        .build();
+    try {
+      final MockFunctionRegistry registry = MockFunctionRegistry.builder()
+          .xlFunction(SingleFlightTest.class.getMethod(name, double.class))
+          .build();
+      registry.createAndRegisterFunctions(new ReflectiveInvokerFactory(EXCEL, typeConverters));
+      return new DefaultExcelFunctionCallHandler(registry, EXCEL.getHeap());
+    } catch (final NoSuchMethodException e) {
+      throw new XL4JRuntimeException("Could not find method", e);
+    }
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(isSingleFlight = true)
+  public static double singleFlight(final double x) throws InterruptedException {
+    return slow(x);
+  }
+
+  @XLFunction
+  public static double notSingleFlight(final double x) throws InterruptedException {
+    return slow(x);
+  }
+
+  private static double slow(final double x) throws InterruptedException {
+    CALLS.incrementAndGet();
+    s_started.countDown();
+    s_release.await();
+    return 2 * x;
+  }
+}
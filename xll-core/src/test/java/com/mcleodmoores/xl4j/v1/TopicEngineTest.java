@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.Topic;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.TopicSource;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.Update;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.UpdateCallback;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link TopicEngine}.
+ */
+public class TopicEngineTest {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Tests that subscriptions to the same function and arguments share a topic, and that the source is told about the first
+   * and last subscriptions.
+   */
+  @Test
+  public void testSubscriptions() {
+    final List<String> events = new ArrayList<>();
+    final TopicEngine engine = new TopicEngine(new Batches(), new TopicSource() {
+
+      @Override
+      public void connect(final Topic topic) {
+        events.add("connect " + topic.getId());
+      }
+
+      @Override
+      public void disconnect(final Topic topic) {
+        events.add("disconnect " + topic.getId());
+      }
+    });
+    final Topic topic = engine.subscribe("Price", XLString.of("VOD.L"));
+    assertSame(engine.subscribe("Price", XLString.of("VOD.L")), topic);
+    final Topic other = engine.subscribe("Price", XLString.of("BP.L"));
+    assertEquals(engine.getTopicCount(), 2);
+    assertEquals(engine.getSubscriptionCount(), 3);
+    assertSame(engine.getTopic("Price", XLString.of("VOD.L")), topic);
+    assertSame(engine.getTopic(other.getId()), other);
+    assertFalse(engine.unsubscribe(topic.getId()));
+    assertTrue(topic.isConnected());
+    assertTrue(engine.unsubscribe(topic.getId()));
+    assertFalse(topic.isConnected());
+    assertNull(engine.getTopic("Price", XLString.of("VOD.L")));
+    assertFalse(engine.publish(topic, XLNumber.of(1)));
+    assertFalse(engine.publish("Price", new XLValue[] {XLString.of("VOD.L")}, XLNumber.of(1)));
+    assertEquals(engine.getTopicCount(), 1);
+    assertEquals(events, Arrays.asList("connect " + topic.getId(), "connect " + other.getId(), "disconnect " + topic.getId()));
+    // a new topic is created after the last subscription has gone
+    assertTrue(engine.subscribe("Price", XLString.of("VOD.L")).getId() != topic.getId());
+  }
+
+  /**
+   * Tests that unsubscribing from an unknown topic fails.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testUnknownTopic() {
+    new TopicEngine(new Batches()).unsubscribe(1234);
+  }
+
+  /**
+   * Tests that only the latest value published before a batch is delivered.
+   */
+  @Test
+  public void testConflation() {
+    final Batches batches = new Batches();
+    final TopicEngine engine = new TopicEngine(batches);
+    final Topic topic1 = engine.subscribe("Price", XLString.of("A"));
+    final Topic topic2 = engine.subscribe("Price", XLString.of("B"));
+    assertEquals(engine.flush(), 0);
+    for (int i = 0; i < 100; i++) {
+      engine.publish(topic1, XLNumber.of(i));
+    }
+    assertTrue(engine.publish("Price", new XLValue[] {XLString.of("B")}, XLNumber.of(-1)));
+    assertNull(topic1.getValue());
+    assertEquals(engine.flush(), 2);
+    assertEquals(batches._batches.size(), 1);
+    assertEquals(batches._batches.get(0).size(), 2);
+    assertEquals(topic1.getValue(), XLNumber.of(99));
+    assertEquals(topic2.getValue(), XLNumber.of(-1));
+    assertEquals(engine.getPublished(), 101);
+    assertEquals(engine.getConflated(), 99);
+    assertEquals(engine.getDelivered(), 2);
+    assertEquals(engine.getBatches(), 1);
+    assertEquals(engine.flush(), 0);
+    assertEquals(batches._batches.size(), 1);
+  }
+
+  /**
+   * Tests that a throttled topic is delivered at most once per interval, and that a value published during the interval is
+   * delivered when it ends.
+   */
+  @Test
+  public void testThrottle() {
+    final Batches batches = new Batches();
+    final TopicEngine engine = new TopicEngine(batches);
+    engine.setThrottle("Slow", 1, TimeUnit.SECONDS);
+    final Topic slow = engine.subscribe("Slow");
+    final Topic fast = engine.subscribe("Fast");
+    assertEquals(slow.getThrottle(TimeUnit.MILLISECONDS), 1000);
+    assertEquals(fast.getThrottle(TimeUnit.MILLISECONDS), 0);
+    final long start = System.nanoTime();
+    engine.publish(slow, XLNumber.of(1));
+    engine.publish(fast, XLNumber.of(1));
+    // the first value is not held back
+    assertEquals(engine.flush(start), 2);
+    engine.publish(slow, XLNumber.of(2));
+    engine.publish(fast, XLNumber.of(2));
+    assertEquals(engine.flush(start + SECOND / 2), 1);
+    assertEquals(slow.getValue(), XLNumber.of(1));
+    engine.publish(slow, XLNumber.of(3));
+    assertEquals(engine.flush(start + SECOND - 1), 0);
+    assertEquals(engine.flush(start + SECOND), 1);
+    assertEquals(slow.getValue(), XLNumber.of(3));
+    assertEquals(engine.flush(start + 3 * SECOND), 0);
+    // per-topic throttle
+    fast.setThrottle(10, TimeUnit.SECONDS);
+    engine.publish(fast, XLNumber.of(4));
+    assertEquals(engine.flush(start + 4 * SECOND), 0);
+    assertEquals(engine.flush(start + 11 * SECOND), 1);
+    assertEquals(fast.getValue(), XLNumber.of(4));
+    // default for new topics
+    engine.setDefaultThrottle(5, TimeUnit.SECONDS);
+    assertEquals(engine.subscribe("Other").getThrottle(TimeUnit.SECONDS), 5);
+    assertEquals(engine.subscribe("Slow", XLNumber.of(1)).getThrottle(TimeUnit.SECONDS), 1);
+  }
+
+  /**
+   * Tests that an exception thrown by the callback does not stop later batches.
+   */
+  @Test
+  public void testCallbackException() {
+    final int[] calls = new int[1];
+    final TopicEngine engine = new TopicEngine(new UpdateCallback() {
+      @Override
+      public void topicsUpdated(final List<Update> updates) {
+        calls[0]++;
+        throw new IllegalStateException();
+      }
+    });
+    final Topic topic = engine.subscribe("Price");
+    engine.publish(topic, XLNumber.of(1));
+    assertEquals(engine.flush(), 1);
+    engine.publish(topic, XLNumber.of(2));
+    assertEquals(engine.flush(), 1);
+    assertEquals(calls[0], 2);
+    assertEquals(topic.getValue(), XLNumber.of(2));
+  }
+
+  /**
+   * Tests that values published concurrently with batches being made on the background thread are all delivered or conflated
+   * and that the last value of every topic is delivered.
+   *
+   * @throws InterruptedException
+   *           if interrupted while waiting for the publishers
+   */
+  @Test
+  public void testConcurrentPublishing() throws InterruptedException {
+    final Batches batches = new Batches();
+    final int nTopics = 1000;
+    final int nValues = 100;
+    final int nThreads = 4;
+    try (TopicEngine engine = new TopicEngine(batches)) {
+      final Topic[] topics = new Topic[nTopics];
+      for (int i = 0; i < nTopics; i++) {
+        topics[i] = engine.subscribe("Price", XLNumber.of(i));
+      }
+      engine.start();
+      final CountDownLatch done = new CountDownLatch(nThreads);
+      for (int t = 0; t < nThreads; t++) {
+        final int thread = t;
+        new Thread() {
+          @Override
+          public void run() {
+            for (int v = 0; v < nValues; v++) {
+              for (int i = thread; i < nTopics; i += nThreads) {
+                engine.publish(topics[i], XLNumber.of(v));
+              }
+            }
+            done.countDown();
+          }
+        }.start();
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      engine.close();
+      engine.flush();
+      assertEquals(engine.getPublished(), nTopics * nValues);
+      assertEquals(engine.getDelivered() + engine.getConflated(), engine.getPublished());
+      for (final Topic topic : topics) {
+        assertEquals(topic.getValue(), XLNumber.of(nValues - 1));
+      }
+      int delivered = 0;
+      for (final List<Update> batch : batches._batches) {
+        delivered += batch.size();
+      }
+      assertEquals(delivered, engine.getDelivered());
+    }
+  }
+
+  /**
+   * Keeps the batches.
+   */
+  private static final class Batches implements UpdateCallback {
+    private final List<List<Update>> _batches = new ArrayList<>();
+
+    @Override
+    public synchronized void topicsUpdated(final List<Update> updates) {
+      _batches.add(updates);
+    }
+  }
+}
@@ -3,7 +3,9 @@
  */
 package com.mcleodmoores.xl4j.v1;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import org.testng.Assert;
@@ -160,4 +162,115 @@ public class XLArrayTest {
     assertFalse(area.isColumn());
     assertTrue(area.isArea());
   }
+
+  /**
+   * Tests that arrays backed by numbers behave in the same way as arrays of values.
+   */
+  @Test
+  public void testNumericArrays() {
+    final double[] numbers = new double[] {1, 2, 3, 4};
+    final XLArray row = XLArray.ofRow(numbers);
+    assertTrue(row.isRow());
+    assertTrue(row.isNumeric());
+    assertEquals(row.getRows(), 1);
+    assertEquals(row.getColumns(), 4);
+    assertEquals(row, XLArray.of(new XLValue[][] {{XLNumber.of(1), XLNumber.of(2), XLNumber.of(3), XLNumber.of(4)}}));
+    assertEquals(row.hashCode(), XLArray.of(new XLValue[][] {{XLNumber.of(1), XLNumber.of(2), XLNumber.of(3), XLNumber.of(4)}}).hashCode());
+    assertEquals(row.toString(), "XLArray[[[XLNumber[value=1.0], XLNumber[value=2.0], XLNumber[value=3.0], XLNumber[value=4.0]]]]");
+    assertSame(row.getNumbers(), numbers);
+    assertSame(row.getArray(), row.getArray());
+    final XLArray column = XLArray.ofColumn(numbers);
+    assertTrue(column.isColumn());
+    assertEquals(column.getValue(2, 0), XLNumber.of(3));
+    assertSame(column.getNumbers(), numbers);
+    final XLArray area = XLArray.ofNumbers(new double[][] {{1, 2, 3}, {4, 5, 6}});
+    assertTrue(area.isArea());
+    assertEquals(area.getNumber(1, 2), 6.);
+    assertEquals(area.getValue(0, 1), XLNumber.of(2));
+    assertEquals(area.getRow(1).getNumbers(), new double[] {4, 5, 6});
+    assertEquals(area.getColumn(1).getNumbers(), new double[] {2, 5});
+    assertTrue(area.getColumn(1).isColumn());
+    assertEquals(area.getColumn(2).getArray(), new XLValue[][] {{XLNumber.of(3)}, {XLNumber.of(6)}});
+  }
+
+  /**
+   * Tests that numeric arrays are compared on their numbers, with the same results and hash codes as arrays of values.
+   */
+  @Test
+  public void testNumericEqualsAndHashCode() {
+    final XLArray area = XLArray.ofNumbers(new double[][] {{1, 2, 3}, {4, 5, 6}});
+    final XLArray values = XLArray.of(new XLValue[][] {{XLNumber.of(1), XLNumber.of(2), XLNumber.of(3)},
+      {XLNumber.of(4), XLNumber.of(5), XLNumber.of(6)}});
+    assertEquals(area, values);
+    assertEquals(values, area);
+    assertEquals(area.hashCode(), values.hashCode());
+    // a view onto the area
+    final XLArray column = area.getColumn(1);
+    assertEquals(column, XLArray.ofColumn(new double[] {2, 5}));
+    assertEquals(column.hashCode(), XLArray.ofColumn(new double[] {2, 5}).hashCode());
+    assertFalse(column.equals(XLArray.ofRow(new double[] {2, 5})));
+    assertFalse(area.equals(XLArray.ofNumbers(new double[][] {{1, 2, 3}, {4, 5, 7}})));
+    // the same as XLNumber.equals()
+    assertEquals(XLArray.ofRow(new double[] {Double.NaN}), XLArray.ofRow(new double[] {Double.NaN}));
+    assertFalse(XLArray.ofRow(new double[] {0.}).equals(XLArray.ofRow(new double[] {-0.})));
+    // copies are never the underlying array
+    final double[] numbers = new double[] {1, 2};
+    assertEquals(XLArray.ofRow(numbers).copyNumbers(), numbers);
+    assertFalse(XLArray.ofRow(numbers).copyNumbers() == numbers);
+    assertEquals(area.getRow(1).copyNumbers(), new double[] {4, 5, 6});
+  }
+
+  /**
+   * Tests that an area must be rectangular.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testJaggedNumericArray() {
+    XLArray.ofNumbers(new double[][] {{1, 2}, {3}});
+  }
+
+  /**
+   * Tests that cells outside the array cannot be accessed.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testOutsideArray() {
+    XLArray.ofRow(new double[] {1, 2}).getValue(1, 0);
+  }
+
+  /**
+   * Tests arrays with mixed types held in primitive columns.
+   */
+  @Test
+  public void testPackedArrays() {
+    final XLValue[][] values = new XLValue[][] {
+      {XLNumber.of(1), XLBoolean.from(true), XLString.of("A")},
+      {XLError.NA, XLNumber.of(2), XLBoolean.from(false)}
+    };
+    final XLArray packed = XLArray.ofPacked(values);
+    assertFalse(packed.isNumeric());
+    assertTrue(packed.isArea());
+    assertEquals(packed, XLArray.of(values));
+    assertEquals(packed.getValue(0, 2), XLString.of("A"));
+    assertEquals(packed.getValue(1, 0), XLError.NA);
+    assertSame(packed.getValue(0, 1), XLBoolean.TRUE);
+    assertEquals(packed.getRow(1).getArray(), new XLValue[][] {values[1]});
+    // a view that only contains numbers
+    final XLArray numbers = XLArray.ofPacked(new XLValue[][] {{XLNumber.of(1), XLString.of("B")}, {XLNumber.of(3), XLString.of("C")}});
+    assertTrue(numbers.getColumn(0).isNumeric());
+    assertFalse(numbers.getColumn(1).isNumeric());
+    assertEquals(numbers.getColumn(0).getNumbers(), new double[] {1, 3});
+  }
+
+  /**
+   * Tests rows and columns of arrays of values.
+   */
+  @Test
+  public void testValueRowsAndColumns() {
+    final XLArray multi = XLArray.of(MULTI);
+    assertFalse(multi.isNumeric());
+    assertEquals(multi.getRows(), 4);
+    assertEquals(multi.getColumns(), 3);
+    assertSame(multi.getValue(3, 0), MULTI[3][0]);
+    assertEquals(multi.getRow(0).getArray(), new XLValue[][] {MULTI[0]});
+    assertEquals(multi.getColumn(1).getArray(), new XLValue[][] {{MULTI[0][1]}, {MULTI[1][1]}, {MULTI[2][1]}, {MULTI[3][1]}});
+  }
 }
@@ -928,6 +928,16 @@ public class DefaultExcelCallbackTest {
         return isCallerRequired == null ? false : isCallerRequired;
       }
 
+      @Override
+      public boolean isCacheable() {
+        return false;
+      }
+
+      @Override
+      public boolean isSingleFlight() {
+        return false;
+      }
+
     };
   }
 
@@ -1007,6 +1017,16 @@ public class DefaultExcelCallbackTest {
         return isCallerRequired == null ? false : isCallerRequired;
       }
 
+      @Override
+      public boolean isCacheable() {
+        return false;
+      }
+
+      @Override
+      public boolean isSingleFlight() {
+        return false;
+      }
+
       @Override
       public boolean isAutoRTDAsynchronous() {
         return isAutoRTDAsynchronous == null ? false : isAutoRTDAsynchronous;
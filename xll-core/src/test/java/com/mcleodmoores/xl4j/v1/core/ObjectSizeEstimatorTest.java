@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ObjectSizeEstimator}.
+ */
+public class ObjectSizeEstimatorTest {
+
+  /**
+   * Tests the sizes of arrays.
+   */
+  @Test
+  public void testArrays() {
+    assertEquals(ObjectSizeEstimator.estimate(new double[0]), 16);
+    assertEquals(ObjectSizeEstimator.estimate(new double[1000]), 16 + 8000);
+    assertEquals(ObjectSizeEstimator.estimate(new byte[1]), 24);
+    // the references and the elements
+    assertEquals(ObjectSizeEstimator.estimate(new Object[] {new double[1], new double[1]}), 24 + 2 * 24);
+  }
+
+  /**
+   * Tests that the objects reachable from an object are counted once each.
+   */
+  @Test
+  public void testGraph() {
+    final double[] shared = new double[100];
+    final List<double[]> list = new ArrayList<>();
+    list.add(shared);
+    list.add(shared);
+    list.add(new double[100]);
+    final long size = ObjectSizeEstimator.estimate(list);
+    assertTrue(size >= 2 * (16 + 800));
+    assertTrue(size < 3 * (16 + 800));
+    // cycles are followed once
+    final List<Object> cycle = new ArrayList<>();
+    cycle.add(cycle);
+    assertTrue(ObjectSizeEstimator.estimate(cycle) > 0);
+  }
+
+  /**
+   * Tests that the contents of maps and strings are counted, whether or not their fields can be read.
+   */
+  @Test
+  public void testMapsAndStrings() {
+    final Map<String, double[]> hashMap = new HashMap<>();
+    final Map<String, double[]> treeMap = new TreeMap<>();
+    for (int i = 0; i < 10; i++) {
+      hashMap.put(Integer.toString(i), new double[100]);
+      treeMap.put(Integer.toString(i), new double[100]);
+    }
+    assertTrue(ObjectSizeEstimator.estimate(hashMap) >= 10 * (16 + 800));
+    assertTrue(ObjectSizeEstimator.estimate(treeMap) >= 10 * (16 + 800));
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append('a');
+    }
+    assertTrue(ObjectSizeEstimator.estimate(sb.toString()) >= 1000);
+  }
+
+  /**
+   * Tests that shared objects such as classes and enum constants are not counted.
+   */
+  @Test
+  public void testSharedObjects() {
+    final Object[] array = new Object[] {String.class, TimeUnit.SECONDS};
+    assertEquals(ObjectSizeEstimator.estimate(array), 24);
+  }
+
+  /**
+   * Tests that the walk stops after the maximum number of objects.
+   */
+  @Test
+  public void testLargeGraph() {
+    final List<Object> list = new ArrayList<>();
+    for (int i = 0; i < 2 * ObjectSizeEstimator.MAX_OBJECTS; i++) {
+      list.add(new Object());
+    }
+    final long size = ObjectSizeEstimator.estimate(list);
+    assertTrue(size < 2L * ObjectSizeEstimator.MAX_OBJECTS * 16);
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.ObjectXLObjectTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.PrimitiveIntegerXLNumberTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.StringXLStringTypeConverter;
+import com.mcleodmoores.xl4j.v1.typeconvert.converters.XLValueXLValueTypeConverter;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link ArgumentBinding}.
+ */
+public class ArgumentBindingTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final TypeConverter STRING_CONVERTER = new StringXLStringTypeConverter();
+  private static final TypeConverter INT_CONVERTER = new PrimitiveIntegerXLNumberTypeConverter();
+  private static final TypeConverter XLVALUE_CONVERTER = new XLValueXLValueTypeConverter();
+  private static final TypeConverter OBJECT_CONVERTER = new ObjectXLObjectTypeConverter(EXCEL);
+
+  /**
+   * Tests that a binding is created for each converter and that XLObjects are only got from the heap for parameters whose
+   * converters do not take XLObject.
+   */
+  @Test
+  public void testBindings() {
+    final ArgumentBinding[] bindings = ArgumentBinding.of(new Type[] {String.class, Object.class, XLValue.class, XLObject.class},
+        new TypeConverter[] {STRING_CONVERTER, OBJECT_CONVERTER, XLVALUE_CONVERTER, STRING_CONVERTER}, OBJECT_CONVERTER);
+    assertEquals(bindings.length, 4);
+    assertTrue(bindings[0].isDereferencing());
+    assertFalse(bindings[1].isDereferencing());
+    assertFalse(bindings[2].isDereferencing());
+    assertFalse(bindings[3].isDereferencing());
+  }
+
+  /**
+   * Tests that empty arguments are bound to null.
+   */
+  @Test
+  public void testEmptyArguments() {
+    final ArgumentBinding binding = ArgumentBinding.of(new Type[] {String.class}, new TypeConverter[] {STRING_CONVERTER}, OBJECT_CONVERTER)[0];
+    assertNull(binding.bind(XLNil.INSTANCE));
+    assertNull(binding.bind(XLMissing.INSTANCE));
+  }
+
+  /**
+   * Tests that arguments are converted.
+   */
+  @Test
+  public void testConversion() {
+    final ArgumentBinding[] bindings = ArgumentBinding.of(new Type[] {String.class, Integer.TYPE},
+        new TypeConverter[] {STRING_CONVERTER, INT_CONVERTER}, OBJECT_CONVERTER);
+    assertEquals(bindings[0].bind(XLString.of("abc")), "abc");
+    assertEquals(bindings[1].bind(XLNumber.of(3)), 3);
+  }
+
+  /**
+   * Tests that objects are got from the heap.
+   */
+  @Test
+  public void testObject() {
+    final ArgumentBinding[] bindings = ArgumentBinding.of(new Type[] {String.class, XLValue.class},
+        new TypeConverter[] {STRING_CONVERTER, XLVALUE_CONVERTER}, OBJECT_CONVERTER);
+    final XLObject object = XLObject.of(String.class, EXCEL.getHeap().getHandle("on the heap"));
+    assertEquals(bindings[0].bind(object), "on the heap");
+    assertEquals(bindings[1].bind(object), object);
+  }
+
+  /**
+   * Tests the exception when there is no converter for a parameter.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNoConverter() {
+    final ArgumentBinding binding = ArgumentBinding.of(new Type[] {String.class}, new TypeConverter[] {null}, OBJECT_CONVERTER)[0];
+    binding.bind(XLString.of("abc"));
+  }
+
+  /**
+   * Tests that a method that takes a type that is not an Excel type can be called with an object from the heap, and with
+   * converted values, through the same invoker.
+   *
+   * @throws NoSuchMethodException
+   *           if the method cannot be found
+   */
+  @Test
+  public void testInvoker() throws NoSuchMethodException {
+    final Method method = ArgumentBindingTest.class.getMethod("repeat", String.class, Integer.TYPE);
+    final ObjectResultMethodInvoker invoker = new ObjectResultMethodInvoker(method, new TypeConverter[] {STRING_CONVERTER, INT_CONVERTER},
+        OBJECT_CONVERTER, OBJECT_CONVERTER);
+    final XLObject object = XLObject.of(String.class, EXCEL.getHeap().getHandle("ab"));
+    XLValue result = invoker.invoke(null, new XLValue[] {object, XLNumber.of(2)});
+    assertEquals(EXCEL.getHeap().getObject(((XLObject) result).getHandle()), "abab");
+    result = invoker.invoke(null, new XLValue[] {XLString.of("c"), XLNumber.of(3)});
+    assertEquals(EXCEL.getHeap().getObject(((XLObject) result).getHandle()), "ccc");
+  }
+
+  //CHECKSTYLE:OFF
+  public static String repeat(final String string, final int n) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      sb.append(string);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.CallSiteCache.CallSite;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link CallSiteCache}.
+ */
+public class CallSiteCacheTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final XLString NAME = XLString.of("method");
+
+  /**
+   * Tests that the candidates are only resolved once for the same argument types.
+   */
+  @Test
+  public void testResolvedOnce() {
+    final AtomicInteger resolutions = new AtomicInteger();
+    final InvokerFactory factory = factory(resolutions, new MethodInvoker[] {invoker(null, XLNumber.of(1))});
+    final CallSiteCache cache = new CallSiteCache();
+    final CallSite<MethodInvoker> callSite = cache.getMethodCallSite(factory, String.class, NAME, TypeConversionMode.SIMPLEST_RESULT,
+        XLNumber.of(1));
+    assertSame(cache.getMethodCallSite(factory, String.class, NAME, TypeConversionMode.SIMPLEST_RESULT, XLNumber.of(2)), callSite);
+    assertEquals(resolutions.get(), 1);
+    assertEquals(cache.getHits(), 1);
+    assertEquals(cache.getMisses(), 1);
+    // different argument types, conversion mode or class are different call sites
+    cache.getMethodCallSite(factory, String.class, NAME, TypeConversionMode.SIMPLEST_RESULT, XLString.of("1"));
+    cache.getMethodCallSite(factory, String.class, NAME, TypeConversionMode.OBJECT_RESULT, XLNumber.of(1));
+    cache.getMethodCallSite(factory, Integer.class, NAME, TypeConversionMode.SIMPLEST_RESULT, XLNumber.of(1));
+    assertEquals(resolutions.get(), 4);
+    assertEquals(cache.size(), 4);
+    cache.clear();
+    assertEquals(cache.size(), 0);
+  }
+
+  /**
+   * Tests that the candidate that succeeded is tried first on later calls.
+   */
+  @Test
+  public void testWinnerTriedFirst() {
+    final AtomicInteger failingCalls = new AtomicInteger();
+    final MethodInvoker failing = invoker(failingCalls, null);
+    final MethodInvoker working = invoker(null, XLNumber.of(10));
+    final InvokerFactory factory = factory(new AtomicInteger(), new MethodInvoker[] {failing, working});
+    final CallSite<MethodInvoker> callSite = new CallSiteCache().getMethodCallSite(factory, String.class, NAME,
+        TypeConversionMode.SIMPLEST_RESULT);
+    assertNull(callSite.getWinner());
+    assertEquals(callSite.call(null, new XLValue[0]), XLNumber.of(10));
+    assertSame(callSite.getWinner(), working);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(callSite.call(null, new XLValue[0]), XLNumber.of(10));
+    }
+    assertEquals(failingCalls.get(), 1);
+    assertEquals(callSite.getFailures(0), 1);
+    assertEquals(callSite.getFailures(1), 0);
+  }
+
+  /**
+   * Tests that the candidates are tried in the same order as the factory array: from the front until a null, then from the back.
+   */
+  @Test
+  public void testVarargsOrder() {
+    final AtomicInteger calls = new AtomicInteger();
+    final MethodInvoker exact = invoker(calls, null);
+    final MethodInvoker varargs = invoker(null, XLNumber.of(2));
+    final InvokerFactory factory = factory(new AtomicInteger(), new MethodInvoker[] {exact, null, null, varargs});
+    final CallSite<MethodInvoker> callSite = new CallSiteCache().getMethodCallSite(factory, String.class, NAME,
+        TypeConversionMode.SIMPLEST_RESULT);
+    assertEquals(callSite.getCandidateCount(), 2);
+    assertEquals(callSite.call(null, new XLValue[0]), XLNumber.of(2));
+    assertEquals(calls.get(), 1);
+  }
+
+  /**
+   * Tests that the other candidates are tried if the winner fails for some values.
+   */
+  @Test
+  public void testFallback() {
+    final MethodInvoker first = invoker(null, XLNumber.of(1));
+    final MethodInvoker second = invoker(null, XLNumber.of(2));
+    final InvokerFactory factory = factory(new AtomicInteger(), new MethodInvoker[] {first, second});
+    final CallSite<MethodInvoker> callSite = new CallSiteCache().getMethodCallSite(factory, String.class, NAME,
+        TypeConversionMode.SIMPLEST_RESULT);
+    assertEquals(callSite.call(null, new XLValue[0]), XLNumber.of(1));
+    // the first candidate fails if the argument is a failure marker
+    assertEquals(callSite.call(null, new XLValue[] {XLString.of("fail1")}), XLNumber.of(2));
+    assertSame(callSite.getWinner(), second);
+    assertEquals(callSite.getFailures(0), 1);
+  }
+
+  /**
+   * Tests that an exception is thrown if no candidate succeeds.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNoCandidateSucceeds() {
+    final InvokerFactory factory = factory(new AtomicInteger(), new MethodInvoker[] {invoker(null, null)});
+    new CallSiteCache().getMethodCallSite(factory, String.class, NAME, TypeConversionMode.SIMPLEST_RESULT).call(null, new XLValue[0]);
+  }
+
+  /**
+   * Tests that a method that cannot be resolved is cached.
+   */
+  @Test
+  public void testUnresolved() {
+    final CallSiteCache cache = new CallSiteCache();
+    final InvokerFactory factory = new ReflectiveInvokerFactory(EXCEL, EXCEL.getTypeConverterRegistry());
+    final CallSite<MethodInvoker> callSite = cache.getMethodCallSite(factory, String.class, XLString.of("noSuchMethod"),
+        TypeConversionMode.SIMPLEST_RESULT);
+    assertEquals(callSite.getCandidateCount(), 0);
+    assertSame(cache.getMethodCallSite(factory, String.class, XLString.of("noSuchMethod"), TypeConversionMode.SIMPLEST_RESULT), callSite);
+    try {
+      callSite.call(null, new XLValue[0]);
+    } catch (final XL4JRuntimeException e) {
+      return;
+    }
+    throw new AssertionError("Expected exception");
+  }
+
+  /**
+   * Tests call sites using the reflective invoker factory.
+   */
+  @Test
+  public void testReflective() {
+    final CallSiteCache cache = new CallSiteCache();
+    final InvokerFactory factory = new ReflectiveInvokerFactory(EXCEL, EXCEL.getTypeConverterRegistry());
+    final CallSite<MethodInvoker> method = cache.getMethodCallSite(factory, Math.class, XLString.of("abs"),
+        TypeConversionMode.SIMPLEST_RESULT, XLNumber.of(-2));
+    assertEquals(method.call(null, new XLValue[] {XLNumber.of(-2)}), XLNumber.of(2));
+    assertEquals(method.call(null, new XLValue[] {XLNumber.of(-3)}), XLNumber.of(3));
+    final CallSite<ConstructorInvoker> constructor = cache.getConstructorCallSite(factory, StringBuilder.class,
+        TypeConversionMode.OBJECT_RESULT, XLString.of("abc"));
+    final XLValue result = constructor.call(null, new XLValue[] {XLString.of("abc")});
+    assertEquals(((XLObject) result).getClazz(), StringBuilder.class.getSimpleName());
+    assertEquals(EXCEL.getHeap().getObject(((XLObject) result).getHandle()).toString(), "abc");
+    assertEquals(cache.size(), 2);
+  }
+
+  private static InvokerFactory factory(final AtomicInteger resolutions, final MethodInvoker[] invokers) {
+    return (InvokerFactory) Proxy.newProxyInstance(InvokerFactory.class.getClassLoader(), new Class<?>[] {InvokerFactory.class},
+        new InvocationHandler() {
+
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("getMethodTypeConverter")) {
+              resolutions.incrementAndGet();
+              return invokers.clone();
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /**
+   * Creates an invoker that returns the result, or throws an exception if the result is null or the first argument is
+   * <code>"fail" + result</code>.
+   */
+  private static MethodInvoker invoker(final AtomicInteger calls, final XLValue result) {
+    return (MethodInvoker) Proxy.newProxyInstance(MethodInvoker.class.getClassLoader(), new Class<?>[] {MethodInvoker.class},
+        new InvocationHandler() {
+
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().equals("invoke")) {
+              if (calls != null) {
+                calls.incrementAndGet();
+              }
+              final XLValue[] values = (XLValue[]) args[1];
+              if (result == null
+                  || values.length > 0 && values[0].equals(XLString.of("fail" + ((XLNumber) result).getAsInt()))) {
+                throw new XL4JRuntimeException("Failed");
+              }
+              return result;
+            }
+            if (method.getName().equals("hashCode")) {
+              return System.identityHashCode(proxy);
+            }
+            if (method.getName().equals("equals")) {
+              return proxy == args[0];
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.invoke;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.reflections.Reflections;
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.InvokerTestHelper;
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.FieldGetter;
+import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.CachingTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.typeconvert.ScanningTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link MethodHandleInvokerFactory}.
+ */
+public class MethodHandleInvokerFactoryTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final Reflections REFLECTIONS = ReflectionsUtils.getReflections();
+  private static final TypeConverterRegistry REGISTRY = new CachingTypeConverterRegistry(new ScanningTypeConverterRegistry(EXCEL, REFLECTIONS));
+  private static final InvokerFactory FACTORY = new MethodHandleInvokerFactory(EXCEL, REGISTRY);
+  private static final InvokerFactory REFLECTIVE_FACTORY = new ReflectiveInvokerFactory(EXCEL, REGISTRY);
+
+  /**
+   * Tests that the registry cannot be null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullRegistry() {
+    new MethodHandleInvokerFactory(EXCEL, null);
+  }
+
+  /**
+   * Tests that static methods with no arguments, single arguments and multiple arguments are called and give the same
+   * results as the reflective invoker.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testStaticMethods() throws Exception {
+    final Method noArgs = InvokerTestHelper.class.getMethod("noArgsMethod");
+    final Method singleArg = InvokerTestHelper.class.getMethod("singleArgMethod", Integer.TYPE);
+    final Method multiArgs = InvokerTestHelper.class.getMethod("multiArgsMethod", Integer.TYPE, Integer.TYPE);
+    final Method xlArgs = InvokerTestHelper.class.getMethod("multiArgsXlMethod", XLString.class, XLNumber.class);
+    assertSameResult(noArgs, TypeConversionMode.SIMPLEST_RESULT, null);
+    assertSameResult(singleArg, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(2));
+    assertSameResult(singleArg, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(-2));
+    assertSameResult(multiArgs, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(2), XLNumber.of(-3));
+    assertSameResult(xlArgs, TypeConversionMode.PASSTHROUGH, null, XLString.of("3"), XLNumber.of(3));
+    final MethodInvoker invoker = FACTORY.getMethodTypeConverter(multiArgs, TypeConversionMode.SIMPLEST_RESULT);
+    assertEquals(invoker.invoke(null, new XLValue[] {XLNumber.of(2), XLNumber.of(3)}), XLBoolean.TRUE);
+    assertEquals(invoker.invoke(null, new XLValue[] {XLNumber.of(2), XLNumber.of(-3)}), XLBoolean.FALSE);
+  }
+
+  /**
+   * Tests that varargs methods are called with empty and non-empty varargs.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testVarArgsMethods() throws Exception {
+    final Method varArgs1 = InvokerTestHelper.class.getMethod("varArgsMethod1", int[].class);
+    final Method varArgs2 = InvokerTestHelper.class.getMethod("varArgsMethod2", Integer.TYPE, Integer.TYPE, int[].class);
+    final Method xlVarArgs = InvokerTestHelper.class.getMethod("varArgsXlMethod1", XLValue[].class);
+    assertSameResult(varArgs1, TypeConversionMode.SIMPLEST_RESULT, null);
+    assertSameResult(varArgs1, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(1), XLNumber.of(2), XLNumber.of(-3));
+    assertSameResult(varArgs2, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(1), XLNumber.of(2));
+    assertSameResult(varArgs2, TypeConversionMode.SIMPLEST_RESULT, null, XLNumber.of(1), XLNumber.of(2), XLNumber.of(3), XLNumber.of(4));
+    assertSameResult(xlVarArgs, TypeConversionMode.PASSTHROUGH, null, XLNumber.of(1), XLString.of("2"));
+    assertEquals(FACTORY.getMethodTypeConverter(varArgs1, TypeConversionMode.SIMPLEST_RESULT)
+        .invoke(null, new XLValue[] {XLNumber.of(1), XLNumber.of(-2)}), XLBoolean.FALSE);
+  }
+
+  /**
+   * Tests that void methods return XLMissing.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testVoidMethods() throws Exception {
+    final Method staticMethod = InvokerTestHelper.class.getMethod("voidStaticMethod");
+    final Method instanceMethod = InvokerTestHelper.class.getMethod("voidMethod");
+    assertEquals(FACTORY.getMethodTypeConverter(staticMethod, TypeConversionMode.SIMPLEST_RESULT).invoke(null, new XLValue[0]),
+        XLMissing.INSTANCE);
+    assertEquals(FACTORY.getMethodTypeConverter(instanceMethod, TypeConversionMode.SIMPLEST_RESULT)
+        .invoke(new InvokerTestHelper(), new XLValue[0]), XLMissing.INSTANCE);
+  }
+
+  /**
+   * Tests that instance methods are called on the object that is passed in and that objects are put on the heap.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testInstanceMethod() throws Exception {
+    final Method method = InvokerTestHelper.class.getMethod("getInputs");
+    final InvokerTestHelper helper = new InvokerTestHelper(1, 2);
+    final XLValue result = FACTORY.getMethodTypeConverter(method, TypeConversionMode.OBJECT_RESULT).invoke(helper, new XLValue[0]);
+    assertTrue(result instanceof XLObject);
+    final Object list = EXCEL.getHeap().getObject(((XLObject) result).getHandle());
+    assertEquals(list, helper.getInputs());
+  }
+
+  /**
+   * Tests that exceptions thrown when calling the method are wrapped.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testWrongObject() throws Exception {
+    final Method method = InvokerTestHelper.class.getMethod("getInputs");
+    FACTORY.getMethodTypeConverter(method, TypeConversionMode.OBJECT_RESULT).invoke("not a helper", new XLValue[0]);
+  }
+
+  /**
+   * Tests constructors.
+   * @throws Exception  if the constructor cannot be found
+   */
+  @Test
+  public void testConstructors() throws Exception {
+    final Constructor<?> constructor = InvokerTestHelper.class.getConstructor(Integer.TYPE, Integer.TYPE);
+    final ConstructorInvoker invoker = FACTORY.getConstructorTypeConverter(constructor);
+    XLValue result = invoker.newInstance(new XLValue[] {XLNumber.of(1), XLNumber.of(2)});
+    assertTrue(result instanceof XLObject);
+    InvokerTestHelper helper = (InvokerTestHelper) EXCEL.getHeap().getObject(((XLObject) result).getHandle());
+    assertEquals(helper.getInputs().size(), 2);
+    assertEquals(helper.getInputs().get(0), 1);
+    assertEquals(helper.getInputs().get(1), 2);
+    final Constructor<?> varArgsConstructor = InvokerTestHelper.class.getConstructor(int[].class);
+    result = FACTORY.getConstructorTypeConverter(varArgsConstructor).newInstance(new XLValue[] {XLNumber.of(1), XLNumber.of(2), XLNumber.of(3)});
+    helper = (InvokerTestHelper) EXCEL.getHeap().getObject(((XLObject) result).getHandle());
+    final List<Object> inputs = helper.getInputs();
+    assertEquals(inputs.size(), 1);
+    assertEquals(((int[]) inputs.get(0)).length, 3);
+  }
+
+  /**
+   * Tests fields.
+   * @throws Exception  if the field cannot be found
+   */
+  @Test
+  public void testFields() throws Exception {
+    final Field intField = InvokerTestHelper.class.getField("INT_FIELD");
+    final Field xlValueField = InvokerTestHelper.class.getField("XL_VALUE_FIELD");
+    FieldGetter getter = FACTORY.getFieldTypeConverter(intField, TypeConversionMode.SIMPLEST_RESULT);
+    assertTrue(getter instanceof ObjectFieldGetter);
+    assertEquals(getter.get(null), XLNumber.of(InvokerTestHelper.INT_FIELD));
+    getter = FACTORY.getFieldTypeConverter(xlValueField, TypeConversionMode.PASSTHROUGH);
+    assertTrue(getter instanceof PassthroughFieldGetter);
+    assertEquals(getter.get(null), InvokerTestHelper.XL_VALUE_FIELD);
+    getter = FACTORY.getFieldTypeConverter(intField, TypeConversionMode.OBJECT_RESULT);
+    assertTrue(getter.get(null) instanceof XLObject);
+  }
+
+  private static void assertSameResult(final Method method, final TypeConversionMode mode, final Object object, final XLValue... arguments) {
+    final XLValue expected = REFLECTIVE_FACTORY.getMethodTypeConverter(method, mode).invoke(object, arguments);
+    final XLValue actual = FACTORY.getMethodTypeConverter(method, mode).invoke(object, arguments);
+    assertEquals(actual, expected);
+  }
+}
@@ -208,6 +208,22 @@ public class SimpleResultMethodInvokerTest {
     assertEquals(result, XLBoolean.FALSE);
   }
 
+  /**
+   * Tests that the varargs array is filled from the arguments after the offset.
+   */
+  @Test
+  public void testVarArgsWithOffset() {
+    final OffsetMethodInvoker invoker = new SimpleResultMethodInvoker(VAR_ARGS_METHOD_2,
+        new TypeConverter[] {INT_CONVERTER, INT_CONVERTER, INT_ARRAY_CONVERTER}, BOOLEAN_CONVERTER, OBJECT_CONVERTER);
+    // the first argument is skipped
+    XLValue result = invoker.invoke(null, new XLValue[] {XLNumber.of(-10), XLNumber.of(10), XLNumber.of(20), XLNumber.of(30)}, 1);
+    assertEquals(result, XLBoolean.TRUE);
+    result = invoker.invoke(null, new XLValue[] {XLNumber.of(10), XLNumber.of(10), XLNumber.of(20), XLNumber.of(-30)}, 1);
+    assertEquals(result, XLBoolean.FALSE);
+    result = invoker.invoke(null, new XLValue[] {XLNumber.of(10), XLNumber.of(10), XLNumber.of(20)}, 1);
+    assertEquals(result, XLBoolean.TRUE);
+  }
+
   /**
    * Tests passing a XLMissing (translated to null) into a method.
    * @throws NoSuchMethodException  if the method can't be found
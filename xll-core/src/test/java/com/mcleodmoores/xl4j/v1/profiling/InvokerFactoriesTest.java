@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.profiling;
+
+import java.lang.reflect.Method;
+
+import org.reflections.Reflections;
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.InvokerTestHelper;
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.MethodHandleInvokerFactory;
+import com.mcleodmoores.xl4j.v1.invoke.ReflectiveInvokerFactory;
+import com.mcleodmoores.xl4j.v1.typeconvert.CachingTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.typeconvert.ScanningTypeConverterRegistry;
+import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
+
+/**
+ * Compares the time taken to call a method using invokers from {@link ReflectiveInvokerFactory} and {@link MethodHandleInvokerFactory}.
+ */
+public class InvokerFactoriesTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final Reflections REFLECTIONS = ReflectionsUtils.getReflections();
+  private static final TypeConverterRegistry REGISTRY = new CachingTypeConverterRegistry(new ScanningTypeConverterRegistry(EXCEL, REFLECTIONS));
+
+  /**
+   * Tests the time taken to call a method reflectively.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testReflectiveInvoker() throws Exception {
+    final Method method = InvokerTestHelper.class.getMethod("multiArgsMethod", Integer.TYPE, Integer.TYPE);
+    final MethodInvoker invoker = new ReflectiveInvokerFactory(EXCEL, REGISTRY).getMethodTypeConverter(method, TypeConversionMode.SIMPLEST_RESULT);
+    time("testReflectiveInvoker", invoker);
+  }
+
+  /**
+   * Tests the time taken to call a method through a method handle.
+   * @throws Exception  if the method cannot be found
+   */
+  @Test
+  public void testMethodHandleInvoker() throws Exception {
+    final Method method = InvokerTestHelper.class.getMethod("multiArgsMethod", Integer.TYPE, Integer.TYPE);
+    final MethodInvoker invoker = new MethodHandleInvokerFactory(EXCEL, REGISTRY).getMethodTypeConverter(method, TypeConversionMode.SIMPLEST_RESULT);
+    time("testMethodHandleInvoker", invoker);
+  }
+
+  private static void time(final String name, final MethodInvoker invoker) {
+    final long hotspotWarmup = 10000;
+    final long testRuns = 100000;
+    final XLValue[] arguments = new XLValue[] {XLNumber.of(2), XLNumber.of(3)};
+    for (long i = 0; i < hotspotWarmup; i++) {
+      invoker.invoke(null, arguments);
+    }
+    final long startTime = System.nanoTime();
+    for (long i = 0; i < testRuns; i++) {
+      invoker.invoke(null, arguments);
+    }
+    final long endTime = System.nanoTime();
+    System.err.println(name + ": " + (endTime - startTime) / 1000000 + "ms");
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.CallLog;
+import com.mcleodmoores.xl4j.v1.core.CallLog.RecordedCall;
+import com.mcleodmoores.xl4j.v1.core.CallRecorder;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.simulator.CallReplayer.ReplayResult;
+
+/**
+ * Unit tests for {@link CallReplayer}.
+ */
+public class CallReplayerTest {
+  private static final AtomicInteger COUNTER_CALLS = new AtomicInteger();
+
+  /**
+   * Tests that calls made through the simulator are recorded and replayed, with the handles of objects created by the replay
+   * passed to later calls.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testRecordAndReplay() throws IOException {
+    final File file = record();
+    try (CallLog log = new CallLog(file)) {
+      final RecordedCall create = log.next();
+      assertEquals(create.getFunctionName(), "ReplayCounter");
+      assertEquals(create.getArgs(), new XLValue[] {XLNumber.of(10)});
+      assertEquals(create.getResultType(), XLObject.class);
+      final RecordedCall increment = log.next();
+      assertEquals(increment.getFunctionName(), "ReplayIncrement");
+      assertEquals(increment.getArgs()[0], create.getResult());
+      assertTrue(increment.getLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+      assertEquals(log.next().getArgs()[0], ((XLObject) create.getResult()).toXLString());
+    }
+    final int calls = COUNTER_CALLS.get();
+    final ReplayResult result = new CallReplayer().replay(file, false);
+    assertEquals(result.getCalls(), 4);
+    assertEquals(result.getSkipped(), 0);
+    // the counters are only found if the recorded handles have been replaced
+    assertEquals(result.getErrors(), 0);
+    assertEquals(result.getMismatches(), 0);
+    assertEquals(COUNTER_CALLS.get(), calls + 3);
+    assertTrue(result.getRecordedNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    assertTrue(result.getReplayedNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  /**
+   * Tests that a paced replay waits between calls for as long as the recording did.
+   *
+   * @throws IOException
+   *           if the log cannot be written or read
+   */
+  @Test
+  public void testPaced() throws IOException {
+    final File file = record();
+    final ReplayResult fast = new CallReplayer().replay(file, false);
+    final ReplayResult paced = new CallReplayer().replay(file, true);
+    assertEquals(paced.getCalls(), fast.getCalls());
+    assertTrue(paced.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(120));
+    assertTrue(paced.getElapsedNanos() > fast.getElapsedNanos());
+  }
+
+  private static File record() throws IOException {
+    final File file = File.createTempFile("xl4j-calls", ".log");
+    file.deleteOnExit();
+    final DefaultExcelFunctionCallHandler handler = (DefaultExcelFunctionCallHandler) ExcelFactory.getInstance().getExcelCallHandler();
+    final MockFunctionProcessor processor = MockFunctionProcessor.getInstance();
+    try (CallRecorder recorder = new CallRecorder(file)) {
+      handler.setCallRecorder(recorder);
+      final XLValue counter = processor.invoke("ReplayCounter", XLNumber.of(10));
+      processor.invoke("ReplayIncrement", counter);
+      sleep(100);
+      processor.invoke("ReplayIncrement", ((XLObject) counter).toXLString());
+      processor.invoke("ReplayLength", XLString.of("abc"));
+    } finally {
+      handler.setCallRecorder(null);
+    }
+    return file;
+  }
+
+  private static void sleep(final long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A mutable counter.
+   */
+  public static final class Counter {
+    private double _value;
+
+    Counter(final double value) {
+      _value = value;
+    }
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(name = "ReplayCounter")
+  public static Counter counter(final double value) {
+    return new Counter(value);
+  }
+
+  @XLFunction(name = "ReplayIncrement")
+  public static double increment(final Counter counter) {
+    COUNTER_CALLS.incrementAndGet();
+    sleep(20);
+    return ++counter._value;
+  }
+
+  @XLFunction(name = "ReplayLength")
+  public static double length(final String value) {
+    COUNTER_CALLS.incrementAndGet();
+    return value.length();
+  }
+}
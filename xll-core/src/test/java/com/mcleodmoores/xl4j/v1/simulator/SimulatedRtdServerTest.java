@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.Topic;
+import com.mcleodmoores.xl4j.v1.core.TopicEngine.TopicSource;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link SimulatedRtdServer}.
+ */
+public class SimulatedRtdServerTest {
+
+  /**
+   * Tests that a topic is calculated by calling its function when it is first subscribed to, and that cells with the same
+   * function and arguments share the topic.
+   */
+  @Test
+  public void testAutoRtd() {
+    final SimulatedRtdServer server = new SimulatedRtdServer();
+    server.subscribe("A1", "RtdLength", XLString.of("abc"));
+    server.subscribe("A2", "RtdLength", XLString.of("abc"));
+    server.subscribe("A3", "RtdLength", XLString.of("abcd"));
+    assertNull(server.getValue("A1"));
+    assertEquals(server.refresh(), 2);
+    assertEquals(server.getNotifications(), 1);
+    assertEquals(server.getValue("A1"), XLNumber.of(3));
+    assertEquals(server.getValue("A2"), XLNumber.of(3));
+    assertEquals(server.getValue("A3"), XLNumber.of(4));
+    assertEquals(server.getTopicEngine().getTopicCount(), 2);
+    // recalculating a cell with new arguments moves its subscription
+    server.subscribe("A3", "RtdLength", XLString.of("abc"));
+    assertEquals(server.getTopicEngine().getTopicCount(), 1);
+    assertEquals(server.getValue("A3"), XLNumber.of(3));
+    assertEquals(server.refresh(), 0);
+    assertEquals(server.getNotifications(), 1);
+    assertTrue(server.unsubscribe("A1"));
+    assertFalse(server.unsubscribe("A1"));
+    assertNull(server.getValue("A1"));
+    assertEquals(server.getTopicEngine().getSubscriptionCount(), 2);
+  }
+
+  /**
+   * Tests that subscribing to a function that is not registered fails.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testUnknownFunction() {
+    new SimulatedRtdServer().subscribe("A1", "NoSuchRtdFunction");
+  }
+
+  /**
+   * Tests streaming thousands of ticking topics, which are conflated into a small number of notifications, and that a
+   * throttled function is delivered less often.
+   */
+  @Test
+  public void testMarketData() {
+    final Map<Topic, Boolean> connected = new ConcurrentHashMap<>();
+    final SimulatedRtdServer server = new SimulatedRtdServer(new TopicSource() {
+
+      @Override
+      public void connect(final Topic topic) {
+        connected.put(topic, Boolean.TRUE);
+      }
+
+      @Override
+      public void disconnect(final Topic topic) {
+        connected.remove(topic);
+      }
+    });
+    final TopicEngine engine = server.getTopicEngine();
+    engine.setThrottle("RtdLength", 1, TimeUnit.SECONDS);
+    final int nTickers = 5000;
+    for (int i = 0; i < nTickers; i++) {
+      server.subscribe("A" + (i + 1), "RtdPrice", XLString.of("TICKER" + i));
+      server.subscribe("B" + (i + 1), "RtdPrice", XLString.of("TICKER" + i));
+    }
+    server.subscribe("C1", "RtdLength", XLString.of("slow"));
+    assertEquals(connected.size(), nTickers + 1);
+    final long start = System.nanoTime();
+    final int nTicks = 20;
+    int refreshed = 0;
+    for (int tick = 0; tick < nTicks; tick++) {
+      // every topic ticks ten times between refreshes
+      for (int j = 0; j < 10; j++) {
+        for (final Topic topic : connected.keySet()) {
+          engine.publish(topic, XLNumber.of(tick * 10 + j));
+        }
+      }
+      refreshed += server.refresh(start + tick * TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    assertEquals(server.getNotifications(), nTicks);
+    // the slow topic is delivered at 0, 1000 and 2000ms at most
+    assertEquals(refreshed, nTicks * nTickers + 2);
+    assertEquals(engine.getPublished(), (long) nTicks * 10 * (nTickers + 1));
+    assertEquals(server.getValue("A1"), XLNumber.of(nTicks * 10 - 1));
+    assertEquals(server.getValue("B5000"), XLNumber.of(nTicks * 10 - 1));
+    assertEquals(server.getValue("C1"), XLNumber.of(109));
+    for (int i = 0; i < nTickers; i++) {
+      server.unsubscribe("A" + (i + 1));
+    }
+    assertEquals(connected.size(), nTickers + 1);
+    for (int i = 0; i < nTickers; i++) {
+      server.unsubscribe("B" + (i + 1));
+    }
+    assertEquals(connected.size(), 1);
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(name = "RtdLength", isAutoRTDAsynchronous = true, isMultiThreadSafe = false)
+  public static double length(final String value) {
+    return value.length();
+  }
+
+  @XLFunction(name = "RtdPrice", isAutoRTDAsynchronous = true, isMultiThreadSafe = false)
+  public static double price(final String ticker) {
+    return 100;
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.simulator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link SimulatedWorkbook}.
+ */
+public class SimulatedWorkbookTest {
+  private static final Set<String> THREAD_SAFE_THREADS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private static final Set<String> MAIN_THREADS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private static final AtomicInteger VOLATILE_CALLS = new AtomicInteger();
+  private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+  private static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+
+  /**
+   * Tests that only the cells that depend on a changed cell are recalculated.
+   */
+  @Test
+  public void testRecalculation() {
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(2)) {
+      workbook.setValue("A1", XLNumber.of(1));
+      workbook.setValue("A2", XLNumber.of(2));
+      workbook.setFormula("A3", "=WorkbookAdd(A1, A2)");
+      workbook.setFormula("$A$4", "=WorkbookAdd(A3, 10)");
+      workbook.setFormula("B1", "=WorkbookAdd(A1, 0)");
+      assertEquals(workbook.getValue("A4"), XLNil.INSTANCE);
+      assertEquals(workbook.recalculate(), 3);
+      assertEquals(workbook.getValue("A4"), XLNumber.of(13));
+      assertEquals(workbook.recalculate(), 0);
+      workbook.setValue("A2", XLNumber.of(5));
+      assertEquals(workbook.recalculate(), 2);
+      assertEquals(workbook.getValue("a4"), XLNumber.of(16));
+      assertEquals(workbook.getValue("B1"), XLNumber.of(1));
+      assertEquals(workbook.recalculateAll(), 3);
+      assertEquals(workbook.getFormula("A4"), "=WorkbookAdd(A3, 10)");
+      assertNull(workbook.getFormula("A1"));
+      assertEquals(workbook.getValue("Z99"), XLNil.INSTANCE);
+    }
+  }
+
+  /**
+   * Tests that thread-safe functions are called on the pool and the others on the calling thread.
+   */
+  @Test
+  public void testThreads() {
+    THREAD_SAFE_THREADS.clear();
+    MAIN_THREADS.clear();
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(2)) {
+      workbook.setValue("A1", XLNumber.of(1));
+      for (int i = 1; i <= 10; i++) {
+        workbook.setFormula("B" + i, "=WorkbookAdd(A1, " + i + ")");
+        workbook.setFormula("C" + i, "=WorkbookMainThread(B" + i + ")");
+      }
+      assertEquals(workbook.recalculate(), 20);
+      assertEquals(workbook.getValue("C10"), XLNumber.of(11));
+    }
+    assertEquals(MAIN_THREADS, Collections.singleton(Thread.currentThread().getName()));
+    assertTrue(THREAD_SAFE_THREADS.size() > 0);
+    for (final String thread : THREAD_SAFE_THREADS) {
+      assertTrue(thread.startsWith("xl4j-workbook-"));
+    }
+  }
+
+  /**
+   * Tests that thread-safe cells that do not depend on each other are calculated at the same time.
+   */
+  @Test
+  public void testParallel() {
+    MAX_IN_FLIGHT.set(0);
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(4)) {
+      for (int i = 1; i <= 8; i++) {
+        workbook.setFormula("A" + i, "=WorkbookSlow(" + i + ")");
+      }
+      workbook.setFormula("B1", "=WorkbookSum(A1:A8)");
+      assertEquals(workbook.recalculate(), 9);
+      assertEquals(workbook.getValue("B1"), XLNumber.of(36));
+    }
+    assertTrue(MAX_IN_FLIGHT.get() > 1);
+  }
+
+  /**
+   * Tests that volatile cells and their dependents are calculated on every recalculation.
+   */
+  @Test
+  public void testVolatile() {
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(1)) {
+      workbook.setFormula("A1", "=WorkbookVolatile()");
+      workbook.setFormula("A2", "=WorkbookAdd(A1, 1)");
+      workbook.setFormula("A3", "=WorkbookAdd(2, 1)");
+      assertEquals(workbook.recalculate(), 3);
+      final int calls = VOLATILE_CALLS.get();
+      assertEquals(workbook.recalculate(), 2);
+      assertEquals(workbook.recalculate(), 2);
+      assertEquals(VOLATILE_CALLS.get(), calls + 2);
+      assertEquals(workbook.getValue("A2"), XLNumber.of(VOLATILE_CALLS.get() + 1));
+    }
+  }
+
+  /**
+   * Tests ranges, nested calls, strings and a long chain of cells.
+   */
+  @Test
+  public void testFormulas() {
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(0)) {
+      workbook.setValue("A1", XLNumber.of(1));
+      workbook.setValue("B1", XLNumber.of(2));
+      workbook.setFormula("C1", "=WorkbookSum(A1:B1)");
+      workbook.setFormula("C2", "WorkbookAdd(WorkbookAdd(1, 2), -3.5E0)");
+      workbook.setFormula("C3", "=WorkbookLength(\"say \"\"hi\"\"\")");
+      workbook.setFormula("C4", "=WorkbookSum(A1:A2)");
+      for (int i = 1; i < 1000; i++) {
+        workbook.setFormula("D" + (i + 1), "=WorkbookAdd(D" + i + ", 1)");
+      }
+      workbook.setValue("D1", XLNumber.of(0));
+      workbook.recalculate();
+      assertEquals(workbook.getValue("C1"), XLNumber.of(3));
+      assertEquals(workbook.getValue("C2"), XLNumber.of(-0.5));
+      assertEquals(workbook.getValue("C3"), XLNumber.of(8));
+      // an empty cell in a range is nil, which the function cannot handle
+      assertTrue(workbook.getValue("C4") instanceof XLError);
+      assertEquals(workbook.getValue("D1000"), XLNumber.of(999));
+    }
+  }
+
+  /**
+   * Tests that a circular reference is rejected and leaves the cell unchanged.
+   */
+  @Test
+  public void testCircularReference() {
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(1)) {
+      workbook.setFormula("A1", "=WorkbookAdd(A2, 1)");
+      workbook.setFormula("A2", "=WorkbookAdd(A3, 1)");
+      try {
+        workbook.setFormula("A3", "=WorkbookAdd(A1, 1)");
+        fail();
+      } catch (final XL4JRuntimeException e) {
+        assertTrue(e.getMessage().contains("Circular"));
+      }
+      try {
+        workbook.setFormula("A4", "=WorkbookAdd(A4, 1)");
+        fail();
+      } catch (final XL4JRuntimeException e) {
+        assertTrue(e.getMessage().contains("Circular"));
+      }
+      assertNull(workbook.getFormula("A3"));
+      workbook.setValue("A3", XLNumber.of(1));
+      workbook.recalculate();
+      assertEquals(workbook.getValue("A1"), XLNumber.of(3));
+    }
+  }
+
+  /**
+   * Tests formulas that cannot be parsed.
+   */
+  @Test
+  public void testInvalidFormulas() {
+    try (SimulatedWorkbook workbook = new SimulatedWorkbook(1)) {
+      for (final String formula : new String[] {"=NoSuchWorkbookFunction(1)", "=WorkbookAdd(1, 2", "=WorkbookAdd(1 2)", "=WorkbookAdd(x, 1)",
+          "=WorkbookLength(\"open)", "=WorkbookAdd(1, 2))"}) {
+        try {
+          workbook.setFormula("A1", formula);
+          fail(formula);
+        } catch (final XL4JRuntimeException e) {
+          // expected
+        }
+      }
+      try {
+        workbook.setValue("1A", XLString.of("invalid"));
+        fail();
+      } catch (final XL4JRuntimeException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Tests the conversion of references.
+   */
+  @Test
+  public void testReferences() {
+    assertEquals(Formula.toRowColumn("A1"), new int[] {0, 0});
+    assertEquals(Formula.toRowColumn("AB12"), new int[] {11, 27});
+    assertNull(Formula.toRowColumn("A0"));
+    assertNull(Formula.toRowColumn("12"));
+    assertNull(Formula.toRowColumn("ABC"));
+    assertEquals(Formula.toReference(11, 27), "AB12");
+    assertEquals(Formula.toReference(0, 25), "Z1");
+    assertEquals(Formula.toReference(0, 26), "AA1");
+  }
+
+  //CHECKSTYLE:OFF
+  @XLFunction(name = "WorkbookAdd")
+  public static double add(final double x, final double y) {
+    THREAD_SAFE_THREADS.add(Thread.currentThread().getName());
+    return x + y;
+  }
+
+  @XLFunction(name = "WorkbookMainThread", isMultiThreadSafe = false)
+  public static double mainThread(final double x) {
+    MAIN_THREADS.add(Thread.currentThread().getName());
+    return x;
+  }
+
+  @XLFunction(name = "WorkbookVolatile", isVolatile = true, isMultiThreadSafe = false)
+  public static double volatileFunction() {
+    return VOLATILE_CALLS.incrementAndGet();
+  }
+
+  @XLFunction(name = "WorkbookSlow")
+  public static double slow(final double x) throws InterruptedException {
+    final int inFlight = IN_FLIGHT.incrementAndGet();
+    while (true) {
+      final int max = MAX_IN_FLIGHT.get();
+      if (inFlight <= max || MAX_IN_FLIGHT.compareAndSet(max, inFlight)) {
+        break;
+      }
+    }
+    Thread.sleep(50);
+    IN_FLIGHT.decrementAndGet();
+    return x;
+  }
+
+  @XLFunction(name = "WorkbookSum")
+  public static double sum(final XLArray range) {
+    double sum = 0;
+    for (final XLValue[] row : range.getArray()) {
+      for (final XLValue value : row) {
+        sum += ((XLNumber) value).getValue();
+      }
+    }
+    return sum;
+  }
+
+  @XLFunction(name = "WorkbookLength")
+  public static double length(final String value) {
+    return value.length();
+  }
+}
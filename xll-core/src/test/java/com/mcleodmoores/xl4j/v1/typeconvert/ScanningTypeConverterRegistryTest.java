@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert;
+
+import static org.testng.Assert.assertSame;
+
+import java.io.Serializable;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.ExcelToJavaTypeMapping;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.TypeConverter;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNil;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.ReflectionsUtils;
+import com.mcleodmoores.xl4j.v1.util.XL4JReflectionUtils;
+
+/**
+ * Unit tests for {@link ScanningTypeConverterRegistry} that check that the dispatch tables give the same converters as a
+ * linear scan in priority order.
+ */
+public class ScanningTypeConverterRegistryTest {
+  private static final Excel EXCEL = ExcelFactory.getInstance();
+  private static final ScanningTypeConverterRegistry REGISTRY = new ScanningTypeConverterRegistry(EXCEL, ReflectionsUtils.getReflections());
+  private static final List<Class<?>> EXCEL_CLASSES = Arrays.<Class<?>>asList(XLValue.class, XLNumber.class, XLString.class,
+      XLBoolean.class, XLArray.class, XLObject.class, XLNil.class, XLMissing.class, XLError.class, Object.class);
+  private static final List<Class<?>> JAVA_CLASSES = Arrays.<Class<?>>asList(Object.class, Double.class, Double.TYPE, Integer.class,
+      Integer.TYPE, Long.TYPE, Boolean.TYPE, Boolean.class, Number.class, BigDecimal.class, BigInteger.class, String.class,
+      CharSequence.class, Comparable.class, Serializable.class, LocalDate.class, List.class, ArrayList.class, LinkedList.class,
+      Collection.class, HashSet.class, Map.class, HashMap.class, TreeMap.class, Object[].class, String[].class, Double[].class,
+      double[].class, int[].class, Object[][].class, String[][].class, double[][].class, Number[].class, Comparable[].class,
+      XLValue.class, XLNumber.class, XLValue[].class, XLArray.class, Thread.class, Runnable.class);
+
+  /**
+   * Tests that Excel to Java lookups give the same converter as a linear scan.
+   */
+  @Test
+  public void testExcelToJava() {
+    for (final Class<?> excelClass : EXCEL_CLASSES) {
+      for (final Class<?> javaClass : JAVA_CLASSES) {
+        final ExcelToJavaTypeMapping mapping = ExcelToJavaTypeMapping.of(excelClass, javaClass);
+        // twice to check the cached result
+        assertSame(REGISTRY.findConverter(mapping), scan(mapping), mapping.toString());
+        assertSame(REGISTRY.findConverter(mapping), scan(mapping), mapping.toString());
+      }
+    }
+  }
+
+  /**
+   * Tests that Java to Excel lookups give the same converter as a linear scan.
+   */
+  @Test
+  public void testJavaToExcel() {
+    for (final Class<?> javaClass : JAVA_CLASSES) {
+      assertSame(REGISTRY.findConverter(javaClass), scan(javaClass), javaClass.toString());
+      assertSame(REGISTRY.findConverter(javaClass), scan(javaClass), javaClass.toString());
+    }
+  }
+
+  /**
+   * Tests that parameterized types give the same converter as a linear scan.
+   * @throws Exception  if the field cannot be found
+   */
+  @Test
+  public void testParameterizedTypes() throws Exception {
+    for (final String name : new String[] {"_list", "_map", "_set"}) {
+      final Type type = ScanningTypeConverterRegistryTest.class.getDeclaredField(name).getGenericType();
+      for (final Class<?> excelClass : EXCEL_CLASSES) {
+        final ExcelToJavaTypeMapping mapping = ExcelToJavaTypeMapping.of(excelClass, type);
+        assertSame(REGISTRY.findConverter(mapping), scan(mapping), mapping.toString());
+      }
+      assertSame(REGISTRY.findConverter(type), scan(type), type.toString());
+    }
+  }
+
+  private static TypeConverter scan(final ExcelToJavaTypeMapping requiredMapping) {
+    for (final TypeConverter typeConverter : REGISTRY.getConvertersInPriorityOrder()) {
+      if (typeConverter.getExcelToJavaTypeMapping().isAssignableFrom(requiredMapping)) {
+        return typeConverter;
+      }
+    }
+    return null;
+  }
+
+  private static TypeConverter scan(final Type requiredJava) {
+    for (final TypeConverter typeConverter : REGISTRY.getConvertersInPriorityOrder()) {
+      if (typeConverter.getJavaToExcelTypeMapping().getJavaClass().isAssignableFrom(XL4JReflectionUtils.reduceToClass(requiredJava))) {
+        return typeConverter;
+      }
+    }
+    return null;
+  }
+
+  // CHECKSTYLE:OFF
+  List<Double> _list;
+  Map<String, Integer> _map;
+  HashSet<String> _set;
+}
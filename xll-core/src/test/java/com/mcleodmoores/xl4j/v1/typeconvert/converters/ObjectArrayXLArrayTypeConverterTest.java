@@ -23,6 +23,7 @@ import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 import com.mcleodmoores.xl4j.v1.simulator.MockFunctionProcessor;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
@@ -379,4 +380,18 @@ public class ObjectArrayXLArrayTypeConverterTest {
     return (U[]) result;
   }
 
+  /**
+   * Tests the conversion of a range of arguments, as used for varargs parameters.
+   */
+  @Test
+  public void testToJavaArray() {
+    final XLValue[] values = new XLValue[] {XLString.of("a"), XLNumber.of(10), XLNumber.of(20)};
+    final Object converted = ((VarArgsTypeConverter) CONVERTER).toJavaArray(Double[].class, values, 1, 2);
+    assertTrue(converted instanceof Double[]);
+    assertEquals(converted, ARRAY_OF_DOUBLE);
+    final Object xlValues = ((VarArgsTypeConverter) CONVERTER).toJavaArray(XLValue[].class, values, 0, 3);
+    assertTrue(xlValues instanceof XLValue[]);
+    assertEquals(xlValues, values);
+  }
+
 }
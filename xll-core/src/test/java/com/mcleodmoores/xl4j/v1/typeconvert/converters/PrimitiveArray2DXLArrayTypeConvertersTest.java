@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.typeconvert.converters;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.typeconvert.AbstractTypeConverter;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.ExcelToJavaTypeMapping;
+import com.mcleodmoores.xl4j.v1.api.typeconvert.JavaToExcelTypeMapping;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link PrimitiveDoubleArray2DXLArrayTypeConverter}, {@link PrimitiveIntegerArray2DXLArrayTypeConverter} and
+ * {@link PrimitiveLongArray2DXLArrayTypeConverter}.
+ */
+@Test
+public class PrimitiveArray2DXLArrayTypeConvertersTest {
+  /** The expected priority */
+  private static final int EXPECTED_PRIORITY = 11;
+  /** Values of different types */
+  private static final XLArray VALUES = XLArray.of(new XLValue[][] {
+    new XLValue[] {XLNumber.of(1.5), XLString.of("20"), XLNumber.of(30)},
+    new XLValue[] {XLNumber.of(40), XLNumber.of(50), XLString.of("60")}});
+  /** An array backed by numbers */
+  private static final XLArray NUMBERS = XLArray.ofNumbers(new double[][] {{1.5, 2}, {3, 4}, {5, 6}});
+
+  /**
+   * Gets each converter and the data used to test it.
+   *
+   * @return the cases
+   */
+  @DataProvider(name = "converters")
+  public Object[][] converters() {
+    return new Object[][] {
+      {new Case(new PrimitiveDoubleArray2DXLArrayTypeConverter(), double[][].class, new double[] {1}, new double[][] {{1, 2}, {3}},
+          new double[][] {{1.5, 20, 30}, {40, 50, 60}}, new double[][] {{1.5, 2}, {3, 4}, {5, 6}}, new double[][] {{1, 2, 3}, {4, 5, 6}})},
+      {new Case(new PrimitiveIntegerArray2DXLArrayTypeConverter(), int[][].class, new int[] {1}, new int[][] {{1, 2}, {3}},
+          new int[][] {{1, 20, 30}, {40, 50, 60}}, new int[][] {{1, 2}, {3, 4}, {5, 6}}, new int[][] {{1, 2, 3}, {4, 5, 6}})},
+      {new Case(new PrimitiveLongArray2DXLArrayTypeConverter(), long[][].class, new long[] {1}, new long[][] {{1, 2}, {3}},
+          new long[][] {{1, 20, 30}, {40, 50, 60}}, new long[][] {{1, 2}, {3, 4}, {5, 6}}, new long[][] {{1, 2, 3}, {4, 5, 6}})},
+    };
+  }
+
+  /**
+   * Tests the type mappings and the priority.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters")
+  public void testMappingsAndPriority(final Case data) {
+    assertEquals(data._converter.getExcelToJavaTypeMapping(), ExcelToJavaTypeMapping.of(XLArray.class, data._type));
+    assertEquals(data._converter.getJavaToExcelTypeMapping(), JavaToExcelTypeMapping.of(data._type, XLArray.class));
+    assertEquals(data._converter.getPriority(), EXPECTED_PRIORITY);
+  }
+
+  /**
+   * Tests that passing in a null object gives the expected exception.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters", expectedExceptions = XL4JRuntimeException.class)
+  public void testNullObject(final Case data) {
+    data._converter.toXLValue(null);
+  }
+
+  /**
+   * Tests that passing in a null XLValue gives the expected exception.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters", expectedExceptions = XL4JRuntimeException.class)
+  public void testNullXLValue(final Case data) {
+    data._converter.toJavaObject(data._type, null);
+  }
+
+  /**
+   * Tests that passing in an object to convert that is not a two-dimensional array fails.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters", expectedExceptions = ClassCastException.class)
+  public void testWrongTypeToXLConversion(final Case data) {
+    data._converter.toXLValue(data._oneD);
+  }
+
+  /**
+   * Tests that the array to convert must be rectangular.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters", expectedExceptions = XL4JRuntimeException.class)
+  public void testJaggedArray(final Case data) {
+    data._converter.toXLValue(data._jagged);
+  }
+
+  /**
+   * Tests the behaviour when a value cannot be converted to the element type.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters", expectedExceptions = XL4JRuntimeException.class)
+  public void testNoElementConverter(final Case data) {
+    data._converter.toJavaObject(data._type, XLArray.of(new XLValue[][] {new XLValue[] {XLNumber.of(1), XLBoolean.FALSE}}));
+  }
+
+  /**
+   * Tests the conversion from XLArrays containing values of different types and backed by numbers.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters")
+  public void testToJavaConversion(final Case data) {
+    assertEquals(data._converter.toJavaObject(data._type, VALUES), data._fromValues);
+    assertEquals(data._converter.toJavaObject(data._type, NUMBERS), data._fromNumbers);
+  }
+
+  /**
+   * Tests the conversion to an XLArray.
+   *
+   * @param data
+   *          the converter and test data
+   */
+  @Test(dataProvider = "converters")
+  public void testToXLConversion(final Case data) {
+    final XLValue converted = (XLValue) data._converter.toXLValue(data._toConvert);
+    assertTrue(converted instanceof XLArray);
+    final XLArray xlArray = (XLArray) converted;
+    assertTrue(xlArray.isNumeric());
+    assertEquals(xlArray, XLArray.of(new XLValue[][] {
+      new XLValue[] {XLNumber.of(1), XLNumber.of(2), XLNumber.of(3)},
+      new XLValue[] {XLNumber.of(4), XLNumber.of(5), XLNumber.of(6)}}));
+    // empty arrays become an empty row
+    final Object empty = Array.newInstance(data._type.getComponentType(), 0);
+    assertEquals(((XLArray) data._converter.toXLValue(empty)).getArray(), new XLValue[1][0]);
+  }
+
+  /**
+   * A converter and the arrays used to test it.
+   */
+  private static final class Case {
+    private final AbstractTypeConverter _converter;
+    /** The Java type */
+    private final Class<?> _type;
+    /** A one-dimensional array of the element type */
+    private final Object _oneD;
+    /** A two-dimensional array that is not rectangular */
+    private final Object _jagged;
+    /** The expected result of converting the array of values of different types */
+    private final Object _fromValues;
+    /** The expected result of converting the array backed by numbers */
+    private final Object _fromNumbers;
+    /** A 2x3 array containing 1 to 6 */
+    private final Object _toConvert;
+
+    Case(final AbstractTypeConverter converter, final Class<?> type, final Object oneD, final Object jagged, final Object fromValues,
+        final Object fromNumbers, final Object toConvert) {
+      _converter = converter;
+      _type = type;
+      _oneD = oneD;
+      _jagged = jagged;
+      _fromValues = fromValues;
+      _fromNumbers = fromNumbers;
+      _toConvert = toConvert;
+    }
+
+    @Override
+    public String toString() {
+      return _converter.getClass().getSimpleName();
+    }
+  }
+}
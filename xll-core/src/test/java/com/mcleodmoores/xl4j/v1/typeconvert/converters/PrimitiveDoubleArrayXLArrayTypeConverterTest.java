@@ -16,6 +16,7 @@ import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
 import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
@@ -158,4 +159,51 @@ public class PrimitiveDoubleArrayXLArrayTypeConverterTest {
     assertEquals(xlArray, XLArray.of(new XLValue[][] {new XLValue[] {XLNumber.of(10), XLNumber.of(20), XLNumber.of(30)}}));
   }
 
+  /**
+   * Tests that numeric rows and columns are converted without creating values, and that the arrays are copied in both directions so
+   * that a function cannot change an array held by Excel or the hash code of the XLArray.
+   */
+  @Test
+  public void testArraysAreCopied() {
+    final double[] array = new double[] {10, 20, 30};
+    final XLArray xlArray = (XLArray) CONVERTER.toXLValue(array);
+    assertTrue(xlArray.isNumeric());
+    final int hashCode = xlArray.hashCode();
+    array[0] = -1;
+    assertEquals(xlArray.getNumber(0, 0), 10.);
+    final double[] converted = (double[]) CONVERTER.toJavaObject(double[].class, xlArray);
+    assertEquals(converted, new double[] {10, 20, 30});
+    converted[1] = -1;
+    assertEquals(xlArray.getNumber(0, 1), 20.);
+    assertEquals(xlArray.hashCode(), hashCode);
+    final double[] columnNumbers = new double[] {1, 2};
+    final double[] convertedColumn = (double[]) CONVERTER.toJavaObject(double[].class, XLArray.ofColumn(columnNumbers));
+    assertEquals(convertedColumn, new double[] {1, 2});
+    convertedColumn[0] = -1;
+    assertEquals(columnNumbers[0], 1.);
+    // the first column of an area
+    final double[] column = (double[]) CONVERTER.toJavaObject(double[].class, XLArray.ofNumbers(new double[][] {{1, 2}, {3, 4}}));
+    assertEquals(column, new double[] {1, 3});
+  }
+
+  /**
+   * Tests the conversion of a packed array containing numbers and strings.
+   */
+  @Test
+  public void testToJavaConversionFromPackedRow() {
+    final XLArray xlArray = XLArray.ofPacked(new XLValue[][] {new XLValue[] {XLNumber.of(10), XLString.of("20"), XLNumber.of(30)}});
+    assertEquals(CONVERTER.toJavaObject(double[].class, xlArray), new double[] {10, 20, 30});
+  }
+
+  /**
+   * Tests the conversion of a range of arguments, as used for varargs parameters.
+   */
+  @Test
+  public void testToJavaArray() {
+    final XLValue[] values = new XLValue[] {XLString.of("a"), XLNumber.of(10), XLString.of("20"), XLNumber.of(30)};
+    final VarArgsTypeConverter converter = new PrimitiveDoubleArrayXLArrayTypeConverter();
+    assertEquals(converter.toJavaArray(double[].class, values, 1, 3), new double[] {10, 20, 30});
+    assertEquals(converter.toJavaArray(double[].class, values, 4, 0), new double[0]);
+  }
+
 }
@@ -16,6 +16,7 @@ import com.mcleodmoores.xl4j.v1.api.values.XLBoolean;
 import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.typeconvert.VarArgsTypeConverter;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
@@ -158,4 +159,21 @@ public class PrimitiveIntegerArrayXLArrayTypeConverterTest {
     assertEquals(xlArray, XLArray.of(new XLValue[][] {new XLValue[] {XLNumber.of(10), XLNumber.of(20), XLNumber.of(30)}}));
   }
 
+  /**
+   * Tests the conversion of a range of arguments, as used for varargs parameters.
+   */
+  @Test
+  public void testToJavaArray() {
+    final XLValue[] values = new XLValue[] {XLNumber.of(10), XLString.of("20"), XLNumber.of(30)};
+    assertEquals(((VarArgsTypeConverter) CONVERTER).toJavaArray(int[].class, values, 0, 3), new int[] {10, 20, 30});
+  }
+
+  /**
+   * Tests that values that cannot be converted give the expected exception.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testToJavaArrayWrongType() {
+    ((VarArgsTypeConverter) CONVERTER).toJavaArray(int[].class, new XLValue[] {XLBoolean.TRUE}, 0, 1);
+  }
+
 }
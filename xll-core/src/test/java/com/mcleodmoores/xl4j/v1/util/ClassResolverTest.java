@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.core.ClassResolvingExcel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+
+/**
+ * Unit tests for {@link ClassResolver}.
+ */
+public class ClassResolverTest {
+  private static final ClassLoader LOADER = ClassResolverTest.class.getClassLoader();
+
+  /**
+   * Tests that the class names cannot be null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullClassNames() {
+    new ClassResolver((Collection<String>) null, LOADER);
+  }
+
+  /**
+   * Tests that the name to resolve cannot be null.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullName() throws ClassNotFoundException {
+    new ClassResolver(Collections.<String>emptySet(), LOADER).resolve(null);
+  }
+
+  /**
+   * Tests that fully-qualified names are resolved.
+   */
+  @Test
+  public void testFullyQualified() throws ClassNotFoundException {
+    final ClassResolver resolver = new ClassResolver(Collections.<String>emptySet(), LOADER);
+    assertSame(resolver.resolve("java.util.ArrayList"), java.util.ArrayList.class);
+    assertSame(resolver.resolve("java.util.ArrayList"), java.util.ArrayList.class);
+    assertSame(resolver.resolve(ClassResolverTest.class.getName()), ClassResolverTest.class);
+  }
+
+  /**
+   * Tests that short names are resolved using the index.
+   */
+  @Test
+  public void testShortName() throws ClassNotFoundException {
+    final ClassResolver resolver = new ClassResolver(Arrays.asList("java.util.ArrayList", "java.util.concurrent.atomic.AtomicInteger"),
+        LOADER);
+    assertSame(resolver.resolve("ArrayList"), java.util.ArrayList.class);
+    assertSame(resolver.resolve("AtomicInteger"), AtomicInteger.class);
+    assertEquals(resolver.getCandidates("ArrayList"), Collections.singleton("java.util.ArrayList"));
+    assertTrue(resolver.getCandidates("LinkedList").isEmpty());
+    assertFalse(resolver.isAmbiguous("ArrayList"));
+  }
+
+  /**
+   * Tests that nested classes are indexed by their simple name, and that anonymous classes are not indexed.
+   */
+  @Test
+  public void testNestedClasses() throws ClassNotFoundException {
+    final ClassResolver resolver = new ClassResolver(Arrays.asList("java.util.Map$Entry", "java.util.Map$1"), LOADER);
+    assertSame(resolver.resolve("Entry"), java.util.Map.Entry.class);
+    assertTrue(resolver.getCandidates("1").isEmpty());
+  }
+
+  /**
+   * Tests that short names that match more than one class are not resolved.
+   */
+  @Test
+  public void testAmbiguousShortName() {
+    final ClassResolver resolver = new ClassResolver(Arrays.asList("java.util.List", "java.awt.List"), LOADER);
+    assertTrue(resolver.isAmbiguous("List"));
+    assertEquals(resolver.getCandidates("List").size(), 2);
+    try {
+      resolver.resolve("List");
+      fail();
+    } catch (final ClassNotFoundException e) {
+      assertTrue(e.getMessage().contains("java.awt.List"));
+      assertTrue(e.getMessage().contains("java.util.List"));
+    }
+  }
+
+  /**
+   * Tests that short names that are not in the index are looked up in java.lang.
+   */
+  @Test
+  public void testJavaLang() throws ClassNotFoundException {
+    final ClassResolver resolver = new ClassResolver(Collections.<String>emptySet(), LOADER);
+    assertSame(resolver.resolve("String"), String.class);
+    assertSame(resolver.resolve("Double"), Double.class);
+  }
+
+  /**
+   * Tests that registered names take precedence over the index.
+   */
+  @Test
+  public void testRegister() throws ClassNotFoundException {
+    final ClassResolver resolver = new ClassResolver(Arrays.asList("java.util.List", "java.awt.List"), LOADER);
+    assertSame(resolver.resolve("String"), String.class);
+    resolver.register("List", java.util.List.class);
+    resolver.register("String", StringBuilder.class);
+    assertSame(resolver.resolve("List"), java.util.List.class);
+    assertSame(resolver.resolve("String"), StringBuilder.class);
+  }
+
+  /**
+   * Tests that names that could not be resolved are not looked up in the class loader again until the cache is cleared.
+   */
+  @Test
+  public void testUnresolved() throws ClassNotFoundException {
+    final AtomicInteger loads = new AtomicInteger();
+    final ClassLoader loader = new ClassLoader(LOADER) {
+      @Override
+      public Class<?> loadClass(final String name) throws ClassNotFoundException {
+        loads.incrementAndGet();
+        return super.loadClass(name);
+      }
+    };
+    final ClassResolver resolver = new ClassResolver(Collections.<String>emptySet(), loader);
+    final String message = assertNotResolved(resolver, "com.example.DoesNotExist");
+    final int count = loads.get();
+    assertEquals(assertNotResolved(resolver, "com.example.DoesNotExist"), message);
+    assertEquals(loads.get(), count);
+    resolver.clearUnresolved();
+    assertNotResolved(resolver, "com.example.DoesNotExist");
+    assertTrue(loads.get() > count);
+    // registering the name replaces the cached failure
+    resolver.register("com.example.DoesNotExist", String.class);
+    assertSame(resolver.resolve("com.example.DoesNotExist"), String.class);
+  }
+
+  /**
+   * Tests that the resolver used by the J functions indexes the scanned classes.
+   */
+  @Test
+  public void testExcelResolver() throws ClassNotFoundException {
+    final ClassResolver resolver = ((ClassResolvingExcel) ExcelFactory.getInstance()).getClassResolver();
+    assertSame(resolver.resolve("XL4JRuntimeException"), XL4JRuntimeException.class);
+    // a supertype of scanned classes
+    assertSame(resolver.resolve("RuntimeException"), RuntimeException.class);
+    assertSame(resolver.resolve("String"), String.class);
+  }
+
+  private static String assertNotResolved(final ClassResolver resolver, final String name) {
+    try {
+      resolver.resolve(name);
+    } catch (final ClassNotFoundException e) {
+      return e.getMessage();
+    }
+    fail(name + " should not have been resolved");
+    return null;
+  }
+}
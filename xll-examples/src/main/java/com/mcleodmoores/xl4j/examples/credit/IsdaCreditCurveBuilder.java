@@ -142,7 +142,8 @@ public final class IsdaCreditCurveBuilder {
    * @return  a credit curve constructed using the ISDA model
    */
   @XLFunction(name = "ISDACreditCurve.BuildIMMCurveFromConvention", category = "ISDA CDS model",
-      description = "Build a hazard rate curve for IMM CDS using the ISDA methodology")
+      description = "Build a hazard rate curve for IMM CDS using the ISDA methodology", isCacheable = true,
+      isSingleFlight = true)
   public static ISDACompliantCreditCurve buildCreditCurve(
       @XLParameter(description = "Trade Date", name = "Trade Date") final LocalDate tradeDate,
       @XLParameter(description = "Tenors", name = "Tenors") final String[] tenors,
@@ -184,7 +185,8 @@ public final class IsdaCreditCurveBuilder {
    * @return  a credit curve constructed using the ISDA model
    */
   @XLFunction(name = "ISDACreditCurve.BuildIMMCurve", category = "ISDA CDS model",
-      description = "Build a hazard rate curve for IMM CDS using the ISDA methodology")
+      description = "Build a hazard rate curve for IMM CDS using the ISDA methodology", isCacheable = true,
+      isSingleFlight = true)
   public static ISDACompliantCreditCurve buildCreditCurve(
       @XLParameter(description = "Trade Date", name = "Trade Date") final LocalDate tradeDate,
       @XLParameter(description = "Tenors", name = "Tenors") final String[] tenors,
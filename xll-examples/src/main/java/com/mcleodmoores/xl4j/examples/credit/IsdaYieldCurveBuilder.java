@@ -107,7 +107,7 @@ public final class IsdaYieldCurveBuilder {
    */
   @SuppressWarnings("deprecation")
   @XLFunction(name = "ISDAYieldCurve.BuildCurve", category = "ISDA CDS model",
-  description = "Build a yield curve using the ISDA methodology")
+  description = "Build a yield curve using the ISDA methodology", isCacheable = true, isSingleFlight = true)
   public static ISDACompliantYieldCurve buildYieldCurve(
       @XLParameter(description = "Trade Date", name = "Trade Date") final LocalDate tradeDate,
       @XLParameter(description = "Instrument Types", name = "Instrument Types") final String[] instrumentTypeNames,
@@ -0,0 +1,688 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.examples.timeseries;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.threeten.bp.LocalDate;
+
+import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * A sorted map from dates to values that is stored as an array of epoch days in increasing order, an array of values and a
+ * bitmap of the dates whose value is null. Each point takes about twelve bytes rather than the tree node, date and boxed double
+ * of a {@link java.util.TreeMap}, and dates are found by binary search.
+ * <p>
+ * Points are added most cheaply in date order; adding a point before the last date moves the points after it. Copies made with
+ * {@link #copy()} share the arrays of this series until either is changed, when the series being changed copies them. Making a
+ * copy only changes a counter that the sharing series hold, not this series, so copies can be made while other threads read
+ * it.
+ * <p>
+ * As for a {@link java.util.TreeMap}, the maps returned by {@link #headMap(LocalDate)}, {@link #subMap(LocalDate, LocalDate)} and
+ * {@link #tailMap(LocalDate)} are views of a range of dates in this series: changes to the series are seen in the views, and
+ * changes made through the views are made to the series. Putting a date outside the range of a view throws an
+ * {@link IllegalArgumentException}. Other than {@link #copy()}, this class is not thread-safe.
+ */
+public final class DenseTimeSeries extends AbstractMap<LocalDate, Double> implements SortedMap<LocalDate, Double> {
+  private static final int[] NO_DAYS = new int[0];
+  private static final double[] NO_VALUES = new double[0];
+  private static final long[] NO_NULLS = new long[0];
+  private static final int MIN_CAPACITY = 16;
+  private int[] _days;
+  private double[] _values;
+  /** A set bit marks a null value, indexed in the same way as the days and values */
+  private long[] _nulls;
+  private int _size;
+  /** The number of series that use the arrays, which must be copied before they are changed if it is more than one */
+  private AtomicInteger _owners;
+  /** Incremented by every structural change, so that iterators can fail fast */
+  private int _modCount;
+
+  /**
+   * Creates an empty series.
+   *
+   * @return the series
+   */
+  public static DenseTimeSeries newTimeSeries() {
+    return new DenseTimeSeries(NO_DAYS, NO_VALUES, NO_NULLS, 0);
+  }
+
+  /**
+   * Creates a series from a map. If the map is a dense series, the arrays are shared until one of the series is changed; if it
+   * is sorted by date, the points are copied in order; otherwise they are sorted.
+   *
+   * @param data
+   *          the data, not null. Cannot contain null dates
+   * @return the series
+   */
+  public static DenseTimeSeries of(final Map<LocalDate, Double> data) {
+    ArgumentChecker.notNull(data, "data");
+    if (data instanceof DenseTimeSeries) {
+      return ((DenseTimeSeries) data).copy();
+    }
+    final Builder builder = new Builder(data.size());
+    for (final Map.Entry<LocalDate, Double> entry : data.entrySet()) {
+      builder.add(entry.getKey(), entry.getValue());
+    }
+    return builder.build();
+  }
+
+  private DenseTimeSeries(final int[] days, final double[] values, final long[] nulls, final int size) {
+    this(days, values, nulls, size, new AtomicInteger(1));
+  }
+
+  private DenseTimeSeries(final int[] days, final double[] values, final long[] nulls, final int size, final AtomicInteger owners) {
+    _days = days;
+    _values = values;
+    _nulls = nulls;
+    _size = size;
+    _owners = owners;
+  }
+
+  /**
+   * Creates a copy of this series that shares its arrays until one of them is changed.
+   *
+   * @return the copy
+   */
+  public DenseTimeSeries copy() {
+    _owners.incrementAndGet();
+    return new DenseTimeSeries(_days, _values, _nulls, _size, _owners);
+  }
+
+  /**
+   * Gets the date of a point.
+   *
+   * @param index
+   *          the index of the point, from zero
+   * @return the date
+   */
+  public LocalDate getDate(final int index) {
+    checkIndex(index);
+    return LocalDate.ofEpochDay(_days[index]);
+  }
+
+  /**
+   * Gets the value of a point.
+   *
+   * @param index
+   *          the index of the point, from zero
+   * @return the value, or null if the point has no value
+   */
+  public Double getValue(final int index) {
+    checkIndex(index);
+    return valueAt(index);
+  }
+
+  /**
+   * Gets the index of a date.
+   *
+   * @param date
+   *          the date, not null
+   * @return the index of the point, or <code>-(insertion point) - 1</code> if there is no point for the date
+   */
+  public int indexOf(final LocalDate date) {
+    ArgumentChecker.notNull(date, "date");
+    return indexOf(toDay(date));
+  }
+
+  @Override
+  public int size() {
+    return _size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return _size == 0;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return key instanceof LocalDate && indexOf(toDay((LocalDate) key)) >= 0;
+  }
+
+  @Override
+  public Double get(final Object key) {
+    if (!(key instanceof LocalDate)) {
+      return null;
+    }
+    final int index = indexOf(toDay((LocalDate) key));
+    return index < 0 ? null : valueAt(index);
+  }
+
+  @Override
+  public Double put(final LocalDate date, final Double value) {
+    ArgumentChecker.notNull(date, "date");
+    final int day = toDay(date);
+    final int index = indexOf(day);
+    if (index >= 0) {
+      makeWritable(_size);
+      final Double previous = valueAt(index);
+      set(index, value);
+      return previous;
+    }
+    final int insertion = -index - 1;
+    makeWritable(_size + 1);
+    if (insertion < _size) {
+      System.arraycopy(_days, insertion, _days, insertion + 1, _size - insertion);
+      System.arraycopy(_values, insertion, _values, insertion + 1, _size - insertion);
+      for (int i = _size; i > insertion; i--) {
+        setNull(i, isNull(i - 1));
+      }
+    }
+    _days[insertion] = day;
+    set(insertion, value);
+    _size++;
+    _modCount++;
+    return null;
+  }
+
+  @Override
+  public Double remove(final Object key) {
+    if (!(key instanceof LocalDate)) {
+      return null;
+    }
+    final int index = indexOf(toDay((LocalDate) key));
+    if (index < 0) {
+      return null;
+    }
+    final Double previous = valueAt(index);
+    removeRange(index, index + 1);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    release();
+    _days = NO_DAYS;
+    _values = NO_VALUES;
+    _nulls = NO_NULLS;
+    _size = 0;
+    _modCount++;
+  }
+
+  @Override
+  public Comparator<? super LocalDate> comparator() {
+    // natural ordering
+    return null;
+  }
+
+  @Override
+  public LocalDate firstKey() {
+    if (_size == 0) {
+      throw new NoSuchElementException();
+    }
+    return LocalDate.ofEpochDay(_days[0]);
+  }
+
+  @Override
+  public LocalDate lastKey() {
+    if (_size == 0) {
+      throw new NoSuchElementException();
+    }
+    return LocalDate.ofEpochDay(_days[_size - 1]);
+  }
+
+  @Override
+  public SortedMap<LocalDate, Double> headMap(final LocalDate toKey) {
+    ArgumentChecker.notNull(toKey, "toKey");
+    return new SubMap(Long.MIN_VALUE, toDay(toKey));
+  }
+
+  @Override
+  public SortedMap<LocalDate, Double> subMap(final LocalDate fromKey, final LocalDate toKey) {
+    ArgumentChecker.notNull(fromKey, "fromKey");
+    ArgumentChecker.notNull(toKey, "toKey");
+    if (fromKey.isAfter(toKey)) {
+      throw new IllegalArgumentException("fromKey " + fromKey + " is after toKey " + toKey);
+    }
+    return new SubMap(toDay(fromKey), toDay(toKey));
+  }
+
+  @Override
+  public SortedMap<LocalDate, Double> tailMap(final LocalDate fromKey) {
+    ArgumentChecker.notNull(fromKey, "fromKey");
+    return new SubMap(toDay(fromKey), Long.MAX_VALUE);
+  }
+
+  @Override
+  public Set<Map.Entry<LocalDate, Double>> entrySet() {
+    return new AbstractSet<Map.Entry<LocalDate, Double>>() {
+
+      @Override
+      public Iterator<Map.Entry<LocalDate, Double>> iterator() {
+        return new EntryIterator(0, _size);
+      }
+
+      @Override
+      public int size() {
+        return _size;
+      }
+
+      @Override
+      public void clear() {
+        DenseTimeSeries.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Makes sure that this series has its own arrays, with room for at least a number of points.
+   *
+   * @param capacity
+   *          the number of points
+   */
+  private void makeWritable(final int capacity) {
+    final boolean shared = _owners.get() > 1;
+    if (!shared && capacity <= _days.length) {
+      return;
+    }
+    // a shared series that is not growing only copies its own points
+    final int length = shared && capacity <= _size ? capacity
+        : Math.max(MIN_CAPACITY, Math.max(capacity, _size + (_size >> 1)));
+    final int[] days = Arrays.copyOf(_days, length);
+    final double[] values = Arrays.copyOf(_values, length);
+    final long[] nulls = Arrays.copyOf(_nulls, (length + 63) >>> 6);
+    release();
+    _days = days;
+    _values = values;
+    _nulls = nulls;
+  }
+
+  /**
+   * Stops sharing the arrays with any other series.
+   */
+  private void release() {
+    if (_owners.get() > 1) {
+      _owners.decrementAndGet();
+      _owners = new AtomicInteger(1);
+    }
+  }
+
+  /**
+   * Removes a range of points.
+   *
+   * @param from
+   *          the index of the first point, inclusive
+   * @param to
+   *          the index of the last point, exclusive
+   */
+  private void removeRange(final int from, final int to) {
+    if (from >= to) {
+      return;
+    }
+    makeWritable(_size);
+    final int removed = to - from;
+    System.arraycopy(_days, to, _days, from, _size - to);
+    System.arraycopy(_values, to, _values, from, _size - to);
+    for (int i = from; i < _size - removed; i++) {
+      setNull(i, isNull(i + removed));
+    }
+    for (int i = _size - removed; i < _size; i++) {
+      setNull(i, false);
+    }
+    _size -= removed;
+    _modCount++;
+  }
+
+  private int indexOf(final int day) {
+    return Arrays.binarySearch(_days, 0, _size, day);
+  }
+
+  /**
+   * Gets the index of the first point on or after a day.
+   *
+   * @param day
+   *          the day, which can be outside the range of epoch days
+   * @return the index
+   */
+  private int ceiling(final long day) {
+    if (day <= Integer.MIN_VALUE) {
+      return 0;
+    }
+    if (day > Integer.MAX_VALUE) {
+      return _size;
+    }
+    final int index = indexOf((int) day);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private Double valueAt(final int index) {
+    return isNull(index) ? null : _values[index];
+  }
+
+  private void set(final int index, final Double value) {
+    _values[index] = value == null ? 0 : value;
+    setNull(index, value == null);
+  }
+
+  private boolean isNull(final int index) {
+    final int word = index >>> 6;
+    return word < _nulls.length && (_nulls[word] & 1L << index) != 0;
+  }
+
+  private void setNull(final int index, final boolean isNull) {
+    final int word = index >>> 6;
+    if (isNull) {
+      if (word >= _nulls.length) {
+        _nulls = Arrays.copyOf(_nulls, Math.max(word + 1, (_days.length + 63) >>> 6));
+      }
+      _nulls[word] |= 1L << index;
+    } else if (word < _nulls.length) {
+      _nulls[word] &= ~(1L << index);
+    }
+  }
+
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= _size) {
+      throw new IndexOutOfBoundsException("Index " + index + " is outside the series of size " + _size);
+    }
+  }
+
+  private static int toDay(final LocalDate date) {
+    return Math.toIntExact(date.toEpochDay());
+  }
+
+  /**
+   * Iterates over a range of points in date order. Points can be removed through the iterator, and values set through the
+   * entries.
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<LocalDate, Double>> {
+    private int _next;
+    private int _end;
+    private int _last = -1;
+    private int _expectedModCount = _modCount;
+
+    EntryIterator(final int from, final int to) {
+      _next = from;
+      _end = to;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return _next < _end;
+    }
+
+    @Override
+    public Map.Entry<LocalDate, Double> next() {
+      if (_modCount != _expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (_next >= _end) {
+        throw new NoSuchElementException();
+      }
+      _last = _next++;
+      final LocalDate date = LocalDate.ofEpochDay(_days[_last]);
+      return new AbstractMap.SimpleEntry<LocalDate, Double>(date, valueAt(_last)) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Double setValue(final Double value) {
+          super.setValue(value);
+          return put(date, value);
+        }
+      };
+    }
+
+    @Override
+    public void remove() {
+      if (_last < 0) {
+        throw new IllegalStateException();
+      }
+      if (_modCount != _expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeRange(_last, _last + 1);
+      _next = _last;
+      _end--;
+      _last = -1;
+      _expectedModCount = _modCount;
+    }
+  }
+
+  /**
+   * A view of the points in a range of dates. The range is held as days rather than indices, so the view follows changes to the
+   * series.
+   */
+  private final class SubMap extends AbstractMap<LocalDate, Double> implements SortedMap<LocalDate, Double> {
+    /** The first day, inclusive, or {@link Long#MIN_VALUE} if there is no lower bound */
+    private final long _from;
+    /** The last day, exclusive, or {@link Long#MAX_VALUE} if there is no upper bound */
+    private final long _to;
+
+    SubMap(final long from, final long to) {
+      _from = from;
+      _to = to;
+    }
+
+    @Override
+    public int size() {
+      return ceiling(_to) - ceiling(_from);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+      return inRange(key) && DenseTimeSeries.this.containsKey(key);
+    }
+
+    @Override
+    public Double get(final Object key) {
+      return inRange(key) ? DenseTimeSeries.this.get(key) : null;
+    }
+
+    @Override
+    public Double put(final LocalDate date, final Double value) {
+      ArgumentChecker.notNull(date, "date");
+      if (!inRange(date)) {
+        throw new IllegalArgumentException("Date " + date + " is outside the range of this map");
+      }
+      return DenseTimeSeries.this.put(date, value);
+    }
+
+    @Override
+    public Double remove(final Object key) {
+      return inRange(key) ? DenseTimeSeries.this.remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+      removeRange(ceiling(_from), ceiling(_to));
+    }
+
+    @Override
+    public Comparator<? super LocalDate> comparator() {
+      // natural ordering
+      return null;
+    }
+
+    @Override
+    public LocalDate firstKey() {
+      final int from = ceiling(_from);
+      if (from >= ceiling(_to)) {
+        throw new NoSuchElementException();
+      }
+      return LocalDate.ofEpochDay(_days[from]);
+    }
+
+    @Override
+    public LocalDate lastKey() {
+      final int to = ceiling(_to);
+      if (ceiling(_from) >= to) {
+        throw new NoSuchElementException();
+      }
+      return LocalDate.ofEpochDay(_days[to - 1]);
+    }
+
+    @Override
+    public SortedMap<LocalDate, Double> headMap(final LocalDate toKey) {
+      return new SubMap(_from, bound(toKey, "toKey"));
+    }
+
+    @Override
+    public SortedMap<LocalDate, Double> subMap(final LocalDate fromKey, final LocalDate toKey) {
+      final long from = bound(fromKey, "fromKey");
+      final long to = bound(toKey, "toKey");
+      if (from > to) {
+        throw new IllegalArgumentException("fromKey " + fromKey + " is after toKey " + toKey);
+      }
+      return new SubMap(from, to);
+    }
+
+    @Override
+    public SortedMap<LocalDate, Double> tailMap(final LocalDate fromKey) {
+      return new SubMap(bound(fromKey, "fromKey"), _to);
+    }
+
+    @Override
+    public Set<Map.Entry<LocalDate, Double>> entrySet() {
+      return new AbstractSet<Map.Entry<LocalDate, Double>>() {
+
+        @Override
+        public Iterator<Map.Entry<LocalDate, Double>> iterator() {
+          return new EntryIterator(ceiling(_from), ceiling(_to));
+        }
+
+        @Override
+        public int size() {
+          return SubMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+          SubMap.this.clear();
+        }
+      };
+    }
+
+    private boolean inRange(final Object key) {
+      if (!(key instanceof LocalDate)) {
+        return false;
+      }
+      final long day = ((LocalDate) key).toEpochDay();
+      return day >= _from && day < _to;
+    }
+
+    /**
+     * Gets the day of a bound of a view of this view, which can be the end of this range.
+     *
+     * @param date
+     *          the date, not null
+     * @param name
+     *          the name of the argument
+     * @return the day
+     */
+    private long bound(final LocalDate date, final String name) {
+      ArgumentChecker.notNull(date, name);
+      final long day = toDay(date);
+      if (day < _from || day > _to) {
+        throw new IllegalArgumentException(name + " " + date + " is outside the range of this map");
+      }
+      return day;
+    }
+  }
+
+  /**
+   * Collects points in any order and sorts them once when the series is built.
+   */
+  public static final class Builder {
+    private int[] _days;
+    private double[] _values;
+    private long[] _nulls;
+    private int _size;
+    private boolean _sorted = true;
+
+    /**
+     * Creates a builder.
+     *
+     * @param expectedSize
+     *          the expected number of points
+     */
+    public Builder(final int expectedSize) {
+      final int capacity = Math.max(MIN_CAPACITY, expectedSize);
+      _days = new int[capacity];
+      _values = new double[capacity];
+      _nulls = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param date
+     *          the date, not null
+     * @param value
+     *          the value, can be null
+     * @return this builder
+     */
+    public Builder add(final LocalDate date, final Double value) {
+      ArgumentChecker.notNull(date, "date");
+      if (_size == _days.length) {
+        final int capacity = _size + (_size >> 1);
+        _days = Arrays.copyOf(_days, capacity);
+        _values = Arrays.copyOf(_values, capacity);
+        _nulls = Arrays.copyOf(_nulls, (capacity + 63) >>> 6);
+      }
+      final int day = toDay(date);
+      if (_size > 0 && day <= _days[_size - 1]) {
+        _sorted = false;
+      }
+      _days[_size] = day;
+      if (value == null) {
+        _nulls[_size >>> 6] |= 1L << _size;
+      } else {
+        _values[_size] = value;
+      }
+      _size++;
+      return this;
+    }
+
+    /**
+     * Builds the series. The builder should not be used afterwards.
+     *
+     * @return the series
+     * @throws XL4JRuntimeException
+     *           if a date was added more than once
+     */
+    public DenseTimeSeries build() {
+      if (_sorted) {
+        return new DenseTimeSeries(_days, _values, _nulls, _size);
+      }
+      // sort the days with their original positions packed into the low bits
+      final long[] keys = new long[_size];
+      for (int i = 0; i < _size; i++) {
+        keys[i] = (long) _days[i] << 32 | i;
+      }
+      Arrays.sort(keys);
+      final int[] days = new int[_size];
+      final double[] values = new double[_size];
+      final long[] nulls = new long[(_size + 63) >>> 6];
+      for (int i = 0; i < _size; i++) {
+        final int from = (int) keys[i];
+        days[i] = (int) (keys[i] >> 32);
+        if (i > 0 && days[i] == days[i - 1]) {
+          throw new XL4JRuntimeException("Value already set for " + LocalDate.ofEpochDay(days[i]));
+        }
+        values[i] = _values[from];
+        if ((_nulls[from >>> 6] & 1L << from) != 0) {
+          nulls[i >>> 6] |= 1L << i;
+        }
+      }
+      return new DenseTimeSeries(days, values, nulls, _size);
+    }
+  }
+}
@@ -4,14 +4,12 @@
 package com.mcleodmoores.xl4j.examples.timeseries;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.threeten.bp.LocalDate;
 
@@ -28,8 +26,8 @@ import com.mcleodmoores.xl4j.v1.util.ArgumentChecker;
 import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
 
 /**
- * A simple implementation of a time series, defined as a list of LocalDate, double pairs that is increasing in time. This class is
- * immutable.
+ * A simple implementation of a time series, defined as a list of LocalDate, double pairs that is increasing in time. The points are
+ * held in a {@link DenseTimeSeries}, so copies of a series are cheap until they are changed.
  */
 public final class TimeSeries implements SortedMap<LocalDate, Double> {
 
@@ -116,7 +114,8 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
     final TypeConverter doubleConverter = ExcelFactory.getInstance().getTypeConverterRegistry()
         .findConverter(ExcelToJavaTypeMapping.of(XLNumber.class, Double.class));
     final XLValue[][] xlDatesAndValues = datesAndValuesArray.getArray();
-    final SortedMap<LocalDate, Double> data = new TreeMap<>();
+    final DenseTimeSeries.Builder data =
+        new DenseTimeSeries.Builder(xlDatesAndValues.length == 2 ? xlDatesAndValues[0].length : xlDatesAndValues.length);
     if (xlDatesAndValues.length == 2) { // have a horizontal range
       final int nDates = xlDatesAndValues[0].length;
       ArgumentChecker.isTrue(xlDatesAndValues[1].length == nDates, "Must have one value per date");
@@ -124,9 +123,7 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
         final LocalDate date = (LocalDate) dateConverter.toJavaObject(LocalDate.class, xlDatesAndValues[0][i]);
         final XLValue xlValue = xlDatesAndValues[1][i];
         final Double value = xlValue == null ? null : (Double) doubleConverter.toJavaObject(Double.class, xlValue);
-        if (data.put(date, value) != null) {
-          throw new XL4JRuntimeException("Value already set for " + date);
-        }
+        data.add(date, value);
       }
     } else if (xlDatesAndValues[0].length == 2) { // have a vertical range
       final int n = xlDatesAndValues.length;
@@ -134,14 +131,12 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
         final LocalDate date = (LocalDate) dateConverter.toJavaObject(LocalDate.class, xlDatesAndValues[i][0]);
         final XLValue xlValue = xlDatesAndValues[i][1];
         final Double value = xlValue == null ? null : (Double) doubleConverter.toJavaObject(Double.class, xlValue);
-        if (data.put(date, value) != null) {
-          throw new XL4JRuntimeException("Value already set for " + date);
-        }
+        data.add(date, value);
       }
     } else {
       throw new XL4JRuntimeException("Could not create time series");
     }
-    return new TimeSeries(data);
+    return new TimeSeries(data.build());
   }
 
   /**
@@ -163,7 +158,7 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
         .findConverter(ExcelToJavaTypeMapping.of(XLNumber.class, Double.class));
     final XLValue[][] xlDates = datesArray.getArray();
     final XLValue[][] xlValues = valuesArray.getArray();
-    final SortedMap<LocalDate, Double> data = new TreeMap<>();
+    final DenseTimeSeries.Builder data = new DenseTimeSeries.Builder(datesArray.isRow() ? xlDates[0].length : xlDates.length);
     if (datesArray.isRow()) {
       final int n = xlDates[0].length;
       if (valuesArray.isRow() && valuesArray.getArray()[0].length != n || valuesArray.isColumn() && valuesArray.getArray().length != n) {
@@ -178,9 +173,7 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
           xlValue = xlValues[i][0];
         }
         final Double value = xlValue == null ? null : (Double) doubleConverter.toJavaObject(Double.class, xlValue);
-        if (data.put(date, value) != null) {
-          throw new XL4JRuntimeException("Value already set for " + date);
-        }
+        data.add(date, value);
       }
     } else {
       final int n = xlDates.length;
@@ -196,12 +189,10 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
           xlValue = xlValues[i][0];
         }
         final Double value = xlValue == null ? null : (Double) doubleConverter.toJavaObject(Double.class, xlValue);
-        if (data.put(date, value) != null) {
-          throw new XL4JRuntimeException("Value already set for " + date);
-        }
+        data.add(date, value);
       }
     }
-    return new TimeSeries(data);
+    return new TimeSeries(data.build());
   }
 
   /**
@@ -216,13 +207,11 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
   public static TimeSeries of(final List<LocalDate> dates, final List<Double> values) {
     ArgumentChecker.notNull(dates, "dates");
     ArgumentChecker.notNull(values, "values");
-    final SortedMap<LocalDate, Double> data = new TreeMap<>();
+    final DenseTimeSeries.Builder data = new DenseTimeSeries.Builder(dates.size());
     for (int i = 0; i < dates.size(); i++) {
-      if (data.put(ArgumentChecker.notNull(dates.get(i), "date"), values.get(i)) != null) {
-        throw new XL4JRuntimeException("Value already set for " + dates.get(i));
-      }
+      data.add(dates.get(i), values.get(i));
     }
-    return new TimeSeries(data);
+    return new TimeSeries(data.build());
   }
 
   /**
@@ -234,12 +223,11 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
    *          a time series
    */
   public static TimeSeries of(final Map<LocalDate, Double> data) {
-    ArgumentChecker.notNull(data, "data");
-    return new TimeSeries(data);
+    return new TimeSeries(DenseTimeSeries.of(data));
   }
 
   /**
-   * Creates a copy of a time series.
+   * Creates a copy of a time series. The copy shares the points of the other series until either is changed.
    *
    * @param other
    *          the data, not null
@@ -247,7 +235,7 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
    *          a time series
    */
   public static TimeSeries of(final TimeSeries other) {
-    return new TimeSeries(other._data);
+    return new TimeSeries(ArgumentChecker.notNull(other, "other")._data.copy());
   }
 
   /**
@@ -257,21 +245,19 @@ public final class TimeSeries implements SortedMap<LocalDate, Double> {
    *          an empty time series
    */
   public static TimeSeries newTimeSeries() {
-    return new TimeSeries(Collections.emptySortedMap());
+    return new TimeSeries(DenseTimeSeries.newTimeSeries());
   }
 
-  private final SortedMap<LocalDate, Double> _data;
+  private final DenseTimeSeries _data;
 
   /**
    * Creates a time series.
    *
-   * @param dates
-   *          the dates
-   * @param values
-   *          the values
+   * @param data
+   *          the data, not shared with any other time series
    */
-  private TimeSeries(final Map<LocalDate, Double> data) {
-    _data = new TreeMap<>(ArgumentChecker.notNull(data, "data"));
+  private TimeSeries(final DenseTimeSeries data) {
+    _data = data;
   }
 
   @Override
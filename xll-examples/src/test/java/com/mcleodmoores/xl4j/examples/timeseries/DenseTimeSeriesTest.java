@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.examples.timeseries;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.testng.annotations.Test;
+import org.threeten.bp.LocalDate;
+
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Unit tests for {@link DenseTimeSeries}.
+ */
+public class DenseTimeSeriesTest {
+  private static final LocalDate START = LocalDate.of(2017, 1, 1);
+
+  /**
+   * Tests that random puts and removes, including null values and dates before 1970, give the same results as a tree map.
+   */
+  @Test
+  public void testAgainstTreeMap() {
+    final Random random = new Random(1234);
+    final SortedMap<LocalDate, Double> expected = new TreeMap<>();
+    final DenseTimeSeries ts = DenseTimeSeries.newTimeSeries();
+    for (int i = 0; i < 5000; i++) {
+      final LocalDate date = START.minusDays(random.nextInt(20000));
+      if (random.nextInt(4) == 0) {
+        assertEquals(ts.remove(date), expected.remove(date));
+      } else {
+        final Double value = random.nextInt(10) == 0 ? null : random.nextDouble();
+        assertEquals(ts.put(date, value), expected.put(date, value));
+      }
+    }
+    assertEquals(ts, expected);
+    assertEquals(expected, ts);
+    assertEquals(ts.hashCode(), expected.hashCode());
+    assertEquals(ts.firstKey(), expected.firstKey());
+    assertEquals(ts.lastKey(), expected.lastKey());
+    int i = 0;
+    for (final Map.Entry<LocalDate, Double> entry : expected.entrySet()) {
+      assertEquals(ts.getDate(i), entry.getKey());
+      assertEquals(ts.getValue(i), entry.getValue());
+      assertEquals(ts.indexOf(entry.getKey()), i);
+      i++;
+    }
+    final LocalDate from = START.minusDays(15000);
+    final LocalDate to = START.minusDays(5000);
+    assertEquals(ts.headMap(to), expected.headMap(to));
+    assertEquals(ts.tailMap(from), expected.tailMap(from));
+    assertEquals(ts.subMap(from, to), expected.subMap(from, to));
+    assertEquals(ts.subMap(to, to), expected.subMap(to, to));
+    assertEquals(DenseTimeSeries.of(expected), expected);
+  }
+
+  /**
+   * Tests that changing a copy does not change the original, and that changing the original does not change the copy.
+   */
+  @Test
+  public void testCopyOnWrite() {
+    final DenseTimeSeries ts = series(100);
+    final SortedMap<LocalDate, Double> expected = new TreeMap<>(ts);
+    final DenseTimeSeries copy = ts.copy();
+    final DenseTimeSeries copyOfCopy = DenseTimeSeries.of(copy);
+    copy.put(START.plusDays(1000), 1.);
+    copy.put(START.plusDays(5), null);
+    assertEquals(ts, expected);
+    assertEquals(copyOfCopy, expected);
+    assertEquals(copy.size(), 101);
+    assertNull(copy.get(START.plusDays(5)));
+    ts.remove(START.plusDays(99));
+    ts.put(START.plusDays(10), -1.);
+    assertEquals(copyOfCopy, expected);
+    assertEquals(copy.get(START.plusDays(10)), Double.valueOf(10));
+    ts.clear();
+    assertTrue(ts.isEmpty());
+    assertEquals(copyOfCopy.size(), 100);
+    assertEquals(copyOfCopy.lastKey(), START.plusDays(99));
+  }
+
+  /**
+   * Tests that the sub-maps are views of the series: changes made through them change the series and changes to the series are
+   * seen in them.
+   */
+  @Test
+  public void testViews() {
+    final DenseTimeSeries ts = series(100);
+    final SortedMap<LocalDate, Double> tail = ts.tailMap(START.plusDays(50));
+    final SortedMap<LocalDate, Double> sub = tail.subMap(START.plusDays(60), START.plusDays(70));
+    final SortedMap<LocalDate, Double> head = ts.headMap(START.plusDays(10));
+    assertEquals(tail.size(), 50);
+    assertEquals(sub.size(), 10);
+    assertEquals(sub.firstKey(), START.plusDays(60));
+    assertEquals(sub.lastKey(), START.plusDays(69));
+    tail.remove(START.plusDays(99));
+    sub.put(START.plusDays(65), null);
+    assertEquals(ts.size(), 99);
+    assertFalse(ts.containsKey(START.plusDays(99)));
+    assertTrue(ts.containsKey(START.plusDays(65)));
+    assertNull(ts.get(START.plusDays(65)));
+    assertEquals(tail.size(), 49);
+    ts.put(START.minusDays(1), 1.);
+    ts.remove(START.plusDays(60));
+    assertEquals(head.size(), 11);
+    assertEquals(head.firstKey(), START.minusDays(1));
+    assertEquals(sub.size(), 9);
+    assertEquals(sub.firstKey(), START.plusDays(61));
+    // removed from the series through the view
+    sub.clear();
+    assertTrue(sub.isEmpty());
+    assertEquals(ts.size(), 90);
+    assertEquals(tail.size(), 39);
+    final Iterator<Map.Entry<LocalDate, Double>> iterator = head.entrySet().iterator();
+    iterator.next();
+    iterator.remove();
+    assertEquals(ts.firstKey(), START);
+    ts.clear();
+    assertTrue(head.isEmpty());
+    assertTrue(tail.isEmpty());
+  }
+
+  /**
+   * Tests that a date outside the range of a view cannot be added through it.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testViewRange() {
+    series(10).headMap(START.plusDays(5)).put(START.plusDays(5), 1.);
+  }
+
+  /**
+   * Tests that a view of a view must be inside its range.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testViewOfViewRange() {
+    series(10).tailMap(START.plusDays(5)).headMap(START.plusDays(2));
+  }
+
+  /**
+   * Tests that an empty view has no last key.
+   */
+  @Test(expectedExceptions = NoSuchElementException.class)
+  public void testEmptyViewLastKey() {
+    series(10).tailMap(START.plusDays(10)).lastKey();
+  }
+
+  /**
+   * Tests removing points and setting values through the entry set.
+   */
+  @Test
+  public void testEntrySet() {
+    final DenseTimeSeries ts = series(200);
+    final DenseTimeSeries copy = ts.copy();
+    ts.entrySet().removeIf(entry -> entry.getValue() % 2 == 0);
+    assertEquals(ts.size(), 100);
+    assertEquals(copy.size(), 200);
+    for (final Map.Entry<LocalDate, Double> entry : ts.entrySet()) {
+      entry.setValue(null);
+    }
+    assertEquals(ts.size(), 100);
+    assertEquals(ts.get(START.plusDays(1)), null);
+    assertTrue(ts.containsKey(START.plusDays(1)));
+    assertFalse(ts.containsKey(START.plusDays(2)));
+    assertEquals(copy.get(START.plusDays(1)), Double.valueOf(1));
+    assertEquals(ts.entrySet().parallelStream().filter(entry -> entry.getValue() == null).count(), 100);
+  }
+
+  /**
+   * Tests that the builder sorts points that are not added in order.
+   */
+  @Test
+  public void testBuilder() {
+    final DenseTimeSeries.Builder builder = new DenseTimeSeries.Builder(0);
+    for (int i = 99; i >= 0; i--) {
+      builder.add(START.plusDays(i), i % 10 == 0 ? null : Double.valueOf(i));
+    }
+    final DenseTimeSeries ts = builder.build();
+    assertEquals(ts.size(), 100);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(ts.getDate(i), START.plusDays(i));
+      assertEquals(ts.getValue(i), i % 10 == 0 ? null : Double.valueOf(i));
+    }
+  }
+
+  /**
+   * Tests that the builder rejects duplicate dates.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testBuilderDuplicates() {
+    new DenseTimeSeries.Builder(3).add(START, 1.).add(START.plusDays(1), 2.).add(START, 3.).build();
+  }
+
+  /**
+   * Tests that a null date cannot be added.
+   */
+  @Test(expectedExceptions = XL4JRuntimeException.class)
+  public void testNullDate() {
+    DenseTimeSeries.newTimeSeries().put(null, 1.);
+  }
+
+  /**
+   * Tests that an empty series has no first key.
+   */
+  @Test(expectedExceptions = NoSuchElementException.class)
+  public void testEmptyFirstKey() {
+    DenseTimeSeries.newTimeSeries().firstKey();
+  }
+
+  /**
+   * Tests that a sub-map cannot end before it starts.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSubMapOrder() {
+    series(10).subMap(START.plusDays(5), START);
+  }
+
+  /**
+   * Tests that the iterator fails if the series is changed other than through the iterator.
+   */
+  @Test(expectedExceptions = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    final DenseTimeSeries ts = series(10);
+    final Iterator<Map.Entry<LocalDate, Double>> iterator = ts.entrySet().iterator();
+    iterator.next();
+    ts.remove(START.plusDays(5));
+    iterator.next();
+  }
+
+  private static DenseTimeSeries series(final int n) {
+    final DenseTimeSeries ts = DenseTimeSeries.newTimeSeries();
+    for (int i = 0; i < n; i++) {
+      ts.put(START.plusDays(i), Double.valueOf(i));
+    }
+    return ts;
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.javacode;
+
+import com.mcleodmoores.xl4j.v1.api.core.ClassResolvingExcel;
+import com.mcleodmoores.xl4j.v1.api.core.Excel;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+
+/**
+ * Resolves the class names used by the J functions.
+ */
+final class ClassNames {
+
+  /**
+   * Resolves a fully-qualified or short class name (e.g. String instead of java.lang.String). Short names are only supported if
+   * the Excel instance is a {@link ClassResolvingExcel}.
+   *
+   * @param className
+   *          the class name
+   * @return the class
+   * @throws ClassNotFoundException
+   *           if the class could not be resolved
+   */
+  static Class<?> resolve(final String className) throws ClassNotFoundException {
+    final Excel excel = ExcelFactory.getInstance();
+    if (excel instanceof ClassResolvingExcel) {
+      return ((ClassResolvingExcel) excel).getClassResolver().resolve(className);
+    }
+    return Class.forName(className);
+  }
+
+  private ClassNames() {
+  }
+}
@@ -12,13 +12,13 @@ import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
 import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
 import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
 import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
-import com.mcleodmoores.xl4j.v1.api.core.ConstructorInvoker;
 import com.mcleodmoores.xl4j.v1.api.core.Excel;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
 import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
 import com.mcleodmoores.xl4j.v1.api.values.XLError;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.CallSiteCache;
 
 /**
  * Class containing Java object construction function.
@@ -27,6 +27,8 @@ import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 public final class JConstruct {
   /** The logger */
   private static final Logger LOGGER = LoggerFactory.getLogger(JConstruct.class);
+  /** The resolved overloads */
+  private static final CallSiteCache CALL_SITES = new CallSiteCache();
 
   private JConstruct() {
   }
@@ -48,39 +50,10 @@ public final class JConstruct {
       @XLParameter(name = "class name", description = "The class name, fully qualified or short if registered") final XLString className,
       @XLParameter(name = "args", description = "") final XLValue... args) {
     try {
-      final Excel excelFactory = ExcelFactory.getInstance();
-      final InvokerFactory invokerFactory = excelFactory.getInvokerFactory();
-      Class<?> temp = resolveClass(className);
-      final ConstructorInvoker[] constructorTypeConverters = invokerFactory.getConstructorTypeConverter(temp,
-          TypeConversionMode.OBJECT_RESULT, getArgTypes(args));
-      int i = 0;
-      // TODO remove any constructor with Object or Object[] types and try them last?
-      for (; i < constructorTypeConverters.length; i++) {
-        final ConstructorInvoker constructorTypeConverter = constructorTypeConverters[i];
-        if (constructorTypeConverter == null) {
-          // go to where it will try any constructors that are at the end of the array
-          break;
-        }
-        try {
-          return constructorTypeConverter.newInstance(args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      for (int j = constructorTypeConverters.length - 1; j >= i; j--) {
-        final ConstructorInvoker constructorTypeConverter = constructorTypeConverters[j];
-        if (constructorTypeConverter == null) {
-          // haven't found anything at the end either
-          break;
-        }
-        try {
-          return constructorTypeConverter.newInstance(args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      LOGGER.error("Could not construct class called {} with arguments {}", className, Arrays.toString(args));
-      return XLError.Null;
+      final Excel excel = ExcelFactory.getInstance();
+      final InvokerFactory invokerFactory = excel.getInvokerFactory();
+      return CALL_SITES.getConstructorCallSite(invokerFactory, resolveClass(className), TypeConversionMode.OBJECT_RESULT, args)
+          .call(null, args);
     } catch (final ClassNotFoundException e) {
       LOGGER.error("Could not find class called {}", className.getValue());
       return XLError.Null;
@@ -90,24 +63,15 @@ public final class JConstruct {
     }
   }
 
-  private static Class<? extends XLValue>[] getArgTypes(final XLValue... args) {
-    @SuppressWarnings("unchecked")
-    final Class<? extends XLValue>[] result = new Class[args.length];
-    for (int i = 0; i < args.length; i++) {
-      result[i] = args[i].getClass();
-    }
-    return result;
-  }
-
   /**
-   * This is a separate method so we can do shorthand lookups later on (e.g. String instead of java.util.String). Note this is duplicated in
-   * JMethod
+   * Resolves a fully-qualified or short class name (e.g. String instead of java.lang.String) using the resolver shared with
+   * the other J functions.
    *
    * @param className
    * @return a resolved class
    * @throws ClassNotFoundException
    */
   private static Class<?> resolveClass(final XLString className) throws ClassNotFoundException {
-    return Class.forName(className.getValue());
+    return ClassNames.resolve(className.getValue());
   }
 }
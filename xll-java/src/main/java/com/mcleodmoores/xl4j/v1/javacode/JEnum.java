@@ -41,9 +41,9 @@ public final class JEnum {
       category = "Java",
       typeConversionMode = TypeConversionMode.PASSTHROUGH)
   public static Object jEnum(
-      @XLParameter(name = "enum name", description = "The fully-qualified enum name") final XLString enumName) {
+      @XLParameter(name = "enum name", description = "The fully-qualified or short enum name") final XLString enumName) {
     try {
-      final Class<?> clazz = Class.forName(enumName.getValue());
+      final Class<?> clazz = ClassNames.resolve(enumName.getValue());
       final Object[] values = clazz.getEnumConstants();
       final XLValue[][] array = new XLValue[values.length][1];
       for (int i = 0; i < values.length; i++) {
@@ -69,11 +69,11 @@ public final class JEnum {
       category = "Java",
       typeConversionMode = TypeConversionMode.PASSTHROUGH)
   public static Object jEnumX(
-      @XLParameter(name = "enum name", description = "The fully-qualified enum name") final XLString enumName) {
+      @XLParameter(name = "enum name", description = "The fully-qualified or short enum name") final XLString enumName) {
     try {
       final Excel excel = ExcelFactory.getInstance();
       final ObjectXLObjectTypeConverter typeConverter = new ObjectXLObjectTypeConverter(excel);
-      final Class<?> clazz = Class.forName(enumName.getValue());
+      final Class<?> clazz = ClassNames.resolve(enumName.getValue());
       final Object[] values = clazz.getEnumConstants();
       final XLValue[][] array = new XLValue[values.length][1];
       for (int i = 0; i < values.length; i++) {
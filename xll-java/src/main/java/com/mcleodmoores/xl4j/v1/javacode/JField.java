@@ -155,7 +155,7 @@ public final class JField {
   }
 
   private static Class<?> resolveClass(final XLString className) throws ClassNotFoundException {
-    return Class.forName(className.getValue());
+    return ClassNames.resolve(className.getValue());
   }
 
   private JField() {
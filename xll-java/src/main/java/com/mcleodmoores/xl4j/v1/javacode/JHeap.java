@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.javacode;
+
+import java.util.List;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.Heap;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.HandleGraph;
+import com.mcleodmoores.xl4j.v1.core.HeapClassStatistic;
+import com.mcleodmoores.xl4j.v1.core.ShardedHeap;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Functions that show the number of objects on the heap and an estimate of the memory that they hold, and that set the soft limit
+ * above which objects returned by cacheable functions are evicted. The estimates can count objects that are shared more than
+ * once. The lineage of an object shows how many objects it was produced from and how many were produced from it.
+ */
+@XLNamespace("J")
+public final class JHeap {
+  /** The default number of classes shown by HeapClasses */
+  private static final int DEFAULT_TOP = 10;
+  /** The table header */
+  private static final String[] HEADER = {"Class", "Objects", "Bytes" };
+
+  private JHeap() {
+  }
+
+  /**
+   * Gets the size of the heap.
+   *
+   * @return a table of names and values
+   */
+  @XLFunction(name = "HeapStats",
+      description = "Show the number of objects on the heap and the memory they hold",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue heapStats() {
+    final ShardedHeap heap = getHeap();
+    return XLArray.of(new XLValue[][] {
+      {XLString.of("Objects"), XLNumber.of(heap.size())},
+      {XLString.of("Estimated bytes"), XLNumber.of(heap.getEstimatedBytes())},
+      {XLString.of("Max bytes"), XLNumber.of(heap.getMaxBytes())},
+      {XLString.of("Evictions"), XLNumber.of(heap.getEvictions())} });
+  }
+
+  /**
+   * Gets the number of objects of the classes that hold the most memory.
+   *
+   * @param n
+   *          the number of classes, optional
+   * @return a table of classes, largest first
+   */
+  @XLFunction(name = "HeapClasses",
+      description = "Show the classes on the heap that hold the most memory",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue heapClasses(
+      @XLParameter(name = "n", description = "The number of classes, 10 if blank", optional = true) final XLValue n) {
+    final int top = n instanceof XLNumber ? (int) ((XLNumber) n).getValue() : DEFAULT_TOP;
+    final List<HeapClassStatistic> statistics = getHeap().getClassStatistics();
+    final int rows = Math.max(0, Math.min(top, statistics.size()));
+    final XLValue[][] table = new XLValue[rows + 1][HEADER.length];
+    for (int i = 0; i < HEADER.length; i++) {
+      table[0][i] = XLString.of(HEADER[i]);
+    }
+    for (int i = 0; i < rows; i++) {
+      final HeapClassStatistic statistic = statistics.get(i);
+      table[i + 1][0] = XLString.of(statistic.getClassName());
+      table[i + 1][1] = XLNumber.of(statistic.getObjects());
+      table[i + 1][2] = XLNumber.of(statistic.getBytes());
+    }
+    return XLArray.of(table);
+  }
+
+  /**
+   * Sets the soft limit on the estimated memory held by the heap, which is applied at the next garbage collection.
+   *
+   * @param maxBytes
+   *          the limit in bytes, or zero for no limit
+   * @return the limit
+   */
+  @XLFunction(name = "HeapSetMaxBytes",
+      description = "Set the memory above which recomputable objects are evicted from the heap",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLNumber heapSetMaxBytes(
+      @XLParameter(name = "max bytes", description = "The limit in bytes, or zero for no limit") final double maxBytes) {
+    final ShardedHeap heap = getHeap();
+    heap.setMaxBytes((long) maxBytes);
+    return XLNumber.of(heap.getMaxBytes());
+  }
+
+  /**
+   * Gets the number of objects that an object was produced from and that were produced from it.
+   *
+   * @param objectReference
+   *          the object reference
+   * @return a table of names and values
+   */
+  @XLFunction(name = "HeapLineage",
+      description = "Show how many objects an object was produced from and how many were produced from it",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false,
+      typeConversionMode = TypeConversionMode.PASSTHROUGH)
+  public static XLValue heapLineage(
+      @XLParameter(name = "object reference", description = "The object reference") final XLObject objectReference) {
+    final HandleGraph graph = getHeap().getHandleGraph();
+    final long handle = objectReference.getHandle();
+    return XLArray.of(new XLValue[][] {
+      {XLString.of("Producers"), XLNumber.of(graph.getProducers(handle).length)},
+      {XLString.of("Ancestors"), XLNumber.of(graph.getAncestors(handle).length)},
+      {XLString.of("Consumers"), XLNumber.of(graph.getConsumers(handle).length)},
+      {XLString.of("Descendants"), XLNumber.of(graph.getDescendants(handle).length)} });
+  }
+
+  private static ShardedHeap getHeap() {
+    final Heap heap = ExcelFactory.getInstance().getHeap();
+    if (heap instanceof ShardedHeap) {
+      return (ShardedHeap) heap;
+    }
+    throw new XL4JRuntimeException("Heap statistics are not available from " + heap.getClass().getSimpleName());
+  }
+}
@@ -16,11 +16,11 @@ import com.mcleodmoores.xl4j.v1.api.core.Excel;
 import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
 import com.mcleodmoores.xl4j.v1.api.core.Heap;
 import com.mcleodmoores.xl4j.v1.api.core.InvokerFactory;
-import com.mcleodmoores.xl4j.v1.api.core.MethodInvoker;
 import com.mcleodmoores.xl4j.v1.api.values.XLError;
 import com.mcleodmoores.xl4j.v1.api.values.XLObject;
 import com.mcleodmoores.xl4j.v1.api.values.XLString;
 import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.invoke.CallSiteCache;
 
 /**
  * Class containing Java method invocation functions.
@@ -29,6 +29,8 @@ import com.mcleodmoores.xl4j.v1.api.values.XLValue;
 public final class JMethod {
   /** The logger */
   private static final Logger LOGGER = LoggerFactory.getLogger(JMethod.class);
+  /** The resolved overloads, shared by all method functions */
+  private static final CallSiteCache CALL_SITES = new CallSiteCache();
 
   private JMethod() {
   }
@@ -51,50 +53,7 @@ public final class JMethod {
   public static Object jMethod(@XLParameter(name = "object reference", description = "The object reference") final XLObject objectReference,
       @XLParameter(name = "method name", description = "The method name without parentheses") final XLString methodName,
       @XLParameter(name = "args", description = "the method arguments") final XLValue... args) {
-    final Excel excel = ExcelFactory.getInstance();
-    final InvokerFactory invokerFactory = excel.getInvokerFactory();
-    final Heap heap = excel.getHeap();
-    final Object object = heap.getObject(objectReference.getHandle());
-    final Class<?> clazz = object.getClass();
-    try {
-      final MethodInvoker[] methodInvokers = invokerFactory.getMethodTypeConverter(clazz, methodName,
-          TypeConversionMode.SIMPLEST_RESULT, getArgTypes(args));
-      int i = 0;
-      // TODO remove any method with Object or Object[] types and try them last?
-      for (; i < methodInvokers.length; i++) {
-        final MethodInvoker methodInvoker = methodInvokers[i];
-        if (methodInvoker == null) {
-          // go to where it will try any methods that are at the end of the array i.e. varargs methods
-          break;
-        }
-        try {
-          return methodInvoker.invoke(object, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          LOGGER.trace("trying to invoke method, but exception thrown", e);
-          // keep trying until something works
-        }
-      }
-      for (int j = methodInvokers.length - 1; j >= i; j--) {
-        final MethodInvoker methodTypeConverter = methodInvokers[j];
-        if (methodTypeConverter == null) {
-          // haven't found anything at the end either
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(object, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          LOGGER.trace("trying to invoke method, but exception thrown", e);
-          // keep trying until something works
-        }
-      }
-      LOGGER.error("Could not call method {} on {} with arguments {}", methodName.getValue(), objectReference.getClazz(),
-          Arrays.toString(args));
-      return XLError.Null;
-    } catch (final Exception e) {
-      LOGGER.error("Could not call method {} on {} with arguments {}, {}", methodName.getValue(), objectReference.getClazz(),
-          Arrays.toString(args), e);
-      return XLError.Null;
-    }
+    return invoke(objectReference, methodName, TypeConversionMode.SIMPLEST_RESULT, args);
   }
 
   /**
@@ -115,48 +74,7 @@ public final class JMethod {
   public static Object jMethodX(@XLParameter(name = "object reference", description = "The object reference") final XLObject objectReference,
       @XLParameter(name = "method name", description = "The method name without parentheses") final XLString methodName,
       @XLParameter(name = "args", description = "the method arguments") final XLValue... args) {
-    final Excel excel = ExcelFactory.getInstance();
-    final InvokerFactory invokerFactory = excel.getInvokerFactory();
-    final Heap heap = excel.getHeap();
-    final Object object = heap.getObject(objectReference.getHandle());
-    final Class<?> clazz = object.getClass();
-    try {
-      final MethodInvoker[] methodInvokers = invokerFactory.getMethodTypeConverter(clazz, methodName,
-          TypeConversionMode.OBJECT_RESULT, getArgTypes(args));
-      int i = 0;
-      // TODO remove any method with Object or Object[] types and try them last?
-      for (; i < methodInvokers.length; i++) {
-        final MethodInvoker methodInvoker = methodInvokers[i];
-        if (methodInvoker == null) {
-          // go to where it will try any methods that are at the end of the array i.e. varargs methods
-          break;
-        }
-        try {
-          return methodInvoker.invoke(object, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      for (int j = methodInvokers.length - 1; j >= i; j--) {
-        final MethodInvoker methodTypeConverter = methodInvokers[j];
-        if (methodTypeConverter == null) {
-          // haven't found anything at the end either
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(object, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      LOGGER.error("Could not call method {} on {} with arguments {}", methodName.getValue(), objectReference.getClazz(),
-          Arrays.toString(args));
-      return XLError.Null;
-    } catch (final Exception e) {
-      LOGGER.error("Could not call method {} on {} with arguments {}: {}", methodName.getValue(), objectReference.getClazz(),
-          Arrays.toString(args), e);
-      return XLError.Null;
-    }
+    return invoke(objectReference, methodName, TypeConversionMode.OBJECT_RESULT, args);
   }
 
   /**
@@ -178,46 +96,7 @@ public final class JMethod {
       @XLParameter(name = "class name", description = "The class name, fully qualified or short if registered") final XLString className,
       @XLParameter(name = "method name", description = "The method name without parentheses") final XLString methodName,
       @XLParameter(name = "args", description = "the method arguments") final XLValue... args) {
-    try {
-      final Excel excel = ExcelFactory.getInstance();
-      final InvokerFactory invokerFactory = excel.getInvokerFactory();
-      final MethodInvoker[] methodTypeConverters = invokerFactory.getMethodTypeConverter(resolveClass(className), methodName,
-          TypeConversionMode.SIMPLEST_RESULT, getArgTypes(args));
-      int i = 0;
-      // TODO remove any method with Object or Object[] types and try them last?
-      for (; i < methodTypeConverters.length; i++) {
-        final MethodInvoker methodTypeConverter = methodTypeConverters[i];
-        if (methodTypeConverter == null) {
-          // go to where it will try any methods that are at the end of the array
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(null, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      for (int j = methodTypeConverters.length - 1; j >= i; j--) {
-        final MethodInvoker methodTypeConverter = methodTypeConverters[j];
-        if (methodTypeConverter == null) {
-          // haven't found anything at the end either
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(null, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      LOGGER.error("Could not call method {} on {} with arguments {}", methodName.getValue(), className.getValue(), Arrays.toString(args));
-      return XLError.Null;
-    } catch (final ClassNotFoundException e) {
-      LOGGER.error("Could not find class called {}", className.getValue());
-      return XLError.Null;
-    } catch (final Exception e) {
-      LOGGER.error("Could not call method {} on {} with arguments {}: {}", methodName.getValue(), className.getValue(), Arrays.toString(args), e);
-      return XLError.Null;
-    }
+    return invokeStatic(className, methodName, TypeConversionMode.SIMPLEST_RESULT, args);
   }
 
   /**
@@ -239,39 +118,30 @@ public final class JMethod {
       @XLParameter(name = "class name", description = "The class name, fully qualified or short if registered") final XLString className,
       @XLParameter(name = "method name", description = "The method name without parentheses") final XLString methodName,
       @XLParameter(name = "args", description = "the method arguments") final XLValue... args) {
+    return invokeStatic(className, methodName, TypeConversionMode.OBJECT_RESULT, args);
+  }
+
+  private static Object invoke(final XLObject objectReference, final XLString methodName, final TypeConversionMode typeConversionMode,
+      final XLValue... args) {
+    final Excel excel = ExcelFactory.getInstance();
+    final InvokerFactory invokerFactory = excel.getInvokerFactory();
+    final Heap heap = excel.getHeap();
+    final Object object = heap.getObject(objectReference.getHandle());
+    try {
+      return CALL_SITES.getMethodCallSite(invokerFactory, object.getClass(), methodName, typeConversionMode, args).call(object, args);
+    } catch (final Exception e) {
+      LOGGER.error("Could not call method {} on {} with arguments {}: {}", methodName.getValue(), objectReference.getClazz(),
+          Arrays.toString(args), e);
+      return XLError.Null;
+    }
+  }
+
+  private static Object invokeStatic(final XLString className, final XLString methodName, final TypeConversionMode typeConversionMode,
+      final XLValue... args) {
     try {
       final Excel excel = ExcelFactory.getInstance();
       final InvokerFactory invokerFactory = excel.getInvokerFactory();
-      final MethodInvoker[] methodTypeConverters = invokerFactory.getMethodTypeConverter(resolveClass(className), methodName,
-          TypeConversionMode.OBJECT_RESULT, getArgTypes(args));
-      int i = 0;
-      // TODO remove any method with Object or Object[] types and try them last?
-      for (; i < methodTypeConverters.length; i++) {
-        final MethodInvoker methodTypeConverter = methodTypeConverters[i];
-        if (methodTypeConverter == null) {
-          // go to where it will try any methods that are at the end of the array
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(null, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      for (int j = methodTypeConverters.length - 1; j >= i; j--) {
-        final MethodInvoker methodTypeConverter = methodTypeConverters[j];
-        if (methodTypeConverter == null) {
-          // haven't found anything at the end either
-          break;
-        }
-        try {
-          return methodTypeConverter.invoke(null, args); // reduce return type to excel friendly type if possible.
-        } catch (final Exception e) {
-          // keep trying until something works
-        }
-      }
-      LOGGER.error("Could not call method {} on {} with arguments {}", methodName.getValue(), className.getValue(), Arrays.toString(args));
-      return XLError.Null;
+      return CALL_SITES.getMethodCallSite(invokerFactory, resolveClass(className), methodName, typeConversionMode, args).call(null, args);
     } catch (final ClassNotFoundException e) {
       LOGGER.error("Could not find class called {}", className.getValue());
       return XLError.Null;
@@ -281,24 +151,15 @@ public final class JMethod {
     }
   }
 
-  private static Class<? extends XLValue>[] getArgTypes(final XLValue... args) {
-    @SuppressWarnings("unchecked")
-    final Class<? extends XLValue>[] result = new Class[args.length];
-    for (int i = 0; i < args.length; i++) {
-      result[i] = args[i].getClass();
-    }
-    return result;
-  }
-
   /**
-   * This is a separate method so we can do shorthand lookups later on (e.g. String instead of java.util.String). Note this is duplicated in
-   * JConstruct
+   * Resolves a fully-qualified or short class name (e.g. String instead of java.lang.String) using the resolver shared with
+   * the other J functions.
    *
    * @param className
    * @return a resolved class
    * @throws ClassNotFoundException
    */
   private static Class<?> resolveClass(final XLString className) throws ClassNotFoundException {
-    return Class.forName(className.getValue());
+    return ClassNames.resolve(className.getValue());
   }
 }
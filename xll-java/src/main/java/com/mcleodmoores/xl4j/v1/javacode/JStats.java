@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.javacode;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import com.mcleodmoores.xl4j.v1.api.annotations.TypeConversionMode;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLFunction;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLNamespace;
+import com.mcleodmoores.xl4j.v1.api.annotations.XLParameter;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFactory;
+import com.mcleodmoores.xl4j.v1.api.core.ExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.core.DefaultExcelFunctionCallHandler;
+import com.mcleodmoores.xl4j.v1.core.FunctionStatistic;
+import com.mcleodmoores.xl4j.v1.core.FunctionStatistics;
+import com.mcleodmoores.xl4j.v1.core.ResultCache;
+import com.mcleodmoores.xl4j.v1.core.SingleFlight;
+import com.mcleodmoores.xl4j.v1.util.XL4JRuntimeException;
+
+/**
+ * Functions that show the number of calls to, and the time spent in, each function, the state of the cache of function results
+ * and how many calls to single-flight functions were collapsed. The tables of function statistics have a header row, and the
+ * times are in microseconds.
+ */
+@XLNamespace("J")
+public final class JStats {
+  /** The default number of functions shown by TopFunctions */
+  private static final int DEFAULT_TOP = 10;
+  /** The table header */
+  private static final String[] HEADER = {"Name", "Calls", "Errors", "Cells", "Total (us)", "Mean (us)", "50% (us)", "90% (us)",
+      "99% (us)", "Max (us)" };
+
+  private JStats() {
+  }
+
+  /**
+   * Gets the statistics for a function, or for all functions that have been called if no name is supplied.
+   *
+   * @param functionName
+   *          the function name, optional
+   * @return a table of statistics, or #N/A if the function has not been called
+   */
+  @XLFunction(name = "Stats",
+      description = "Show the number of calls and time spent in functions",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue stats(
+      @XLParameter(name = "function name", description = "The function name, or blank for all functions", optional = true)
+      final XLValue functionName) {
+    final FunctionStatistics statistics = getFunctionStatistics();
+    if (functionName instanceof XLString) {
+      final FunctionStatistic statistic = statistics.getStatistic(((XLString) functionName).getValue());
+      return statistic == null ? XLError.NA : toTable(Collections.singletonList(statistic));
+    }
+    return toTable(statistics.getStatistics());
+  }
+
+  /**
+   * Gets the statistics for the functions that have taken the most time in total.
+   *
+   * @param n
+   *          the number of functions, optional
+   * @return a table of statistics, longest first
+   */
+  @XLFunction(name = "TopFunctions",
+      description = "Show the functions that have taken the most time",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue topFunctions(
+      @XLParameter(name = "n", description = "The number of functions, 10 if blank", optional = true) final XLValue n) {
+    final int top = n instanceof XLNumber ? (int) ((XLNumber) n).getValue() : DEFAULT_TOP;
+    return toTable(getFunctionStatistics().getTopFunctions(top));
+  }
+
+  /**
+   * Writes the statistics for all functions to a file as comma-separated values.
+   *
+   * @param fileName
+   *          the file name
+   * @return the full path of the file
+   */
+  @XLFunction(name = "StatsDump",
+      description = "Write the number of calls and time spent in functions to a file",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static String statsDump(
+      @XLParameter(name = "file name", description = "The file name") final String fileName) {
+    final File file = new File(fileName);
+    getFunctionStatistics().dump(file);
+    return file.getAbsolutePath();
+  }
+
+  /**
+   * Gets the statistics for the cache of results of cacheable functions.
+   *
+   * @return a table of names and values
+   */
+  @XLFunction(name = "CacheStats",
+      description = "Show the hits, misses and size of the function result cache",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue cacheStats() {
+    final ResultCache cache = getHandler().getResultCache();
+    return XLArray.of(new XLValue[][] {
+      {XLString.of("Hits"), XLNumber.of(cache.getHits())},
+      {XLString.of("Misses"), XLNumber.of(cache.getMisses())},
+      {XLString.of("Hit rate"), XLNumber.of(cache.getHitRate())},
+      {XLString.of("Evictions"), XLNumber.of(cache.getEvictions())},
+      {XLString.of("Entries"), XLNumber.of(cache.getSize())},
+      {XLString.of("Weight (cells)"), XLNumber.of(cache.getWeight())},
+      {XLString.of("Max entries"), XLNumber.of(cache.getMaxEntries())},
+      {XLString.of("Max weight (cells)"), XLNumber.of(cache.getMaxWeight())} });
+  }
+
+  /**
+   * Removes all results from the cache of results of cacheable functions.
+   *
+   * @return the number of entries removed
+   */
+  @XLFunction(name = "CacheClear",
+      description = "Remove all entries from the function result cache",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLNumber cacheClear() {
+    final ResultCache cache = getHandler().getResultCache();
+    final long size = cache.getSize();
+    cache.clear();
+    return XLNumber.of(size);
+  }
+
+  /**
+   * Counts the cached results that depend on an object or on objects produced from it.
+   *
+   * @param objectReference
+   *          the object reference
+   * @return the number of cached results
+   */
+  @XLFunction(name = "CacheDependents",
+      description = "Count the cached results that depend on an object",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false,
+      typeConversionMode = TypeConversionMode.PASSTHROUGH)
+  public static XLNumber cacheDependents(
+      @XLParameter(name = "object reference", description = "The object reference") final XLObject objectReference) {
+    return XLNumber.of(getHandler().getDependentResults(objectReference.getHandle()));
+  }
+
+  /**
+   * Removes the cached results that depend on an object or on objects produced from it.
+   *
+   * @param objectReference
+   *          the object reference
+   * @return the number of entries removed
+   */
+  @XLFunction(name = "CacheInvalidate",
+      description = "Remove the cached results that depend on an object",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false,
+      typeConversionMode = TypeConversionMode.PASSTHROUGH)
+  public static XLNumber cacheInvalidate(
+      @XLParameter(name = "object reference", description = "The object reference") final XLObject objectReference) {
+    return XLNumber.of(getHandler().invalidate(objectReference.getHandle()));
+  }
+
+  /**
+   * Gets the number of calls to single-flight functions that were made and that shared the result of an identical call that was
+   * already running.
+   *
+   * @return a table of names and values
+   */
+  @XLFunction(name = "SingleFlightStats",
+      description = "Show how many concurrent identical calls to single-flight functions were collapsed",
+      category = "Java",
+      isVolatile = true,
+      isMultiThreadSafe = false)
+  public static XLValue singleFlightStats() {
+    final SingleFlight singleFlight = getHandler().getSingleFlight();
+    return XLArray.of(new XLValue[][] {
+      {XLString.of("Executions"), XLNumber.of(singleFlight.getExecutions())},
+      {XLString.of("Coalesced"), XLNumber.of(singleFlight.getCoalesced())},
+      {XLString.of("Coalesced rate"), XLNumber.of(singleFlight.getCoalescedRate())},
+      {XLString.of("In flight"), XLNumber.of(singleFlight.getInFlight())} });
+  }
+
+  private static FunctionStatistics getFunctionStatistics() {
+    return getHandler().getFunctionStatistics();
+  }
+
+  private static DefaultExcelFunctionCallHandler getHandler() {
+    final ExcelFunctionCallHandler handler = ExcelFactory.getInstance().getExcelCallHandler();
+    if (handler instanceof DefaultExcelFunctionCallHandler) {
+      return (DefaultExcelFunctionCallHandler) handler;
+    }
+    throw new XL4JRuntimeException("Function statistics are not available from " + handler.getClass().getSimpleName());
+  }
+
+  private static XLArray toTable(final List<FunctionStatistic> statistics) {
+    final XLValue[][] table = new XLValue[statistics.size() + 1][HEADER.length];
+    for (int i = 0; i < HEADER.length; i++) {
+      table[0][i] = XLString.of(HEADER[i]);
+    }
+    int row = 1;
+    for (final FunctionStatistic statistic : statistics) {
+      table[row][0] = XLString.of(statistic.getName());
+      table[row][1] = XLNumber.of(statistic.getCalls());
+      table[row][2] = XLNumber.of(statistic.getErrors());
+      table[row][3] = XLNumber.of(statistic.getCells());
+      table[row][4] = toMicros(statistic.getTotalNanos());
+      table[row][5] = XLNumber.of(statistic.getMeanNanos() / 1000);
+      table[row][6] = toMicros(statistic.getPercentileNanos(50));
+      table[row][7] = toMicros(statistic.getPercentileNanos(90));
+      table[row][8] = toMicros(statistic.getPercentileNanos(99));
+      table[row][9] = toMicros(statistic.getMaxNanos());
+      row++;
+    }
+    return XLArray.of(table);
+  }
+
+  private static XLNumber toMicros(final long nanos) {
+    return XLNumber.of(nanos / 1000.);
+  }
+}
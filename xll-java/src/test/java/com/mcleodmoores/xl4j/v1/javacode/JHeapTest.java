@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.javacode;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLObject;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.simulator.MockFunctionProcessor;
+
+/**
+ * Unit tests for {@link JHeap}.
+ */
+public class JHeapTest {
+  private static final MockFunctionProcessor PROCESSOR = MockFunctionProcessor.getInstance();
+
+  /**
+   * Tests the summary of the heap, and that sizes are estimated in the background once there is a limit.
+   *
+   * @throws InterruptedException
+   *           if the test is interrupted
+   */
+  @Test
+  public void testHeapStats() throws InterruptedException {
+    assertTrue(PROCESSOR.invoke("JConstruct", XLString.of("java.util.ArrayList")) instanceof XLObject);
+    XLValue[][] stats = ((XLArray) PROCESSOR.invoke("JHeapStats")).getArray();
+    assertEquals(stats.length, 4);
+    assertEquals(stats[0][0], XLString.of("Objects"));
+    assertTrue(((XLNumber) stats[0][1]).getValue() >= 1);
+    assertEquals(stats[1][0], XLString.of("Estimated bytes"));
+    try {
+      PROCESSOR.invoke("JHeapSetMaxBytes", XLNumber.of(1e15));
+      final long end = System.currentTimeMillis() + 10000;
+      while (((XLNumber) stats[1][1]).getValue() == 0 && System.currentTimeMillis() < end) {
+        Thread.sleep(10);
+        stats = ((XLArray) PROCESSOR.invoke("JHeapStats")).getArray();
+      }
+      assertTrue(((XLNumber) stats[1][1]).getValue() > 0);
+    } finally {
+      PROCESSOR.invoke("JHeapSetMaxBytes", XLNumber.of(0));
+    }
+  }
+
+  /**
+   * Tests the table of classes.
+   */
+  @Test
+  public void testHeapClasses() {
+    assertTrue(PROCESSOR.invoke("JConstruct", XLString.of("java.util.ArrayList")) instanceof XLObject);
+    // sizes are not estimated without a limit, so ask for every class
+    final XLValue[][] classes = ((XLArray) PROCESSOR.invoke("JHeapClasses", XLNumber.of(Integer.MAX_VALUE))).getArray();
+    assertEquals(classes[0][0], XLString.of("Class"));
+    boolean found = false;
+    double previous = Double.POSITIVE_INFINITY;
+    for (int i = 1; i < classes.length; i++) {
+      found |= classes[i][0].equals(XLString.of("java.util.ArrayList"));
+      final double bytes = ((XLNumber) classes[i][2]).getValue();
+      assertTrue(bytes <= previous);
+      previous = bytes;
+    }
+    assertTrue(found);
+    assertEquals(((XLArray) PROCESSOR.invoke("JHeapClasses", XLNumber.of(1))).getArray().length, 2);
+    assertEquals(((XLArray) PROCESSOR.invoke("JHeapClasses", XLMissing.INSTANCE)).getArray()[0][0], XLString.of("Class"));
+  }
+
+  /**
+   * Tests that an object returned by a method is recorded as produced from the object the method was called on.
+   */
+  @Test
+  public void testHeapLineage() {
+    final XLValue list = PROCESSOR.invoke("JConstruct", XLString.of("java.util.ArrayList"));
+    final XLValue iterator = PROCESSOR.invoke("JMethodX", list, XLString.of("iterator"));
+    assertTrue(iterator instanceof XLObject);
+    final XLValue[][] lineage = ((XLArray) PROCESSOR.invoke("JHeapLineage", list)).getArray();
+    assertEquals(lineage[0][0], XLString.of("Producers"));
+    assertEquals(lineage[0][1], XLNumber.of(0));
+    assertEquals(lineage[2][1], XLNumber.of(1));
+    assertEquals(((XLArray) PROCESSOR.invoke("JHeapLineage", iterator)).getArray()[0][1], XLNumber.of(1));
+  }
+
+  /**
+   * Tests setting the limit.
+   */
+  @Test
+  public void testHeapSetMaxBytes() {
+    assertEquals(PROCESSOR.invoke("JHeapSetMaxBytes", XLNumber.of(0)), XLNumber.of(0));
+  }
+}
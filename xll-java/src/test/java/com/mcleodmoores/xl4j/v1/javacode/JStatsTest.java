@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2017 - Present McLeod Moores Software Limited.  All rights reserved.
+ */
+package com.mcleodmoores.xl4j.v1.javacode;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.mcleodmoores.xl4j.v1.api.values.XLArray;
+import com.mcleodmoores.xl4j.v1.api.values.XLError;
+import com.mcleodmoores.xl4j.v1.api.values.XLMissing;
+import com.mcleodmoores.xl4j.v1.api.values.XLNumber;
+import com.mcleodmoores.xl4j.v1.api.values.XLString;
+import com.mcleodmoores.xl4j.v1.api.values.XLValue;
+import com.mcleodmoores.xl4j.v1.simulator.MockFunctionProcessor;
+
+/**
+ * Unit tests for {@link JStats}.
+ */
+public class JStatsTest {
+  private static final MockFunctionProcessor PROCESSOR = MockFunctionProcessor.getInstance();
+
+  /**
+   * Tests the statistics for a single function.
+   */
+  @Test
+  public void testStats() {
+    final XLValue before = getCalls("After");
+    for (int i = 0; i < 3; i++) {
+      PROCESSOR.invoke("After", XLNumber.of(1), XLNumber.of(2));
+    }
+    final XLValue after = getCalls("After");
+    assertEquals(((XLNumber) after).getValue() - (before instanceof XLNumber ? ((XLNumber) before).getValue() : 0), 3.);
+    assertEquals(PROCESSOR.invoke("JStats", XLString.of("NotAFunction")), XLError.NA);
+  }
+
+  /**
+   * Tests the table of all functions and the top functions.
+   */
+  @Test
+  public void testTables() {
+    PROCESSOR.invoke("After", XLNumber.of(1), XLNumber.of(2));
+    final XLValue[][] all = ((XLArray) PROCESSOR.invoke("JStats", XLMissing.INSTANCE)).getArray();
+    assertEquals(all[0][0], XLString.of("Name"));
+    assertEquals(all[0].length, 10);
+    assertTrue(all.length > 1);
+    final XLValue[][] top = ((XLArray) PROCESSOR.invoke("JTopFunctions", XLNumber.of(1))).getArray();
+    assertEquals(top.length, 2);
+    double previous = Double.POSITIVE_INFINITY;
+    for (final XLValue[] row : ((XLArray) PROCESSOR.invoke("JTopFunctions", XLMissing.INSTANCE)).getArray()) {
+      if (row[4] instanceof XLNumber) {
+        final double total = ((XLNumber) row[4]).getValue();
+        assertTrue(total <= previous);
+        previous = total;
+      }
+    }
+  }
+
+  /**
+   * Tests the file dump.
+   * @throws Exception  if the file cannot be created or read
+   */
+  @Test
+  public void testDump() throws Exception {
+    PROCESSOR.invoke("After", XLNumber.of(1), XLNumber.of(2));
+    final File file = File.createTempFile("xl4j-stats", ".csv");
+    file.deleteOnExit();
+    assertEquals(PROCESSOR.invoke("JStatsDump", XLString.of(file.getPath())), XLString.of(file.getAbsolutePath()));
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertTrue(lines.get(0).startsWith("Name,"));
+    boolean found = false;
+    for (final String line : lines) {
+      found |= line.startsWith("After,");
+    }
+    assertTrue(found);
+  }
+
+  /**
+   * Tests the cache statistics table and clearing the cache.
+   */
+  @Test
+  public void testCacheStats() {
+    final XLValue[][] table = ((XLArray) PROCESSOR.invoke("JCacheStats")).getArray();
+    assertEquals(table.length, 8);
+    assertEquals(table[0][0], XLString.of("Hits"));
+    assertTrue(PROCESSOR.invoke("JCacheClear") instanceof XLNumber);
+    assertEquals(((XLArray) PROCESSOR.invoke("JCacheStats")).getArray()[4][1], XLNumber.of(0));
+  }
+
+  /**
+   * Tests counting and removing the cached results that depend on an object.
+   */
+  @Test
+  public void testCacheDependents() {
+    final XLValue list = PROCESSOR.invoke("JConstruct", XLString.of("java.util.ArrayList"));
+    assertEquals(PROCESSOR.invoke("JCacheDependents", list), XLNumber.of(0));
+    assertEquals(PROCESSOR.invoke("JCacheInvalidate", list), XLNumber.of(0));
+  }
+
+  /**
+   * Tests the single-flight statistics table.
+   */
+  @Test
+  public void testSingleFlightStats() {
+    final XLValue[][] table = ((XLArray) PROCESSOR.invoke("JSingleFlightStats")).getArray();
+    assertEquals(table.length, 4);
+    assertEquals(table[1][0], XLString.of("Coalesced"));
+    assertEquals(table[3][1], XLNumber.of(0));
+  }
+
+  private static XLValue getCalls(final String name) {
+    final XLValue result = PROCESSOR.invoke("JStats", XLString.of(name));
+    return result instanceof XLArray ? ((XLArray) result).getArray()[1][1] : result;
+  }
+}